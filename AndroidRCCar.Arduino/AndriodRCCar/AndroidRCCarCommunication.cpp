@@ -50,7 +50,9 @@ void AndroidRCCarCommunication::handleNextCommand() {
 	if(len == -1) {
 		// Received no nothing, yet.
 		return;
-	} else if(!validateCommand(buffer, len)) {
+	}
+	sequence = (len == requestCommandSize) ? buffer[ANDROID_RC_CAR_SEQUENCE_POS] : 0;
+	if(!validateCommand(buffer, len)) {
 		sendError(INVALID_COMMAND_ERROR);
 	} else if(answerBatteryNearEmpty()) {
 		// Do nothing, because battery is near empty.
@@ -194,6 +196,7 @@ void AndroidRCCarCommunication::sendResponse(ResponseMessage responseMsgType, by
 	if(payloadLen > 0) {
 		memcpy(&response[1], payload, payloadLen);
 	}
+	response[ANDROID_RC_CAR_SEQUENCE_POS] = sequence;
 	response[responseMsgSize-1] = crc.from_array(response, responseMsgSize-1);
 	
 	accessory.beginTransmission();
@@ -29,9 +29,13 @@
 #include "CarFeatures.h"
 #include "CRC8.h"
 
-#define	ANDROID_RC_CAR_PROTOCOL_VERSION		1
+#define	ANDROID_RC_CAR_PROTOCOL_VERSION		2
 #define	ANDROID_RC_CAR_REQUEST_CMD_SIZE		16
 #define	ANDROID_RC_CAR_RESPONE_MSG_SIZE		16
+/**
+ * Position of the sequence number in commands and responses (since protocol version 2):
+ */
+#define	ANDROID_RC_CAR_SEQUENCE_POS			14
 /**
  * This data will be given to AndroidAccessory:
  */
@@ -99,7 +103,7 @@ class AndroidRCCarCommunication {
          */
 		AndroidRCCarCommunication():
 			accessory(ANDROID_RC_CAR_MANUFACTURER, ANDROID_RC_CAR_MODEL, ANDROID_RC_CAR_DEFAULT_DESCRIPTION,
-					  ANDROID_RC_CAR_VERSION, ANDROID_RC_CAR_URI, ANDROID_RC_CAR_SERIAL), crc() {
+					  ANDROID_RC_CAR_VERSION, ANDROID_RC_CAR_URI, ANDROID_RC_CAR_SERIAL), crc(), sequence(0) {
 			}
         
         /**
@@ -108,7 +112,7 @@ class AndroidRCCarCommunication {
          */
 		AndroidRCCarCommunication(const char *deviceDescription):
 			accessory(ANDROID_RC_CAR_MANUFACTURER, ANDROID_RC_CAR_MODEL, deviceDescription,
-					  ANDROID_RC_CAR_VERSION, ANDROID_RC_CAR_URI, ANDROID_RC_CAR_SERIAL), crc() {
+					  ANDROID_RC_CAR_VERSION, ANDROID_RC_CAR_URI, ANDROID_RC_CAR_SERIAL), crc(), sequence(0) {
 			}
         
         /**
@@ -305,6 +309,11 @@ class AndroidRCCarCommunication {
          * @brief For generating checksum.
          */
 		CRC8 crc;
+        /**
+         * @brief The sequence number of the current command. It is sent back with the response,
+         *        so the Android App can send the next commands before the response is received.
+         */
+		byte sequence;
         /**
          * @brief The implemented version of the protocol
          */
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.benchmark;
+
+/**
+ * A benchmark, that is measured by the {@link BenchmarkRunner}.
+ * 
+ * One operation is one pass through the measured code, e.g. encoding one message.
+ * The benchmark should prepare everything it needs in its constructor,
+ * so {@link #run(int)} only contains the measured code.
+ * 
+ * @author sven
+ *
+ */
+public abstract class AbstractBenchmark {
+	
+	/**
+	 * The name, that is printed with the results.
+	 */
+	private final String name;
+	
+	/**
+	 * Default Constructor
+	 * @param name The name, that is printed with the results.
+	 */
+	protected AbstractBenchmark(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * Returns the name, that is printed with the results.
+	 * @return {@link #name}
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Runs the measured code {@code operations} times.
+	 * @param operations Number of operations.
+	 * @return A value, that depends on the results of the operations.
+	 * 		   The {@link BenchmarkRunner} consumes it, so the JIT can't omit the operations.
+	 * @throws Exception The benchmark failed.
+	 */
+	public abstract int run(int operations) throws Exception;
+}
@@ -0,0 +1,411 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.benchmark;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import to.sven.androidrccar.common.utils.CRC8;
+import to.sven.androidrccar.host.accessorycommunication.command.AbstractCommand;
+import to.sven.androidrccar.host.accessorycommunication.command.AdjustSpeedCommand;
+import to.sven.androidrccar.host.accessorycommunication.command.CommandPipeline;
+import to.sven.androidrccar.host.accessorycommunication.command.GetBatteryStateCommand;
+import to.sven.androidrccar.host.accessorycommunication.command.ICommandListener;
+import to.sven.androidrccar.host.accessorycommunication.command.MessageFrame;
+import to.sven.androidrccar.host.accessorycommunication.command.RotateCameraCommand;
+import to.sven.androidrccar.host.accessorycommunication.command.TurnCarCommand;
+import to.sven.androidrccar.host.accessorycommunication.exception.AccessoryConnectionProblemException;
+import to.sven.androidrccar.host.accessorycommunication.impl.AccessoryCommunication;
+import to.sven.androidrccar.host.accessorycommunication.impl.ResponseFrameReader;
+import to.sven.androidrccar.host.accessorycommunication.model.CarFeatures;
+import to.sven.androidrccar.host.accessorycommunication.model.ResponseMessage;
+
+/**
+ * Sends one command to a simulated µController per operation:
+ * The command is updated with a new value, encoded and written,
+ * the response is read, validated and decoded.
+ * The simulated µController answers every command with the same response.
+ * 
+ * @author sven
+ *
+ */
+public class AccessoryCommandBenchmark extends AbstractBenchmark {
+	
+	/**
+	 * Length of a command and a response.
+	 */
+	private static final int LEN = AccessoryCommunication.COMMAND_LENGTH;
+	
+	/**
+	 * The simulated µController.
+	 */
+	protected final LoopbackListener listener;
+	
+	/**
+	 * The command, that is sent.
+	 */
+	private AbstractCommand command;
+	
+	/**
+	 * Default Constructor
+	 * @param name Name of the command
+	 * @param response The response of the simulated µController.
+	 * @param payload The payload of the response or null.
+	 */
+	protected AccessoryCommandBenchmark(String name, ResponseMessage response, byte[] payload) {
+		super("accessory command " + name);
+		listener = new LoopbackListener(response, payload);
+	}
+	
+	/**
+	 * Sets the command, that is sent.
+	 * @param command The command
+	 */
+	protected void setCommand(AbstractCommand command) {
+		this.command = command;
+	}
+	
+	/**
+	 * Changes the value of the command before it is sent.
+	 * Does nothing by default.
+	 * @param value A value between -1 and 1.
+	 */
+	protected void update(float value) {
+		// Nothing to update.
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int run(int operations) {
+		for(int i = 0; i < operations; i++) {
+			update((i % 201 - 100) / 100f);
+			command.run();
+		}
+		if(listener.problems > 0) {
+			throw new IllegalStateException(listener.problems + " commands failed.");
+		}
+		return listener.output.count;
+	}
+	
+	/**
+	 * Creates the benchmarks for the actuator commands and the {@link GetBatteryStateCommand}.
+	 * @return The benchmarks
+	 */
+	public static List<AbstractBenchmark> createAll() {
+		List<AbstractBenchmark> benchmarks = new ArrayList<AbstractBenchmark>();
+		
+		benchmarks.add(new AccessoryCommandBenchmark("AdjustSpeedCommand", ResponseMessage.REQUEST_OK, null) {
+			private final AdjustSpeedCommand speed = new AdjustSpeedCommand(listener, 0);
+			{
+				setCommand(speed);
+			}
+			
+			@Override
+			protected void update(float value) {
+				speed.setSpeed(value);
+			}
+		});
+		
+		benchmarks.add(new AccessoryCommandBenchmark("TurnCarCommand", ResponseMessage.REQUEST_OK, null) {
+			private final TurnCarCommand turn = new TurnCarCommand(listener, 0);
+			{
+				setCommand(turn);
+			}
+			
+			@Override
+			protected void update(float value) {
+				turn.setRotation(value);
+			}
+		});
+		
+		benchmarks.add(new AccessoryCommandBenchmark("RotateCameraCommand", ResponseMessage.REQUEST_OK, null) {
+			private final RotateCameraCommand camera = new RotateCameraCommand(listener, 0, 0);
+			{
+				setCommand(camera);
+			}
+			
+			@Override
+			protected void update(float value) {
+				camera.setPosition(value, value);
+			}
+		});
+		
+		byte[] chargingLevel = { 0x40, 0x00 };
+		AccessoryCommandBenchmark battery =
+				new AccessoryCommandBenchmark("GetBatteryStateCommand", ResponseMessage.BATTERY_STATE, chargingLevel);
+		battery.setCommand(new GetBatteryStateCommand(battery.listener));
+		benchmarks.add(battery);
+		
+		return benchmarks;
+	}
+	
+	/**
+	 * The simulated µController: A {@link ICommandListener}, that answers every command
+	 * with the same response and counts the callbacks, that report a problem.
+	 */
+	protected static class LoopbackListener implements ICommandListener {
+		
+		/**
+		 * Counts the sent bytes.
+		 */
+		private final CountingOutputStream output = new CountingOutputStream();
+		
+		/**
+		 * Reads the responses.
+		 */
+		private final ResponseFrameReader reader;
+		
+		/**
+		 * @see ICommandListener#getCommandFrame()
+		 */
+		private final MessageFrame commandFrame = new MessageFrame();
+		
+		/**
+		 * @see ICommandListener#getResponseFrame()
+		 */
+		private final MessageFrame responseFrame = new MessageFrame();
+		
+		/**
+		 * The features of the car. Every actuator supports -1 to 1.
+		 */
+		private final CarFeatures features = new CarFeatures(1, 1, 1, 1, true, true, true);
+		
+		/**
+		 * Number of problems and errors.
+		 */
+		private int problems = 0;
+		
+		/**
+		 * Default Constructor
+		 * @param response The response to every command.
+		 * @param payload The payload of the response or null.
+		 */
+		public LoopbackListener(ResponseMessage response, byte[] payload) {
+			byte[] frame = new byte[LEN];
+			frame[0] = response.messageId;
+			if(payload != null) {
+				System.arraycopy(payload, 0, frame, 1, payload.length);
+			}
+			frame[LEN-1] = CRC8.calc(frame, LEN-1);
+			reader = new ResponseFrameReader(new RepeatingInputStream(frame));
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public InputStream getInputStream() {
+			return null;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public OutputStream getOutputStream() {
+			return output;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public ResponseFrameReader getResponseReader() {
+			return reader;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public MessageFrame getCommandFrame() {
+			return commandFrame;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public MessageFrame getResponseFrame() {
+			return responseFrame;
+		}
+		
+		/**
+		 * Not needed.
+		 */
+		@Override
+		public void setCarFeatures(CarFeatures features) { /* Not needed. */ }
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public CarFeatures getCarFeatures() {
+			return features;
+		}
+		
+		/**
+		 * Not needed.
+		 */
+		@Override
+		public void postCommand(AbstractCommand command) { /* Not needed. */ }
+		
+		/**
+		 * Not needed.
+		 */
+		@Override
+		public void postToCommunicationThread(Runnable runnable) { /* Not needed. */ }
+		
+		/**
+		 * Not needed.
+		 */
+		@Override
+		public void setProtocolVersion(short version) { /* Not needed. */ }
+		
+		/**
+		 * Every command waits for its response.
+		 * @return null
+		 */
+		@Override
+		public CommandPipeline getCommandPipeline() {
+			return null;
+		}
+		
+		/**
+		 * Counts a problem.
+		 */
+		@Override
+		public void protocolVersionNotMatch(short hostVersion, short microControllerVersion) {
+			problems++;
+		}
+		
+		/**
+		 * Not needed.
+		 */
+		@Override
+		public void connectionInitialized() { /* Not needed. */ }
+		
+		/**
+		 * Not needed.
+		 */
+		@Override
+		public void batteryStateReceived(float chargingLevel) { /* Not needed. */ }
+		
+		/**
+		 * Counts a problem.
+		 */
+		@Override
+		public void batteryNearEmpty() {
+			problems++;
+		}
+		
+		/**
+		 * Counts a problem.
+		 */
+		@Override
+		public void errorReceived(String message) {
+			problems++;
+		}
+		
+		/**
+		 * Counts a problem.
+		 */
+		@Override
+		public void connectionProblem(AccessoryConnectionProblemException ex) {
+			problems++;
+		}
+	}
+	
+	/**
+	 * A {@link OutputStream}, that only counts the written bytes.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		
+		/**
+		 * Number of written bytes.
+		 */
+		private int count = 0;
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(int oneByte) {
+			count++;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(byte[] buffer, int offset, int length) {
+			count += length;
+		}
+	}
+	
+	/**
+	 * A {@link InputStream}, that endlessly repeats a frame.
+	 */
+	private static class RepeatingInputStream extends InputStream {
+		
+		/**
+		 * The repeated frame.
+		 */
+		private final byte[] frame;
+		
+		/**
+		 * Position of the next byte in the {@link #frame}.
+		 */
+		private int position = 0;
+		
+		/**
+		 * Default Constructor
+		 * @param frame The repeated frame.
+		 */
+		public RepeatingInputStream(byte[] frame) {
+			this.frame = frame;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read() {
+			int result = frame[position] & 0xFF;
+			position = (position + 1) % frame.length;
+			return result;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] buffer, int offset, int length) {
+			int len = Math.min(length, frame.length - position);
+			System.arraycopy(frame, position, buffer, offset, len);
+			position = (position + len) % frame.length;
+			return len;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the benchmarks of the control path from the joystick to the motor
+ * and of the video path on a plain JVM and prints operations per second and allocated bytes per operation.
+ * 
+ * Usage: {@code BenchmarkRunner [filter]}. Only benchmarks, whose name contains
+ * the filter, are measured.
+ * 
+ * Every benchmark is warmed up for {@link #WARM_UP_TIME} and then measured
+ * in {@link #MEASUREMENTS} rounds of about {@link #MEASUREMENT_TIME}.
+ * The allocations are counted with {@code com.sun.management.ThreadMXBean}.
+ * If the JVM doesn't provide it, "n/a" is printed.
+ * 
+ * @author sven
+ *
+ */
+public final class BenchmarkRunner {
+	
+	/**
+	 * Time in milliseconds to warm up a benchmark.
+	 */
+	private static final long WARM_UP_TIME = 1000;
+	
+	/**
+	 * Time in milliseconds of one measurement.
+	 */
+	private static final long MEASUREMENT_TIME = 500;
+	
+	/**
+	 * Number of measurements per benchmark.
+	 */
+	private static final int MEASUREMENTS = 5;
+	
+	/**
+	 * Consumes the results of the benchmarks, so the JIT can't omit them.
+	 */
+	private static volatile int sink;
+	
+	/**
+	 * No instances.
+	 */
+	private BenchmarkRunner() { }
+	
+	/**
+	 * Creates all benchmarks.
+	 * @return The benchmarks
+	 * @throws Exception Creating a benchmark failed.
+	 */
+	private static List<AbstractBenchmark> createBenchmarks() throws Exception {
+		List<AbstractBenchmark> benchmarks = new ArrayList<AbstractBenchmark>();
+		benchmarks.addAll(MessageCodecBenchmark.createAll());
+		benchmarks.add(new LogicDispatchBenchmark());
+		benchmarks.addAll(AccessoryCommandBenchmark.createAll());
+		benchmarks.add(new CRC8Benchmark(16));
+		benchmarks.add(new CRC8Benchmark(4096));
+		benchmarks.add(new RingBufferBenchmark(1400));
+		benchmarks.add(new RingBufferBenchmark(8192));
+		benchmarks.add(new DepacketizerBenchmark(4));
+		benchmarks.add(new DepacketizerBenchmark(32));
+		benchmarks.addAll(RtspParserBenchmark.createAll());
+		return benchmarks;
+	}
+	
+	/**
+	 * Measures all benchmarks.
+	 * @param args Optional filter for the names of the benchmarks.
+	 * @throws Exception A benchmark failed.
+	 */
+	public static void main(String[] args) throws Exception {
+		String filter = (args.length > 0) ? args[0] : "";
+		for(AbstractBenchmark benchmark : createBenchmarks()) {
+			if(benchmark.getName().contains(filter)) {
+				measure(benchmark);
+			}
+		}
+	}
+	
+	/**
+	 * Warms up and measures the {@code benchmark} and prints the result.
+	 * @param benchmark The benchmark
+	 * @throws Exception The benchmark failed.
+	 */
+	private static void measure(AbstractBenchmark benchmark) throws Exception {
+		// Warm up and find a batch size, that runs about 10 ms.
+		int batch = 1;
+		long start = System.nanoTime();
+		while(System.nanoTime() - start < WARM_UP_TIME * 1000000L) {
+			long batchStart = System.nanoTime();
+			sink += benchmark.run(batch);
+			if(System.nanoTime() - batchStart < 10000000L && batch < Integer.MAX_VALUE / 2) {
+				batch *= 2;
+			}
+		}
+		
+		double opsPerSecond = 0;
+		double bytesPerOperation = Double.MAX_VALUE;
+		for(int i = 0; i < MEASUREMENTS; i++) {
+			long operations = 0;
+			long allocatedBefore = allocatedBytes();
+			start = System.nanoTime();
+			long time;
+			do {
+				sink += benchmark.run(batch);
+				operations += batch;
+				time = System.nanoTime() - start;
+			} while(time < MEASUREMENT_TIME * 1000000L);
+			long allocated = allocatedBytes() - allocatedBefore;
+			
+			opsPerSecond += operations * 1e9 / time / MEASUREMENTS;
+			bytesPerOperation = Math.min(bytesPerOperation, (double) allocated / operations);
+		}
+		
+		String allocation = (allocatedBytes() < 0) ? "n/a"
+												   : String.format("%.1f", Double.valueOf(bytesPerOperation));
+		System.out.println(String.format("%-50s %14.0f ops/s %10s B/op",
+										 benchmark.getName(), Double.valueOf(opsPerSecond), allocation));
+	}
+	
+	/**
+	 * Returns the number of bytes, that the current thread has allocated.
+	 * @return Number of bytes or -1, if the JVM can't count them.
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
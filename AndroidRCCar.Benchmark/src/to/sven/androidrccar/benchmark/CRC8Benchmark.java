@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.benchmark;
+
+import java.util.Random;
+
+import to.sven.androidrccar.common.utils.CRC8;
+
+/**
+ * Calculates the {@link CRC8} of one buffer per operation.
+ * 
+ * @author sven
+ *
+ */
+public class CRC8Benchmark extends AbstractBenchmark {
+	
+	/**
+	 * The buffer with random content.
+	 */
+	private final byte[] data;
+	
+	/**
+	 * Default Constructor
+	 * @param length Length of the buffer in bytes.
+	 */
+	public CRC8Benchmark(int length) {
+		super("crc8 calc " + length + " bytes");
+		data = new byte[length];
+		new Random(42).nextBytes(data);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int run(int operations) {
+		int sum = 0;
+		for(int i = 0; i < operations; i++) {
+			sum += CRC8.calc(data, data.length);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.benchmark;
+
+import java.util.Random;
+
+import com.orangelabs.rcs.core.ims.protocol.rtp.codec.Codec;
+import com.orangelabs.rcs.core.ims.protocol.rtp.codec.video.h263.JavaDepacketizer;
+import com.orangelabs.rcs.core.ims.protocol.rtp.util.Buffer;
+
+/**
+ * Reassembles one synthetic H.263 frame of {@link #FRAME_SIZE} bytes per operation
+ * with the {@link JavaDepacketizer} of the video viewer.
+ *
+ * The frame is split into RFC 4629 packets, that all begin at a (GOB) start code,
+ * so the P bit is set. The reassembled frame is verified against the original.
+ *
+ * The renderer is not covered: the native decoders take a whole array without
+ * offset and length, so the frame is still copied once into an array of its
+ * exact size before it is decoded.
+ *
+ * @author sven
+ *
+ */
+public class DepacketizerBenchmark extends AbstractBenchmark {
+
+	/**
+	 * Size of a frame in bytes, just below the limit of the depacketizer.
+	 */
+	private static final int FRAME_SIZE = 8000;
+
+	/**
+	 * RTP timestamp increment per frame (90 kHz clock, 30 fps).
+	 */
+	private static final int TIMESTAMP_INCREMENT = 3000;
+
+	/**
+	 * The depacketizer.
+	 */
+	private final JavaDepacketizer depacketizer = new JavaDepacketizer();
+
+	/**
+	 * The original frame, every packet starts with two zero bytes.
+	 */
+	private final byte[] frame = new byte[FRAME_SIZE];
+
+	/**
+	 * The payloads of the packets (payload header and frame data without start code zeros).
+	 */
+	private final byte[][] packets;
+
+	/**
+	 * The buffer, the packets are passed in.
+	 */
+	private final Buffer input = new Buffer();
+
+	/**
+	 * The buffer, the frame is passed out.
+	 */
+	private final Buffer output = new Buffer();
+
+	/**
+	 * RTP timestamp of the next frame.
+	 */
+	private long timestamp = 0;
+
+	/**
+	 * Default Constructor
+	 * @param packetCount Number of packets per frame.
+	 */
+	public DepacketizerBenchmark(int packetCount) {
+		super("h263 depacketize " + packetCount + " packets per frame");
+		new Random(42).nextBytes(frame);
+
+		int packetSize = FRAME_SIZE / packetCount;
+		packets = new byte[packetCount][];
+		for(int i = 0; i < packetCount; i++) {
+			int start = i * packetSize;
+			int end = (i == packetCount - 1) ? FRAME_SIZE : start + packetSize;
+			frame[start] = 0;
+			frame[start + 1] = 0;
+
+			byte[] packet = new byte[end - start];
+			packet[0] = 0x04; // P bit
+			packet[1] = 0;
+			System.arraycopy(frame, start + 2, packet, 2, end - start - 2);
+			packets[i] = packet;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int run(int operations) {
+		int sum = 0;
+		for(int i = 0; i < operations; i++) {
+			timestamp += TIMESTAMP_INCREMENT;
+			int result = Codec.OUTPUT_BUFFER_NOT_FILLED;
+			for(int j = 0; j < packets.length; j++) {
+				input.setData(packets[j]);
+				input.setOffset(0);
+				input.setLength(packets[j].length);
+				input.setTimeStamp(timestamp);
+				input.setRTPMarker(j == packets.length - 1);
+				result = depacketizer.process(input, output);
+			}
+			verify(result);
+			sum += output.getLength();
+		}
+		return sum;
+	}
+
+	/**
+	 * Verifies the reassembled frame.
+	 * @param result Result of the last call of {@link JavaDepacketizer#process(Buffer, Buffer)}
+	 */
+	private void verify(int result) {
+		if(result != Codec.BUFFER_PROCESSED_OK || output.getLength() != FRAME_SIZE) {
+			throw new IllegalStateException("Frame not reassembled");
+		}
+		byte[] data = (byte[]) output.getData();
+		int offset = output.getOffset();
+		if(data[offset + FRAME_SIZE / 2] != frame[FRAME_SIZE / 2]
+				|| data[offset + FRAME_SIZE - 1] != frame[FRAME_SIZE - 1]) {
+			throw new IllegalStateException("Frame corrupted");
+		}
+	}
+}
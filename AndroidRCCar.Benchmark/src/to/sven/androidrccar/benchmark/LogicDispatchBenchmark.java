@@ -0,0 +1,339 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.benchmark;
+
+import java.net.Socket;
+
+import to.sven.androidrccar.common.communication.contract.IRemoteCommunication;
+import to.sven.androidrccar.common.communication.contract.IRemoteCommunicationListener;
+import to.sven.androidrccar.common.communication.model.AdjustSpeedMessage;
+import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
+import to.sven.androidrccar.common.communication.model.RotateCameraMessage;
+import to.sven.androidrccar.common.communication.model.TurnCarMessage;
+import to.sven.androidrccar.common.exception.ConnectionProblemException;
+import to.sven.androidrccar.common.framework.IDependencyContainer;
+import to.sven.androidrccar.common.framework.IFactory;
+import to.sven.androidrccar.common.logic.contract.ILogicListener;
+import to.sven.androidrccar.common.logic.handler.ILogicHandlerFacade;
+import to.sven.androidrccar.common.logic.handler.IMessageHandler;
+import to.sven.androidrccar.common.logic.impl.AbstractLogic;
+import to.sven.androidrccar.common.service.contract.ILocationService;
+import android.content.Context;
+import android.os.Handler;
+
+/**
+ * Dispatches one received control message per operation with {@link AbstractLogic#messageReceived}
+ * to its {@link IMessageHandler}. The stream alternates between
+ * {@link TurnCarMessage}, {@link AdjustSpeedMessage} and {@link RotateCameraMessage}.
+ * 
+ * @author sven
+ *
+ */
+public class LogicDispatchBenchmark extends AbstractBenchmark {
+	
+	/**
+	 * The stream of control messages.
+	 */
+	private final Message[] stream = { new TurnCarMessage(0.5f),
+									   new AdjustSpeedMessage(0.25f),
+									   new RotateCameraMessage(10, 5) };
+	
+	/**
+	 * The logic to measure.
+	 */
+	private final BenchmarkLogic logic = new BenchmarkLogic(new BenchmarkContainer());
+	
+	/**
+	 * Default Constructor
+	 */
+	public LogicDispatchBenchmark() {
+		super("logic dispatch control messages");
+		logic.registerMessageHandler(TurnCarHandler.class);
+		logic.registerMessageHandler(AdjustSpeedHandler.class);
+		logic.registerMessageHandler(RotateCameraHandler.class);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int run(int operations) {
+		for(int i = 0; i < operations; i++) {
+			logic.messageReceived(stream[i % stream.length]);
+		}
+		return logic.handled;
+	}
+	
+	/**
+	 * The logic without any own behavior.
+	 */
+	private static class BenchmarkLogic extends AbstractLogic<BenchmarkContainer, ILogicListener> {
+		
+		/**
+		 * Number of handled messages.
+		 */
+		private int handled = 0;
+		
+		/**
+		 * Default Constructor
+		 * @param container The {@link BenchmarkContainer}
+		 */
+		public BenchmarkLogic(BenchmarkContainer container) {
+			super(container);
+		}
+	}
+	
+	/**
+	 * Handles the {@link TurnCarMessage}s.
+	 */
+	private static class TurnCarHandler implements IMessageHandler<TurnCarMessage> {
+		
+		/**
+		 * The logic, that counts the handled messages.
+		 */
+		private final BenchmarkLogic logic;
+		
+		/**
+		 * Default Constructor
+		 * @param logic The logic, that counts the handled messages.
+		 */
+		public TurnCarHandler(BenchmarkLogic logic) {
+			this.logic = logic;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Class<TurnCarMessage> getMessageType() {
+			return TurnCarMessage.class;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void handleMessage(TurnCarMessage message) {
+			logic.handled++;
+		}
+	}
+	
+	/**
+	 * Handles the {@link AdjustSpeedMessage}s.
+	 */
+	private static class AdjustSpeedHandler implements IMessageHandler<AdjustSpeedMessage> {
+		
+		/**
+		 * The logic, that counts the handled messages.
+		 */
+		private final BenchmarkLogic logic;
+		
+		/**
+		 * Default Constructor
+		 * @param logic The logic, that counts the handled messages.
+		 */
+		public AdjustSpeedHandler(BenchmarkLogic logic) {
+			this.logic = logic;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Class<AdjustSpeedMessage> getMessageType() {
+			return AdjustSpeedMessage.class;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void handleMessage(AdjustSpeedMessage message) {
+			logic.handled++;
+		}
+	}
+	
+	/**
+	 * Handles the {@link RotateCameraMessage}s.
+	 */
+	private static class RotateCameraHandler implements IMessageHandler<RotateCameraMessage> {
+		
+		/**
+		 * The logic, that counts the handled messages.
+		 */
+		private final BenchmarkLogic logic;
+		
+		/**
+		 * Default Constructor
+		 * @param logic The logic, that counts the handled messages.
+		 */
+		public RotateCameraHandler(BenchmarkLogic logic) {
+			this.logic = logic;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Class<RotateCameraMessage> getMessageType() {
+			return RotateCameraMessage.class;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void handleMessage(RotateCameraMessage message) {
+			logic.handled++;
+		}
+	}
+	
+	/**
+	 * Creates the handlers with the logic as only constructor parameter (see {@link IMessageHandler}).
+	 * The {@link IRemoteCommunication} drops every message.
+	 */
+	private static class BenchmarkFactory implements IFactory {
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public <THandler extends IMessageHandler<?>> THandler createMessageHandler(Class<THandler> type,
+																				  ILogicHandlerFacade<?> logic) {
+			try {
+				return type.getConstructor(BenchmarkLogic.class).newInstance(logic);
+			} catch (Exception e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public IRemoteCommunication createRemoteCommuncation(IDependencyContainer<?, ?> dependencyContainer,
+															 IRemoteCommunicationListener cpListener) {
+			return new IRemoteCommunication() {
+				@Override
+				public void startMessageListener() { /* Nothing to receive. */ }
+				
+				@Override
+				public void close() { /* Nothing to close. */ }
+				
+				@Override
+				public void sendMessage(Message message) { /* Dropped. */ }
+				
+				@Override
+				public void setMessageEncoding(MessageEncoding encoding) { /* Not needed. */ }
+			};
+		}
+		
+		/**
+		 * Not needed.
+		 * @return null
+		 */
+		@Override
+		public ILocationService createLocationService(Context context) {
+			return null;
+		}
+	}
+	
+	/**
+	 * The dependencies of the {@link BenchmarkLogic}.
+	 */
+	private static class BenchmarkContainer implements IDependencyContainer<IFactory, ILogicListener> {
+		
+		/**
+		 * @see #getFactory()
+		 */
+		private final IFactory factory = new BenchmarkFactory();
+		
+		/**
+		 * @see #getLogicListener()
+		 */
+		private final ILogicListener listener = new ILogicListener() {
+			@Override
+			public void connectionLost(ConnectionProblemException ex) {
+				throw new IllegalStateException(ex);
+			}
+		};
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Socket getSocket() {
+			return null;
+		}
+		
+		/**
+		 * Not needed.
+		 */
+		@Override
+		public void setSocket(Socket socket) { /* Not needed. */ }
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public ILogicListener getLogicListener() {
+			return listener;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public IFactory getFactory() {
+			return factory;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Handler getHandler() {
+			return null;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public ILocationService getLocationService() {
+			return null;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Context getContext() {
+			return null;
+		}
+		
+		/**
+		 * Not needed.
+		 */
+		@Override
+		public void setLocationService(ILocationService locationService) { /* Not needed. */ }
+	}
+}
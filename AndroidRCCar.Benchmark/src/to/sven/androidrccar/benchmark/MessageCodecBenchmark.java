@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import to.sven.androidrccar.common.communication.contract.IMessageCodec;
+import to.sven.androidrccar.common.communication.impl.BinaryMessageCodec;
+import to.sven.androidrccar.common.communication.impl.JsonMessageCodec;
+import to.sven.androidrccar.common.communication.model.AdjustSpeedMessage;
+import to.sven.androidrccar.common.communication.model.AuthenticationFailedMessage;
+import to.sven.androidrccar.common.communication.model.AuthenticationMessage;
+import to.sven.androidrccar.common.communication.model.BatteryPowerMessage;
+import to.sven.androidrccar.common.communication.model.CameraConnectionParameterMessage;
+import to.sven.androidrccar.common.communication.model.CyclicUpdateFeatureType;
+import to.sven.androidrccar.common.communication.model.FeatureMessage;
+import to.sven.androidrccar.common.communication.model.GreetingMessage;
+import to.sven.androidrccar.common.communication.model.LocationMessage;
+import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
+import to.sven.androidrccar.common.communication.model.RequestCameraMessage;
+import to.sven.androidrccar.common.communication.model.RotateCameraMessage;
+import to.sven.androidrccar.common.communication.model.SetUpCyclicUpdateMessage;
+import to.sven.androidrccar.common.communication.model.TurnCarMessage;
+import android.location.Location;
+
+/**
+ * Encodes or decodes one {@link Message} per operation with a {@link IMessageCodec}.
+ * {@link #createAll()} creates the benchmarks for every message type
+ * of {@code common.communication.model} in every encoding, that supports it.
+ * 
+ * @author sven
+ *
+ */
+public abstract class MessageCodecBenchmark extends AbstractBenchmark {
+	
+	/**
+	 * The codec to measure.
+	 */
+	protected final IMessageCodec codec;
+	
+	/**
+	 * The message to encode.
+	 */
+	protected final Message message;
+	
+	/**
+	 * Default Constructor
+	 * @param operation Name of the operation ("encode" or "decode").
+	 * @param codec The codec to measure.
+	 * @param message The message to encode or decode.
+	 */
+	protected MessageCodecBenchmark(String operation, IMessageCodec codec, Message message) {
+		super(codec.getEncoding() + " " + operation + " " + message.getClass().getSimpleName());
+		this.codec = codec;
+		this.message = message;
+	}
+	
+	/**
+	 * Creates one message of every type.
+	 * @return The messages
+	 */
+	private static List<Message> createMessages() {
+		Location location = new Location("gps");
+		location.setLatitude(52.520008);
+		location.setLongitude(13.404954);
+		location.setAltitude(34);
+		location.setAccuracy(5);
+		location.setBearing(90);
+		location.setSpeed(3.5f);
+		
+		List<Message> messages = new ArrayList<Message>();
+		messages.add(new AdjustSpeedMessage(0.75f));
+		messages.add(new TurnCarMessage(-0.5f));
+		messages.add(new RotateCameraMessage(30, -15));
+		messages.add(new BatteryPowerMessage(0.8f));
+		messages.add(new LocationMessage(location, true, true, true));
+		messages.add(new GreetingMessage(1, "8f210a0962f541e1bc5954f7f1279fa98fad0de3", MessageEncoding.binary));
+		messages.add(new AuthenticationMessage("5e6291665974e84bd707c37bb7b4b0d6fc709803", MessageEncoding.binary));
+		messages.add(new AuthenticationFailedMessage("Wrong password."));
+		messages.add(new FeatureMessage(true, 90, 90, 45, 45, true, true, true, true, true, true));
+		messages.add(new RequestCameraMessage(true));
+		messages.add(new CameraConnectionParameterMessage(8554, "rtsp", "/camera"));
+		messages.add(new SetUpCyclicUpdateMessage(CyclicUpdateFeatureType.location, 1000));
+		return messages;
+	}
+	
+	/**
+	 * Creates the encode and decode benchmarks for every message type and every encoding.
+	 * @return The benchmarks
+	 * @throws IOException Encoding a message failed.
+	 */
+	public static List<AbstractBenchmark> createAll() throws IOException {
+		List<AbstractBenchmark> benchmarks = new ArrayList<AbstractBenchmark>();
+		for(Message message : createMessages()) {
+			IMessageCodec[] codecs = { new JsonMessageCodec(), new BinaryMessageCodec() };
+			for(IMessageCodec codec : codecs) {
+				if(codec.canEncode(message)) {
+					benchmarks.add(new Encode(codec, message));
+					benchmarks.add(new Decode(codec, message));
+				}
+			}
+		}
+		return benchmarks;
+	}
+	
+	/**
+	 * Encodes the message into a reused buffer.
+	 */
+	private static class Encode extends MessageCodecBenchmark {
+		
+		/**
+		 * Receives the encoded message.
+		 */
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		
+		/**
+		 * Default Constructor
+		 * @param codec The codec to measure.
+		 * @param message The message to encode.
+		 */
+		public Encode(IMessageCodec codec, Message message) {
+			super("encode", codec, message);
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int run(int operations) throws IOException {
+			int size = 0;
+			for(int i = 0; i < operations; i++) {
+				out.reset();
+				codec.encode(message, out);
+				size += out.size();
+			}
+			return size;
+		}
+	}
+	
+	/**
+	 * Decodes the encoded message from a reused stream.
+	 */
+	private static class Decode extends MessageCodecBenchmark {
+		
+		/**
+		 * Contains the encoded message.
+		 */
+		private final ByteArrayInputStream in;
+		
+		/**
+		 * Default Constructor
+		 * @param codec The codec to measure.
+		 * @param message The message to decode.
+		 * @throws IOException Encoding the message failed.
+		 */
+		public Decode(IMessageCodec codec, Message message) throws IOException {
+			super("decode", codec, message);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			codec.encode(message, out);
+			in = new ByteArrayInputStream(out.toByteArray());
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int run(int operations) throws IOException {
+			int hash = 0;
+			for(int i = 0; i < operations; i++) {
+				in.reset();
+				hash += codec.decode(in.read(), in).typeId();
+			}
+			return hash;
+		}
+	}
+}
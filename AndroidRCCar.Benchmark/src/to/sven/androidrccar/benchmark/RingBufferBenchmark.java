@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.benchmark;
+
+import java.io.IOException;
+
+import de.kp.net.rtp.packetizer.ByteRingBuffer;
+
+/**
+ * Transfers one chunk of encoder output per operation through a {@link ByteRingBuffer}
+ * from a producer thread to the measuring thread.
+ * 
+ * Every byte carries its position in the stream, so the consumer verifies
+ * that nothing is lost or corrupted while both threads run concurrently.
+ * 
+ * @author sven
+ *
+ */
+public class RingBufferBenchmark extends AbstractBenchmark {
+	
+	/**
+	 * Capacity of the ring buffer in bytes, as used by the H264 packetizer.
+	 */
+	private static final int CAPACITY = 512 * 1024;
+	
+	/**
+	 * The ring buffer.
+	 */
+	private final ByteRingBuffer ringBuffer = new ByteRingBuffer(CAPACITY);
+	
+	/**
+	 * The buffer the consumer reads into.
+	 */
+	private final byte[] chunk;
+	
+	/**
+	 * Position of the next byte, that the consumer expects.
+	 */
+	private long position = 0;
+	
+	/**
+	 * Default Constructor
+	 * @param chunkSize Number of bytes, that are written and read at once.
+	 */
+	public RingBufferBenchmark(final int chunkSize) {
+		super("ring buffer transfer " + chunkSize + " bytes");
+		chunk = new byte[chunkSize];
+		
+		Thread producer = new Thread("RingBufferBenchmark producer") {
+			@Override
+			public void run() {
+				byte[] data = new byte[chunkSize];
+				long written = 0;
+				try {
+					while(true) {
+						for(int i = 0; i < chunkSize; i++) {
+							data[i] = (byte) (written + i);
+						}
+						ringBuffer.write(data, 0, chunkSize);
+						written += chunkSize;
+					}
+				} catch (IOException e) {
+					// The buffer is never closed.
+				}
+			}
+		};
+		producer.setDaemon(true);
+		producer.start();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int run(int operations) throws Exception {
+		int sum = 0;
+		for(int i = 0; i < operations; i++) {
+			int remaining = chunk.length;
+			while(remaining > 0) {
+				int count = ringBuffer.read(chunk, 0, remaining);
+				for(int j = 0; j < count; j++) {
+					if(chunk[j] != (byte) (position + j)) {
+						throw new IllegalStateException("Corrupted byte at position " + (position + j));
+					}
+				}
+				position += count;
+				remaining -= count;
+				sum += count;
+			}
+		}
+		return sum;
+	}
+}
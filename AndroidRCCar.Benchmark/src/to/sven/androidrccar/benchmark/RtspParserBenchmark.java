@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.kp.net.rtsp.server.request.RtspRequest;
+import de.kp.net.rtsp.server.request.RtspRequestParser;
+import de.kp.net.rtsp.server.response.Parser;
+
+/**
+ * Parses one SETUP request of a video client per operation, as the RTSP server
+ * of the camera does, and reads the values the server needs to respond
+ * (request type, CSeq, session, transport protocol, session type and client port).
+ *
+ * {@link #createAll()} creates the benchmark for the streaming
+ * {@link RtspRequestParser} and for the former {@link Parser}.
+ *
+ * @author sven
+ *
+ */
+public abstract class RtspParserBenchmark extends AbstractBenchmark {
+
+	/**
+	 * The request to parse.
+	 */
+	protected static final String REQUEST =
+			"SETUP rtsp://192.168.1.2:8080/video/trackID=1 RTSP/1.0\r\n"
+			+ "CSeq: 4\r\n"
+			+ "Transport: RTP/AVP;unicast;client_port=4588-4589\r\n"
+			+ "Session: 5B2E0C6A9D4F1837\r\n"
+			+ "User-Agent: LibVLC/2.0.3 (LIVE555 Streaming Media v2011.12.23)\r\n"
+			+ "\r\n";
+
+	/**
+	 * Default Constructor
+	 * @param parser Name of the parser.
+	 */
+	protected RtspParserBenchmark(String parser) {
+		super("rtsp parse SETUP " + parser);
+	}
+
+	/**
+	 * Creates the benchmarks for both parsers.
+	 * @return The benchmarks
+	 * @throws IOException Preparing the stream failed.
+	 */
+	public static List<AbstractBenchmark> createAll() throws IOException {
+		List<AbstractBenchmark> benchmarks = new ArrayList<AbstractBenchmark>();
+		benchmarks.add(new Streaming());
+		benchmarks.add(new Legacy());
+		return benchmarks;
+	}
+
+	/**
+	 * Verifies the client port, that every parser reads.
+	 * @param clientPort The parsed client port.
+	 */
+	protected static void verify(int clientPort) {
+		if(clientPort != 4588) {
+			throw new IllegalStateException("Wrong client port " + clientPort);
+		}
+	}
+
+	/**
+	 * Parses the request from a reused buffer with the {@link RtspRequestParser}.
+	 */
+	private static class Streaming extends RtspParserBenchmark {
+
+		/**
+		 * The parser.
+		 */
+		private final RtspRequestParser parser = new RtspRequestParser();
+
+		/**
+		 * Contains the request.
+		 */
+		private final ByteBuffer buffer;
+
+		/**
+		 * Default Constructor
+		 */
+		public Streaming() {
+			super("streaming parser");
+			byte[] data = new byte[REQUEST.length()];
+			for(int i = 0; i < data.length; i++) {
+				data[i] = (byte) REQUEST.charAt(i);
+			}
+			buffer = ByteBuffer.wrap(data);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int run(int operations) throws Exception {
+			int hash = 0;
+			for(int i = 0; i < operations; i++) {
+				buffer.rewind();
+				RtspRequest request = parser.parse(buffer);
+				int clientPort = request.getClientPort();
+				verify(clientPort);
+				hash += request.getRequestType() + request.getCseq() + clientPort
+						+ request.getSession().length()
+						+ request.getTransportProtocol().length()
+						+ request.getSessionType().length();
+			}
+			return hash;
+		}
+	}
+
+	/**
+	 * Reads the request from a reused stream with {@link Parser#readRequest(BufferedReader)}
+	 * and parses the values with the getters of the {@link Parser}.
+	 */
+	@SuppressWarnings("deprecation")
+	private static class Legacy extends RtspParserBenchmark {
+
+		/**
+		 * Contains the request, as the reader of a connection.
+		 */
+		private final BufferedReader reader = new BufferedReader(new StringReader(REQUEST));
+
+		/**
+		 * Default Constructor
+		 * @throws IOException Marking the stream failed.
+		 */
+		public Legacy() throws IOException {
+			super("former parser");
+			reader.mark(REQUEST.length() + 1);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int run(int operations) throws Exception {
+			int hash = 0;
+			for(int i = 0; i < operations; i++) {
+				reader.reset();
+				String request = Parser.readRequest(reader);
+				int clientPort = Parser.getClientPort(request);
+				verify(clientPort);
+				hash += Parser.getRequestType(request) + Parser.getCseq(request) + clientPort
+						+ Parser.getSession(request).length()
+						+ Parser.getTransportProtocol(request).length()
+						+ Parser.getSessionType(request).length();
+			}
+			return hash;
+		}
+	}
+}
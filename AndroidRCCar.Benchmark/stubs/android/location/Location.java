@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package android.location;
+
+/**
+ * Stub of the Android {@code Location} for running the benchmarks on a plain JVM.
+ * Like the original, a setter of an optional value (altitude, accuracy, bearing, speed)
+ * also marks the value as present.
+ * 
+ * @author sven
+ *
+ */
+public class Location {
+	
+	/**
+	 * The name of the provider that generated this fix.
+	 */
+	private final String provider;
+	
+	/**
+	 * Latitude in degrees.
+	 */
+	private double latitude;
+	
+	/**
+	 * Longitude in degrees.
+	 */
+	private double longitude;
+	
+	/**
+	 * Altitude in meters.
+	 */
+	private double altitude;
+	
+	/**
+	 * Accuracy in meters.
+	 */
+	private float accuracy;
+	
+	/**
+	 * Direction of travel in degrees.
+	 */
+	private float bearing;
+	
+	/**
+	 * Speed in meters per second.
+	 */
+	private float speed;
+	
+	/**
+	 * Is {@link #altitude} set?
+	 */
+	private boolean hasAltitude;
+	
+	/**
+	 * Is {@link #accuracy} set?
+	 */
+	private boolean hasAccuracy;
+	
+	/**
+	 * Is {@link #bearing} set?
+	 */
+	private boolean hasBearing;
+	
+	/**
+	 * Is {@link #speed} set?
+	 */
+	private boolean hasSpeed;
+	
+	/**
+	 * Constructs a new location without any values.
+	 * @param provider The name of the provider that generated this fix.
+	 */
+	public Location(String provider) {
+		this.provider = provider;
+	}
+	
+	/**
+	 * @return {@link #provider}
+	 */
+	public String getProvider() {
+		return provider;
+	}
+	
+	/**
+	 * @return {@link #latitude}
+	 */
+	public double getLatitude() {
+		return latitude;
+	}
+	
+	/**
+	 * @param latitude {@link #latitude}
+	 */
+	public void setLatitude(double latitude) {
+		this.latitude = latitude;
+	}
+	
+	/**
+	 * @return {@link #longitude}
+	 */
+	public double getLongitude() {
+		return longitude;
+	}
+	
+	/**
+	 * @param longitude {@link #longitude}
+	 */
+	public void setLongitude(double longitude) {
+		this.longitude = longitude;
+	}
+	
+	/**
+	 * @return {@link #hasAltitude}
+	 */
+	public boolean hasAltitude() {
+		return hasAltitude;
+	}
+	
+	/**
+	 * @return {@link #altitude}
+	 */
+	public double getAltitude() {
+		return altitude;
+	}
+	
+	/**
+	 * @param altitude {@link #altitude}
+	 */
+	public void setAltitude(double altitude) {
+		this.altitude = altitude;
+		this.hasAltitude = true;
+	}
+	
+	/**
+	 * @return {@link #hasAccuracy}
+	 */
+	public boolean hasAccuracy() {
+		return hasAccuracy;
+	}
+	
+	/**
+	 * @return {@link #accuracy}
+	 */
+	public float getAccuracy() {
+		return accuracy;
+	}
+	
+	/**
+	 * @param accuracy {@link #accuracy}
+	 */
+	public void setAccuracy(float accuracy) {
+		this.accuracy = accuracy;
+		this.hasAccuracy = true;
+	}
+	
+	/**
+	 * @return {@link #hasBearing}
+	 */
+	public boolean hasBearing() {
+		return hasBearing;
+	}
+	
+	/**
+	 * @return {@link #bearing}
+	 */
+	public float getBearing() {
+		return bearing;
+	}
+	
+	/**
+	 * @param bearing {@link #bearing}
+	 */
+	public void setBearing(float bearing) {
+		this.bearing = bearing;
+		this.hasBearing = true;
+	}
+	
+	/**
+	 * @return {@link #hasSpeed}
+	 */
+	public boolean hasSpeed() {
+		return hasSpeed;
+	}
+	
+	/**
+	 * @return {@link #speed}
+	 */
+	public float getSpeed() {
+		return speed;
+	}
+	
+	/**
+	 * @param speed {@link #speed}
+	 */
+	public void setSpeed(float speed) {
+		this.speed = speed;
+		this.hasSpeed = true;
+	}
+}
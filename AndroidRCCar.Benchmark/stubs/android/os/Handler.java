@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package android.os;
+
+/**
+ * Stub of the Android {@code Handler} for running the benchmarks on a plain JVM.
+ * There is no message queue: Posted {@link Runnable}s run immediately in the calling thread.
+ * 
+ * @author sven
+ *
+ */
+public class Handler {
+	
+	/**
+	 * Runs the {@link Runnable} immediately.
+	 * @param r The {@link Runnable}
+	 * @return Always true
+	 */
+	public final boolean post(Runnable r) {
+		r.run();
+		return true;
+	}
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package android.util;
+
+/**
+ * Stub of the Android {@code Log} for running the benchmarks on a plain JVM.
+ * Warnings and errors are written to {@link System#err}, everything else is dropped,
+ * so logging doesn't distort the measurement.
+ * 
+ * @author sven
+ *
+ */
+public final class Log {
+	
+	/**
+	 * No instances.
+	 */
+	private Log() { }
+	
+	/**
+	 * Drops a debug message.
+	 * @param tag Used to identify the source of a log message.
+	 * @param msg The message
+	 * @return 0
+	 */
+	public static int d(String tag, String msg) {
+		return 0;
+	}
+	
+	/**
+	 * Drops a info message.
+	 * @param tag Used to identify the source of a log message.
+	 * @param msg The message
+	 * @return 0
+	 */
+	public static int i(String tag, String msg) {
+		return 0;
+	}
+	
+	/**
+	 * Writes a warning to {@link System#err}.
+	 * @param tag Used to identify the source of a log message.
+	 * @param msg The message
+	 * @return 0
+	 */
+	public static int w(String tag, String msg) {
+		System.err.println("W/" + tag + ": " + msg);
+		return 0;
+	}
+	
+	/**
+	 * Writes a warning with its cause to {@link System#err}.
+	 * @param tag Used to identify the source of a log message.
+	 * @param msg The message
+	 * @param tr The cause
+	 * @return 0
+	 */
+	public static int w(String tag, String msg, Throwable tr) {
+		System.err.println("W/" + tag + ": " + msg + ": " + tr);
+		return 0;
+	}
+	
+	/**
+	 * Writes a cause as warning to {@link System#err}.
+	 * @param tag Used to identify the source of a log message.
+	 * @param tr The cause
+	 * @return 0
+	 */
+	public static int w(String tag, Throwable tr) {
+		System.err.println("W/" + tag + ": " + tr);
+		return 0;
+	}
+	
+	/**
+	 * Writes a error to {@link System#err}.
+	 * @param tag Used to identify the source of a log message.
+	 * @param msg The message
+	 * @return 0
+	 */
+	public static int e(String tag, String msg) {
+		System.err.println("E/" + tag + ": " + msg);
+		return 0;
+	}
+	
+	/**
+	 * Writes a error with its cause to {@link System#err}.
+	 * @param tag Used to identify the source of a log message.
+	 * @param msg The message
+	 * @param tr The cause
+	 * @return 0
+	 */
+	public static int e(String tag, String msg, Throwable tr) {
+		System.err.println("E/" + tag + ": " + msg);
+		tr.printStackTrace();
+		return 0;
+	}
+}
@@ -28,7 +28,9 @@ import to.sven.androidrccar.common.model.ConnectionParameter;
 import to.sven.androidrccar.common.communication.model.AuthenticationMessage;
 import to.sven.androidrccar.common.communication.model.GreetingMessage;
 import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
 import to.sven.androidrccar.common.exception.InvalidMessageException;
+import to.sven.androidrccar.common.utils.CryptUtils;
 
 import com.google.android.testing.mocking.AndroidMock;
 
@@ -72,6 +74,36 @@ public class GreetingMessageHandlerTest
 		
 		// Verify Test
 		assertEquals("4ca1d689a13a83cc73de252d1ff67fbb1daa6e3c", capture.getValue().passwordHash);
+		assertNull(capture.getValue().encoding);
+		verifyFieldMocks();
+	}
+	
+	/**
+	 * Tests {@link GreetingMessageHandler#handleMessage}:
+	 * The host offers {@link MessageEncoding#binary}.
+	 * Checks if it is accepted and the whole {@link GreetingMessage#authSalt} is used as salt.
+	 * @throws InvalidMessageException The test fails.
+	 */
+	public void testHandleMessage_BinaryEncodingOffered() throws InvalidMessageException {
+		// Configure Test
+		GreetingMessage message = new GreetingMessage(pVersion, SALT, MessageEncoding.binary);
+		logicMock.clearMessageHandlers();
+		logicMock.registerMessageHandler(AndroidMock.eq(FeatureMessageHandler.class));
+		logicMock.registerMessageHandler(AndroidMock.eq(AuthenticationFailedMessageHandler.class));
+		AndroidMock.expect(cdcMock.getConnectionParameter())
+				   .andReturn(new ConnectionParameter(null, 0, "somePassword"));
+		Capture<AuthenticationMessage> capture = new Capture<AuthenticationMessage>();
+		logicMock.sendMessage(AndroidMock.capture(capture));
+		logicMock.setMessageEncoding(MessageEncoding.binary);
+		
+		// Run Test
+		GreetingMessageHandler handler = aHandlerForTest();
+		handler.handleMessage(message);
+		
+		// Verify Test
+		assertEquals(CryptUtils.encryptPassword("somePassword", message.authSalt),
+					 capture.getValue().passwordHash);
+		assertEquals(MessageEncoding.binary, capture.getValue().encoding);
 		verifyFieldMocks();
 	}
 	
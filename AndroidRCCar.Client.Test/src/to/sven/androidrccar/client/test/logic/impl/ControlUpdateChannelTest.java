@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.client.test.logic.impl;
+
+import org.easymock.Capture;
+
+import to.sven.androidrccar.client.logic.impl.ControlUpdateChannel;
+import to.sven.androidrccar.common.communication.model.AdjustSpeedMessage;
+import to.sven.androidrccar.common.communication.model.TurnCarMessage;
+import to.sven.androidrccar.common.logic.handler.ILogicHandlerFacade;
+import android.os.Handler;
+import android.os.Message;
+import android.test.AndroidTestCase;
+
+import com.google.android.testing.mocking.AndroidMock;
+import com.google.android.testing.mocking.UsesMocks;
+
+/**
+ * This class should test the behavior of the {@link ControlUpdateChannel}.
+ * @author sven
+ *
+ */
+@UsesMocks({ ILogicHandlerFacade.class, Handler.class })
+public class ControlUpdateChannelTest extends AndroidTestCase {
+	
+	/**
+	 * Interval that is long enough that no test reaches it.
+	 */
+	private static final int LONG_INTERVAL = 600000;
+	
+	/**
+	 * Strict mock
+	 * @see AndroidMock#createStrictMock
+	 */
+	private ILogicHandlerFacade logicMock;
+	
+	/**
+	 * Normal mock (without order checking)
+	 * @see AndroidMock#createMock
+	 */
+	private Handler handlerMock;
+	
+	/**
+	 * Before Test:
+	 * Set up new {@link ILogicHandlerFacade} and {@link Handler} mocks.
+	 */
+	@Override
+	protected void setUp() {
+		logicMock = AndroidMock.createStrictMock(ILogicHandlerFacade.class);
+		handlerMock = AndroidMock.createMock(Handler.class);
+	}
+	
+	/**
+	 * Tests {@link ControlUpdateChannel#updateSpeed} and {@link ControlUpdateChannel#updateRotation}:
+	 * The first update is send immediately. The following updates within the interval
+	 * are merged and only the latest values are send by the posted flush.
+	 */
+	public void testUpdate_Coalescing() {
+		// Configure Test
+		Capture<AdjustSpeedMessage> firstSpeed = new Capture<AdjustSpeedMessage>();
+		logicMock.sendMessage(AndroidMock.capture(firstSpeed));
+		AndroidMock.expect(handlerMock.sendMessageAtTime((Message) AndroidMock.anyObject(),
+														 AndroidMock.anyLong()))
+				   .andReturn(true);
+		Capture<AdjustSpeedMessage> lastSpeed = new Capture<AdjustSpeedMessage>();
+		logicMock.sendMessage(AndroidMock.capture(lastSpeed));
+		Capture<TurnCarMessage> lastRotation = new Capture<TurnCarMessage>();
+		logicMock.sendMessage(AndroidMock.capture(lastRotation));
+		AndroidMock.replay(logicMock, handlerMock);
+		
+		// Run Test
+		ControlUpdateChannel channel = new ControlUpdateChannel(logicMock, handlerMock, LONG_INTERVAL);
+		channel.updateSpeed(0.1f);
+		channel.updateSpeed(0.2f);
+		channel.updateRotation(-0.4f);
+		channel.updateSpeed(0.3f);
+		channel.updateRotation(0.5f);
+		channel.run(); // The posted flush
+		
+		// Verify Test
+		AndroidMock.verify(logicMock, handlerMock);
+		assertEquals(0.1f, firstSpeed.getValue().speed, 0f);
+		assertEquals(0.3f, lastSpeed.getValue().speed, 0f);
+		assertEquals(0.5f, lastRotation.getValue().rotation, 0f);
+		assertEquals(3, channel.getSentCount());
+		assertEquals(2, channel.getCoalescedCount());
+	}
+	
+	/**
+	 * Tests {@link ControlUpdateChannel#updateSpeed}:
+	 * Stopping the car is send immediately, even within the interval.
+	 */
+	public void testUpdateSpeed_StopImmediately() {
+		// Configure Test
+		Capture<AdjustSpeedMessage> speed = new Capture<AdjustSpeedMessage>();
+		logicMock.sendMessage(AndroidMock.isA(AdjustSpeedMessage.class));
+		logicMock.sendMessage(AndroidMock.capture(speed));
+		AndroidMock.replay(logicMock, handlerMock);
+		
+		// Run Test
+		ControlUpdateChannel channel = new ControlUpdateChannel(logicMock, handlerMock, LONG_INTERVAL);
+		channel.updateSpeed(1f);
+		channel.updateSpeed(0f);
+		
+		// Verify Test
+		AndroidMock.verify(logicMock, handlerMock);
+		assertEquals(0f, speed.getValue().speed, 0f);
+		assertEquals(2, channel.getSentCount());
+		assertEquals(0, channel.getCoalescedCount());
+	}
+	
+	/**
+	 * Tests {@link ControlUpdateChannel}:
+	 * With an interval of 0 every update is send.
+	 */
+	public void testUpdate_NoInterval() {
+		// Configure Test
+		logicMock.sendMessage(AndroidMock.isA(TurnCarMessage.class));
+		AndroidMock.expectLastCall().times(3);
+		AndroidMock.replay(logicMock, handlerMock);
+		
+		// Run Test
+		ControlUpdateChannel channel = new ControlUpdateChannel(logicMock, handlerMock, 0);
+		channel.updateRotation(0.1f);
+		channel.updateRotation(0.2f);
+		channel.updateRotation(0.3f);
+		
+		// Verify Test
+		AndroidMock.verify(logicMock, handlerMock);
+		assertEquals(0, channel.getCoalescedCount());
+	}
+}
@@ -23,6 +23,7 @@ import to.sven.androidrccar.client.logic.impl.ClientLogic;
 import to.sven.androidrccar.common.communication.model.AuthenticationMessage;
 import to.sven.androidrccar.common.communication.model.GreetingMessage;
 import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
 import to.sven.androidrccar.common.exception.InvalidMessageException;
 import to.sven.androidrccar.common.utils.CryptUtils;
 
@@ -45,6 +46,8 @@ public class GreetingMessageHandler extends AbstractClientMessageHandler<Greetin
 	/**
 	 * Send password if {@link #validateProtocolVersion(GreetingMessage)} 
 	 * is successful.
+	 * If the host offers an other {@link MessageEncoding} than JSON, it will be accepted
+	 * and used after the {@link AuthenticationMessage}.
 	 */
 	@Override
 	public void handleMessage(GreetingMessage message) throws InvalidMessageException {
@@ -58,7 +61,14 @@ public class GreetingMessageHandler extends AbstractClientMessageHandler<Greetin
 		String password = dependences.getConnectionParameter()
 						   			 .password;
 		String passwordHash = CryptUtils.encryptPassword(password, message.authSalt);
-		logic.sendMessage(new AuthenticationMessage(passwordHash));
+		
+		MessageEncoding encoding = message.offeredEncoding();
+		if(encoding == MessageEncoding.json) {
+			logic.sendMessage(new AuthenticationMessage(passwordHash));
+		} else {
+			logic.sendMessage(new AuthenticationMessage(passwordHash, encoding));
+			logic.setMessageEncoding(encoding);
+		}
 	}
 	
 	/**
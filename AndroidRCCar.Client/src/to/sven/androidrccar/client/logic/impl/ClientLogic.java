@@ -25,10 +25,7 @@ import to.sven.androidrccar.client.logic.contract.IClientLogicListener;
 import to.sven.androidrccar.client.logic.handler.GreetingMessageHandler;
 import to.sven.androidrccar.client.logic.handler.IClientLogicHandlerFacade;
 import to.sven.androidrccar.client.service.contract.IVideoClientService;
-import to.sven.androidrccar.common.communication.model.AdjustSpeedMessage;
 import to.sven.androidrccar.common.communication.model.FeatureMessage;
-import to.sven.androidrccar.common.communication.model.RotateCameraMessage;
-import to.sven.androidrccar.common.communication.model.TurnCarMessage;
 import to.sven.androidrccar.common.logic.impl.AbstractLogic;
 import android.util.Log;
 
@@ -40,6 +37,16 @@ import android.util.Log;
  */
 public class ClientLogic extends AbstractLogic<IClientDependencyContainer, IClientLogicListener> 
 	implements IClientLogicHandlerFacade, IClientLogic {
+	
+	/**
+	 * Tag for {@link Log}
+	 */
+	private static final String LOG_TAG = "ClientLogic";
+	
+	/**
+	 * Sends the control updates (speed, rotation and camera position).
+	 */
+	private final ControlUpdateChannel controlChannel;
 
 	/**
 	 * Default Constructor
@@ -48,6 +55,10 @@ public class ClientLogic extends AbstractLogic<IClientDependencyContainer, IClie
 	public ClientLogic(IClientDependencyContainer container) {
 		super(container);
 		
+		int controlUpdateInterval = container.getConfiguration()
+											 .getControlUpdateInterval();
+		controlChannel = new ControlUpdateChannel(this, container.getHandler(), controlUpdateInterval);
+		
 		registerMessageHandler(GreetingMessageHandler.class);
 				
 		initialized();
@@ -58,6 +69,9 @@ public class ClientLogic extends AbstractLogic<IClientDependencyContainer, IClie
 	 */
 	@Override
 	public void close() {
+		controlChannel.close();
+		Log.i(LOG_TAG, "Control updates sent: " + controlChannel.getSentCount() +
+					   "; coalesced: " + controlChannel.getCoalescedCount());
 		super.close();
 		
 		IVideoClientService videoClient = getDependency().getVideoClientService();
@@ -78,7 +92,7 @@ public class ClientLogic extends AbstractLogic<IClientDependencyContainer, IClie
 			speed = minSpeed;
 		}
 		
-		sendMessage(new AdjustSpeedMessage(speed));
+		controlChannel.updateSpeed(speed);
 	}
 	
 	/**
@@ -92,7 +106,7 @@ public class ClientLogic extends AbstractLogic<IClientDependencyContainer, IClie
 			rotation = -1;
 		}
 		
-		sendMessage(new TurnCarMessage(rotation));
+		controlChannel.updateRotation(rotation);
 	}
 	
 	/**
@@ -112,7 +126,6 @@ public class ClientLogic extends AbstractLogic<IClientDependencyContainer, IClie
 			tilt = features.cameraTiltMax;
 		}
 		
-		Log.i("rt", pan + "=p ; t= " + tilt);
-		sendMessage(new RotateCameraMessage(pan, tilt));
+		controlChannel.updateCamera(pan, tilt);
 	}
 }
@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.client.logic.impl;
+
+import to.sven.androidrccar.common.communication.model.AdjustSpeedMessage;
+import to.sven.androidrccar.common.communication.model.RotateCameraMessage;
+import to.sven.androidrccar.common.communication.model.TurnCarMessage;
+import to.sven.androidrccar.common.exception.RangeException;
+import to.sven.androidrccar.common.logic.handler.ILogicHandlerFacade;
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Latest-value-wins channel for the control updates (speed, rotation and camera position).
+ * 
+ * Every update overwrites the pending value of its kind. The pending values are send
+ * at most once per {@code interval}, so a fast moving joystick doesn't fill the
+ * TCP send buffer with stale commands. Superseded values are dropped and counted
+ * (see {@link #getCoalescedCount()}).
+ * 
+ * Stopping the car ({@code speed == 0}) is send immediately.
+ * 
+ * All methods must be called in the thread of the {@link Handler} (the main thread).
+ * @author sven
+ *
+ */
+public class ControlUpdateChannel implements Runnable {
+	
+	/**
+	 * Used to send the messages.
+	 */
+	private final ILogicHandlerFacade logic;
+	
+	/**
+	 * {@link Handler} that is used to flush the pending values after the {@code interval}.
+	 */
+	private final Handler handler;
+	
+	/**
+	 * Minimal time between two flushes in milliseconds.
+	 */
+	private final int interval;
+	
+	/**
+	 * {@code true}, if {@link #speed} wasn't send yet.
+	 */
+	private boolean speedPending;
+	
+	/**
+	 * @see AdjustSpeedMessage#speed
+	 */
+	private float speed;
+	
+	/**
+	 * {@code true}, if {@link #rotation} wasn't send yet.
+	 */
+	private boolean rotationPending;
+	
+	/**
+	 * @see TurnCarMessage#rotation
+	 */
+	private float rotation;
+	
+	/**
+	 * {@code true}, if {@link #pan} and {@link #tilt} wasn't send yet.
+	 */
+	private boolean cameraPending;
+	
+	/**
+	 * @see RotateCameraMessage#pan
+	 */
+	private float pan;
+	
+	/**
+	 * @see RotateCameraMessage#tilt
+	 */
+	private float tilt;
+	
+	/**
+	 * {@code true}, if this is posted to the {@link #handler}.
+	 */
+	private boolean flushScheduled;
+	
+	/**
+	 * Time of the last flush ({@link SystemClock#uptimeMillis()}).
+	 */
+	private long lastFlush = Long.MIN_VALUE / 2;
+	
+	/**
+	 * @see #getSentCount()
+	 */
+	private int sentCount;
+	
+	/**
+	 * @see #getCoalescedCount()
+	 */
+	private int coalescedCount;
+	
+	/**
+	 * Default constructor.
+	 * @param logic Used to send the messages.
+	 * @param handler {@link Handler} that is used to flush the pending values after the {@code interval}.
+	 * @param interval Minimal time between two flushes in milliseconds. 0 sends every update immediately.
+	 */
+	public ControlUpdateChannel(ILogicHandlerFacade logic, Handler handler, int interval) {
+		if(interval < 0) {
+			throw new RangeException("Interval can not lesser than 0.");
+		}
+		this.logic = logic;
+		this.handler = handler;
+		this.interval = interval;
+	}
+	
+	/**
+	 * Sets the speed that should be send.
+	 * @param speed {@link AdjustSpeedMessage#speed}
+	 */
+	public void updateSpeed(float speed) {
+		if(speedPending) {
+			coalescedCount++;
+		}
+		this.speed = speed;
+		speedPending = true;
+		
+		if(speed == 0) {
+			flush();
+		} else {
+			scheduleFlush();
+		}
+	}
+	
+	/**
+	 * Sets the rotation that should be send.
+	 * @param rotation {@link TurnCarMessage#rotation}
+	 */
+	public void updateRotation(float rotation) {
+		if(rotationPending) {
+			coalescedCount++;
+		}
+		this.rotation = rotation;
+		rotationPending = true;
+		scheduleFlush();
+	}
+	
+	/**
+	 * Sets the camera position that should be send.
+	 * @param pan {@link RotateCameraMessage#pan}
+	 * @param tilt {@link RotateCameraMessage#tilt}
+	 */
+	public void updateCamera(float pan, float tilt) {
+		if(cameraPending) {
+			coalescedCount++;
+		}
+		this.pan = pan;
+		this.tilt = tilt;
+		cameraPending = true;
+		scheduleFlush();
+	}
+	
+	/**
+	 * Flushes immediately, if the last flush is longer than {@link #interval} ago.
+	 * Else the flush is posted to the {@link #handler}, if not already done.
+	 */
+	private void scheduleFlush() {
+		if(flushScheduled) {
+			return;
+		}
+		
+		long wait = lastFlush + interval - SystemClock.uptimeMillis();
+		if(wait <= 0) {
+			flush();
+		} else {
+			flushScheduled = true;
+			handler.postDelayed(this, wait);
+		}
+	}
+	
+	/**
+	 * Sends all pending values now.
+	 */
+	public void flush() {
+		if(flushScheduled) {
+			handler.removeCallbacks(this);
+			flushScheduled = false;
+		}
+		lastFlush = SystemClock.uptimeMillis();
+		
+		if(speedPending) {
+			speedPending = false;
+			sentCount++;
+			logic.sendMessage(new AdjustSpeedMessage(speed));
+		}
+		if(rotationPending) {
+			rotationPending = false;
+			sentCount++;
+			logic.sendMessage(new TurnCarMessage(rotation));
+		}
+		if(cameraPending) {
+			cameraPending = false;
+			sentCount++;
+			logic.sendMessage(new RotateCameraMessage(pan, tilt));
+		}
+	}
+	
+	/**
+	 * Drops all pending values and stops a scheduled flush.
+	 */
+	public void close() {
+		handler.removeCallbacks(this);
+		flushScheduled = false;
+		speedPending = false;
+		rotationPending = false;
+		cameraPending = false;
+	}
+	
+	/**
+	 * Don't call this method directly. It's posted to the {@link #handler}.
+	 */
+	@Override
+	public void run() {
+		flushScheduled = false;
+		flush();
+	}
+	
+	/**
+	 * Number of send control messages.
+	 * @return Number of messages
+	 */
+	public int getSentCount() {
+		return sentCount;
+	}
+	
+	/**
+	 * Number of updates, that were overwritten by a newer value before they were send.
+	 * @return Number of dropped updates
+	 */
+	public int getCoalescedCount() {
+		return coalescedCount;
+	}
+}
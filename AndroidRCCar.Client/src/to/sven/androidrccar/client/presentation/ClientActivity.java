@@ -19,7 +19,9 @@
  ******************************************************************************/
 package to.sven.androidrccar.client.presentation;
 
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 
 import to.sven.androidrccar.client.R;
 import to.sven.androidrccar.client.framework.ClientDependencyContainer;
@@ -31,6 +33,7 @@ import to.sven.androidrccar.client.presentation.view.BearingOfCarView;
 import to.sven.androidrccar.client.presentation.view.DistanceView;
 import to.sven.androidrccar.client.presentation.view.OnVirtualJoystickMoveListener;
 import to.sven.androidrccar.client.presentation.view.VirtualJoystickView;
+import to.sven.androidrccar.client.service.impl.ClientConfigurationService;
 import to.sven.androidrccar.common.exception.ConnectionProblemException;
 import to.sven.androidrccar.common.model.ConnectionParameter;
 import to.sven.androidrccar.common.utils.AsyncTaskResult;
@@ -184,6 +187,20 @@ public class ClientActivity extends Activity {
 	 */
 	private class ConnectTask extends AsyncTask<Object, Object, AsyncTaskResult<Socket>> {
 
+				/**
+				 * Use non-blocking I/O for the connection?
+				 */
+				private volatile boolean nonBlockingIo;
+				
+				/**
+				 * Retrieves {@link #nonBlockingIo} from the configuration.
+				 */
+				@Override
+				protected void onPreExecute() {
+					super.onPreExecute();
+					nonBlockingIo = new ClientConfigurationService(ClientActivity.this).getNonBlockingIoEnabled();
+				}
+				
 				/**
 				 * Connecting to the Host.
 				 */
@@ -191,7 +208,15 @@ public class ClientActivity extends Activity {
 				protected AsyncTaskResult<Socket> doInBackground(
 						Object... params) {
 					try {
-						Socket socket = new Socket(connectionParameter.host, connectionParameter.port);
+						Socket socket;
+						if(nonBlockingIo) {
+							// A channel, so the connection can use non-blocking I/O:
+							InetSocketAddress address = new InetSocketAddress(connectionParameter.host,
+																			  connectionParameter.port);
+							socket = SocketChannel.open(address).socket();
+						} else {
+							socket = new Socket(connectionParameter.host, connectionParameter.port);
+						}
 						return new AsyncTaskResult<Socket>(socket);
 					} catch (Exception e) {
 						return new AsyncTaskResult<Socket>(e);
@@ -323,34 +348,20 @@ public class ClientActivity extends Activity {
 	private final OnVirtualJoystickMoveListener joystickMoveListener = new OnVirtualJoystickMoveListener() {
 
 		/**
-		 * Wait until this before sending the next
+		 * The logic merges fast updates, so every move can passed directly.
 		 */
-		private long nextSendl;
-		
-		/**
-		 * Wait until this before sending the next
-		 */
-		private long nextSendr;
-
 		@Override
 		public void onRightMove(float x, float y) {
-			long now = System.currentTimeMillis();
-			// TODO: Not here & this better?
-			if((now > nextSendr || y == 0)) {
-				logic.adjustSpeed(-y);
-				logic.turnCar(x);
-				nextSendr = now+100;
-			}
+			logic.adjustSpeed(-y);
+			logic.turnCar(x);
 		}
 		
+		/**
+		 * The logic merges fast updates, so every move can passed directly.
+		 */
 		@Override
 		public void onLeftMove(float x, float y) {
-			long now = System.currentTimeMillis();
-			// TODO: Not here & this better?
-			if((now > nextSendl || y == 0 || x == 0)) {
-				logic.rotateCamera(x*180, y*180);
-				nextSendl = now+100;
-			}
+			logic.rotateCamera(x*180, y*180);
 		}
 	};
 }
@@ -42,12 +42,26 @@ public interface IClientConfigurationService {
 	 */
 	int getLocationMessageInterval();
 	
+	/**
+	 * Gets the minimal interval between two control updates (speed, rotation, camera position)
+	 * send to the host in milliseconds. Updates in between are merged.
+	 * @return Interval in milliseconds
+	 */
+	int getControlUpdateInterval();
+	
 	/**
 	 * Defines, if showing the camera stream is enabled on the Client. 
 	 * @return {@code true}, if enabled.
 	 */
 	boolean getCameraEnabled();
 	
+	/**
+	 * Defines, if the connection to the Host uses non-blocking I/O.
+	 * If not, the stream based communication is used.
+	 * @return {@code true}, if enabled.
+	 */
+	boolean getNonBlockingIoEnabled();
+	
 	/**
 	 * Gets the IP/Hostname that was used for the last connection.
 	 * If there is no, a empty string.
@@ -41,10 +41,20 @@ public class ClientConfigurationService implements IClientConfigurationService {
 	 */
 	private final static String LOCATION_MESSAGE_INTERVAL_KEY = "LocationMessageInterval";
 	
+	/**
+	 * Key for value in {@link #prefs} used by {@link #getControlUpdateInterval}.
+	 */
+	private final static String CONTROL_UPDATE_INTERVAL_KEY = "ControlUpdateInterval";
+	
 	/**
 	 * Key for value in {@link #prefs} used by {@link #getCameraEnabled}.
 	 */
 	private final static String CAMERA_ENABLED_KEY = "CameraEnabled";	
+	
+	/**
+	 * Key for value in {@link #prefs} used by {@link #getNonBlockingIoEnabled}.
+	 */
+	private final static String NON_BLOCKING_IO_ENABLED_KEY = "NonBlockingIoEnabled";
 
 	/**
 	 * Key for value in {@link #prefs} used by {@link #getLastHostAdress}.
@@ -90,6 +100,14 @@ public class ClientConfigurationService implements IClientConfigurationService {
 		return prefs.getInt(LOCATION_MESSAGE_INTERVAL_KEY, 1000);
 	}
 
+	/**
+	 *  {@inheritDoc}
+	 */
+	@Override
+	public int getControlUpdateInterval() {
+		return prefs.getInt(CONTROL_UPDATE_INTERVAL_KEY, 50);
+	}
+
 	/**
 	 *  {@inheritDoc}
 	 */
@@ -98,6 +116,14 @@ public class ClientConfigurationService implements IClientConfigurationService {
 		return prefs.getBoolean(CAMERA_ENABLED_KEY, true);
 	}
 
+	/**
+	 *  {@inheritDoc}
+	 */
+	@Override
+	public boolean getNonBlockingIoEnabled() {
+		return prefs.getBoolean(NON_BLOCKING_IO_ENABLED_KEY, true);
+	}
+
 	/**
 	 *  {@inheritDoc}
 	 */
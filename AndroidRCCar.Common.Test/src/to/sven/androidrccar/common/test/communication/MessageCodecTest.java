@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.common.test.communication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import to.sven.androidrccar.common.communication.contract.IMessageCodec;
+import to.sven.androidrccar.common.communication.impl.BinaryMessageCodec;
+import to.sven.androidrccar.common.communication.impl.JsonMessageCodec;
+import to.sven.androidrccar.common.communication.model.AuthenticationMessage;
+import to.sven.androidrccar.common.communication.model.CameraConnectionParameterMessage;
+import to.sven.androidrccar.common.communication.model.GreetingMessage;
+import to.sven.androidrccar.common.communication.model.LocationMessage;
+import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
+import to.sven.androidrccar.common.communication.model.RotateCameraMessage;
+import to.sven.androidrccar.common.communication.model.TurnCarMessage;
+import to.sven.androidrccar.common.communication.test.model.TestMessage;
+import android.test.AndroidTestCase;
+
+/**
+ * This class should test the behavior of the {@link JsonMessageCodec} and the {@link BinaryMessageCodec}.
+ * @author sven
+ *
+ */
+public class MessageCodecTest extends AndroidTestCase {
+	
+	/**
+	 * Test subject
+	 */
+	private final IMessageCodec jsonCodec = new JsonMessageCodec();
+	
+	/**
+	 * Test subject
+	 */
+	private final IMessageCodec binaryCodec = new BinaryMessageCodec();
+	
+	/**
+	 * Tests {@link BinaryMessageCodec}:
+	 * A control message is encoded with tag byte and float.
+	 * @throws IOException Test failed.
+	 */
+	public void testBinaryEncode_TurnCar() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		binaryCodec.encode(new TurnCarMessage(1f), out);
+		
+		byte[] expected = { (byte) 0x8A, 0x3F, (byte) 0x80, 0x00, 0x00 };
+		assertEquals(expected.length, out.size());
+		for(int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], out.toByteArray()[i]);
+		}
+	}
+	
+	/**
+	 * Tests {@link IMessageCodec#decode}:
+	 * Messages in both encodings are written to one stream and read back in the same order.
+	 * @throws IOException Test failed.
+	 */
+	public void testDecode_MixedEncodings() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		jsonCodec.encode(new GreetingMessage(1, "salt", MessageEncoding.binary), out);
+		binaryCodec.encode(new AuthenticationMessage("hash", MessageEncoding.binary), out);
+		binaryCodec.encode(new RotateCameraMessage(0.25f, -0.5f), out);
+		jsonCodec.encode(new TurnCarMessage(-1f), out);
+		binaryCodec.encode(new CameraConnectionParameterMessage(8080, "rtsp", null), out);
+		binaryCodec.encode(new LocationMessage(52.5, 13.4, false, 0, true, 3f, true, 90f, false, 0), out);
+		
+		InputStream in = new ByteArrayInputStream(out.toByteArray());
+		
+		GreetingMessage greeting = (GreetingMessage) decode(in);
+		assertEquals(1, greeting.version);
+		assertEquals("salt;binary", greeting.authSalt);
+		
+		AuthenticationMessage authentication = (AuthenticationMessage) decode(in);
+		assertEquals("hash", authentication.passwordHash);
+		assertEquals(MessageEncoding.binary, authentication.encoding);
+		
+		RotateCameraMessage rotate = (RotateCameraMessage) decode(in);
+		assertEquals(0.25f, rotate.pan, 0f);
+		assertEquals(-0.5f, rotate.tilt, 0f);
+		
+		TurnCarMessage turn = (TurnCarMessage) decode(in);
+		assertEquals(-1f, turn.rotation, 0f);
+		
+		CameraConnectionParameterMessage camera = (CameraConnectionParameterMessage) decode(in);
+		assertEquals(8080, camera.port);
+		assertEquals("rtsp", camera.scheme);
+		assertNull(camera.path);
+		
+		LocationMessage location = (LocationMessage) decode(in);
+		assertEquals(52.5, location.latitude, 0);
+		assertEquals(13.4, location.longitude, 0);
+		assertFalse(location.hasAltitude);
+		assertTrue(location.hasAccuracy);
+		assertEquals(3f, location.accuracy, 0f);
+		assertTrue(location.hasBearing);
+		assertEquals(90f, location.bearing, 0f);
+		assertFalse(location.hasSpeed);
+		
+		assertEquals(-1, in.read());
+	}
+	
+	/**
+	 * Tests {@link BinaryMessageCodec#canEncode}:
+	 * Messages without binary layout must be send as JSON.
+	 */
+	public void testBinaryCanEncode() {
+		assertTrue(binaryCodec.canEncode(new TurnCarMessage(0)));
+		assertFalse(binaryCodec.canEncode(new TestMessage("test")));
+		assertTrue(jsonCodec.canEncode(new TestMessage("test")));
+	}
+	
+	/**
+	 * Tests {@link JsonMessageCodec}:
+	 * The {@link AuthenticationMessage} contains no encoding member,
+	 * if JSON is used, so older Hosts can read it.
+	 * @throws IOException Test failed.
+	 */
+	public void testJsonEncode_AuthenticationWithoutEncoding() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		jsonCodec.encode(new AuthenticationMessage("hash"), out);
+		
+		assertEquals("{\"@messageType\":\"" + AuthenticationMessage.class.getCanonicalName() + "\",\"passwordHash\":\"hash\"}",
+					 out.toString());
+	}
+	
+	/**
+	 * Tests {@link GreetingMessage#offeredEncoding()}
+	 */
+	public void testOfferedEncoding() {
+		assertEquals(MessageEncoding.json, new GreetingMessage(1, "deadbeef").offeredEncoding());
+		assertEquals(MessageEncoding.binary, new GreetingMessage(1, "deadbeef", MessageEncoding.binary).offeredEncoding());
+		assertEquals(MessageEncoding.json, new GreetingMessage(1, "deadbeef;unknown").offeredEncoding());
+	}
+	
+	/**
+	 * Reads the next message with the codec, that can decode it.
+	 * @param in The stream
+	 * @return The {@link Message}
+	 * @throws IOException Test failed.
+	 */
+	private Message decode(InputStream in) throws IOException {
+		int firstByte = in.read();
+		if(binaryCodec.canDecode(firstByte)) {
+			return binaryCodec.decode(firstByte, in);
+		}
+		assertTrue(jsonCodec.canDecode(firstByte));
+		return jsonCodec.decode(firstByte, in);
+	}
+}
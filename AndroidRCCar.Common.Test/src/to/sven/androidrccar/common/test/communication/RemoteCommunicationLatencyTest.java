@@ -0,0 +1,455 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.common.test.communication;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import to.sven.androidrccar.common.communication.contract.IRemoteCommunication;
+import to.sven.androidrccar.common.communication.contract.IRemoteCommunicationListener;
+import to.sven.androidrccar.common.communication.impl.NioRemoteCommunication;
+import to.sven.androidrccar.common.communication.impl.RemoteCommunication;
+import to.sven.androidrccar.common.communication.model.CameraConnectionParameterMessage;
+import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.TurnCarMessage;
+import to.sven.androidrccar.common.framework.AbstractDependencyContainer;
+import to.sven.androidrccar.common.framework.IFactory;
+import to.sven.androidrccar.common.logic.contract.ILogicListener;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Loopback harness for the {@link IRemoteCommunication} implementations:
+ * Measures the round trip time of {@link TurnCarMessage}s over a local TCP connection
+ * with {@link RemoteCommunication} and {@link NioRemoteCommunication}.
+ * The percentiles are written to the log.
+ * @author sven
+ *
+ */
+public class RemoteCommunicationLatencyTest extends AndroidTestCase {
+	
+	/**
+	 * Tag for {@link Log}
+	 */
+	private static final String LOG_TAG = "RemoteCommunicationLatencyTest";
+	
+	/**
+	 * Number of measured round trips.
+	 */
+	private static final int ROUND_TRIPS = 500;
+	
+	/**
+	 * Maximal time to wait for an answer in seconds.
+	 */
+	private static final int TIMEOUT = 5;
+	
+	/**
+	 * Released, when the measuring side receives a message.
+	 */
+	private final Semaphore received = new Semaphore(0);
+	
+	/**
+	 * The last message, that the measuring side received.
+	 */
+	private volatile Message lastReceived;
+	
+	/**
+	 * All messages, that the measuring side received.
+	 */
+	private final List<Message> receivedMessages = Collections.synchronizedList(new ArrayList<Message>());
+	
+	/**
+	 * The first problem of any side, if there is one.
+	 */
+	private volatile Exception problem;
+	
+	/**
+	 * True, while the connections are closed by the test.
+	 * The listeners ignore the problems of closed connections.
+	 */
+	private volatile boolean closing;
+	
+	/**
+	 * The side that sends the messages and measures.
+	 */
+	private IRemoteCommunication client;
+	
+	/**
+	 * The side that sends every received message back.
+	 */
+	private IRemoteCommunication host;
+	
+	/**
+	 * After Test: Close the connection.
+	 * @throws IOException Test failed.
+	 */
+	@Override
+	protected void tearDown() throws IOException {
+		closing = true;
+		if(client != null) {
+			client.close();
+		}
+		if(host != null) {
+			host.close();
+		}
+	}
+	
+	/**
+	 * Measures {@link RemoteCommunication} and {@link NioRemoteCommunication}
+	 * and logs their percentiles side by side.
+	 * @throws Exception Test failed.
+	 */
+	public void testLatencyPercentiles() throws Exception {
+		connectStreams();
+		long[] stream = measureRoundTrips();
+		tearDown();
+		
+		connectChannels();
+		long[] nio = measureRoundTrips();
+		
+		Log.i(LOG_TAG, "Round trip time in microseconds (" + ROUND_TRIPS + " messages):");
+		for(int percentile : new int[] { 50, 90, 99, 100 }) {
+			Log.i(LOG_TAG, String.format("p%d: stream %d; nio %d", Integer.valueOf(percentile),
+										 Long.valueOf(percentile(stream, percentile) / 1000),
+										 Long.valueOf(percentile(nio, percentile) / 1000)));
+		}
+	}
+	
+	/**
+	 * Tests {@link NioRemoteCommunication}:
+	 * Messages that are bigger than the buffers of the selector thread
+	 * and bursts of messages are received completely and in order.
+	 * @throws Exception Test failed.
+	 */
+	public void testNio_BigMessagesAndBursts() throws Exception {
+		connectChannels();
+		char[] path = new char[20000];
+		Arrays.fill(path, 'x');
+		String bigPath = new String(path);
+		
+		for(int i = 0; i < 32; i++) {
+			client.sendMessage(new CameraConnectionParameterMessage(i, "rtsp", bigPath));
+		}
+		for(int i = 0; i < 32; i++) {
+			assertTrue("Timeout", received.tryAcquire(TIMEOUT, TimeUnit.SECONDS));
+		}
+		
+		assertNull(problem);
+		CameraConnectionParameterMessage last = (CameraConnectionParameterMessage) lastReceived;
+		assertEquals(31, last.port);
+		assertEquals(bigPath, last.path);
+	}
+	
+	/**
+	 * Tests {@link NioRemoteCommunication}:
+	 * If the partner doesn't read, {@link NioRemoteCommunication#sendMessage} waits
+	 * instead of failing, and continues when the partner reads again.
+	 * @throws Exception Test failed.
+	 */
+	public void testNio_BackPressure() throws Exception {
+		// Configure Test
+		connectStalledChannels();
+		final String bigPath = bigPath();
+		final Exception[] sendProblem = new Exception[1];
+		Thread sender = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for(int i = 0; i < 100; i++) {
+						client.sendMessage(new CameraConnectionParameterMessage(i, "rtsp", bigPath));
+					}
+				} catch (Exception e) {
+					sendProblem[0] = e;
+				}
+			}
+		};
+		
+		// Run Test
+		sender.start();
+		sender.join(1000);
+		
+		// Verify Test
+		assertTrue("The sender doesn't wait", sender.isAlive());
+		assertNull(sendProblem[0]);
+		host.startMessageListener();
+		sender.join(TIMEOUT * 1000);
+		assertFalse(sender.isAlive());
+		assertNull(sendProblem[0]);
+		for(int i = 0; i < 100; i++) {
+			assertTrue("Timeout", received.tryAcquire(TIMEOUT, TimeUnit.SECONDS));
+		}
+		assertNull(problem);
+		assertEquals(99, ((CameraConnectionParameterMessage) lastReceived).port);
+	}
+	
+	/**
+	 * Tests {@link NioRemoteCommunication}:
+	 * If the partner doesn't read, a queued {@link TurnCarMessage} is replaced by a newer one,
+	 * so sending them never waits. The latest value is received.
+	 * @throws Exception Test failed.
+	 */
+	public void testNio_ReplaceStaleMessages() throws Exception {
+		// Configure Test
+		connectStalledChannels();
+		String bigPath = bigPath();
+		for(int i = 0; i < 10; i++) {
+			client.sendMessage(new CameraConnectionParameterMessage(i, "rtsp", bigPath));
+		}
+		
+		// Run Test
+		for(int i = 1; i <= 1000; i++) {
+			client.sendMessage(new TurnCarMessage(i / 1000f));
+		}
+		host.startMessageListener();
+		
+		// Verify Test
+		long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+		while(!(lastReceived instanceof TurnCarMessage && ((TurnCarMessage) lastReceived).rotation == 1f)) {
+			assertTrue("Timeout", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+		assertNull(problem);
+		float rotation = 0;
+		int turnCarMessages = 0;
+		synchronized (receivedMessages) {
+			for(Message message : receivedMessages) {
+				if(message instanceof TurnCarMessage) {
+					assertTrue(((TurnCarMessage) message).rotation > rotation);
+					rotation = ((TurnCarMessage) message).rotation;
+					turnCarMessages++;
+				}
+			}
+		}
+		assertTrue("Nothing replaced", turnCarMessages < 1000);
+	}
+	
+	/**
+	 * Tests {@link NioRemoteCommunication}:
+	 * A {@link NioRemoteCommunication#sendMessage}, that waits for the partner,
+	 * fails when the connection is closed.
+	 * @throws Exception Test failed.
+	 */
+	public void testNio_CloseWhileWaiting() throws Exception {
+		// Configure Test
+		connectStalledChannels();
+		final String bigPath = bigPath();
+		final Exception[] sendProblem = new Exception[1];
+		Thread sender = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for(int i = 0; i < 100; i++) {
+						client.sendMessage(new CameraConnectionParameterMessage(i, "rtsp", bigPath));
+					}
+				} catch (Exception e) {
+					sendProblem[0] = e;
+				}
+			}
+		};
+		sender.start();
+		sender.join(1000);
+		assertTrue("The sender doesn't wait", sender.isAlive());
+		
+		// Run Test
+		closing = true;
+		client.close();
+		sender.join(TIMEOUT * 1000);
+		
+		// Verify Test
+		assertFalse(sender.isAlive());
+		assertTrue(sendProblem[0] instanceof IOException);
+	}
+	
+	/**
+	 * Sends {@link #ROUND_TRIPS} messages one after another and waits for each answer.
+	 * @return The sorted round trip times in nanoseconds.
+	 * @throws Exception Test failed.
+	 */
+	private long[] measureRoundTrips() throws Exception {
+		long[] times = new long[ROUND_TRIPS];
+		for(int i = 0; i < ROUND_TRIPS; i++) {
+			long start = System.nanoTime();
+			client.sendMessage(new TurnCarMessage(i / (float) ROUND_TRIPS));
+			assertTrue("Timeout", received.tryAcquire(TIMEOUT, TimeUnit.SECONDS));
+			times[i] = System.nanoTime() - start;
+		}
+		assertNull(problem);
+		Arrays.sort(times);
+		return times;
+	}
+	
+	/**
+	 * Returns the percentile of sorted values.
+	 * @param sorted Sorted values
+	 * @param percentile 0-100
+	 * @return The value
+	 */
+	private static long percentile(long[] sorted, int percentile) {
+		int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, index)];
+	}
+	
+	/**
+	 * Connects {@link #client} and {@link #host} with {@link RemoteCommunication}.
+	 * @throws IOException Test failed.
+	 */
+	private void connectStreams() throws IOException {
+		ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+		Socket clientSocket = new Socket(server.getInetAddress(), server.getLocalPort());
+		Socket hostSocket = server.accept();
+		server.close();
+		clientSocket.setTcpNoDelay(true);
+		hostSocket.setTcpNoDelay(true);
+		
+		client = new RemoteCommunication(new LoopbackContainer(clientSocket), measuringListener);
+		host = new RemoteCommunication(new LoopbackContainer(hostSocket), new EchoListener());
+		start();
+	}
+	
+	/**
+	 * Connects {@link #client} and {@link #host} with {@link NioRemoteCommunication}.
+	 * @throws IOException Test failed.
+	 */
+	private void connectChannels() throws IOException {
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+		SocketChannel clientChannel = SocketChannel.open(server.socket().getLocalSocketAddress());
+		SocketChannel hostChannel = server.accept();
+		server.close();
+		clientChannel.socket().setTcpNoDelay(true);
+		hostChannel.socket().setTcpNoDelay(true);
+		
+		client = new NioRemoteCommunication(new LoopbackContainer(clientChannel.socket()), measuringListener);
+		host = new NioRemoteCommunication(new LoopbackContainer(hostChannel.socket()), new EchoListener());
+		start();
+	}
+	
+	/**
+	 * Connects {@link #client} and {@link #host} with {@link NioRemoteCommunication} and small socket buffers.
+	 * Only the listener of the {@link #client} is started, so the {@link #host} doesn't read until
+	 * its listener is started by the test.
+	 * @throws IOException Test failed.
+	 */
+	private void connectStalledChannels() throws IOException {
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().setReceiveBufferSize(4096);
+		server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+		SocketChannel clientChannel = SocketChannel.open();
+		clientChannel.socket().setSendBufferSize(4096);
+		clientChannel.connect(server.socket().getLocalSocketAddress());
+		SocketChannel hostChannel = server.accept();
+		server.close();
+		
+		client = new NioRemoteCommunication(new LoopbackContainer(clientChannel.socket()), measuringListener);
+		host = new NioRemoteCommunication(new LoopbackContainer(hostChannel.socket()), new EchoListener());
+		closing = false;
+		received.drainPermits();
+		client.startMessageListener();
+	}
+	
+	/**
+	 * Creates a path, that makes a {@link CameraConnectionParameterMessage} bigger
+	 * than the socket buffers.
+	 * @return The path
+	 */
+	private static String bigPath() {
+		char[] path = new char[100000];
+		Arrays.fill(path, 'x');
+		return new String(path);
+	}
+	
+	/**
+	 * Starts the message listeners of {@link #client} and {@link #host}.
+	 */
+	private void start() {
+		closing = false;
+		received.drainPermits();
+		client.startMessageListener();
+		host.startMessageListener();
+	}
+	
+	/**
+	 * Listener of the {@link #client}.
+	 */
+	private final IRemoteCommunicationListener measuringListener = new IRemoteCommunicationListener() {
+		
+		@Override
+		public void messageReceived(Message message) {
+			lastReceived = message;
+			receivedMessages.add(message);
+			received.release();
+		}
+		
+		@Override
+		public void connectionProblem(Exception ex) {
+			if(!closing) {
+				problem = ex;
+			}
+		}
+	};
+	
+	/**
+	 * Listener of the {@link #host}: Sends every message back.
+	 */
+	private class EchoListener implements IRemoteCommunicationListener {
+		
+		@Override
+		public void messageReceived(Message message) {
+			try {
+				host.sendMessage(message);
+			} catch (IOException e) {
+				problem = e;
+			}
+		}
+		
+		@Override
+		public void connectionProblem(Exception ex) {
+			if(!closing) {
+				problem = ex;
+			}
+		}
+	}
+	
+	/**
+	 * Provides the socket and the main thread {@link android.os.Handler}.
+	 */
+	private static class LoopbackContainer extends AbstractDependencyContainer<IFactory, ILogicListener> {
+		
+		/**
+		 * Creates the container.
+		 * @param socket The connected socket.
+		 */
+		public LoopbackContainer(Socket socket) {
+			super(null, null, null);
+			setSocket(socket);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.common.test.logic;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import to.sven.androidrccar.common.communication.contract.IRemoteCommunication;
+import to.sven.androidrccar.common.communication.contract.IRemoteCommunicationListener;
+import to.sven.androidrccar.common.communication.model.AdjustSpeedMessage;
+import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.TurnCarMessage;
+import to.sven.androidrccar.common.framework.IFactory;
+import to.sven.androidrccar.common.logic.handler.ILogicHandlerFacade;
+import to.sven.androidrccar.common.logic.handler.IMessageHandler;
+import to.sven.androidrccar.common.logic.impl.AbstractLogic;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.google.android.testing.mocking.AndroidMock;
+import com.google.android.testing.mocking.UsesMocks;
+
+/**
+ * Micro-benchmark for the message dispatch of {@link AbstractLogic#messageReceived}.
+ * Counts the allocations of the current thread with {@link Debug} for a stream
+ * of {@link TurnCarMessage}s and {@link AdjustSpeedMessage}s and compares them
+ * with a lookup by canonical class name.
+ * @author sven
+ */
+@UsesMocks({IRemoteCommunication.class})
+public class MessageDispatchBenchmarkTest extends AndroidTestCase {
+	
+	/**
+	 * Tag for {@link Log}
+	 */
+	private static final String LOG_TAG = "MessageDispatchBenchmarkTest";
+	
+	/**
+	 * Number of dispatched messages per measurement.
+	 */
+	private static final int ITERATIONS = 10000;
+	
+	/**
+	 * The stream of control messages.
+	 */
+	private final Message[] stream = { new TurnCarMessage(0.5f), new AdjustSpeedMessage(0.25f) };
+	
+	/**
+	 * Counts the handled {@link TurnCarMessage}s.
+	 */
+	private final CountingHandler<TurnCarMessage> turnCarHandler =
+			new CountingHandler<TurnCarMessage>(TurnCarMessage.class);
+	
+	/**
+	 * Counts the handled {@link AdjustSpeedMessage}s.
+	 */
+	private final CountingHandler<AdjustSpeedMessage> adjustSpeedHandler =
+			new CountingHandler<AdjustSpeedMessage>(AdjustSpeedMessage.class);
+	
+	/**
+	 * Dispatches the stream with {@link AbstractLogic#messageReceived}.
+	 * The dispatch may not allocate anything.
+	 */
+	@SuppressWarnings("unchecked")
+	public void testDispatch_Allocations() {
+		// Configure Test
+		TestDependencyContainer testContainer = new TestDependencyContainer();
+		IFactory factoryMock = testContainer.getFactory();
+		IRemoteCommunication rcMock = AndroidMock.createNiceMock(IRemoteCommunication.class);
+		AndroidMock.expect(factoryMock.createRemoteCommuncation(AndroidMock.same(testContainer),
+																AndroidMock.isA(IRemoteCommunicationListener.class)))
+				   .andReturn(rcMock);
+		AndroidMock.expect(factoryMock.createMessageHandler(AndroidMock.eq(CountingHandler.class),
+															AndroidMock.isA(ILogicHandlerFacade.class)))
+				   .andReturn(turnCarHandler)
+				   .andReturn(adjustSpeedHandler);
+		AndroidMock.replay(factoryMock, rcMock);
+		
+		LogicMock logic = new LogicMock(testContainer);
+		logic.registerMessageHandler(CountingHandler.class);
+		logic.registerMessageHandler(CountingHandler.class);
+		
+		// Warm up
+		dispatch(logic);
+		
+		// Run Test
+		Debug.startAllocCounting();
+		try {
+			Debug.resetThreadAllocCount();
+			dispatch(logic);
+			int dispatchAllocations = Debug.getThreadAllocCount();
+			
+			Debug.resetThreadAllocCount();
+			lookupByName();
+			int lookupAllocations = Debug.getThreadAllocCount();
+			
+			Log.i(LOG_TAG, String.format("Allocations for %d messages: dispatch by type id %d; lookup by name %d",
+										 Integer.valueOf(ITERATIONS),
+										 Integer.valueOf(dispatchAllocations),
+										 Integer.valueOf(lookupAllocations)));
+			
+			// Verify Test
+			assertEquals(0, dispatchAllocations);
+		} finally {
+			Debug.stopAllocCounting();
+		}
+		// Warm up and measurement: Half of the stream each.
+		assertEquals(ITERATIONS, turnCarHandler.count);
+		assertEquals(ITERATIONS, adjustSpeedHandler.count);
+		AndroidMock.verify(factoryMock);
+	}
+	
+	/**
+	 * Dispatches {@link #ITERATIONS} messages of the {@link #stream}.
+	 * @param logic The logic to test.
+	 */
+	private void dispatch(LogicMock logic) {
+		for(int i = 0; i < ITERATIONS; i++) {
+			logic.messageReceived(stream[i % stream.length]);
+		}
+	}
+	
+	/**
+	 * Reference: Looks up the handlers of {@link #ITERATIONS} messages
+	 * by canonical class name in a {@link TreeMap}.
+	 */
+	private void lookupByName() {
+		SortedMap<String, IMessageHandler<?>> handlers = new TreeMap<String, IMessageHandler<?>>();
+		handlers.put(TurnCarMessage.class.getCanonicalName(), turnCarHandler);
+		handlers.put(AdjustSpeedMessage.class.getCanonicalName(), adjustSpeedHandler);
+		for(int i = 0; i < ITERATIONS; i++) {
+			assertNotNull(handlers.get(stream[i % stream.length].getClass().getCanonicalName()));
+		}
+	}
+	
+	/**
+	 * A {@link IMessageHandler}, that counts the handled messages.
+	 * @param <T> Type of the handled messages.
+	 */
+	private static class CountingHandler<T extends Message> implements IMessageHandler<T> {
+		
+		/**
+		 * Type of the handled messages.
+		 */
+		private final Class<T> messageType;
+		
+		/**
+		 * Number of handled messages.
+		 */
+		private int count;
+		
+		/**
+		 * Creates the handler.
+		 * @param messageType Type of the handled messages.
+		 */
+		public CountingHandler(Class<T> messageType) {
+			this.messageType = messageType;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Class<T> getMessageType() {
+			return messageType;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void handleMessage(T message) {
+			count++;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.common.test.utils;
+
+import java.util.Random;
+
+import to.sven.androidrccar.common.utils.CRC8;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Micro-benchmark for {@link CRC8}.
+ * Compares {@link CRC8#calc(byte[], int, int)}, which processes several bytes per iteration,
+ * with a loop over the lookup table, which processes one byte per iteration.
+ * Measures 16 byte frames (like the accessory messages) and 4 KB buffers
+ * and logs the time per byte.
+ * @author sven
+ */
+public class CRC8BenchmarkTest extends AndroidTestCase {
+	
+	/**
+	 * Tag for {@link Log}
+	 */
+	private static final String LOG_TAG = "CRC8BenchmarkTest";
+	
+	/**
+	 * Number of bytes, that are processed per measurement.
+	 */
+	private static final int BYTES_PER_MEASUREMENT = 16 * 1024 * 1024;
+	
+	/**
+	 * Compares both implementations on 16 byte frames.
+	 */
+	public void testFrames() {
+		benchmark(16);
+	}
+	
+	/**
+	 * Compares both implementations on 4 KB buffers.
+	 */
+	public void testBuffers() {
+		benchmark(4096);
+	}
+	
+	/**
+	 * Measures both implementations on buffers with the length {@code len}.
+	 * @param len Length of the buffer
+	 */
+	private static void benchmark(int len) {
+		byte[] data = new byte[len];
+		new Random(42).nextBytes(data);
+		int iterations = BYTES_PER_MEASUREMENT / len;
+		
+		// Warm up
+		int referenceResult = runReference(data, iterations);
+		int slicingResult = runSlicing(data, iterations);
+		assertEquals(referenceResult, slicingResult);
+		
+		// Run Test
+		long start = System.nanoTime();
+		runReference(data, iterations);
+		long referenceTime = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		runSlicing(data, iterations);
+		long slicingTime = System.nanoTime() - start;
+		
+		Log.i(LOG_TAG, String.format("%d byte buffers: table loop %.3f ns/byte; slicing %.3f ns/byte",
+									 Integer.valueOf(len),
+									 Double.valueOf((double) referenceTime / BYTES_PER_MEASUREMENT),
+									 Double.valueOf((double) slicingTime / BYTES_PER_MEASUREMENT)));
+	}
+	
+	/**
+	 * Calculates the CRC of {@code data} {@code iterations} times with the table loop.
+	 * @param data The bytes
+	 * @param iterations Number of calculations
+	 * @return A sum of the results, so the calculations can't be omitted.
+	 */
+	private static int runReference(byte[] data, int iterations) {
+		int sum = 0;
+		for(int i = 0; i < iterations; i++) {
+			sum += CRC8Test.reference(data, 0, data.length);
+		}
+		return sum;
+	}
+	
+	/**
+	 * Calculates the CRC of {@code data} {@code iterations} times with {@link CRC8#calc(byte[], int, int)}.
+	 * @param data The bytes
+	 * @param iterations Number of calculations
+	 * @return A sum of the results, so the calculations can't be omitted.
+	 */
+	private static int runSlicing(byte[] data, int iterations) {
+		int sum = 0;
+		for(int i = 0; i < iterations; i++) {
+			sum += CRC8.calc(data, 0, data.length);
+		}
+		return sum;
+	}
+}
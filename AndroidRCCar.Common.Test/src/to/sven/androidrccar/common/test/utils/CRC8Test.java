@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.common.test.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import to.sven.androidrccar.common.utils.CRC8;
+import android.test.AndroidTestCase;
+
+/**
+ * This class should test the behavior of the {@link CRC8}.
+ * 
+ * The results are compared with a plain loop over the lookup table,
+ * which processes one byte per iteration.
+ * @author sven
+ *
+ */
+public class CRC8Test extends AndroidTestCase {
+	
+	/**
+	 * Random numbers with a fixed seed, so every run is equal.
+	 */
+	private final Random random = new Random(42);
+	
+	/**
+	 * Tests {@link CRC8#calc(byte[], int)} with the check value of CRC-8 (poly 0x07, init 0).
+	 */
+	public void testCalc_checkValue() {
+		byte[] data = "123456789".getBytes();
+		assertEquals((byte) 0xF4, CRC8.calc(data, data.length));
+	}
+	
+	/**
+	 * Tests {@link CRC8#calc(byte[], int, int)}:
+	 * Compares every length from 0 to 64 at different offsets with the reference.
+	 */
+	public void testCalc_ranges() {
+		byte[] data = randomBytes(80);
+		for(int offset = 0; offset < 8; offset++) {
+			for(int len = 0; len <= 64; len++) {
+				assertEquals("offset " + offset + ", len " + len,
+							 reference(data, offset, len), CRC8.calc(data, offset, len));
+			}
+		}
+	}
+	
+	/**
+	 * Tests {@link CRC8#update(byte[], int, int, byte)}:
+	 * A buffer updated in chunks has the same CRC as the complete buffer.
+	 */
+	public void testUpdate_incremental() {
+		byte[] data = randomBytes(4096);
+		byte crc = 0;
+		int pos = 0;
+		while(pos < data.length) {
+			int len = Math.min(1 + random.nextInt(100), data.length - pos);
+			crc = CRC8.update(data, pos, len, crc);
+			pos += len;
+		}
+		assertEquals(reference(data, 0, data.length), crc);
+		assertEquals(crc, CRC8.calc(data, data.length));
+	}
+	
+	/**
+	 * Tests {@link CRC8#update(byte, byte)} and {@link CRC8#updateBlock}
+	 * with bytes above 0x7F.
+	 */
+	public void testUpdate_negativeBytes() {
+		byte[] data = new byte[] { (byte) 0x80, (byte) 0xFF, 0x01, (byte) 0xC3 };
+		byte crc = 0;
+		for(byte b : data) {
+			crc = CRC8.update(b, crc);
+		}
+		byte expected = reference(data, 0, data.length);
+		assertEquals(expected, crc);
+		assertEquals(expected, CRC8.updateBlock(data, data.length, (byte) 0));
+	}
+	
+	/**
+	 * Tests {@link CRC8#calc(ByteBuffer)} with heap, direct and read only buffers.
+	 * Only the remaining bytes are used and the position is moved to the limit.
+	 */
+	public void testCalc_byteBuffer() {
+		byte[] data = randomBytes(1000);
+		byte expected = reference(data, 10, 977);
+		
+		ByteBuffer heap = ByteBuffer.wrap(data);
+		ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+		direct.put(data);
+		ByteBuffer readOnly = heap.asReadOnlyBuffer();
+		ByteBuffer slice = ByteBuffer.wrap(data, 5, 990).slice();
+		
+		for(ByteBuffer buffer : new ByteBuffer[] { heap, direct, readOnly }) {
+			buffer.limit(987);
+			buffer.position(10);
+			assertEquals(expected, CRC8.calc(buffer));
+			assertEquals(987, buffer.position());
+		}
+		// The slice starts at index 5 of the array.
+		slice.position(5);
+		slice.limit(982);
+		assertEquals(expected, CRC8.calc(slice));
+	}
+	
+	/**
+	 * Tests {@link CRC8#calc(byte[], int, int)} with a range outside of the array.
+	 */
+	public void testCalc_invalidRange() {
+		byte[] data = new byte[16];
+		try {
+			CRC8.calc(data, 8, 9);
+			fail("IndexOutOfBoundsException expected.");
+		} catch(IndexOutOfBoundsException e) {
+			// Expected
+		}
+	}
+	
+	/**
+	 * Creates random bytes.
+	 * @param len Number of bytes
+	 * @return The bytes
+	 */
+	private byte[] randomBytes(int len) {
+		byte[] data = new byte[len];
+		random.nextBytes(data);
+		return data;
+	}
+	
+	/**
+	 * Reference implementation: One byte per iteration with {@link CRC8#update(byte, byte)}.
+	 * @param data The byte array
+	 * @param offset The index of the first byte
+	 * @param len The number of bytes
+	 * @return The CRC value
+	 */
+	static byte reference(byte[] data, int offset, int len) {
+		byte crc = 0;
+		for(int i = offset; i < offset + len; i++) {
+			crc = CRC8.update(data[i], crc);
+		}
+		return crc;
+	}
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.common.communication.contract;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
+
+/**
+ * Converts {@link Message}s into bytes for the wire and back.
+ * 
+ * Every codec must be recognizable by the first byte of an encoded message,
+ * so the receiver can decode messages without knowing the encoding of the sender.
+ * 
+ * A codec instance is used by one thread for encoding and one thread for decoding.
+ * @author sven
+ *
+ */
+public interface IMessageCodec {
+	
+	/**
+	 * The encoding that this codec implements.
+	 * @return The {@link MessageEncoding}
+	 */
+	public abstract MessageEncoding getEncoding();
+	
+	/**
+	 * Checks if the {@link Message} can be encoded by this codec.
+	 * @param message A {@link Message}
+	 * @return true, if {@link #encode} supports it.
+	 */
+	public abstract boolean canEncode(Message message);
+	
+	/**
+	 * Checks if a message that starts with {@code firstByte} was encoded by this codec.
+	 * @param firstByte The first byte of a message (0-255).
+	 * @return true, if {@link #decode} should be used for this message.
+	 */
+	public abstract boolean canDecode(int firstByte);
+	
+	/**
+	 * Encodes the {@link Message} and writes it (with one write) to the {@link OutputStream}.
+	 * @param message {@link Message} to encode. {@link #canEncode} must be true.
+	 * @param out Destination
+	 * @throws IOException Thrown if writing failed
+	 */
+	public abstract void encode(Message message, OutputStream out) throws IOException;
+	
+	/**
+	 * Reads exactly one {@link Message} from the {@link InputStream}.
+	 * @param firstByte The first byte of the message, that is already read from {@code in}.
+	 * @param in The source. Nothing after the end of the message will be consumed.
+	 * @return The decoded {@link Message}.
+	 * @throws IOException Thrown if reading failed, the stream ends within the message
+	 * 					   or the message is invalid.
+	 */
+	public abstract Message decode(int firstByte, InputStream in) throws IOException;
+}
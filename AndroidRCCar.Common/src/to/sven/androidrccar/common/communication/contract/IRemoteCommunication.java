@@ -24,6 +24,7 @@ import java.io.IOException;
 
 import to.sven.androidrccar.common.communication.contract.IRemoteCommunicationListener;
 import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
 
 /**
  * This interface handles the communication with the other Android device (Host or Client).
@@ -47,10 +48,20 @@ public interface IRemoteCommunication extends Closeable {
 	public abstract void close() throws IOException;
 
 	/**
-	 * Encodes the {@link Message} as JSON and sends it to the partner.
+	 * Encodes the {@link Message} in the current {@link MessageEncoding} and sends it to the partner.
+	 * Messages that are not supported by the current {@link MessageEncoding} are send as JSON.
 	 * @param message {@link Message} to Encode
 	 * @throws IOException Thrown if sending failed
+	 * @see #setMessageEncoding(MessageEncoding)
 	 */
 	public abstract void sendMessage(Message message) throws IOException;
+	
+	/**
+	 * Sets the {@link MessageEncoding} for all following {@link #sendMessage} calls.
+	 * Received messages are decoded in any {@link MessageEncoding}.
+	 * Default is {@link MessageEncoding#json}.
+	 * @param encoding The {@link MessageEncoding} that was negotiated with the partner.
+	 */
+	public abstract void setMessageEncoding(MessageEncoding encoding);
 
 }
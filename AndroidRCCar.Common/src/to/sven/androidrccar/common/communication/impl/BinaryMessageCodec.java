@@ -0,0 +1,428 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.common.communication.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import to.sven.androidrccar.common.communication.contract.IMessageCodec;
+import to.sven.androidrccar.common.communication.model.AdjustSpeedMessage;
+import to.sven.androidrccar.common.communication.model.AuthenticationFailedMessage;
+import to.sven.androidrccar.common.communication.model.AuthenticationMessage;
+import to.sven.androidrccar.common.communication.model.BatteryPowerMessage;
+import to.sven.androidrccar.common.communication.model.CameraConnectionParameterMessage;
+import to.sven.androidrccar.common.communication.model.CyclicUpdateFeatureType;
+import to.sven.androidrccar.common.communication.model.FeatureMessage;
+import to.sven.androidrccar.common.communication.model.GreetingMessage;
+import to.sven.androidrccar.common.communication.model.LocationMessage;
+import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
+import to.sven.androidrccar.common.communication.model.RequestCameraMessage;
+import to.sven.androidrccar.common.communication.model.RotateCameraMessage;
+import to.sven.androidrccar.common.communication.model.SetUpCyclicUpdateMessage;
+import to.sven.androidrccar.common.communication.model.TurnCarMessage;
+import to.sven.androidrccar.common.exception.InvalidMessageException;
+
+/**
+ * Encodes {@link Message}s as one tag byte followed by a fixed layout of the members
+ * (big-endian, like {@link DataOutputStream}). This is the {@link MessageEncoding#binary}.
+ * 
+ * A {@link TurnCarMessage} needs 5 bytes instead of about 90 bytes as JSON.
+ * 
+ * Layouts:
+ * <ul>
+ * <li>Booleans of a message are packed as bits into one flag byte.</li>
+ * <li>Enums are encoded by their ordinal as byte, -1 means null.</li>
+ * <li>Strings are a boolean (false means null) followed by {@link DataOutputStream#writeUTF}.</li>
+ * </ul>
+ * The tags and layouts may not changed. New messages get new tags.
+ * The tags start at {@code 0x80}, so they can't be confused with the '{' of a JSON message.
+ * @author sven
+ */
+public class BinaryMessageCodec implements IMessageCodec {
+	
+	/**
+	 * {@link GreetingMessage}: int version, String authSalt
+	 */
+	private static final byte TAG_GREETING = (byte) 0x81;
+	
+	/**
+	 * {@link AuthenticationMessage}: String passwordHash, enum encoding
+	 */
+	private static final byte TAG_AUTHENTICATION = (byte) 0x82;
+	
+	/**
+	 * {@link AuthenticationFailedMessage}: String reason
+	 */
+	private static final byte TAG_AUTHENTICATION_FAILED = (byte) 0x83;
+	
+	/**
+	 * {@link FeatureMessage}: byte flags (bit 0: camera, 1: adjustableSpeed, 2: driveBackward,
+	 * 3: location, 4: bearing, 5: speed, 6: batteryPower),
+	 * float cameraPanMin, float cameraPanMax, float cameraTiltMin, float cameraTiltMax
+	 */
+	private static final byte TAG_FEATURE = (byte) 0x84;
+	
+	/**
+	 * {@link SetUpCyclicUpdateMessage}: enum featureType, int interval
+	 */
+	private static final byte TAG_SET_UP_CYCLIC_UPDATE = (byte) 0x85;
+	
+	/**
+	 * {@link BatteryPowerMessage}: float chargingLevel
+	 */
+	private static final byte TAG_BATTERY_POWER = (byte) 0x86;
+	
+	/**
+	 * {@link LocationMessage}: byte flags (bit 0: hasAltitude, 1: hasAccuracy, 2: hasBearing, 3: hasSpeed),
+	 * double latitude, double longitude, double altitude, float accuracy, float bearing, float speed
+	 */
+	private static final byte TAG_LOCATION = (byte) 0x87;
+	
+	/**
+	 * {@link RequestCameraMessage}: boolean activateCamera
+	 */
+	private static final byte TAG_REQUEST_CAMERA = (byte) 0x88;
+	
+	/**
+	 * {@link CameraConnectionParameterMessage}: int port, String scheme, String path
+	 */
+	private static final byte TAG_CAMERA_CONNECTION_PARAMETER = (byte) 0x89;
+	
+	/**
+	 * {@link TurnCarMessage}: float rotation
+	 */
+	private static final byte TAG_TURN_CAR = (byte) 0x8A;
+	
+	/**
+	 * {@link AdjustSpeedMessage}: float speed
+	 */
+	private static final byte TAG_ADJUST_SPEED = (byte) 0x8B;
+	
+	/**
+	 * {@link RotateCameraMessage}: float pan, float tilt
+	 */
+	private static final byte TAG_ROTATE_CAMERA = (byte) 0x8C;
+	
+	/**
+	 * Maps the {@link Message} classes to their tag.
+	 */
+	private static final Map<Class<? extends Message>, Byte> tags = new HashMap<Class<? extends Message>, Byte>();
+	
+	static {
+		putTag(GreetingMessage.class, TAG_GREETING);
+		putTag(AuthenticationMessage.class, TAG_AUTHENTICATION);
+		putTag(AuthenticationFailedMessage.class, TAG_AUTHENTICATION_FAILED);
+		putTag(FeatureMessage.class, TAG_FEATURE);
+		putTag(SetUpCyclicUpdateMessage.class, TAG_SET_UP_CYCLIC_UPDATE);
+		putTag(BatteryPowerMessage.class, TAG_BATTERY_POWER);
+		putTag(LocationMessage.class, TAG_LOCATION);
+		putTag(RequestCameraMessage.class, TAG_REQUEST_CAMERA);
+		putTag(CameraConnectionParameterMessage.class, TAG_CAMERA_CONNECTION_PARAMETER);
+		putTag(TurnCarMessage.class, TAG_TURN_CAR);
+		putTag(AdjustSpeedMessage.class, TAG_ADJUST_SPEED);
+		putTag(RotateCameraMessage.class, TAG_ROTATE_CAMERA);
+	}
+	
+	/**
+	 * Adds a entry to {@link #tags}.
+	 * @param messageClass The class of the {@link Message}
+	 * @param tag The tag
+	 */
+	private static void putTag(Class<? extends Message> messageClass, byte tag) {
+		tags.put(messageClass, Byte.valueOf(tag));
+	}
+	
+	/**
+	 * Holds the currently encoded message, so it can be written at once. Will be reused.
+	 */
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+	
+	/**
+	 * Writes into the {@link #buffer}.
+	 */
+	private final DataOutputStream bufferOut = new DataOutputStream(buffer);
+	
+	/**
+	 * The {@link InputStream} that was passed to the last {@link #decode} call.
+	 */
+	private InputStream lastIn;
+	
+	/**
+	 * Reads from {@link #lastIn}.
+	 */
+	private DataInputStream dataIn;
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageEncoding getEncoding() {
+		return MessageEncoding.binary;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean canEncode(Message message) {
+		return tags.containsKey(message.getClass());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean canDecode(int firstByte) {
+		return firstByte >= 0x80;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void encode(Message message, OutputStream out) throws IOException {
+		Byte tag = tags.get(message.getClass());
+		if(tag == null) {
+			throw new InvalidMessageException("No binary layout for " + message.getClass().getName() + ".");
+		}
+		
+		buffer.reset();
+		DataOutputStream o = bufferOut;
+		o.writeByte(tag.byteValue());
+		
+		switch(tag.byteValue()) {
+		case TAG_GREETING: {
+			GreetingMessage m = (GreetingMessage) message;
+			o.writeInt(m.version);
+			writeString(o, m.authSalt);
+			break;
+		}
+		case TAG_AUTHENTICATION: {
+			AuthenticationMessage m = (AuthenticationMessage) message;
+			writeString(o, m.passwordHash);
+			writeEnum(o, m.encoding);
+			break;
+		}
+		case TAG_AUTHENTICATION_FAILED:
+			writeString(o, ((AuthenticationFailedMessage) message).reason);
+			break;
+		case TAG_FEATURE: {
+			FeatureMessage m = (FeatureMessage) message;
+			o.writeByte(flags(m.camera, m.adjustableSpeed, m.driveBackward,
+							  m.location, m.bearing, m.speed, m.batteryPower));
+			o.writeFloat(m.cameraPanMin);
+			o.writeFloat(m.cameraPanMax);
+			o.writeFloat(m.cameraTiltMin);
+			o.writeFloat(m.cameraTiltMax);
+			break;
+		}
+		case TAG_SET_UP_CYCLIC_UPDATE: {
+			SetUpCyclicUpdateMessage m = (SetUpCyclicUpdateMessage) message;
+			writeEnum(o, m.featureType);
+			o.writeInt(m.interval);
+			break;
+		}
+		case TAG_BATTERY_POWER:
+			o.writeFloat(((BatteryPowerMessage) message).chargingLevel);
+			break;
+		case TAG_LOCATION: {
+			LocationMessage m = (LocationMessage) message;
+			o.writeByte(flags(m.hasAltitude, m.hasAccuracy, m.hasBearing, m.hasSpeed));
+			o.writeDouble(m.latitude);
+			o.writeDouble(m.longitude);
+			o.writeDouble(m.altitude);
+			o.writeFloat(m.accuracy);
+			o.writeFloat(m.bearing);
+			o.writeFloat(m.speed);
+			break;
+		}
+		case TAG_REQUEST_CAMERA:
+			o.writeBoolean(((RequestCameraMessage) message).activateCamera);
+			break;
+		case TAG_CAMERA_CONNECTION_PARAMETER: {
+			CameraConnectionParameterMessage m = (CameraConnectionParameterMessage) message;
+			o.writeInt(m.port);
+			writeString(o, m.scheme);
+			writeString(o, m.path);
+			break;
+		}
+		case TAG_TURN_CAR:
+			o.writeFloat(((TurnCarMessage) message).rotation);
+			break;
+		case TAG_ADJUST_SPEED:
+			o.writeFloat(((AdjustSpeedMessage) message).speed);
+			break;
+		case TAG_ROTATE_CAMERA: {
+			RotateCameraMessage m = (RotateCameraMessage) message;
+			o.writeFloat(m.pan);
+			o.writeFloat(m.tilt);
+			break;
+		}
+		}
+		
+		buffer.writeTo(out);
+		out.flush();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Message decode(int firstByte, InputStream in) throws IOException {
+		if(in != lastIn) {
+			lastIn = in;
+			dataIn = new DataInputStream(in);
+		}
+		DataInputStream i = dataIn;
+		
+		switch((byte) firstByte) {
+		case TAG_GREETING:
+			return new GreetingMessage(i.readInt(), readString(i));
+		case TAG_AUTHENTICATION:
+			return new AuthenticationMessage(readString(i),
+											 readEnum(i, MessageEncoding.values()));
+		case TAG_AUTHENTICATION_FAILED:
+			return new AuthenticationFailedMessage(readString(i));
+		case TAG_FEATURE: {
+			int flags = i.readUnsignedByte();
+			return new FeatureMessage(isSet(flags, 0),
+									  i.readFloat(), i.readFloat(), i.readFloat(), i.readFloat(),
+									  isSet(flags, 1), isSet(flags, 2), isSet(flags, 3),
+									  isSet(flags, 4), isSet(flags, 5), isSet(flags, 6));
+		}
+		case TAG_SET_UP_CYCLIC_UPDATE:
+			return new SetUpCyclicUpdateMessage(readEnum(i, CyclicUpdateFeatureType.values()),
+												i.readInt());
+		case TAG_BATTERY_POWER:
+			return new BatteryPowerMessage(i.readFloat());
+		case TAG_LOCATION: {
+			int flags = i.readUnsignedByte();
+			double latitude = i.readDouble();
+			double longitude = i.readDouble();
+			double altitude = i.readDouble();
+			float accuracy = i.readFloat();
+			float bearing = i.readFloat();
+			float speed = i.readFloat();
+			return new LocationMessage(latitude, longitude,
+									   isSet(flags, 0), altitude,
+									   isSet(flags, 1), accuracy,
+									   isSet(flags, 2), bearing,
+									   isSet(flags, 3), speed);
+		}
+		case TAG_REQUEST_CAMERA:
+			return new RequestCameraMessage(i.readBoolean());
+		case TAG_CAMERA_CONNECTION_PARAMETER:
+			return new CameraConnectionParameterMessage(i.readInt(), readString(i), readString(i));
+		case TAG_TURN_CAR:
+			return new TurnCarMessage(i.readFloat());
+		case TAG_ADJUST_SPEED:
+			return new AdjustSpeedMessage(i.readFloat());
+		case TAG_ROTATE_CAMERA:
+			return new RotateCameraMessage(i.readFloat(), i.readFloat());
+		default:
+			throw new InvalidMessageException(String.format("Unknown binary message tag 0x%02x.", Integer.valueOf(firstByte)));
+		}
+	}
+	
+	/**
+	 * Packs booleans into a flag byte. The first value is bit 0.
+	 * @param values The booleans (max. 8)
+	 * @return The flag byte
+	 */
+	private static int flags(boolean... values) {
+		int flags = 0;
+		for(int bit = 0; bit < values.length; bit++) {
+			if(values[bit]) {
+				flags |= 1 << bit;
+			}
+		}
+		return flags;
+	}
+	
+	/**
+	 * Checks a bit in a flag byte.
+	 * @param flags The flag byte
+	 * @param bit The number of the bit
+	 * @return true, if the bit is set.
+	 */
+	private static boolean isSet(int flags, int bit) {
+		return (flags & (1 << bit)) != 0;
+	}
+	
+	/**
+	 * Writes a nullable {@link String}.
+	 * @param out Destination
+	 * @param value The value or null
+	 * @throws IOException Thrown if writing failed
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if(value != null) {
+			out.writeUTF(value);
+		}
+	}
+	
+	/**
+	 * Reads a nullable {@link String}.
+	 * @param in Source
+	 * @return The value or null
+	 * @throws IOException Thrown if reading failed
+	 */
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+	
+	/**
+	 * Writes a nullable enum value by its ordinal.
+	 * @param out Destination
+	 * @param value The value or null
+	 * @throws IOException Thrown if writing failed
+	 */
+	private static void writeEnum(DataOutputStream out, Enum<?> value) throws IOException {
+		out.writeByte(value == null ? -1 : value.ordinal());
+	}
+	
+	/**
+	 * Reads a nullable enum value by its ordinal.
+	 * @param <E> The enum type
+	 * @param in Source
+	 * @param values All values of the enum type.
+	 * @return The value or null
+	 * @throws IOException Thrown if reading failed or the ordinal is unknown.
+	 */
+	private static <E extends Enum<E>> E readEnum(DataInputStream in, E[] values) throws IOException {
+		byte ordinal = in.readByte();
+		if(ordinal < 0) {
+			return null;
+		}
+		if(ordinal >= values.length) {
+			throw new InvalidMessageException("Unknown ordinal " + ordinal + " of " + 
+											  values.getClass().getComponentType().getSimpleName() + ".");
+		}
+		return values[ordinal];
+	}
+}
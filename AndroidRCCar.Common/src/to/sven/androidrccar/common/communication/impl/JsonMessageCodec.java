@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.common.communication.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import to.sven.androidrccar.common.communication.contract.IMessageCodec;
+import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
+import to.sven.androidrccar.common.exception.InvalidMessageException;
+
+import com.fasterxml.jackson.core.JsonGenerator.Feature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Encodes {@link Message}s as JSON objects with the class name as {@code @messageType} property.
+ * This is the {@link MessageEncoding#json} and understood by every version of Host and Client.
+ * @author sven
+ */
+public class JsonMessageCodec implements IMessageCodec {
+	
+	/**
+	 * Initial size of {@link #buffer}.
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 256;
+	
+	/**
+	 * For (De-)Serialization of {@link Message}s into JSON.
+	 */
+	private final ObjectMapper jsonMapper = new ObjectMapper();
+	
+	/**
+	 * Holds the JSON object that is currently read by {@link #decode}.
+	 * Will be reused for every message and grows if needed.
+	 */
+	private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+	
+	/**
+	 * Default Constructor.
+	 */
+	public JsonMessageCodec() {
+		jsonMapper.configure(Feature.AUTO_CLOSE_TARGET, false);
+		jsonMapper.configure(SerializationFeature.CLOSE_CLOSEABLE, false);
+		jsonMapper.configure(SerializationFeature.FLUSH_AFTER_WRITE_VALUE, true);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageEncoding getEncoding() {
+		return MessageEncoding.json;
+	}
+	
+	/**
+	 * Every {@link Message} can be encoded as JSON.
+	 */
+	@Override
+	public boolean canEncode(Message message) {
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean canDecode(int firstByte) {
+		return firstByte == '{';
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void encode(Message message, OutputStream out) throws IOException {
+		jsonMapper.writeValue(out, message);
+	}
+	
+	/**
+	 * Reads the bytes up to the closing brace of the JSON object into the {@link #buffer}
+	 * and deserializes them afterwards.
+	 * A Jackson parser directly on the stream would read ahead
+	 * and swallow the beginning of the next message, which may be in an other encoding.
+	 */
+	@Override
+	public Message decode(int firstByte, InputStream in) throws IOException {
+		if(!canDecode(firstByte)) {
+			throw new InvalidMessageException("A JSON message must start with '{'.");
+		}
+		
+		buffer[0] = (byte) firstByte;
+		int length = 1;
+		int depth = 1;
+		boolean inString = false;
+		boolean escaped = false;
+		
+		while(depth > 0) {
+			int b = in.read();
+			if(b < 0) {
+				throw new EOFException("Stream ended within a JSON message.");
+			}
+			
+			if(length == buffer.length) {
+				byte[] newBuffer = new byte[buffer.length * 2];
+				System.arraycopy(buffer, 0, newBuffer, 0, length);
+				buffer = newBuffer;
+			}
+			buffer[length++] = (byte) b;
+			
+			if(inString) {
+				if(escaped) {
+					escaped = false;
+				} else if(b == '\\') {
+					escaped = true;
+				} else if(b == '"') {
+					inString = false;
+				}
+			} else if(b == '"') {
+				inString = true;
+			} else if(b == '{') {
+				depth++;
+			} else if(b == '}') {
+				depth--;
+			}
+		}
+		
+		return jsonMapper.readValue(buffer, 0, length, Message.class);
+	}
+}
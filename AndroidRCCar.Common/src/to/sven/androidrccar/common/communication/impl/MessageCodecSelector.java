@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.common.communication.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import to.sven.androidrccar.common.communication.contract.IMessageCodec;
+import to.sven.androidrccar.common.communication.contract.IRemoteCommunication;
+import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
+import to.sven.androidrccar.common.exception.InvalidMessageException;
+
+/**
+ * Selects the {@link IMessageCodec} for sending (by the negotiated {@link MessageEncoding})
+ * and for receiving (by the first byte of the message).
+ * Shared by the {@link IRemoteCommunication} implementations.
+ * @author sven
+ */
+class MessageCodecSelector {
+	
+	/**
+	 * For (De-)Serialization of {@link Message}s into JSON.
+	 */
+	private final IMessageCodec jsonCodec = new JsonMessageCodec();
+	
+	/**
+	 * For (De-)Serialization of {@link Message}s into the {@link MessageEncoding#binary}.
+	 */
+	private final IMessageCodec binaryCodec = new BinaryMessageCodec();
+	
+	/**
+	 * The codec that is used for sending.
+	 * @see #setMessageEncoding(MessageEncoding)
+	 */
+	private volatile IMessageCodec sendCodec = jsonCodec;
+	
+	/**
+	 * @see IRemoteCommunication#setMessageEncoding(MessageEncoding)
+	 * @param encoding The {@link MessageEncoding} for sending.
+	 */
+	void setMessageEncoding(MessageEncoding encoding) {
+		sendCodec = (encoding == MessageEncoding.binary) ? binaryCodec : jsonCodec;
+	}
+	
+	/**
+	 * Encodes the {@link Message} with the codec for sending.
+	 * Messages that are not supported by it are encoded as JSON.
+	 * @param message {@link Message} to encode
+	 * @param out Destination
+	 * @throws IOException Thrown if writing failed
+	 */
+	void encode(Message message, OutputStream out) throws IOException {
+		IMessageCodec codec = sendCodec;
+		if(!codec.canEncode(message)) {
+			codec = jsonCodec;
+		}
+		codec.encode(message, out);
+	}
+	
+	/**
+	 * Reads the next {@link Message} from the {@link InputStream}.
+	 * The encoding is detected by the first byte of the message.
+	 * @param in The source
+	 * @return The {@link Message} or null, if the stream ended before a new message.
+	 * @throws IOException Thrown if reading failed or the message is invalid.
+	 */
+	Message decode(InputStream in) throws IOException {
+		int firstByte;
+		do {
+			firstByte = in.read();
+		} while(isWhitespace(firstByte));
+		
+		if(firstByte < 0) {
+			return null;
+		} else if(binaryCodec.canDecode(firstByte)) {
+			return binaryCodec.decode(firstByte, in);
+		} else if(jsonCodec.canDecode(firstByte)) {
+			return jsonCodec.decode(firstByte, in);
+		}
+		throw new InvalidMessageException(String.format("Unknown message encoding (first byte: 0x%02x).", Integer.valueOf(firstByte)));
+	}
+	
+	/**
+	 * JSON allows whitespace between the messages.
+	 * @param b A byte read from the {@link InputStream}
+	 * @return true, if {@code b} is whitespace.
+	 */
+	private static boolean isWhitespace(int b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+	}
+}
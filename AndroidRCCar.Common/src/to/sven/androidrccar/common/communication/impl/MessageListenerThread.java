@@ -19,20 +19,14 @@
  ******************************************************************************/
 package to.sven.androidrccar.common.communication.impl;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
-import java.util.Iterator;
 
 import to.sven.androidrccar.common.communication.impl.RemoteCommunication;
 import to.sven.androidrccar.common.communication.model.Message;
 
-import android.os.Handler;
-
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 /**
  * A {@link Thread}, that wait for data on input stream and converts it to a {@link Message} and tells it to the initiator.
  * @author sven
@@ -45,37 +39,33 @@ class MessageListenerThread extends Thread {
 	private final RemoteCommunication initiator;
 
 	/**
-	 * Handler for posting back received messages.
+	 * For posting back received messages (into the main thread).
 	 */
-	private Handler handler;
+	private final MessagePoster poster;
 	
 	/**
 	 * Default constructor.
 	 * @param initiator The one, that want to know when something happen.
-	 * @param handler For post back messages to the {@link RemoteCommunication} (into the main thread).
+	 * @param poster For post back messages to the listener of the {@link RemoteCommunication} (into the main thread).
 	 */
-	public MessageListenerThread(RemoteCommunication initiator, Handler handler) {
+	public MessageListenerThread(RemoteCommunication initiator, MessagePoster poster) {
 		this.initiator = initiator;
-		this.handler = handler;
+		this.poster = poster;
 	}
 	
 	/**
 	 * Converts the data from {@link InputStream} of {@link Socket} from
-	 * JSON format into a concrete {@link Message}.
+	 * JSON or binary format into a concrete {@link Message}.
+	 * @see RemoteCommunication#readMessage(InputStream)
 	 */
 	@Override
 	public void run() {
 		try {
-			InputStream inputStream = initiator.getSocket().getInputStream();
-			ObjectMapper objectMapper = initiator.getJsonObjectMapper();
-			JsonFactory factory = objectMapper.getJsonFactory();
+			InputStream inputStream = new BufferedInputStream(initiator.getSocket().getInputStream());
 			
-			JsonParser jsonParser = factory.createJsonParser(inputStream);
-			Iterator<Message> iterator = jsonParser.readValuesAs(Message.class);
-			
-			while (!isInterrupted() && iterator.hasNext()) {
-				Message msg = iterator.next();
-				messageRecived(msg);
+			Message msg;
+			while (!isInterrupted() && (msg = initiator.readMessage(inputStream)) != null) {
+				poster.post(msg);
 			}
 			
 			if(!isInterrupted()) {
@@ -83,34 +73,7 @@ class MessageListenerThread extends Thread {
 				throw new IOException("Unexpected close of InputStream.");
 			}
 		} catch (Exception e) {
-			connectionProblem(e);
+			poster.postConnectionProblem(e);
 		}
 	}
-	
-	/**
-	 * {@link Handler#post} a received {@link Message} to the {@link #initiator} (into the main thread). 
-	 * @param msg The received {@link Message}
-	 */
-	private void messageRecived(final Message msg) {
-		handler.post(new Runnable() {
-			@Override
-			public void run() {
-				initiator.messageRecived(msg);
-			}
-		});
-	}
-	
-	/**
-	 * {@link Handler#post} to the {@link #initiator} (into the main thread)
-	 * that an {@link RemoteCommunication#connectionProblem} occurred.
-	 * @param e The Problem
-	 */
-	private void connectionProblem(final Exception e) {
-		handler.post(new Runnable() {
-			@Override
-			public void run() {
-				initiator.connectionProblem(e);
-			}
-		});
-	}
 }
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.common.communication.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import to.sven.androidrccar.common.communication.contract.IRemoteCommunicationListener;
+import to.sven.androidrccar.common.communication.model.Message;
+import android.os.Handler;
+
+/**
+ * Hands received {@link Message}s from a reading thread over to the main thread.
+ * 
+ * Instead of posting a new {@link Runnable} for every message, the messages are
+ * put into a fixed size queue and this object is posted once for all messages,
+ * that arrived until it runs. So no objects are allocated per message.
+ * 
+ * @author sven
+ */
+class MessagePoster implements Runnable {
+	
+	/**
+	 * Capacity of the {@link #queue}. If the main thread doesn't keep up,
+	 * the reading thread waits.
+	 */
+	static final int QUEUE_CAPACITY = 64;
+	
+	/**
+	 * Received messages that wait for the main thread.
+	 */
+	private final BlockingQueue<Message> queue = new ArrayBlockingQueue<Message>(QUEUE_CAPACITY);
+	
+	/**
+	 * True, if this object is posted to the {@link #handler} and didn't run yet.
+	 */
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	
+	/**
+	 * Will be informed about the messages.
+	 */
+	private final IRemoteCommunicationListener listener;
+	
+	/**
+	 * Handler of the main thread.
+	 */
+	private final Handler handler;
+	
+	/**
+	 * Default constructor.
+	 * @param listener Will be informed about the messages (in the main thread).
+	 * @param handler Handler of the main thread.
+	 */
+	public MessagePoster(IRemoteCommunicationListener listener, Handler handler) {
+		this.listener = listener;
+		this.handler = handler;
+	}
+	
+	/**
+	 * Hands a message over to the main thread.
+	 * Called from the reading thread.
+	 * @param message The received {@link Message}
+	 * @throws InterruptedException The thread was interrupted while the queue was full.
+	 */
+	public void post(Message message) throws InterruptedException {
+		queue.put(message);
+		if(scheduled.compareAndSet(false, true)) {
+			handler.post(this);
+		}
+	}
+	
+	/**
+	 * {@link Handler#post} to the {@link #listener} (into the main thread)
+	 * that something went wrong. The messages that were posted before are delivered first.
+	 * @param e The Problem
+	 */
+	public void postConnectionProblem(final Exception e) {
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				deliver();
+				listener.connectionProblem(e);
+			}
+		});
+	}
+	
+	/**
+	 * Delivers all queued messages to the {@link #listener}.
+	 * Runs in the main thread.
+	 */
+	@Override
+	public void run() {
+		scheduled.set(false);
+		deliver();
+	}
+	
+	/**
+	 * Delivers all queued messages to the {@link #listener}.
+	 */
+	private void deliver() {
+		Message message;
+		while((message = queue.poll()) != null) {
+			listener.messageReceived(message);
+		}
+	}
+}
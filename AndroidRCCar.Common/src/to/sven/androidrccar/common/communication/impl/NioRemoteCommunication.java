@@ -0,0 +1,260 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.common.communication.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import to.sven.androidrccar.common.communication.contract.IRemoteCommunication;
+import to.sven.androidrccar.common.communication.contract.IRemoteCommunicationListener;
+import to.sven.androidrccar.common.communication.model.AdjustSpeedMessage;
+import to.sven.androidrccar.common.communication.model.BatteryPowerMessage;
+import to.sven.androidrccar.common.communication.model.LocationMessage;
+import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
+import to.sven.androidrccar.common.communication.model.RotateCameraMessage;
+import to.sven.androidrccar.common.communication.model.TurnCarMessage;
+import to.sven.androidrccar.common.framework.IDependencyContainer;
+import android.os.Handler;
+
+/**
+ * This class handles the communication with the other Android device (Host or Client)
+ * with non-blocking I/O. Like {@link RemoteCommunication}, but:
+ * <ul>
+ * <li>{@link #sendMessage} only encodes the message and puts it into a bounded queue.
+ *     So the calling (main) thread doesn't block on the socket. If the queue is full,
+ *     a queued message with a stale value is replaced, else the caller waits for space.</li>
+ * <li>Reading and writing is done by one {@link NioSelectorThread}.</li>
+ * </ul>
+ * The {@link Socket} must be created by a {@link SocketChannel}.
+ * @author sven
+ */
+public class NioRemoteCommunication implements IRemoteCommunication {
+	
+	/**
+	 * Maximal number of encoded messages that wait for sending.
+	 */
+	static final int OUTBOUND_QUEUE_CAPACITY = 64;
+	
+	/**
+	 * Interval (in milliseconds) in which a waiting {@link #sendMessage} checks,
+	 * if the connection is still alive.
+	 */
+	private static final long OUTBOUND_WAIT_INTERVAL = 100;
+	
+	/**
+	 * Types of messages, that only carry the latest value (speed, rotation, camera position, cyclic updates).
+	 * A queued one is stale, when a newer one of the same type is sent.
+	 */
+	private static final Set<Class<? extends Message>> LATEST_VALUE_TYPES = new HashSet<Class<? extends Message>>(
+			Arrays.<Class<? extends Message>>asList(AdjustSpeedMessage.class,
+													TurnCarMessage.class,
+													RotateCameraMessage.class,
+													LocationMessage.class,
+													BatteryPowerMessage.class));
+	
+	/**
+	 * A TCP channel to the other Android device (Host/Client).
+	 */
+	private final SocketChannel channel;
+	
+	/**
+	 * @see NioSelectorThread
+	 */
+	private final NioSelectorThread selectorThread;
+	
+	/**
+	 * For (De-)Serialization of {@link Message}s.
+	 */
+	private final MessageCodecSelector codecs = new MessageCodecSelector();
+	
+	/**
+	 * The encoded messages that wait for sending.
+	 */
+	private final BlockingQueue<OutboundMessage> outboundQueue =
+			new ArrayBlockingQueue<OutboundMessage>(OUTBOUND_QUEUE_CAPACITY);
+	
+	/**
+	 * The currently encoded message. Will be reused.
+	 */
+	private final ByteArrayOutputStream encodeBuffer = new ByteArrayOutputStream(128);
+	
+	/**
+	 * Default Constructor.
+	 * @param dependencyContainer Needed to get the {@link Socket} and the {@link Handler}.
+	 * @param listener Will be informed, when something happen here.
+	 * @throws IllegalArgumentException The {@link Socket} was not created by a {@link SocketChannel}.
+	 * @throws IOException The {@link NioSelectorThread} can't be created.
+	 */
+	public NioRemoteCommunication(IDependencyContainer<?, ?> dependencyContainer,
+								  IRemoteCommunicationListener listener) throws IOException {
+		this.channel = dependencyContainer.getSocket().getChannel();
+		if(channel == null) {
+			throw new IllegalArgumentException("The socket must be created by a SocketChannel.");
+		}
+		selectorThread = new NioSelectorThread(this, channel, new MessagePoster(listener, dependencyContainer.getHandler()));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void startMessageListener() {
+		selectorThread.start();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		selectorThread.interrupt();
+		if(channel.isOpen()) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Encodes the message and puts it into the queue for the {@link NioSelectorThread}.
+	 * If the queue is full, because the partner doesn't read, a queued message of the same
+	 * latest value type is dropped. Else this method waits until there is space again.
+	 * @throws IOException Thrown if the connection is closed or failed while waiting.
+	 */
+	@Override
+	public void sendMessage(Message message) throws IOException {
+		encodeBuffer.reset();
+		codecs.encode(message, encodeBuffer);
+		OutboundMessage outbound = new OutboundMessage(message.getClass(),
+													   ByteBuffer.wrap(encodeBuffer.toByteArray()));
+		
+		if(!outboundQueue.offer(outbound)) {
+			if(!(LATEST_VALUE_TYPES.contains(outbound.type) && replaceStale(outbound))) {
+				waitForSpace(outbound);
+			}
+		}
+		selectorThread.wakeup();
+	}
+	
+	/**
+	 * Drops the oldest queued message of the same type and queues the new one.
+	 * @param outbound The new message.
+	 * @return false, if there is no queued message of the same type or the queue is still full.
+	 */
+	private boolean replaceStale(OutboundMessage outbound) {
+		for(OutboundMessage queued : outboundQueue) {
+			// The selector thread may have taken it meanwhile:
+			if(queued.type == outbound.type && outboundQueue.remove(queued)) {
+				return outboundQueue.offer(outbound);
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Waits until the {@link NioSelectorThread} made space in the queue and queues the message.
+	 * @param outbound The message.
+	 * @throws IOException The connection is closed or failed, or the caller was interrupted.
+	 */
+	private void waitForSpace(OutboundMessage outbound) throws IOException {
+		try {
+			while(!outboundQueue.offer(outbound, OUTBOUND_WAIT_INTERVAL, TimeUnit.MILLISECONDS)) {
+				if(!channel.isOpen() || selectorThread.getState() == Thread.State.TERMINATED) {
+					throw new IOException("The connection is closed.");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the partner to read.");
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setMessageEncoding(MessageEncoding encoding) {
+		codecs.setMessageEncoding(encoding);
+	}
+	
+	/**
+	 * Reads the next {@link Message} from the {@link InputStream}.
+	 * @param in The received bytes
+	 * @return The {@link Message} or null, if the stream ended before a new message.
+	 * @throws IOException Thrown if reading failed or the message is invalid or incomplete.
+	 * @see MessageCodecSelector#decode(InputStream)
+	 */
+	Message readMessage(InputStream in) throws IOException {
+		return codecs.decode(in);
+	}
+	
+	/**
+	 * The next encoded message to send.
+	 * @return The message or null, if there is nothing to send.
+	 */
+	ByteBuffer pollOutbound() {
+		OutboundMessage outbound = outboundQueue.poll();
+		return (outbound == null) ? null : outbound.data;
+	}
+	
+	/**
+	 * Checks if there are messages to send.
+	 * @return true, if {@link #pollOutbound()} returns a message.
+	 */
+	boolean hasOutbound() {
+		return !outboundQueue.isEmpty();
+	}
+	
+	/**
+	 * An encoded message in the {@link NioRemoteCommunication#outboundQueue}.
+	 */
+	private static class OutboundMessage {
+		
+		/**
+		 * The type of the {@link Message}.
+		 */
+		final Class<? extends Message> type;
+		
+		/**
+		 * The encoded {@link Message}.
+		 */
+		final ByteBuffer data;
+		
+		/**
+		 * Default constructor.
+		 * @param type The type of the {@link Message}.
+		 * @param data The encoded {@link Message}.
+		 */
+		OutboundMessage(Class<? extends Message> type, ByteBuffer data) {
+			this.type = type;
+			this.data = data;
+		}
+	}
+}
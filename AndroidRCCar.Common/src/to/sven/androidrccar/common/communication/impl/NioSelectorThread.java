@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.common.communication.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import to.sven.androidrccar.common.communication.model.Message;
+
+/**
+ * A {@link Thread}, that reads and writes the {@link SocketChannel} of a {@link NioRemoteCommunication}
+ * with a {@link Selector}. Received messages are posted to the initiator (into the main thread).
+ * @author sven
+ */
+class NioSelectorThread extends Thread {
+	
+	/**
+	 * Size of {@link #readBuffer} and {@link #writeBuffer}.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+	
+	/**
+	 * The one, that want to know when something happen.
+	 */
+	private final NioRemoteCommunication initiator;
+	
+	/**
+	 * The connection to the partner. Will be set to non-blocking.
+	 */
+	private final SocketChannel channel;
+	
+	/**
+	 * For posting back received messages (into the main thread).
+	 */
+	private final MessagePoster poster;
+	
+	/**
+	 * Waits for the {@link #channel}.
+	 */
+	private final Selector selector;
+	
+	/**
+	 * Destination for {@link SocketChannel#read}.
+	 */
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	
+	/**
+	 * Source for {@link SocketChannel#write}.
+	 */
+	private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	
+	/**
+	 * Received bytes, that are not decoded yet.
+	 */
+	private final InboundBuffer inbound = new InboundBuffer();
+	
+	/**
+	 * Encoded message that didn't fit completely into the {@link #writeBuffer}.
+	 */
+	private ByteBuffer currentOutbound;
+	
+	/**
+	 * Default constructor.
+	 * @param initiator The one, that want to know when something happen.
+	 * @param channel The connection to the partner.
+	 * @param poster For post back messages to the listener of the {@link NioRemoteCommunication} (into the main thread).
+	 * @throws IOException The {@link Selector} can't be opened.
+	 */
+	public NioSelectorThread(NioRemoteCommunication initiator, SocketChannel channel, MessagePoster poster) throws IOException {
+		this.initiator = initiator;
+		this.channel = channel;
+		this.poster = poster;
+		this.selector = Selector.open();
+	}
+	
+	/**
+	 * Wakes the thread up, so it sends the new outbound messages.
+	 */
+	public void wakeup() {
+		selector.wakeup();
+	}
+	
+	/**
+	 * Selects until the thread is interrupted or an error occurs.
+	 */
+	@Override
+	public void run() {
+		try {
+			channel.configureBlocking(false);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			
+			while(!isInterrupted()) {
+				if(selector.select() > 0) {
+					if(key.isReadable()) {
+						read();
+					}
+					selector.selectedKeys().clear();
+				}
+				write(key);
+			}
+		} catch (Exception e) {
+			if(!isInterrupted()) {
+				poster.postConnectionProblem(e);
+			}
+		} finally {
+			try {
+				selector.close();
+			} catch (IOException e) {
+				// Nothing to do.
+			}
+		}
+	}
+	
+	/**
+	 * Reads the available bytes and posts all complete messages.
+	 * @throws IOException The stream was closed or a message is invalid.
+	 * @throws InterruptedException The thread was interrupted while waiting for the main thread.
+	 */
+	private void read() throws IOException, InterruptedException {
+		int count = channel.read(readBuffer);
+		if(count < 0) {
+			// The stream was closed but the thread wasn't stopped. That's bad.
+			throw new IOException("Unexpected close of InputStream.");
+		}
+		readBuffer.flip();
+		inbound.append(readBuffer);
+		readBuffer.clear();
+		
+		while(true) {
+			inbound.mark(0);
+			Message msg;
+			try {
+				msg = initiator.readMessage(inbound);
+			} catch (EOFException e) {
+				// The message is incomplete, wait for the rest.
+				inbound.reset();
+				break;
+			}
+			if(msg == null) {
+				break;
+			}
+			poster.post(msg);
+		}
+		inbound.compact();
+	}
+	
+	/**
+	 * Writes as much outbound messages as the {@link #channel} accepts.
+	 * If something is left, the thread waits until the channel is writable again.
+	 * @param key The {@link SelectionKey} of the {@link #channel}.
+	 * @throws IOException Writing failed.
+	 */
+	private void write(SelectionKey key) throws IOException {
+		while(writeBuffer.hasRemaining()) {
+			if(currentOutbound == null || !currentOutbound.hasRemaining()) {
+				currentOutbound = initiator.pollOutbound();
+				if(currentOutbound == null) {
+					break;
+				}
+			}
+			if(currentOutbound.remaining() <= writeBuffer.remaining()) {
+				writeBuffer.put(currentOutbound);
+			} else {
+				int limit = currentOutbound.limit();
+				currentOutbound.limit(currentOutbound.position() + writeBuffer.remaining());
+				writeBuffer.put(currentOutbound);
+				currentOutbound.limit(limit);
+			}
+		}
+		
+		writeBuffer.flip();
+		if(writeBuffer.hasRemaining()) {
+			channel.write(writeBuffer);
+		}
+		writeBuffer.compact();
+		
+		boolean pending = writeBuffer.position() > 0
+						  || (currentOutbound != null && currentOutbound.hasRemaining())
+						  || initiator.hasOutbound();
+		key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+	}
+	
+	/**
+	 * Holds the received bytes until a message is complete.
+	 * Supports {@link #mark} and {@link #reset()} to read an incomplete message again.
+	 */
+	private static class InboundBuffer extends ByteArrayInputStream {
+		
+		/**
+		 * Creates an empty buffer.
+		 */
+		public InboundBuffer() {
+			super(new byte[BUFFER_SIZE], 0, 0);
+		}
+		
+		/**
+		 * Appends the remaining bytes of the {@link ByteBuffer}. The buffer grows if needed.
+		 * @param src The received bytes
+		 */
+		public void append(ByteBuffer src) {
+			int length = src.remaining();
+			if(count + length > buf.length) {
+				byte[] newBuf = new byte[Math.max(buf.length * 2, count + length)];
+				System.arraycopy(buf, 0, newBuf, 0, count);
+				buf = newBuf;
+			}
+			src.get(buf, count, length);
+			count += length;
+		}
+		
+		/**
+		 * Removes the already read bytes.
+		 */
+		public void compact() {
+			if(pos > 0) {
+				System.arraycopy(buf, pos, buf, 0, count - pos);
+				count -= pos;
+				pos = 0;
+				mark = 0;
+			}
+		}
+	}
+}
@@ -20,22 +20,21 @@
 package to.sven.androidrccar.common.communication.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.Socket;
 
+import to.sven.androidrccar.common.communication.contract.IMessageCodec;
 import to.sven.androidrccar.common.communication.contract.IRemoteCommunication;
 import to.sven.androidrccar.common.communication.contract.IRemoteCommunicationListener;
 import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
 import to.sven.androidrccar.common.framework.IDependencyContainer;
 import android.os.Handler;
 
-import com.fasterxml.jackson.core.JsonGenerator.Feature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-
 /**
  * This class handles the communication with the other Android device (Host or Client).
- * It serialize the message to send into JSON
- * and deserialize the received messages.
+ * It serialize the message to send with the {@link IMessageCodec} of the current {@link MessageEncoding}
+ * (JSON until something else is negotiated) and deserialize the received messages in any known encoding.
  * @author sven
  */
 public class RemoteCommunication implements IRemoteCommunication {
@@ -43,19 +42,14 @@ public class RemoteCommunication implements IRemoteCommunication {
 	 *  A TCP socket to the other Android device (Host/Client).
 	 */
 	private final Socket socket;
-	/**
-	 * Will be informed, when something happen here.
-	 * @see IRemoteCommunicationListener
-	 */
-	private final IRemoteCommunicationListener listener;
 	/**
 	 * @see MessageListenerThread
 	 */
 	private final MessageListenerThread messageListenerThread;
 	/**
-	 * For (De-)Serialization of {@link Message}s into JSON.
+	 * For (De-)Serialization of {@link Message}s.
 	 */
-	private final ObjectMapper jsonMapper = new ObjectMapper();
+	private final MessageCodecSelector codecs = new MessageCodecSelector();
 	
 	/**
 	 * Default Constructor.
@@ -64,11 +58,7 @@ public class RemoteCommunication implements IRemoteCommunication {
 	 */
 	public RemoteCommunication(IDependencyContainer<?, ?> dependencyContainer, IRemoteCommunicationListener listener) { 
 		this.socket = dependencyContainer.getSocket();
-		this.listener = listener;
-		jsonMapper.configure(Feature.AUTO_CLOSE_TARGET, false);
-		jsonMapper.configure(SerializationFeature.CLOSE_CLOSEABLE, false);
-		jsonMapper.configure(SerializationFeature.FLUSH_AFTER_WRITE_VALUE, true);
-		messageListenerThread = new MessageListenerThread(this, dependencyContainer.getHandler());
+		messageListenerThread = new MessageListenerThread(this, new MessagePoster(listener, dependencyContainer.getHandler()));
 	}
 	
 	/**
@@ -96,31 +86,26 @@ public class RemoteCommunication implements IRemoteCommunication {
 	 */
 	@Override
 	public void sendMessage(Message message) throws IOException {
-		jsonMapper.writeValue(socket.getOutputStream(), message);
+		codecs.encode(message, socket.getOutputStream());
 	}
 	
 	/**
-	 * Inform the {@link IRemoteCommunicationListener} about a new message.
-	 * @param message a new message.
-	 */
-	void messageRecived(Message message) {
-		listener.messageReceived(message);
-	}
-	
-	/**
-	 * Inform the {@link IRemoteCommunicationListener} that something went wrong.
-	 * @param e What went wrong.
+	 * {@inheritDoc}
 	 */
-	void connectionProblem(Exception e) {
-		listener.connectionProblem(e);
+	@Override
+	public void setMessageEncoding(MessageEncoding encoding) {
+		codecs.setMessageEncoding(encoding);
 	}
 	
 	/**
-	 * For (De-)Serialization of {@link Message}s into JSON.
-	 * @return A {@link ObjectMapper}
+	 * Reads the next {@link Message} from the {@link InputStream}.
+	 * @param in The {@link InputStream} of the {@link #socket}.
+	 * @return The {@link Message} or null, if the stream ended before a new message.
+	 * @throws IOException Thrown if reading failed or the message is invalid.
+	 * @see MessageCodecSelector#decode(InputStream)
 	 */
-	ObjectMapper getJsonObjectMapper() {
-		return jsonMapper;
+	Message readMessage(InputStream in) throws IOException {
+		return codecs.decode(in);
 	}
 	
 	/**
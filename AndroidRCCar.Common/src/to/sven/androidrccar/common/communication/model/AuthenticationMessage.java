@@ -23,6 +23,9 @@ import to.sven.androidrccar.common.communication.model.AuthenticationMessage;
 import to.sven.androidrccar.common.communication.model.GreetingMessage;
 import to.sven.androidrccar.common.communication.model.Message;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
@@ -38,8 +41,20 @@ public class AuthenticationMessage extends Message {
 	 * Creates a new instance of {@link AuthenticationMessage}.
 	 * @param passwordHash {@link #passwordHash}
 	 */
-	public AuthenticationMessage(@JsonProperty("passwordHash") String passwordHash) {
-		this.passwordHash = passwordHash; 
+	public AuthenticationMessage(String passwordHash) {
+		this(passwordHash, null);
+	}
+	
+	/**
+	 * Creates a new instance of {@link AuthenticationMessage}.
+	 * @param passwordHash {@link #passwordHash}
+	 * @param encoding {@link #encoding}
+	 */
+	@JsonCreator
+	public AuthenticationMessage(@JsonProperty("passwordHash") String passwordHash,
+								 @JsonProperty("encoding") MessageEncoding encoding) {
+		this.passwordHash = passwordHash;
+		this.encoding = encoding;
 	}
 	
 	/**
@@ -48,4 +63,13 @@ public class AuthenticationMessage extends Message {
 	 * @see GreetingMessage#authSalt
 	 */
 	public final String passwordHash;
+	
+	/**
+	 * The {@link MessageEncoding} the Client accepted from {@link GreetingMessage#offeredEncoding()}.
+	 * Both partners use it for all messages after this one.
+	 * It's null (and not send), if the Client stays with {@link MessageEncoding#json},
+	 * so older Hosts can still read this message.
+	 */
+	@JsonInclude(Include.NON_NULL)
+	public final MessageEncoding encoding;
 }
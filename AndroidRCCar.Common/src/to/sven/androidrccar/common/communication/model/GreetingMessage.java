@@ -47,6 +47,23 @@ public class GreetingMessage extends Message {
 		this.authSalt= authSalt;
 	}
 	
+	/**
+	 * Creates a new instance of {@link GreetingMessage}, that offers the Client
+	 * an other {@link MessageEncoding} than {@link MessageEncoding#json}.
+	 * The offer is appended to the salt (see {@link #authSalt}).
+	 * @param version {@link #version}
+	 * @param salt The salt for authentication.
+	 * @param offeredEncoding {@link #offeredEncoding()}
+	 */
+	public GreetingMessage(int version, String salt, MessageEncoding offeredEncoding) {
+		this(version, salt + ENCODING_OFFER_SEPARATOR + offeredEncoding.name());
+	}
+	
+	/**
+	 * Separates the salt from the offered {@link MessageEncoding} in {@link #authSalt}.
+	 */
+	private final static char ENCODING_OFFER_SEPARATOR = ';';
+	
 	/**
 	 * Contains protocol version of the host.
 	 */
@@ -54,7 +71,26 @@ public class GreetingMessage extends Message {
 	
 	/**
 	 * Salt for authentication. It will be used to encrypt the password before sending it to the host.
+	 * 
+	 * A Host that supports an other {@link MessageEncoding} appends it to the salt
+	 * (e.g. {@code "<salt>;binary"}). A new member would break older Clients,
+	 * but they use the whole string as salt and so the authentication still works.
 	 * @see AuthenticationMessage#passwordHash
+	 * @see #offeredEncoding()
 	 */
 	public final String authSalt;
+	
+	/**
+	 * Returns the {@link MessageEncoding} the Host offered in {@link #authSalt}.
+	 * @return The offered {@link MessageEncoding} or {@link MessageEncoding#json},
+	 * 		   if the Host offered nothing or something unknown.
+	 */
+	public MessageEncoding offeredEncoding() {
+		int index = (authSalt == null) ? -1 : authSalt.lastIndexOf(ENCODING_OFFER_SEPARATOR);
+		if(index < 0) {
+			return MessageEncoding.json;
+		}
+		MessageEncoding encoding = MessageEncoding.get(authSalt.substring(index + 1));
+		return (encoding == null) ? MessageEncoding.json : encoding;
+	}
 }
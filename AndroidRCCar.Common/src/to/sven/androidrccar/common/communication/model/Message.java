@@ -19,6 +19,9 @@
  ******************************************************************************/
 package to.sven.androidrccar.common.communication.model;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 
 /**
@@ -35,4 +38,47 @@ public abstract class Message {
 	 * Defines the Version of the protocol between Host and Client, that is supported by the application.
 	 */
 	public static int PROTOCOL_VERSION = 1;
+	
+	/**
+	 * Maps every {@link Message} class to its type id.
+	 * Ids are assigned on first use, starting with 1.
+	 */
+	private static final Map<Class<?>, Integer> typeIds = new HashMap<Class<?>, Integer>();
+	
+	/**
+	 * Cache for {@link #typeId()}. 0 means not determined yet.
+	 * (Not public, so it isn't serialized.)
+	 */
+	private int typeId;
+	
+	/**
+	 * Returns the type id of this message.
+	 * The id can be used as index for dispatch tables. It is only valid
+	 * within the running process and never send to the partner.
+	 * @return The id of the concrete class, greater than 0.
+	 * @see #typeIdOf(Class)
+	 */
+	public final int typeId() {
+		if(typeId == 0) {
+			typeId = typeIdOf(getClass());
+		}
+		return typeId;
+	}
+	
+	/**
+	 * Returns the type id of a {@link Message} class.
+	 * If the class has no id yet, a new one is assigned.
+	 * @param messageType The concrete {@link Message} class.
+	 * @return The id, greater than 0.
+	 */
+	public static int typeIdOf(Class<? extends Message> messageType) {
+		synchronized (typeIds) {
+			Integer id = typeIds.get(messageType);
+			if(id == null) {
+				id = Integer.valueOf(typeIds.size() + 1);
+				typeIds.put(messageType, id);
+			}
+			return id.intValue();
+		}
+	}
 }
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.common.communication.model;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Defines, how {@link Message}s are encoded on the wire between Host and Client.
+ * 
+ * The Host offers the encodings it supports in the {@link GreetingMessage}
+ * and the Client selects one in the {@link AuthenticationMessage}.
+ * Without this handshake (e.g. with an older partner) {@link #json} is used.
+ * @author sven
+ *
+ */
+public enum MessageEncoding {
+	
+	/**
+	 * JSON with the class name as {@code @messageType} property.
+	 * Always supported.
+	 */
+	json,
+	
+	/**
+	 * One tag byte followed by a fixed, big-endian layout of the message members.
+	 * @see to.sven.androidrccar.common.communication.impl.BinaryMessageCodec
+	 */
+	binary;
+	
+	/**
+	 * Maps the name to its appropriate {@link MessageEncoding}.
+	 */
+	private final static SortedMap<String, MessageEncoding> map = new TreeMap<String, MessageEncoding>();
+
+	static {
+		for(MessageEncoding encoding : MessageEncoding.values()) {
+			map.put(encoding.name(), encoding);
+		}
+	}
+	
+	/**
+	 * Returns the {@link MessageEncoding} with the {@code name}.
+	 * Unlike {@link #valueOf(String)} it doesn't throw on unknown names,
+	 * because a newer partner may offer encodings that are unknown here.
+	 * @param name {@link #name()} of the {@link MessageEncoding}.
+	 * @return The {@link MessageEncoding} or null, if no appropriate {@link MessageEncoding} is found.
+	 */
+	public static MessageEncoding get(String name) {
+		return map.get(name);
+	}
+}
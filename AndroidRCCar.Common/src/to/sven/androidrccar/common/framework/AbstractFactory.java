@@ -19,10 +19,16 @@
  ******************************************************************************/
 package to.sven.androidrccar.common.framework;
 
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+
 import android.content.Context;
 import android.location.LocationManager;
+import android.util.Log;
 import to.sven.androidrccar.common.communication.contract.IRemoteCommunication;
 import to.sven.androidrccar.common.communication.contract.IRemoteCommunicationListener;
+import to.sven.androidrccar.common.communication.impl.NioRemoteCommunication;
 import to.sven.androidrccar.common.communication.impl.RemoteCommunication;
 import to.sven.androidrccar.common.logic.handler.ILogicHandlerFacade;
 import to.sven.androidrccar.common.logic.handler.IMessageHandler;
@@ -40,6 +46,11 @@ import to.sven.androidrccar.common.service.impl.LocationService;
  */
 public abstract class AbstractFactory implements IFactory {
 	
+	/**
+	 * Tag for {@link Log}
+	 */
+	private static final String LOG_TAG = "AbstractFactory";
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -48,10 +59,19 @@ public abstract class AbstractFactory implements IFactory {
 			throws IllegalArgumentException;
 
 	/**
-	 * {@inheritDoc}
+	 * Creates a {@link NioRemoteCommunication}, if the {@link Socket} was created by a {@link SocketChannel}.
+	 * Else (or if that fails) the stream based {@link RemoteCommunication} is created.
+	 * The connectors create the channel only if non-blocking I/O is enabled in the configuration.
 	 */
 	@Override
 	public IRemoteCommunication createRemoteCommuncation(IDependencyContainer<?, ?> dependencyContainer, IRemoteCommunicationListener cpListener) {
+		if(dependencyContainer.getSocket().getChannel() != null) {
+			try {
+				return new NioRemoteCommunication(dependencyContainer, cpListener);
+			} catch (IOException e) {
+				Log.w(LOG_TAG, "Fall back to stream based RemoteCommunication.", e);
+			}
+		}
 		return new RemoteCommunication(dependencyContainer, cpListener);
 	}
 
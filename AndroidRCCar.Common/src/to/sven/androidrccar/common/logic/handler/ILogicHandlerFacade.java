@@ -20,6 +20,7 @@
 package to.sven.androidrccar.common.logic.handler;
 
 import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
 import to.sven.androidrccar.common.framework.AbstractDependencyContainer;
 import to.sven.androidrccar.common.framework.IDependencyContainer;
 import to.sven.androidrccar.common.framework.IFactory;
@@ -64,6 +65,12 @@ public interface ILogicHandlerFacade<TDependencyContainer extends IDependencyCon
 	 */
 	void sendMessage(Message message);
 	
+	/**
+	 * Sets the {@link MessageEncoding} for all following {@link #sendMessage} calls.
+	 * @param encoding The {@link MessageEncoding} that was negotiated with the remote Host/Client.
+	 */
+	void setMessageEncoding(MessageEncoding encoding);
+	
 	/**
 	 * Will be called on an error.
 	 * Closes the connection and logs the Exception {@code ex}.
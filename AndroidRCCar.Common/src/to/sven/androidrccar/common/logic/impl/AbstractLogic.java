@@ -20,12 +20,12 @@
 package to.sven.androidrccar.common.logic.impl;
 
 import java.io.IOException;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 import to.sven.androidrccar.common.communication.contract.IRemoteCommunication;
 import to.sven.androidrccar.common.communication.contract.IRemoteCommunicationListener;
 import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
 import to.sven.androidrccar.common.exception.ConnectionProblemException;
 import to.sven.androidrccar.common.exception.UnsupportedMessageException;
 import to.sven.androidrccar.common.framework.AbstractDependencyContainer;
@@ -70,11 +70,11 @@ public abstract class AbstractLogic<TDependencyContainer extends IDependencyCont
 	private final IRemoteCommunication remoteCommunication;
 	
 	/**
-	 * Contains the canonical names and the instances of all {@link IMessageHandler} that 
+	 * Contains the instances of all {@link IMessageHandler} that 
 	 * should handle {@link Message}s in the current state of this class.
+	 * The index is the {@link Message#typeId()} of the handled message type.
 	 */
-	private final SortedMap<String,IMessageHandler<?>> messageHandlers = 
-			new TreeMap<String,IMessageHandler<?>>();
+	private IMessageHandler<?>[] messageHandlers = new IMessageHandler<?>[16];
 	
 	/**
 	 * The one that that want to know, when something happen here (Most likely an Activity)
@@ -121,8 +121,8 @@ public abstract class AbstractLogic<TDependencyContainer extends IDependencyCont
 	 */
 	@Override
 	public void messageReceived(Message message) {
-		String messageType = message.getClass().getCanonicalName();
-		IMessageHandler<?> messageHandler = messageHandlers.get(messageType);
+		int typeId = message.typeId();
+		IMessageHandler<?> messageHandler = (typeId < messageHandlers.length) ? messageHandlers[typeId] : null;
 		if(messageHandler != null) {
 			handleMessage(message, messageHandler);
 		} else {
@@ -170,7 +170,11 @@ public abstract class AbstractLogic<TDependencyContainer extends IDependencyCont
 	 * @param messageHandler The {@link IMessageHandler} to register
 	 */
 	private void registerMessageHandler(IMessageHandler<? extends Message> messageHandler) {
-		messageHandlers.put(messageHandler.getMessageType().getCanonicalName(), messageHandler);
+		int typeId = Message.typeIdOf(messageHandler.getMessageType());
+		if(typeId >= messageHandlers.length) {
+			messageHandlers = Arrays.copyOf(messageHandlers, typeId * 2);
+		}
+		messageHandlers[typeId] = messageHandler;
 	}
 	
 	/**
@@ -178,7 +182,7 @@ public abstract class AbstractLogic<TDependencyContainer extends IDependencyCont
 	 */
 	@Override
 	public void clearMessageHandlers() {
-		messageHandlers.clear();
+		Arrays.fill(messageHandlers, null);
 	}
 
 	/**
@@ -198,7 +202,7 @@ public abstract class AbstractLogic<TDependencyContainer extends IDependencyCont
 		try {
 			closed = true;
 			// The connections should closed, so no we expect no messages anymore:
-			messageHandlers.clear();
+			Arrays.fill(messageHandlers, null);
 			remoteCommunication.close(); // TODO: Implicit tested this?
 			
 			ILocationService locationService = getDependency().getLocationService();
@@ -217,7 +221,6 @@ public abstract class AbstractLogic<TDependencyContainer extends IDependencyCont
 	@Override
 	public void sendMessage(Message message) {
 		try {
-			Log.d(LOG_TAG, message.getClass().getSimpleName()); // TODO: rm Debug
 			remoteCommunication.sendMessage(message);
 		}
 		catch(IOException ex)
@@ -226,6 +229,15 @@ public abstract class AbstractLogic<TDependencyContainer extends IDependencyCont
 		}
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setMessageEncoding(MessageEncoding encoding) {
+		Log.d(LOG_TAG, "Message encoding: " + encoding);
+		remoteCommunication.setMessageEncoding(encoding);
+	}
+	
 	/**
 	 * Will be called on an error.
 	 * Closes the connection and logs the Exception {@code ex}.
@@ -7,6 +7,8 @@
  */
 package to.sven.androidrccar.common.utils;
 
+import java.nio.ByteBuffer;
+
 /**
  *  libFLAC - Free Lossless Audio Codec library
  * Copyright (C) 2000,2001,2002,2003  Josh Coalson
@@ -296,6 +298,26 @@ public final class CRC8 {
             (byte) 0xF4,
             (byte) 0xF3 };
 
+    /**
+     * Number of bytes, that are processed per iteration by the slicing loop.
+     */
+    private static final int SLICES = 4;
+
+    /**
+     * Slicing tables: {@code SLICE_TABLES[k][b]} is the CRC of the byte {@code b}
+     * followed by {@code k} zero bytes. {@code SLICE_TABLES[0]} equals {@link #CRC8_TABLE}.
+     * The values are stored as int, so they can be combined without sign extension.
+     */
+    private static final int[][] SLICE_TABLES = new int[SLICES][256];
+
+    static {
+        for (int b = 0; b < 256; b++)
+            SLICE_TABLES[0][b] = CRC8_TABLE[b] & 0xff;
+        for (int k = 1; k < SLICES; k++)
+            for (int b = 0; b < 256; b++)
+                SLICE_TABLES[k][b] = SLICE_TABLES[0][SLICE_TABLES[k - 1][b]];
+    }
+
     /**
      * Update the CRC value with a byte data.
      * 
@@ -304,7 +326,7 @@ public final class CRC8 {
      * @return      The updated CRC value
      */
     public static byte update(byte data, byte crc) {
-        return CRC8_TABLE[crc ^ data];
+        return CRC8_TABLE[(crc ^ data) & 0xff];
     }
 
     /**
@@ -316,9 +338,83 @@ public final class CRC8 {
      * @return      The updated CRC value
      */
     public static byte updateBlock(byte[] data, int len, byte crc) {
-    	byte result = crc;
-        for (int i = 0; i < len; i++)
-        	result = CRC8_TABLE[result ^ data[i]];
+        return update(data, 0, len, crc);
+    }
+
+    /**
+     * Update the CRC value with a range of a byte array.
+     * Processes {@link #SLICES} bytes per iteration, so it can be used
+     * for streaming: The result of one call is the starting CRC value of the next.
+     * 
+     * @param data    The byte array
+     * @param offset  The index of the first byte
+     * @param len     The number of bytes
+     * @param crc     The starting CRC value
+     * @return        The updated CRC value
+     * @throws IndexOutOfBoundsException If the range isn't inside of {@code data}.
+     */
+    public static byte update(byte[] data, int offset, int len, byte crc) {
+        if (offset < 0 || len < 0 || offset > data.length - len)
+            throw new IndexOutOfBoundsException();
+
+        final int[] t0 = SLICE_TABLES[0];
+        final int[] t1 = SLICE_TABLES[1];
+        final int[] t2 = SLICE_TABLES[2];
+        final int[] t3 = SLICE_TABLES[3];
+        final int end = offset + len;
+        int c = crc & 0xff;
+        int i = offset;
+
+        for (; i <= end - SLICES; i += SLICES)
+            c = t3[(c ^ data[i]) & 0xff]
+              ^ t2[data[i + 1] & 0xff]
+              ^ t1[data[i + 2] & 0xff]
+              ^ t0[data[i + 3] & 0xff];
+
+        for (; i < end; i++)
+            c = t0[(c ^ data[i]) & 0xff];
+
+        return (byte) c;
+    }
+
+    /**
+     * Update the CRC value with the remaining bytes of a {@link ByteBuffer}.
+     * The bytes aren't copied: A buffer with an accessible array is processed
+     * like a byte array range, every other buffer with absolute gets.
+     * Afterwards the position of the buffer is its limit.
+     * 
+     * @param buffer  The buffer
+     * @param crc     The starting CRC value
+     * @return        The updated CRC value
+     */
+    public static byte update(ByteBuffer buffer, byte crc) {
+        final int position = buffer.position();
+        final int end = buffer.limit();
+        byte result;
+
+        if (buffer.hasArray()) {
+            result = update(buffer.array(), buffer.arrayOffset() + position, end - position, crc);
+        } else {
+            final int[] t0 = SLICE_TABLES[0];
+            final int[] t1 = SLICE_TABLES[1];
+            final int[] t2 = SLICE_TABLES[2];
+            final int[] t3 = SLICE_TABLES[3];
+            int c = crc & 0xff;
+            int i = position;
+
+            for (; i <= end - SLICES; i += SLICES)
+                c = t3[(c ^ buffer.get(i)) & 0xff]
+                  ^ t2[buffer.get(i + 1) & 0xff]
+                  ^ t1[buffer.get(i + 2) & 0xff]
+                  ^ t0[buffer.get(i + 3) & 0xff];
+
+            for (; i < end; i++)
+                c = t0[(c ^ buffer.get(i)) & 0xff];
+
+            result = (byte) c;
+        }
+
+        buffer.position(end);
         return result;
     }
 
@@ -330,11 +426,29 @@ public final class CRC8 {
      * @return      The calculated CRC value
      */
     public static byte calc(byte[] data, int len) {
-        byte crc = 0;
+        return update(data, 0, len, (byte) 0);
+    }
 
-        for (int i = 0; i < len; i++)
-            crc = CRC8_TABLE[(crc ^ data[i]) & 0xff];
+    /**
+     * Calculate the CRC value with a range of a byte array.
+     * 
+     * @param data    The byte array
+     * @param offset  The index of the first byte
+     * @param len     The number of bytes
+     * @return        The calculated CRC value
+     */
+    public static byte calc(byte[] data, int offset, int len) {
+        return update(data, offset, len, (byte) 0);
+    }
 
-        return crc;
+    /**
+     * Calculate the CRC value with the remaining bytes of a {@link ByteBuffer}.
+     * Afterwards the position of the buffer is its limit.
+     * 
+     * @param buffer  The buffer
+     * @return        The calculated CRC value
+     */
+    public static byte calc(ByteBuffer buffer) {
+        return update(buffer, (byte) 0);
     }
-}
\ No newline at end of file
+}
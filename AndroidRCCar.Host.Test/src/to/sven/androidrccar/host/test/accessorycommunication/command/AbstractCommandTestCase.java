@@ -25,6 +25,8 @@ import java.util.Arrays;
 
 import to.sven.androidrccar.host.accessorycommunication.command.AbstractCommand;
 import to.sven.androidrccar.host.accessorycommunication.command.ICommandListener;
+import to.sven.androidrccar.host.accessorycommunication.command.MessageFrame;
+import to.sven.androidrccar.host.accessorycommunication.impl.ResponseFrameReader;
 
 import com.google.android.testing.mocking.AndroidMock;
 import com.google.android.testing.mocking.UsesMocks;
@@ -80,8 +82,11 @@ public abstract class AbstractCommandTestCase
 		inputStream = new ByteArrayInputStream(mockResponeWithExtraByte);
 		outputStream = new ByteArrayOutputStream();
 		
-		AndroidMock.expect(listenerMock.getInputStream()).andReturn(inputStream);
+		AndroidMock.expect(listenerMock.getResponseReader()).andReturn(new ResponseFrameReader(inputStream));
 		AndroidMock.expect(listenerMock.getOutputStream()).andReturn(outputStream);
+		AndroidMock.expect(listenerMock.getCommandPipeline()).andStubReturn(null);
+		AndroidMock.expect(listenerMock.getCommandFrame()).andStubReturn(new MessageFrame());
+		AndroidMock.expect(listenerMock.getResponseFrame()).andStubReturn(new MessageFrame());
 	}
 	
 	/**
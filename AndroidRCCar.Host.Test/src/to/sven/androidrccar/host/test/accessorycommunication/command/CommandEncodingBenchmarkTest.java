@@ -0,0 +1,377 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.accessorycommunication.command;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import to.sven.androidrccar.common.utils.CRC8;
+import to.sven.androidrccar.host.accessorycommunication.command.AbstractCommand;
+import to.sven.androidrccar.host.accessorycommunication.command.AdjustSpeedCommand;
+import to.sven.androidrccar.host.accessorycommunication.command.CommandPipeline;
+import to.sven.androidrccar.host.accessorycommunication.command.ICommandListener;
+import to.sven.androidrccar.host.accessorycommunication.command.MessageFrame;
+import to.sven.androidrccar.host.accessorycommunication.command.RotateCameraCommand;
+import to.sven.androidrccar.host.accessorycommunication.command.TurnCarCommand;
+import to.sven.androidrccar.host.accessorycommunication.exception.AccessoryConnectionProblemException;
+import to.sven.androidrccar.host.accessorycommunication.impl.AccessoryCommunication;
+import to.sven.androidrccar.host.accessorycommunication.impl.ResponseFrameReader;
+import to.sven.androidrccar.host.accessorycommunication.model.CarFeatures;
+import to.sven.androidrccar.host.accessorycommunication.model.ResponseMessage;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Micro-benchmark for sending the actuator commands.
+ * Counts the allocations of the current thread with {@link Debug}, while
+ * {@link AdjustSpeedCommand}, {@link TurnCarCommand} and {@link RotateCameraCommand}
+ * are updated, sent and their responses are processed.
+ * Compares reused commands with a new command per update.
+ * @author sven
+ */
+public class CommandEncodingBenchmarkTest extends AndroidTestCase {
+	
+	/**
+	 * Tag for {@link Log}
+	 */
+	private static final String LOG_TAG = "CommandEncodingBenchmarkTest";
+	
+	/**
+	 * Number of updates per command and measurement.
+	 */
+	private static final int ITERATIONS = 10000;
+	
+	/**
+	 * Length of a command and a response.
+	 */
+	private static final int LEN = AccessoryCommunication.COMMAND_LENGTH;
+	
+	/**
+	 * Sends the reused commands. It may not allocate anything.
+	 */
+	public void testReusedCommands_Allocations() {
+		// Configure Test
+		BenchmarkListener listener = new BenchmarkListener();
+		AdjustSpeedCommand speed = new AdjustSpeedCommand(listener, 0);
+		TurnCarCommand turn = new TurnCarCommand(listener, 0);
+		RotateCameraCommand camera = new RotateCameraCommand(listener, 0, 0);
+		
+		// Warm up
+		sendReused(speed, turn, camera);
+		
+		// Run Test
+		Debug.startAllocCounting();
+		try {
+			Debug.resetThreadAllocCount();
+			sendReused(speed, turn, camera);
+			int reusedAllocations = Debug.getThreadAllocCount();
+			
+			Debug.resetThreadAllocCount();
+			sendNew(listener);
+			int newAllocations = Debug.getThreadAllocCount();
+			
+			Log.i(LOG_TAG, String.format("Allocations for %d updates: reused commands %d; new commands %d",
+										 Integer.valueOf(3 * ITERATIONS),
+										 Integer.valueOf(reusedAllocations),
+										 Integer.valueOf(newAllocations)));
+			
+			// Verify Test
+			assertEquals(0, reusedAllocations);
+		} finally {
+			Debug.stopAllocCounting();
+		}
+		// Warm up and two measurements.
+		assertEquals(3 * 3 * ITERATIONS * LEN, listener.output.count);
+		assertEquals(0, listener.problems);
+	}
+	
+	/**
+	 * Updates and sends each of the reused commands {@link #ITERATIONS} times.
+	 * @param speed A {@link AdjustSpeedCommand}
+	 * @param turn A {@link TurnCarCommand}
+	 * @param camera A {@link RotateCameraCommand}
+	 */
+	private static void sendReused(AdjustSpeedCommand speed, TurnCarCommand turn, RotateCameraCommand camera) {
+		for(int i = 0; i < ITERATIONS; i++) {
+			float value = valueOf(i);
+			speed.setSpeed(value);
+			speed.run();
+			turn.setRotation(value);
+			turn.run();
+			camera.setPosition(value, value);
+			camera.run();
+		}
+	}
+	
+	/**
+	 * Reference: Creates and sends {@link #ITERATIONS} new commands of each type.
+	 * @param listener The {@link ICommandListener}
+	 */
+	private static void sendNew(ICommandListener listener) {
+		for(int i = 0; i < ITERATIONS; i++) {
+			float value = valueOf(i);
+			new AdjustSpeedCommand(listener, value).run();
+			new TurnCarCommand(listener, value).run();
+			new RotateCameraCommand(listener, value, value).run();
+		}
+	}
+	
+	/**
+	 * Calculates a actuator value.
+	 * @param i The iteration
+	 * @return Value between -1 and 1
+	 */
+	private static float valueOf(int i) {
+		return (i % 201 - 100) / 100f;
+	}
+	
+	/**
+	 * A {@link ICommandListener}, that answers every command with {@link ResponseMessage#REQUEST_OK}.
+	 */
+	private static class BenchmarkListener implements ICommandListener {
+		
+		/**
+		 * Counts the sent bytes.
+		 */
+		private final CountingOutputStream output = new CountingOutputStream();
+		
+		/**
+		 * Reads the responses.
+		 */
+		private final ResponseFrameReader reader = new ResponseFrameReader(new OkInputStream());
+		
+		/**
+		 * @see ICommandListener#getCommandFrame()
+		 */
+		private final MessageFrame commandFrame = new MessageFrame();
+		
+		/**
+		 * @see ICommandListener#getResponseFrame()
+		 */
+		private final MessageFrame responseFrame = new MessageFrame();
+		
+		/**
+		 * The features of the car. Every actuator supports -1 to 1.
+		 */
+		private final CarFeatures features = new CarFeatures(1, 1, 1, 1, true, true, false);
+		
+		/**
+		 * Number of problems and errors.
+		 */
+		private int problems = 0;
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public InputStream getInputStream() {
+			return null;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public OutputStream getOutputStream() {
+			return output;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public ResponseFrameReader getResponseReader() {
+			return reader;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public MessageFrame getCommandFrame() {
+			return commandFrame;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public MessageFrame getResponseFrame() {
+			return responseFrame;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void setCarFeatures(CarFeatures features) { /* Not needed. */ }
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public CarFeatures getCarFeatures() {
+			return features;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void postCommand(AbstractCommand command) { /* Not needed. */ }
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void postToCommunicationThread(Runnable runnable) { /* Not needed. */ }
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void setProtocolVersion(short version) { /* Not needed. */ }
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public CommandPipeline getCommandPipeline() {
+			return null;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void protocolVersionNotMatch(short hostVersion, short microControllerVersion) {
+			problems++;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void connectionInitialized() { /* Not needed. */ }
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void batteryStateReceived(float chargingLevel) { /* Not needed. */ }
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void batteryNearEmpty() {
+			problems++;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void errorReceived(String message) {
+			problems++;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void connectionProblem(AccessoryConnectionProblemException ex) {
+			problems++;
+		}
+	}
+	
+	/**
+	 * A {@link OutputStream}, that only counts the written bytes.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+		
+		/**
+		 * Number of written bytes.
+		 */
+		private int count = 0;
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(int oneByte) {
+			count++;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(byte[] buffer, int offset, int count) {
+			this.count += count;
+		}
+	}
+	
+	/**
+	 * A {@link InputStream}, that endlessly repeats a {@link ResponseMessage#REQUEST_OK}.
+	 */
+	private static class OkInputStream extends InputStream {
+		
+		/**
+		 * The response.
+		 */
+		private final byte[] response = new byte[LEN];
+		
+		/**
+		 * Position of the next byte in the {@link #response}.
+		 */
+		private int position = 0;
+		
+		/**
+		 * Creates the response.
+		 */
+		public OkInputStream() {
+			response[0] = ResponseMessage.REQUEST_OK.messageId;
+			response[LEN-1] = CRC8.calc(response, LEN-1);
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read() {
+			int result = response[position] & 0xFF;
+			position = (position + 1) % LEN;
+			return result;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] buffer, int offset, int length) {
+			int len = Math.min(length, LEN - position);
+			System.arraycopy(response, position, buffer, offset, len);
+			position = (position + len) % LEN;
+			return len;
+		}
+	}
+}
@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.accessorycommunication.command;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.IAnswer;
+
+import to.sven.androidrccar.common.utils.CRC8;
+import to.sven.androidrccar.host.accessorycommunication.command.CommandPipeline;
+import to.sven.androidrccar.host.accessorycommunication.command.GetBatteryStateCommand;
+import to.sven.androidrccar.host.accessorycommunication.command.ICommandListener;
+import to.sven.androidrccar.host.accessorycommunication.command.MessageFrame;
+import to.sven.androidrccar.host.accessorycommunication.command.NoopCommand;
+import to.sven.androidrccar.host.accessorycommunication.exception.AccessoryConnectionProblemException;
+import to.sven.androidrccar.host.accessorycommunication.impl.AccessoryCommunication;
+import to.sven.androidrccar.host.accessorycommunication.impl.ResponseFrameReader;
+import android.test.AndroidTestCase;
+
+import com.google.android.testing.mocking.AndroidMock;
+import com.google.android.testing.mocking.UsesMocks;
+
+/**
+ * This class should test the behavior of the {@link CommandPipeline}.
+ * 
+ * @author sven
+ */
+@UsesMocks({ICommandListener.class})
+public class CommandPipelineTest extends AndroidTestCase {
+	
+	/**
+	 * Strict mock for the commands.
+	 * @see AndroidMock#createStrictMock
+	 */
+	private ICommandListener commandListenerMock;
+	
+	/**
+	 * Strict mock for the {@link CommandPipeline}.
+	 * @see AndroidMock#createStrictMock
+	 */
+	private ICommandListener pipelineListenerMock;
+	
+	/**
+	 * Receives the commands, that "are sent to the µController".
+	 */
+	private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+	
+	/**
+	 * The responses "from the µController" are written to it.
+	 */
+	private PipedOutputStream responseStream;
+	
+	/**
+	 * The stream of the {@link ResponseFrameReader}.
+	 */
+	private PipedInputStream inputStream;
+	
+	/**
+	 * The {@link Runnable}s, that the {@link CommandPipeline} posted to the communication thread.
+	 * The test thread is the communication thread.
+	 */
+	private final BlockingQueue<Runnable> posted = new LinkedBlockingQueue<Runnable>();
+	
+	/**
+	 * The {@link CommandPipeline} to test.
+	 */
+	private CommandPipeline target;
+	
+	/**
+	 * Before Test:
+	 * Set up the mocks and the streams.
+	 * @throws IOException Test failed.
+	 */
+	@Override
+	protected void setUp() throws IOException {
+		inputStream = new PipedInputStream();
+		responseStream = new PipedOutputStream(inputStream);
+		
+		pipelineListenerMock = AndroidMock.createStrictMock(ICommandListener.class);
+		AndroidMock.makeThreadSafe(pipelineListenerMock, true);
+		ResponseFrameReader responseReader = new ResponseFrameReader(inputStream);
+		AndroidMock.expect(pipelineListenerMock.getResponseReader()).andReturn(responseReader);
+		AndroidMock.expect(pipelineListenerMock.getInputStream()).andReturn(inputStream);
+		pipelineListenerMock.postToCommunicationThread(AndroidMock.isA(Runnable.class));
+		AndroidMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+			@Override
+			public Object answer() throws Throwable {
+				posted.add((Runnable) AndroidMock.getCurrentArguments()[0]);
+				return null;
+			}
+		}).anyTimes();
+		
+		commandListenerMock = AndroidMock.createNiceMock(ICommandListener.class);
+		AndroidMock.makeThreadSafe(commandListenerMock, true);
+		AndroidMock.expect(commandListenerMock.getResponseReader()).andStubReturn(responseReader);
+		AndroidMock.expect(commandListenerMock.getOutputStream()).andStubReturn(outputStream);
+		AndroidMock.expect(commandListenerMock.getCommandFrame()).andStubReturn(new MessageFrame());
+	}
+	
+	/**
+	 * After Test: Stop the {@link CommandPipeline}.
+	 * @throws IOException Test failed.
+	 */
+	@Override
+	protected void tearDown() throws IOException {
+		if(target != null) {
+			target.close();
+		}
+		responseStream.close();
+	}
+	
+	/**
+	 * Sets the mocks in replay phase and starts the {@link CommandPipeline}.
+	 */
+	private void start() {
+		AndroidMock.replay(pipelineListenerMock);
+		target = new CommandPipeline(pipelineListenerMock);
+		AndroidMock.expect(commandListenerMock.getCommandPipeline()).andStubReturn(target);
+		AndroidMock.replay(commandListenerMock);
+		target.start();
+	}
+	
+	/**
+	 * Sends two commands before the first response is received.
+	 * The responses are matched by the sequence number.
+	 * @throws Exception Test failed.
+	 */
+	public void testSend_twoCommandsInFlight() throws Exception {
+		// Configure Test
+		commandListenerMock.batteryStateReceived(100f);
+		
+		// Run Test
+		start();
+		new GetBatteryStateCommand(commandListenerMock).run();
+		new NoopCommand(commandListenerMock).run();
+		
+		byte[] commands = outputStream.toByteArray();
+		assertEquals(2 * AccessoryCommunication.COMMAND_LENGTH, commands.length);
+		assertEquals(0, commands[AccessoryCommunication.SEQUENCE_POSITION]);
+		assertEquals(1, commands[AccessoryCommunication.COMMAND_LENGTH + AccessoryCommunication.SEQUENCE_POSITION]);
+		
+		responseStream.write(createResponse(new byte[] { 0x06, 0x7F, -0x01 }, (byte) 0));
+		responseStream.write(createResponse(new byte[] { 0x01 }, (byte) 1));
+		responseStream.flush();
+		waitALittleBit();
+		runPosted();
+		
+		// Verify Test
+		AndroidMock.verify(pipelineListenerMock, commandListenerMock);
+	}
+	
+	/**
+	 * The responses are processed in the communication thread (here: the test thread),
+	 * not in the response thread.
+	 * @throws Exception Test failed.
+	 */
+	public void testReceive_processedInCommunicationThread() throws Exception {
+		// Configure Test
+		final Thread[] processingThread = new Thread[1];
+		commandListenerMock.batteryStateReceived(100f);
+		AndroidMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+			@Override
+			public Object answer() throws Throwable {
+				processingThread[0] = Thread.currentThread();
+				return null;
+			}
+		});
+		
+		// Run Test
+		start();
+		new GetBatteryStateCommand(commandListenerMock).run();
+		responseStream.write(createResponse(new byte[] { 0x06, 0x7F, -0x01 }, (byte) 0));
+		responseStream.flush();
+		waitALittleBit();
+		
+		// Verify Test
+		assertNull(processingThread[0]);
+		runPosted();
+		assertSame(Thread.currentThread(), processingThread[0]);
+		AndroidMock.verify(pipelineListenerMock, commandListenerMock);
+	}
+	
+	/**
+	 * If {@link CommandPipeline#MAX_COMMANDS_IN_FLIGHT} commands are not answered,
+	 * the next command waits for a response and lets its command process it before it is sent.
+	 * @throws Exception Test failed.
+	 */
+	public void testSend_windowFull() throws Exception {
+		// Configure Test
+		commandListenerMock.batteryStateReceived(100f);
+		start();
+		new GetBatteryStateCommand(commandListenerMock).run();
+		for(int i = 1; i < CommandPipeline.MAX_COMMANDS_IN_FLIGHT; i++) {
+			new NoopCommand(commandListenerMock).run();
+		}
+		responseStream.write(createResponse(new byte[] { 0x06, 0x7F, -0x01 }, (byte) 0));
+		responseStream.flush();
+		
+		// Run Test
+		new NoopCommand(commandListenerMock).run();
+		
+		// Verify Test
+		byte[] commands = outputStream.toByteArray();
+		assertEquals((CommandPipeline.MAX_COMMANDS_IN_FLIGHT + 1) * AccessoryCommunication.COMMAND_LENGTH,
+					 commands.length);
+		assertEquals(CommandPipeline.MAX_COMMANDS_IN_FLIGHT,
+					 commands[CommandPipeline.MAX_COMMANDS_IN_FLIGHT * AccessoryCommunication.COMMAND_LENGTH
+					          + AccessoryCommunication.SEQUENCE_POSITION]);
+		AndroidMock.verify(pipelineListenerMock, commandListenerMock);
+	}
+	
+	/**
+	 * {@link CommandPipeline#close()} closes the stream, so a blocking read of the response thread returns.
+	 * @throws Exception Test failed.
+	 */
+	public void testClose_closesInputStream() throws Exception {
+		// Run Test
+		start();
+		new NoopCommand(commandListenerMock).run();
+		waitALittleBit();
+		target.close();
+		
+		// Verify Test
+		try {
+			inputStream.read();
+			fail("IOException expected.");
+		} catch(IOException e) {
+			// The stream is closed.
+		}
+		AndroidMock.verify(pipelineListenerMock, commandListenerMock);
+	}
+	
+	/**
+	 * Receives a response with a sequence number of no sent command.
+	 * @throws Exception Test failed.
+	 */
+	public void testReceive_unexpectedSequence() throws Exception {
+		// Configure Test
+		pipelineListenerMock.connectionProblem(AndroidMock.isA(AccessoryConnectionProblemException.class));
+		
+		// Run Test
+		start();
+		new NoopCommand(commandListenerMock).run();
+		responseStream.write(createResponse(new byte[] { 0x01 }, (byte) 5));
+		responseStream.flush();
+		waitALittleBit();
+		
+		// Verify Test
+		AndroidMock.verify(pipelineListenerMock, commandListenerMock);
+	}
+	
+	/**
+	 * Creates a response "of the µController" with checksum.
+	 * @param start Will be copied a the begin of the response
+	 * @param sequence The sequence number of the command.
+	 * @return The response
+	 */
+	private byte[] createResponse(byte[] start, byte sequence) {
+		byte[] buffer = new byte[AccessoryCommunication.REPSONE_MESSAGE_LENGTH];
+		System.arraycopy(start, 0, buffer, 0, start.length);
+		buffer[AccessoryCommunication.SEQUENCE_POSITION] = sequence;
+		buffer[buffer.length-1] = CRC8.calc(buffer, buffer.length-1);
+		return buffer;
+	}
+	
+	/**
+	 * Runs the {@link Runnable}s, that the {@link CommandPipeline} posted to the communication thread.
+	 * @throws InterruptedException Test failed.
+	 */
+	private void runPosted() throws InterruptedException {
+		Runnable runnable = posted.poll(1, TimeUnit.SECONDS);
+		while(runnable != null) {
+			runnable.run();
+			runnable = posted.poll(100, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Wait a little bit for the response thread.
+	 * @throws InterruptedException Test failed.
+	 */
+	private void waitALittleBit() throws InterruptedException {
+		synchronized (this) {
+			this.wait(100);
+		}
+	}
+}
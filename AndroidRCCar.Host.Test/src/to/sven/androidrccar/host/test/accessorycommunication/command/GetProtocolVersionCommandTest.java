@@ -64,7 +64,29 @@ public class GetProtocolVersionCommandTest extends AbstractCommandTestCase {
 		// Note: You must change this, when the protocol version changed: 
 		byte[] mockRespone = createArray(new byte[] { 0x04, 0x00, 0x01 }, (byte) 0x4E );
 		prepareStreams(mockRespone);
-		AndroidMock.expect(listenerMock.getInputStream()).andReturn(null);
+		listenerMock.setProtocolVersion((short)1);
+		AndroidMock.expect(listenerMock.getResponseReader()).andReturn(null);
+		AndroidMock.expect(listenerMock.getOutputStream()).andReturn(null);
+		listenerMock.postCommand(AndroidMock.isA(GetFeaturesCommand.class));
+		
+		// Run Test
+		runMyTest();
+		
+		// Verify Test
+		verifyTest();
+	}
+	
+	/**
+	 * Send a {@link RequestCommand#GET_PROTOCOL_VERSION}
+	 * and receive a {@link ResponseMessage#PROTOCOL_VERSION}
+	 * with the version, that supports pipelining. 
+	 */
+	public void testRun_pipelinedProtocolVersion() {
+		// Configure Test
+		byte[] mockRespone = createArray(new byte[] { 0x04, 0x00, 0x02 }, (byte) 0xF5 );
+		prepareStreams(mockRespone);
+		listenerMock.setProtocolVersion(AccessoryCommunication.PIPELINED_PROTOCOL_VERSION);
+		AndroidMock.expect(listenerMock.getResponseReader()).andReturn(null);
 		AndroidMock.expect(listenerMock.getOutputStream()).andReturn(null);
 		listenerMock.postCommand(AndroidMock.isA(GetFeaturesCommand.class));
 		
@@ -27,8 +27,10 @@ import org.easymock.Capture;
 
 import to.sven.androidrccar.host.accessorycommunication.command.AbstractCommand;
 import to.sven.androidrccar.host.accessorycommunication.command.AbstractCommandWithOkResponse;
+import to.sven.androidrccar.host.accessorycommunication.command.MessageFrame;
 import to.sven.androidrccar.host.accessorycommunication.command.NoopCommand;
 import to.sven.androidrccar.host.accessorycommunication.exception.AccessoryConnectionProblemException;
+import to.sven.androidrccar.host.accessorycommunication.impl.ResponseFrameReader;
 import to.sven.androidrccar.host.accessorycommunication.model.RequestCommand;
 import to.sven.androidrccar.host.accessorycommunication.model.ResponseMessage;
 
@@ -192,8 +194,11 @@ public class NoopCommandTest extends AbstractCommandTestCase {
 		// Configure Test
 		InputStream inputStreamMock = AndroidMock.createStrictMock(InputStream.class);
 		OutputStream outputStreamMock = AndroidMock.createStrictMock(OutputStream.class);
-		AndroidMock.expect(listenerMock.getInputStream()).andReturn(inputStreamMock);
+		AndroidMock.expect(listenerMock.getResponseReader()).andReturn(new ResponseFrameReader(inputStreamMock));
 		AndroidMock.expect(listenerMock.getOutputStream()).andReturn(outputStreamMock);
+		AndroidMock.expect(listenerMock.getCommandPipeline()).andStubReturn(null);
+		AndroidMock.expect(listenerMock.getCommandFrame()).andStubReturn(new MessageFrame());
+		AndroidMock.expect(listenerMock.getResponseFrame()).andStubReturn(new MessageFrame());
 		
 		outputStreamMock.write((byte[])AndroidMock.anyObject());
 		IOException ioEx = new IOException();
@@ -223,12 +228,16 @@ public class NoopCommandTest extends AbstractCommandTestCase {
 		// Configure Test
 		InputStream inputStreamMock = AndroidMock.createStrictMock(InputStream.class);
 		OutputStream outputStreamMock = AndroidMock.createStrictMock(OutputStream.class);
-		AndroidMock.expect(listenerMock.getInputStream()).andReturn(inputStreamMock);
+		AndroidMock.expect(listenerMock.getResponseReader()).andReturn(new ResponseFrameReader(inputStreamMock));
 		AndroidMock.expect(listenerMock.getOutputStream()).andReturn(outputStreamMock);
+		AndroidMock.expect(listenerMock.getCommandPipeline()).andStubReturn(null);
+		AndroidMock.expect(listenerMock.getCommandFrame()).andStubReturn(new MessageFrame());
+		AndroidMock.expect(listenerMock.getResponseFrame()).andStubReturn(new MessageFrame());
 		
 		outputStreamMock.write((byte[])AndroidMock.anyObject());
 		
-		AndroidMock.expect(inputStreamMock.read((byte[])AndroidMock.anyObject()))
+		AndroidMock.expect(inputStreamMock.read((byte[])AndroidMock.anyObject(),
+												AndroidMock.anyInt(), AndroidMock.anyInt()))
 				   .andReturn(-1);
 		
 		Capture<AccessoryConnectionProblemException> exCapture = new Capture<AccessoryConnectionProblemException>();
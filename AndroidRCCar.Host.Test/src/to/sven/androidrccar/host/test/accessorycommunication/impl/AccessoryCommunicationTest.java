@@ -33,6 +33,7 @@ import to.sven.androidrccar.host.accessorycommunication.command.NoopCommand;
 import to.sven.androidrccar.host.accessorycommunication.contract.IAccessoryCommunicationListener;
 import to.sven.androidrccar.host.accessorycommunication.exception.AccessoryConnectionProblemException;
 import to.sven.androidrccar.host.accessorycommunication.impl.AccessoryCommunication;
+import to.sven.androidrccar.host.accessorycommunication.impl.ResponseFrameReader;
 import to.sven.androidrccar.host.accessorycommunication.model.CarFeatures;
 import to.sven.androidrccar.host.accessorycommunication.model.RequestCommand;
 import to.sven.androidrccar.host.accessorycommunication.model.ResponseMessage;
@@ -132,7 +133,7 @@ public class AccessoryCommunicationTest extends AndroidTestCase {
 	private NoopCommand createCommandMock() {
 		ICommandListener commandListenerMock = AndroidMock.createNiceMock(ICommandListener.class);
 		AndroidMock.makeThreadSafe(commandListenerMock, true);
-		AndroidMock.expect(commandListenerMock.getInputStream()).andReturn(inputStreamMock);
+		AndroidMock.expect(commandListenerMock.getResponseReader()).andReturn(new ResponseFrameReader(inputStreamMock));
 		AndroidMock.expect(commandListenerMock.getOutputStream()).andReturn(outputStreamMock);
 		AndroidMock.replay(commandListenerMock);
 		return AndroidMock.createStrictMock(NoopCommand.class, commandListenerMock);
@@ -410,6 +411,61 @@ public class AccessoryCommunicationTest extends AndroidTestCase {
 		AndroidMock.verify(commandMock, commandMock2);
 	}
 	
+	/**
+	 * Tests the coalescing of actuator commands:
+	 * While a command is running, three {@link AccessoryCommunication#turnCar(float)} calls
+	 * and one {@link AccessoryCommunication#requestBatteryState()} are made.
+	 * Only the newest rotation is sent, the battery state is requested afterwards.
+	 * @throws Exception Something went wrong
+	 */
+	public void testTurnCar_coalescing() throws Exception {
+		// Configure Test
+		configureWithStartCommunication();
+		NoopCommand commandMock = createCommandMock();
+		commandMock.run();
+		AndroidMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+			@Override
+			public Object answer() throws Throwable {
+				synchronized (this) {
+					this.wait(100); // Do some "work".
+				}
+				return null;
+			}
+		});
+		expectCommunication(RequestCommand.TURN_CAR,
+							new byte[] { 0x7F, -0x01 },
+							ResponseMessage.REQUEST_OK,
+							null,
+							0);
+		expectCommunication(RequestCommand.GET_BATTERY_STATE,
+							null,
+							ResponseMessage.BATTERY_STATE,
+							new byte[] { 0x7F, -0x01 }, // 100%
+							1);
+		
+		// Run Test
+		AndroidMock.replay(commandMock);
+		AccessoryCommunication target = createWithStartCommunication();
+		target.postCommand(commandMock);
+		synchronized (this) {
+			this.wait(50); // Wait a little bit, so the first command is executed.
+		}
+		target.turnCar(0.1f);
+		target.turnCar(0.5f);
+		target.requestBatteryState();
+		target.turnCar(1.0f);
+		assertEquals(2, target.getCommandQueueDepth());
+		assertEquals(2, target.getDroppedCommandCount());
+		synchronized (this) {
+			this.wait(150); // Wait a little bit, so the commands are executed.
+		}
+		
+		// Verify Test
+		assertEquals(0, target.getCommandQueueDepth());
+		verifyFieldMocks();
+		AndroidMock.verify(commandMock);
+	}
+	
 	/**
 	 * Common implementation for all methods that should send a message to the µController.
 	 * @param runner Call to the method that should be tested.
@@ -578,17 +634,23 @@ public class AccessoryCommunicationTest extends AndroidTestCase {
 		
 		// What we response:
 		final Capture<byte[]> responseCapture = new Capture<byte[]>();
-		AndroidMock.expect(inputStreamMock.read(AndroidMock.capture(responseCapture)))
+		final Capture<Integer> offsetCapture = new Capture<Integer>();
+		AndroidMock.expect(inputStreamMock.read(AndroidMock.capture(responseCapture),
+												AndroidMock.capture(offsetCapture),
+												AndroidMock.eq(AccessoryCommunication.REPSONE_MESSAGE_LENGTH)))
 				   .andAnswer(new IAnswer<Integer>() {
 						@Override
 						public Integer answer() throws Throwable {
-							byte[] actualResponse = responseCapture.getValue();
+							int len = AccessoryCommunication.REPSONE_MESSAGE_LENGTH;
+							byte[] actualResponse = new byte[len];
 							actualResponse[0] = response.messageId;
 							if(responsePayload != null) {
 								System.arraycopy(responsePayload, 0, actualResponse, 1, responsePayload.length);
 							}
-							actualResponse[actualResponse.length-1] = CRC8.calc(actualResponse, actualResponse.length-1);
-							return AccessoryCommunication.REPSONE_MESSAGE_LENGTH;
+							actualResponse[len-1] = CRC8.calc(actualResponse, len-1);
+							System.arraycopy(actualResponse, 0, responseCapture.getValue(),
+											 offsetCapture.getValue().intValue(), len);
+							return Integer.valueOf(len);
 						}
 				   	});
 		// Commands possible make some callbacks:
@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.accessorycommunication.impl;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Random;
+
+import to.sven.androidrccar.common.utils.CRC8;
+import to.sven.androidrccar.host.accessorycommunication.impl.AccessoryCommunication;
+import to.sven.androidrccar.host.accessorycommunication.impl.ResponseFrameReader;
+import android.test.AndroidTestCase;
+
+/**
+ * This class should test the behavior of the {@link ResponseFrameReader}.
+ * 
+ * The responses "from the µController" are written by a own thread
+ * in chunks with random length, so the reader gets partial responses.
+ * 
+ * @author sven
+ */
+public class ResponseFrameReaderTest extends AndroidTestCase {
+	
+	/**
+	 * Length of a response.
+	 */
+	private final static int LEN = AccessoryCommunication.REPSONE_MESSAGE_LENGTH;
+	
+	/**
+	 * Random numbers with a fixed seed, so every run is equal.
+	 */
+	private final Random random = new Random(42);
+	
+	/**
+	 * The responses "from the µController" are written to it.
+	 */
+	private PipedOutputStream responseStream;
+	
+	/**
+	 * The {@link ResponseFrameReader} to test.
+	 */
+	private ResponseFrameReader target;
+	
+	/**
+	 * Before Test:
+	 * Set up the streams and the {@link ResponseFrameReader}.
+	 * @throws IOException Test failed.
+	 */
+	@Override
+	protected void setUp() throws IOException {
+		PipedInputStream inputStream = new PipedInputStream();
+		responseStream = new PipedOutputStream(inputStream);
+		target = new ResponseFrameReader(inputStream);
+	}
+	
+	/**
+	 * Read responses, that are split at random positions.
+	 * @throws Exception Test failed.
+	 */
+	public void testReadFrame_randomSplits() throws Exception {
+		// Configure Test
+		byte[][] frames = createFrames(50);
+		
+		// Run Test
+		writeInChunks(concat(frames));
+		
+		// Verify Test
+		for(byte[] expected : frames) {
+			assertFrame(expected);
+		}
+		assertEquals(50, target.getFrameCount());
+		assertEquals(0, target.getCrcErrorCount());
+		assertEquals(0, target.getFramingErrorCount());
+		assertEquals(0, target.getSkippedByteCount());
+	}
+	
+	/**
+	 * Read responses, that follow some garbage bytes.
+	 * @throws Exception Test failed.
+	 */
+	public void testReadFrame_garbageBeforeFrames() throws Exception {
+		// Configure Test
+		byte[][] frames = createFrames(3);
+		byte[] garbage = new byte[] { 0x13, 0x37, 0x42 };
+		
+		// Run Test
+		writeInChunks(concat(new byte[][] { garbage, frames[0], frames[1], frames[2] }));
+		
+		// Verify Test
+		for(byte[] expected : frames) {
+			assertFrame(expected);
+		}
+		assertEquals(3, target.getFrameCount());
+		assertEquals(3, target.getCrcErrorCount());
+		assertEquals(1, target.getFramingErrorCount());
+		assertEquals(3, target.getSkippedByteCount());
+	}
+	
+	/**
+	 * A corrupted response is skipped and the following responses are read.
+	 * @throws Exception Test failed.
+	 */
+	public void testReadFrame_corruptedFrame() throws Exception {
+		// Configure Test
+		byte[][] frames = createFrames(3);
+		byte[][] sent = new byte[][] { frames[0], frames[1].clone(), frames[2] };
+		sent[1][5] ^= 0x10;
+		
+		// Run Test
+		writeInChunks(concat(sent));
+		
+		// Verify Test
+		assertFrame(frames[0]);
+		assertFrame(frames[2]);
+		assertEquals(2, target.getFrameCount());
+		assertEquals(LEN, target.getCrcErrorCount());
+		assertEquals(1, target.getFramingErrorCount());
+		assertEquals(LEN, target.getSkippedByteCount());
+	}
+	
+	/**
+	 * If no valid response is found within {@link ResponseFrameReader#MAX_SKIPPED_BYTES},
+	 * a {@link IOException} is thrown.
+	 * @throws Exception Test failed.
+	 */
+	public void testReadFrame_onlyGarbage() throws Exception {
+		// Configure Test
+		byte[] garbage = new byte[ResponseFrameReader.MAX_SKIPPED_BYTES + LEN];
+		for(int i = 0; i < garbage.length; i++) {
+			garbage[i] = (byte) (i + 1);
+		}
+		
+		// Run Test
+		writeInChunks(garbage);
+		try {
+			target.readFrame(new byte[LEN]);
+			fail("IOException expected.");
+		} catch(IOException e) {
+			// Verify Test
+			assertEquals("Checksum validation failed.", e.getMessage());
+		}
+		assertEquals(0, target.getFrameCount());
+		assertEquals(ResponseFrameReader.MAX_SKIPPED_BYTES + 1, target.getCrcErrorCount());
+		assertEquals(ResponseFrameReader.MAX_SKIPPED_BYTES, target.getSkippedByteCount());
+	}
+	
+	/**
+	 * The stream is closed in the middle of a response.
+	 * @throws Exception Test failed.
+	 */
+	public void testReadFrame_closedStream() throws Exception {
+		// Configure Test
+		byte[] frame = createFrames(1)[0];
+		byte[] half = new byte[LEN / 2];
+		System.arraycopy(frame, 0, half, 0, half.length);
+		
+		// Run Test
+		writeInChunks(half);
+		try {
+			target.readFrame(new byte[LEN]);
+			fail("IOException expected.");
+		} catch(IOException e) {
+			// Verify Test
+			assertEquals("Stream is closed.", e.getMessage());
+		}
+	}
+	
+	/**
+	 * The counters can be polled, while a {@link ResponseFrameReader#readFrame} waits for data.
+	 * @throws Exception Test failed.
+	 */
+	public void testCounters_whileReading() throws Exception {
+		// Configure Test
+		byte[][] frames = createFrames(1);
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				try {
+					target.readFrame(new byte[LEN]);
+					target.readFrame(new byte[LEN]);
+				} catch (IOException e) {
+					/* The stream is closed after the test. */
+				}
+			}
+		};
+		reader.start();
+		writeInChunks(frames[0], false);
+		
+		// Run Test
+		long deadline = System.currentTimeMillis() + 5000;
+		while(target.getFrameCount() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		
+		// Verify Test
+		assertTrue(reader.isAlive());
+		assertEquals(1, target.getFrameCount());
+		assertEquals(0, target.getCrcErrorCount());
+		assertEquals(0, target.getFramingErrorCount());
+		assertEquals(0, target.getSkippedByteCount());
+		responseStream.close();
+		reader.join(5000);
+		assertFalse(reader.isAlive());
+	}
+	
+	/**
+	 * Reads a response and compares it with {@code expected}.
+	 * @param expected The expected response
+	 * @throws IOException Test failed.
+	 */
+	private void assertFrame(byte[] expected) throws IOException {
+		byte[] actual = new byte[LEN];
+		target.readFrame(actual);
+		for(int i = 0; i < LEN; i++) {
+			assertEquals("Byte " + i, expected[i], actual[i]);
+		}
+	}
+	
+	/**
+	 * Creates responses with random content and a valid checksum.
+	 * @param count Number of responses
+	 * @return The responses
+	 */
+	private byte[][] createFrames(int count) {
+		byte[][] frames = new byte[count][LEN];
+		for(byte[] frame : frames) {
+			random.nextBytes(frame);
+			frame[LEN-1] = CRC8.calc(frame, LEN-1);
+		}
+		return frames;
+	}
+	
+	/**
+	 * Concatenates the arrays.
+	 * @param arrays The arrays
+	 * @return All bytes of {@code arrays}
+	 */
+	private static byte[] concat(byte[][] arrays) {
+		int len = 0;
+		for(byte[] array : arrays) {
+			len += array.length;
+		}
+		byte[] result = new byte[len];
+		int pos = 0;
+		for(byte[] array : arrays) {
+			System.arraycopy(array, 0, result, pos, array.length);
+			pos += array.length;
+		}
+		return result;
+	}
+	
+	/**
+	 * Writes the {@code data} from a own thread to the {@link #responseStream}
+	 * in chunks with random length (1 to {@code 2*LEN} bytes) and closes it afterwards.
+	 * @param data The bytes that are sent "from the µController".
+	 */
+	private void writeInChunks(byte[] data) {
+		writeInChunks(data, true);
+	}
+	
+	/**
+	 * Writes the {@code data} from a own thread to the {@link #responseStream}
+	 * in chunks with random length (1 to {@code 2*LEN} bytes).
+	 * @param data The bytes that are sent "from the µController".
+	 * @param close Close the {@link #responseStream} afterwards?
+	 */
+	private void writeInChunks(final byte[] data, final boolean close) {
+		final int[] chunks = new int[data.length];
+		for(int i = 0; i < chunks.length; i++) {
+			chunks[i] = 1 + random.nextInt(2 * LEN);
+		}
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					int pos = 0;
+					for(int i = 0; pos < data.length; i++) {
+						int len = Math.min(chunks[i], data.length - pos);
+						responseStream.write(data, pos, len);
+						responseStream.flush();
+						pos += len;
+						Thread.sleep(1);
+					}
+					if(close) {
+						responseStream.close();
+					}
+				} catch (Exception e) {
+					/* The reader fails, if not all bytes are written. */
+				}
+			}
+		};
+		writer.start();
+	}
+}
@@ -25,6 +25,7 @@ import to.sven.androidrccar.common.communication.model.AuthenticationFailedMessa
 import to.sven.androidrccar.common.communication.model.AuthenticationMessage;
 import to.sven.androidrccar.common.communication.model.FeatureMessage;
 import to.sven.androidrccar.common.communication.model.GreetingMessage;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
 import to.sven.androidrccar.host.accessorycommunication.model.CarFeatures;
 import to.sven.androidrccar.host.logic.contract.IHostLogicListener;
 import to.sven.androidrccar.host.logic.handler.AdjustSpeedMessageHandler;
@@ -132,6 +133,26 @@ public class AuthenticationMessageHandlerTest extends
 		verifyFieldMocks();
 	}
 	
+	/**
+	 * Tests {@link AuthenticationMessageHandler#handleMessage}:
+	 * The client accepted {@link MessageEncoding#binary},
+	 * so it's used before the answer is send.
+	 */
+	public void testHandleMessage_BinaryEncoding() {
+		// Configure Test
+		logicMock.setMessageEncoding(MessageEncoding.binary);
+		logicMock.sendMessage(AndroidMock.isA(AuthenticationFailedMessage.class));
+		
+		// Run Test
+		AuthenticationMessageHandler handler = aHandlerForTest();
+		// Something incorrect:
+		handler.handleMessage(new AuthenticationMessage("deadbeef42codeba5e42deadcode42deafbeef42",
+														MessageEncoding.binary));
+		
+		// Verify Test
+		verifyFieldMocks();
+	}
+	
 	/**
 	 * Configures what features "supported" for the test.
 	 */
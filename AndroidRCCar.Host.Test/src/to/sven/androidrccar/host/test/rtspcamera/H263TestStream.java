@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An H.263 elementary stream, as recorded by the camera, for the tests of the
+ * packetizer and of the streaming.
+ *
+ * The pictures begin with a picture start code and contain GOB start codes;
+ * the data between the start codes contains no zero bytes, so that no other
+ * start codes occur. The stream is generated with a fixed seed, so it is
+ * equal in every run.
+ *
+ * @author sven
+ */
+public final class H263TestStream {
+
+	/**
+	 * The pictures of the stream.
+	 */
+	private final List<byte[]> pictures = new ArrayList<byte[]>();
+
+	/**
+	 * The temporal references of the pictures.
+	 */
+	private final List<Integer> temporalReferences = new ArrayList<Integer>();
+
+	/**
+	 * Creates the stream.
+	 * @param seed Seed of the random data
+	 * @param count Number of pictures
+	 * @param maxGobLength Maximum length of the data of a GOB
+	 */
+	public H263TestStream(long seed, int count, int maxGobLength) {
+		Random random = new Random(seed);
+		int temporalReference = random.nextInt(256);
+		for(int i = 0; i < count; i++) {
+			pictures.add(createPicture(random, temporalReference, 1 + random.nextInt(9), maxGobLength));
+			temporalReferences.add(temporalReference);
+			// a skipped picture now and then
+			temporalReference = (temporalReference + 1 + (random.nextInt(4) == 0 ? 1 : 0)) & 0xFF;
+		}
+	}
+
+	/**
+	 * @return The pictures of the stream, each beginning with its start code.
+	 */
+	public List<byte[]> getPictures() {
+		return pictures;
+	}
+
+	/**
+	 * @param index Index of the picture
+	 * @return The temporal reference of the picture
+	 */
+	public int getTemporalReference(int index) {
+		return temporalReferences.get(index);
+	}
+
+	/**
+	 * @return The whole elementary stream.
+	 */
+	public byte[] getBytes() {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		for(byte[] picture : pictures) {
+			stream.write(picture, 0, picture.length);
+		}
+		return stream.toByteArray();
+	}
+
+	/**
+	 * Creates a picture: picture start code, temporal reference and PTYPE,
+	 * followed by the data of the GOBs, that begin with a GOB start code.
+	 * @param random Source of the data
+	 * @param temporalReference Temporal reference of the picture
+	 * @param gobs Number of GOBs with start code
+	 * @param maxGobLength Maximum length of the data of a GOB
+	 * @return The picture
+	 */
+	public static byte[] createPicture(Random random, int temporalReference, int gobs, int maxGobLength) {
+		ByteArrayOutputStream picture = new ByteArrayOutputStream();
+		picture.write(0x00);
+		picture.write(0x00);
+		picture.write(0x80 | (temporalReference >> 6));
+		picture.write(((temporalReference & 0x3F) << 2) | 0x02);
+		writeData(random, picture, 1 + random.nextInt(maxGobLength));
+		for(int gob = 1; gob <= gobs; gob++) {
+			picture.write(0x00);
+			picture.write(0x00);
+			picture.write(0x80 | (gob << 2));
+			writeData(random, picture, 1 + random.nextInt(maxGobLength));
+		}
+		return picture.toByteArray();
+	}
+
+	/**
+	 * Writes data without zero bytes.
+	 * @param random Source of the data
+	 * @param stream Destination of the data
+	 * @param length Number of bytes
+	 */
+	private static void writeData(Random random, ByteArrayOutputStream stream, int length) {
+		for(int i = 0; i < length; i++) {
+			stream.write(1 + random.nextInt(255));
+		}
+	}
+
+	/**
+	 * Reassembles the pictures from RTP payloads as specified by RFC 4629:
+	 * the P bit stands for the two zero bytes of a start code, the
+	 * marker ends a picture.
+	 */
+	public static class Depacketizer {
+
+		/**
+		 * The complete pictures.
+		 */
+		private final List<byte[]> pictures = new ArrayList<byte[]>();
+
+		/**
+		 * The picture, that is reassembled.
+		 */
+		private ByteArrayOutputStream picture = new ByteArrayOutputStream();
+
+		/**
+		 * Adds the payload of a packet.
+		 * @param payload The payload
+		 * @param offset Start of the payload
+		 * @param length Length of the payload
+		 * @param marker The marker bit of the packet
+		 */
+		public synchronized void add(byte[] payload, int offset, int length, boolean marker) {
+			if((payload[offset] & 0x04) != 0) {
+				picture.write(0x00);
+				picture.write(0x00);
+			}
+			picture.write(payload, offset + 2, length - 2);
+			if(marker) {
+				pictures.add(picture.toByteArray());
+				picture = new ByteArrayOutputStream();
+			}
+		}
+
+		/**
+		 * @return The complete pictures.
+		 */
+		public synchronized List<byte[]> getPictures() {
+			return new ArrayList<byte[]>(pictures);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.kp.net.rtp.RtpSender;
+import de.kp.net.rtp.RtpSocket;
+
+/**
+ * An {@link RtpSocket}, that keeps the packets sent to it in memory; it is
+ * registered with the {@link RtpSender} to capture the output of a packetizer.
+ *
+ * @author sven
+ */
+public class RtpCapture extends RtpSocket {
+
+	/**
+	 * Time to wait for packets, in milliseconds.
+	 */
+	private final static long TIMEOUT = 5000;
+
+	/**
+	 * The captured packets.
+	 */
+	private final List<byte[]> packets = new ArrayList<byte[]>();
+
+	/**
+	 * Registers the capture with the {@link RtpSender}.
+	 */
+	public RtpCapture() {
+		RtpSender.getInstance().addReceiver(this);
+	}
+
+	/**
+	 * Removes the capture from the {@link RtpSender}.
+	 */
+	@Override
+	public void close() {
+		RtpSender.getInstance().removeReceiver(this);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void send(byte[] data, int offset, int length) {
+		packets.add(Arrays.copyOfRange(data, offset, offset + length));
+		notifyAll();
+	}
+
+	/**
+	 * RTCP packets are not captured.
+	 */
+	@Override
+	public void sendRtcp(byte[] data, int offset, int length) {
+	}
+
+	/**
+	 * Waits for the packets and removes them from the capture.
+	 * @param count Number of packets, that are expected
+	 * @return The packets, that have been captured so far
+	 * @throws InterruptedException The waiting was interrupted.
+	 */
+	public synchronized List<byte[]> take(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while(packets.size() < count && System.currentTimeMillis() < deadline) {
+			wait(100);
+		}
+		List<byte[]> result = new ArrayList<byte[]>(packets);
+		packets.clear();
+		return result;
+	}
+
+	/**
+	 * @param packet An RTP packet
+	 * @return The marker bit of the packet
+	 */
+	public static boolean hasMarker(byte[] packet) {
+		return (packet[1] & 0x80) != 0;
+	}
+
+	/**
+	 * @param packet An RTP packet
+	 * @return The payload type of the packet
+	 */
+	public static int getPayloadType(byte[] packet) {
+		return packet[1] & 0x7F;
+	}
+
+	/**
+	 * @param packet An RTP packet
+	 * @return The sequence number of the packet
+	 */
+	public static int getSequenceNumber(byte[] packet) {
+		return ((packet[2] & 0xFF) << 8) | (packet[3] & 0xFF);
+	}
+
+	/**
+	 * @param packet An RTP packet
+	 * @return The timestamp of the packet
+	 */
+	public static long getTimestamp(byte[] packet) {
+		return ((packet[4] & 0xFFL) << 24) | ((packet[5] & 0xFF) << 16) | ((packet[6] & 0xFF) << 8) | (packet[7] & 0xFF);
+	}
+
+	/**
+	 * @param packet An RTP packet without CSRC list
+	 * @return The payload of the packet
+	 */
+	public static byte[] getPayload(byte[] packet) {
+		return Arrays.copyOfRange(packet, 12, packet.length);
+	}
+}
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.core;
+
+import android.test.AndroidTestCase;
+
+import com.orangelabs.rcs.core.ims.protocol.rtp.media.MediaSample;
+import com.orangelabs.rcs.core.ims.protocol.rtp.media.MediaSampleQueue;
+
+/**
+ * This class should test the {@link MediaSampleQueue}: the drop policy of a
+ * full queue, the timed poll, interrupts, close and the counters.
+ *
+ * @author sven
+ */
+public class MediaSampleQueueTest extends AndroidTestCase {
+
+	/**
+	 * Time a blocked thread may take to return, in milliseconds.
+	 */
+	private final static long TIMEOUT = 5000;
+
+	/**
+	 * The queue under test.
+	 */
+	private MediaSampleQueue target;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		target = new MediaSampleQueue(3);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		target.close();
+		super.tearDown();
+	}
+
+	/**
+	 * A full queue drops its oldest sample, that is not a key frame; the order
+	 * of the other samples is kept.
+	 * @throws Exception Test failed.
+	 */
+	public void testOffer_dropOldestNonKeyFrame() throws Exception {
+		// Configure Test
+		assertTrue(target.offer(sample(1, true)));
+		assertTrue(target.offer(sample(2, false)));
+		assertTrue(target.offer(sample(3, false)));
+
+		// Run Test
+		boolean offered = target.offer(sample(4, false));
+
+		// Verify Test
+		assertFalse(offered);
+		assertEquals(3, target.size());
+		assertEquals(1, target.poll(0).getTimeStamp());
+		assertEquals(3, target.poll(0).getTimeStamp());
+		assertEquals(4, target.poll(0).getTimeStamp());
+		assertEquals(0, target.size());
+	}
+
+	/**
+	 * A full queue of key frames drops the oldest key frame.
+	 * @throws Exception Test failed.
+	 */
+	public void testOffer_keyFramesOnly() throws Exception {
+		// Configure Test
+		for(int i = 1; i <= 3; i++) {
+			assertTrue(target.offer(sample(i, true)));
+		}
+
+		// Run Test
+		boolean offered = target.offer(sample(4, false));
+
+		// Verify Test
+		assertFalse(offered);
+		assertEquals(2, target.poll(0).getTimeStamp());
+		assertEquals(3, target.poll(0).getTimeStamp());
+		assertEquals(4, target.poll(0).getTimeStamp());
+	}
+
+	/**
+	 * The poll of an empty queue returns null, when its timeout expires, and
+	 * returns a sample, that is added while it waits.
+	 * @throws Exception Test failed.
+	 */
+	public void testPoll_timeout() throws Exception {
+		// Configure Test
+		long start = System.currentTimeMillis();
+
+		// Run Test
+		MediaSample expired = target.poll(100);
+
+		// Verify Test
+		assertNull(expired);
+		assertTrue(System.currentTimeMillis() - start >= 100);
+
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch(InterruptedException e) {
+					return;
+				}
+				target.offer(sample(7, false));
+			}
+		}.start();
+		MediaSample added = target.poll(TIMEOUT);
+		assertNotNull(added);
+		assertEquals(7, added.getTimeStamp());
+	}
+
+	/**
+	 * An interrupt of a waiting consumer is propagated as
+	 * {@link InterruptedException}.
+	 * @throws Exception Test failed.
+	 */
+	public void testPoll_interrupt() throws Exception {
+		// Configure Test
+		final Throwable[] thrown = { null };
+		Thread consumer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					target.poll(TIMEOUT);
+				} catch(Throwable e) {
+					thrown[0] = e;
+				}
+			}
+		};
+		consumer.start();
+		Thread.sleep(50);
+
+		// Run Test
+		consumer.interrupt();
+		consumer.join(TIMEOUT);
+
+		// Verify Test
+		assertFalse(consumer.isAlive());
+		assertTrue(thrown[0] instanceof InterruptedException);
+	}
+
+	/**
+	 * Close releases a waiting consumer with null and discards the queued
+	 * samples; later samples are ignored.
+	 * @throws Exception Test failed.
+	 */
+	public void testClose() throws Exception {
+		// Configure Test
+		final MediaSample[] polled = { sample(0, false) };
+		Thread consumer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					polled[0] = target.poll(TIMEOUT);
+				} catch(InterruptedException e) {
+					// polled remains set
+				}
+			}
+		};
+		consumer.start();
+		Thread.sleep(50);
+
+		// Run Test
+		target.close();
+		consumer.join(TIMEOUT);
+
+		// Verify Test
+		assertFalse(consumer.isAlive());
+		assertNull(polled[0]);
+		assertTrue(target.isClosed());
+		assertFalse(target.offer(sample(1, true)));
+		assertEquals(0, target.size());
+		assertNull(target.poll(TIMEOUT));
+	}
+
+	/**
+	 * The high-water mark is the highest number of queued samples; added and
+	 * dropped samples are counted.
+	 * @throws Exception Test failed.
+	 */
+	public void testCounters() throws Exception {
+		// Configure Test
+		assertEquals(3, target.getCapacity());
+		target.offer(sample(1, false));
+		target.offer(sample(2, false));
+		target.poll(0);
+
+		// Run Test
+		for(int i = 3; i <= 7; i++) {
+			target.offer(sample(i, false));
+		}
+
+		// Verify Test
+		assertEquals(3, target.getHighWaterMark());
+		assertEquals(7, target.getAddedCount());
+		assertEquals(3, target.getDroppedCount());
+		assertEquals(3, target.size());
+		assertEquals(5, target.poll(0).getTimeStamp());
+	}
+
+	/**
+	 * Creates a sample.
+	 * @param time The time stamp, that identifies the sample
+	 * @param keyFrame Is the sample a key frame?
+	 * @return The sample
+	 */
+	private static MediaSample sample(long time, boolean keyFrame) {
+		return new MediaSample(new byte[] { (byte) time }, time, keyFrame);
+	}
+}
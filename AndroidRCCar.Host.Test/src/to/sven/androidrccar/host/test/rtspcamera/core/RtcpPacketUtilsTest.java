@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.core;
+
+import android.test.AndroidTestCase;
+
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtcpPacketUtils;
+
+/**
+ * This class should test the conversion of the wallclock time into NTP
+ * timestamps by the {@link RtcpPacketUtils}.
+ *
+ * @author sven
+ */
+public class RtcpPacketUtilsTest extends AndroidTestCase {
+
+	/**
+	 * The Unix epoch is 2208988800 seconds after the NTP epoch.
+	 * @throws Exception Test failed.
+	 */
+	public void testToNtpTimestamp_epoch() throws Exception {
+		// Run Test
+		long ntp = RtcpPacketUtils.toNtpTimestamp(0);
+
+		// Verify Test
+		assertEquals(0x83AA7E8000000000L, ntp);
+	}
+
+	/**
+	 * Known value: 2001-09-09 01:46:40 UTC, 10^12 ms after the Unix epoch.
+	 * @throws Exception Test failed.
+	 */
+	public void testToNtpTimestamp_knownValue() throws Exception {
+		// Run Test
+		long ntp = RtcpPacketUtils.toNtpTimestamp(1000000000000L);
+
+		// Verify Test
+		assertEquals(0xBF45488000000000L, ntp);
+	}
+
+	/**
+	 * The milliseconds are the fraction in units of 1/2^32 seconds.
+	 * @throws Exception Test failed.
+	 */
+	public void testToNtpTimestamp_fraction() throws Exception {
+		// Run Test / Verify Test
+		assertEquals(0x83AA7E8180000000L, RtcpPacketUtils.toNtpTimestamp(1500));
+		assertEquals(0x83AA7E8040000000L, RtcpPacketUtils.toNtpTimestamp(250));
+		assertEquals(0x83AA7E8000418937L, RtcpPacketUtils.toNtpTimestamp(1));
+		assertEquals(0xBF454880FFBE76C8L, RtcpPacketUtils.toNtpTimestamp(1000000000999L));
+	}
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.core;
+
+import android.test.AndroidTestCase;
+
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtcpSession;
+
+/**
+ * This class should test the accounting of the sent RTP packets by the
+ * {@link RtcpSession} and the RTP timestamps of its sender reports.
+ *
+ * @author sven
+ */
+public class RtcpSessionTest extends AndroidTestCase {
+
+	/**
+	 * RTP clock rate.
+	 */
+	private final static int CLOCK_RATE = 90000;
+
+	/**
+	 * The session under test.
+	 */
+	private RtcpSession target;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		target = new RtcpSession(true, 16000);
+		target.setClockRate(CLOCK_RATE);
+	}
+
+	/**
+	 * The RTP timestamp is extrapolated from the last packet sent and wraps
+	 * at 32 bits in both directions.
+	 * @throws Exception Test failed.
+	 */
+	public void testGetRtpTimestamp_wrap() throws Exception {
+		// Configure Test
+		target.rtpPacketSent(0xFFFFFF00L, 1000, 100);
+
+		// Run Test
+		long later = target.getRtpTimestamp(1010);
+		long earlier = target.getRtpTimestamp(990);
+		long same = target.getRtpTimestamp(1000);
+
+		// Verify Test: 10 ms are 900 ticks
+		assertEquals(0x284L, later);
+		assertEquals(0xFFFFFB7CL, earlier);
+		assertEquals(0xFFFFFF00L, same);
+	}
+
+	/**
+	 * The packet and octet counts of the sender report are accumulated and
+	 * the last packet is kept as reference for the timestamps.
+	 * @throws Exception Test failed.
+	 */
+	public void testRtpPacketSent_counters() throws Exception {
+		// Configure Test
+		assertEquals(0, target.packetCount);
+		assertEquals(0, target.octetCount);
+		assertFalse(target.getMySource().activeSender);
+
+		// Run Test
+		for(int i = 0; i < 10; i++) {
+			target.rtpPacketSent(i * 3000L, 5000 + i * 33L, 100 + i);
+		}
+
+		// Verify Test
+		assertEquals(10, target.packetCount);
+		assertEquals(10 * 100 + 45, target.octetCount);
+		assertTrue(target.getMySource().activeSender);
+		assertEquals(9 * 3000L, target.lastRtpTimestamp);
+		assertEquals(5000 + 9 * 33L, target.lastSamplingTime);
+		assertTrue(target.timeOfLastRTPSent >= target.appStartupTime);
+	}
+}
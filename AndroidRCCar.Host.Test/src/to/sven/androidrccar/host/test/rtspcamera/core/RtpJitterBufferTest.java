@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.core;
+
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtpJitterBuffer;
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtpPacket;
+
+/**
+ * This class should test the {@link RtpJitterBuffer}: the order of the
+ * packets by extended sequence number, duplicates, late packets and the
+ * interarrival jitter of RFC 3550, 6.4.1.
+ *
+ * @author sven
+ */
+public class RtpJitterBufferTest extends AndroidTestCase {
+
+	/**
+	 * RTP clock rate.
+	 */
+	private final static int CLOCK_RATE = 90000;
+
+	/**
+	 * RTP ticks between two packets: 20 ms.
+	 */
+	private final static int TICKS = 1800;
+
+	/**
+	 * Arrival time of the first packet; in the past, so that every packet is
+	 * due at once.
+	 */
+	private long start;
+
+	/**
+	 * The buffer under test.
+	 */
+	private RtpJitterBuffer target;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		start = System.currentTimeMillis() - 60000;
+		target = new RtpJitterBuffer(CLOCK_RATE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		target.close();
+		super.tearDown();
+	}
+
+	/**
+	 * The sequence number is extended, when it wraps, also if the packets
+	 * around the wrap are reordered.
+	 * @throws Exception Test failed.
+	 */
+	public void testTake_sequenceWrap() throws Exception {
+		// Configure Test
+		int[] order = { 65533, 65534, 0, 65535, 2, 1, 3 };
+		for(int seqnum : order) {
+			target.put(packet(seqnum, (seqnum - 65533) & 0xFFFF, 0));
+		}
+
+		// Run Test / Verify Test
+		for(long seqnum = 65533; seqnum <= 65536 + 3; seqnum++) {
+			RtpPacket packet = target.take();
+			assertEquals(seqnum, packet.seqnum);
+			assertEquals((seqnum - 65533) * TICKS, packet.timestamp);
+		}
+		assertEquals(0, target.size());
+		assertEquals(0, target.getLostCount());
+		assertEquals(order.length, target.getReleasedCount());
+	}
+
+	/**
+	 * The payload is copied out of the receive buffer, so that the caller
+	 * may reuse it at once.
+	 * @throws Exception Test failed.
+	 */
+	public void testPut_payloadCopied() throws Exception {
+		// Configure Test
+		RtpPacket received = packet(0, 0, 0);
+		received.data = new byte[] { 0, 0, 42, 43 };
+		received.payloadoffset = 2;
+		received.payloadlength = 2;
+
+		// Run Test
+		target.put(received);
+		received.data[2] = 0;
+		received.data[3] = 0;
+		target.put(packet(1, 1, 0));
+
+		// Verify Test
+		RtpPacket packet = target.take();
+		assertEquals(0, packet.seqnum);
+		assertEquals(2, packet.payloadlength);
+		assertEquals(42, packet.data[packet.payloadoffset]);
+		assertEquals(43, packet.data[packet.payloadoffset + 1]);
+		packet = target.take();
+		assertEquals(1, packet.seqnum);
+		assertEquals(1, packet.data[packet.payloadoffset]);
+	}
+
+	/**
+	 * A duplicate of a buffered packet is dropped.
+	 * @throws Exception Test failed.
+	 */
+	public void testPut_duplicate() throws Exception {
+		// Configure Test
+		target.put(packet(10, 0, 0));
+		target.put(packet(11, 1, 0));
+
+		// Run Test
+		target.put(packet(11, 1, 0));
+		target.put(packet(12, 2, 0));
+
+		// Verify Test
+		assertEquals(1, target.getDuplicateCount());
+		assertEquals(3, target.size());
+		for(int seqnum = 10; seqnum <= 12; seqnum++) {
+			assertEquals(seqnum, target.take().seqnum);
+		}
+		assertEquals(0, target.size());
+	}
+
+	/**
+	 * A packet, that arrives after a later one has been released, is dropped
+	 * as late and raises the playout delay to its transit time.
+	 * @throws Exception Test failed.
+	 */
+	public void testPut_late() throws Exception {
+		// Configure Test
+		target.put(packet(20, 0, 0));
+		target.put(packet(22, 2, 0));
+		assertEquals(20, target.take().seqnum);
+		assertEquals(22, target.take().seqnum);
+		assertEquals(1, target.getLostCount());
+		assertEquals(10, target.getPlayoutDelay());
+
+		// Run Test
+		target.put(packet(21, 1, 200));
+
+		// Verify Test
+		assertEquals(1, target.getLateCount());
+		assertEquals(0, target.size());
+		assertEquals(200, target.getPlayoutDelay());
+
+		// a duplicate of a released packet is late, too
+		target.put(packet(22, 2, 0));
+		assertEquals(2, target.getLateCount());
+		assertEquals(0, target.getDuplicateCount());
+	}
+
+	/**
+	 * The jitter follows J += (|D| - J) / 16 of the transit time differences.
+	 * @throws Exception Test failed.
+	 */
+	public void testPut_jitter() throws Exception {
+		// Configure Test
+		Random random = new Random(42);
+		double jitter = 0;
+		long lastDelay = 0;
+
+		for(int i = 0; i < 400; i++) {
+			// Run Test
+			long delay = (i < 200) ? random.nextInt(40) : 0;
+			target.put(packet(i, i, delay));
+			if(i > 0) {
+				jitter += (Math.abs(delay - lastDelay) - jitter) / 16;
+			}
+			lastDelay = delay;
+			if(target.size() > 256) {
+				target.take();
+			}
+
+			// Verify Test: the jitter is kept in 1/16 ms and returned truncated
+			assertTrue("Jitter of packet " + i + ": " + target.getJitter() + " ms, expected " + jitter,
+					Math.abs(target.getJitter() - jitter) < 1.5);
+		}
+		assertEquals(0, target.getJitter());
+	}
+
+	/**
+	 * A step of the transit time adds a sixteenth of the step to the jitter.
+	 * @throws Exception Test failed.
+	 */
+	public void testPut_jitterStep() throws Exception {
+		// Configure Test
+		for(int i = 0; i < 10; i++) {
+			target.put(packet(i, i, 0));
+		}
+		assertEquals(0, target.getJitter());
+
+		// Run Test
+		target.put(packet(10, 10, 160));
+
+		// Verify Test
+		assertEquals(10, target.getJitter());
+		target.put(packet(11, 11, 160));
+		assertEquals(9, target.getJitter());
+	}
+
+	/**
+	 * A blocked take returns, when the buffer is closed.
+	 * @throws Exception Test failed.
+	 */
+	public void testTake_close() throws Exception {
+		// Configure Test
+		final RtpPacket[] taken = { packet(0, 0, 0) };
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					taken[0] = target.take();
+				} catch(InterruptedException e) {
+					// taken remains set
+				}
+			}
+		};
+		thread.start();
+		Thread.sleep(50);
+
+		// Run Test
+		target.close();
+		thread.join(5000);
+
+		// Verify Test
+		assertFalse(thread.isAlive());
+		assertNull(taken[0]);
+	}
+
+	/**
+	 * Creates a packet.
+	 * @param seqnum The sequence number
+	 * @param index The index of the packet in the stream, that determines its
+	 * timestamp
+	 * @param delay The delay of its arrival in milliseconds
+	 * @return The packet
+	 */
+	private RtpPacket packet(int seqnum, int index, long delay) {
+		RtpPacket packet = new RtpPacket();
+		packet.seqnum = seqnum;
+		packet.timestamp = (long) index * TICKS;
+		packet.receivedAt = start + (long) index * TICKS * 1000 / CLOCK_RATE + delay;
+		packet.data = new byte[] { (byte) seqnum };
+		packet.length = 1;
+		packet.payloadlength = 1;
+		return packet;
+	}
+}
@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.core;
+
+import android.test.AndroidTestCase;
+
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtcpSession;
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtpReceptionStatistics;
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtpSource;
+
+/**
+ * This class should test the reception statistics of the {@link RtpSource}:
+ * the sequence number validation of RFC 3550, A.1, the interarrival jitter
+ * of A.8 and the values of the reception report block.
+ *
+ * @author sven
+ */
+public class RtpSourceTest extends AndroidTestCase {
+
+	/**
+	 * RTP clock rate.
+	 */
+	private final static int CLOCK_RATE = 90000;
+
+	/**
+	 * RTP ticks between two packets: 20 ms.
+	 */
+	private final static int TICKS = 1800;
+
+	/**
+	 * Arrival time of the first packet.
+	 */
+	private final static long START = 1000000;
+
+	/**
+	 * The source under test.
+	 */
+	private RtpSource target;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		target = new RtcpSession(false, 16000).getMySource();
+		target.setClockRate(CLOCK_RATE);
+	}
+
+	/**
+	 * The sequence number is extended, when it wraps at 16 bits.
+	 * @throws Exception Test failed.
+	 */
+	public void testReceivedPacket_wrap() throws Exception {
+		// Configure Test
+		int[] seqs = { 65534, 65535, 0, 1 };
+
+		// Run Test
+		for(int i = 0; i < seqs.length; i++) {
+			assertTrue(receive(seqs[i], i, 0));
+		}
+		target.updateStatistics();
+
+		// Verify Test
+		assertEquals(65536 + 1, target.getExtendedMax());
+		assertEquals(65536 + 1, target.last_seq);
+		assertEquals(4, target.expected);
+		assertEquals(0, target.lost);
+		assertEquals(0.0, target.fraction);
+	}
+
+	/**
+	 * A jump ahead of less than MAX_DROPOUT counts the gap as lost; a larger
+	 * jump is not counted.
+	 * @throws Exception Test failed.
+	 */
+	public void testReceivedPacket_dropout() throws Exception {
+		// Configure Test
+		assertTrue(receive(100, 0, 0));
+
+		// Run Test
+		boolean gap = receive(100 + 2999, 1, 0);
+		boolean jump = receive(100 + 2999 + 3000, 2, 0);
+		target.updateStatistics();
+
+		// Verify Test
+		assertTrue(gap);
+		assertFalse(jump);
+		assertEquals(2, target.noOfRTPPacketsRcvd);
+		assertEquals(100 + 2999, target.getExtendedMax());
+		assertEquals(2998, target.lost);
+	}
+
+	/**
+	 * A packet less than MAX_MISORDER behind the highest one is counted as
+	 * reordered; a packet further behind is not counted.
+	 * @throws Exception Test failed.
+	 */
+	public void testReceivedPacket_misorder() throws Exception {
+		// Configure Test
+		assertTrue(receive(1000, 0, 0));
+
+		// Run Test
+		boolean reordered = receive(1000 - 99, 1, 0);
+		boolean late = receive(1000 - 100, 2, 0);
+
+		// Verify Test
+		assertTrue(reordered);
+		assertFalse(late);
+		assertEquals(2, target.noOfRTPPacketsRcvd);
+		assertEquals(1000, target.getExtendedMax());
+	}
+
+	/**
+	 * Two sequential packets after a large jump restart the source: the
+	 * sequence and jitter state begin again with the second one.
+	 * @throws Exception Test failed.
+	 */
+	public void testReceivedPacket_restart() throws Exception {
+		// Configure Test
+		for(int i = 0; i < 10; i++) {
+			assertTrue(receive(1000 + i, i, (i % 2) * 20));
+		}
+		assertTrue(target.jitter > 0);
+
+		// Run Test
+		boolean first = receive(20000, 10, 0);
+		boolean second = receive(20001, 11, 0);
+		boolean third = receive(20002, 12, 0);
+		target.updateStatistics();
+
+		// Verify Test
+		assertFalse(first);
+		assertTrue(second);
+		assertTrue(third);
+		assertEquals(20001, target.base_seq);
+		assertEquals(20002, target.getExtendedMax());
+		assertEquals(2, target.noOfRTPPacketsRcvd);
+		assertEquals(0, target.lost);
+		assertEquals(0, target.jitter);
+		assertEquals(0.0, target.getReceptionStatistics().jitter);
+	}
+
+	/**
+	 * The jitter follows J += (|D| - J) / 16 of the transit time differences,
+	 * in RTP timestamp units.
+	 * @throws Exception Test failed.
+	 */
+	public void testReceivedPacket_jitter() throws Exception {
+		// Configure Test
+		for(int i = 0; i < 10; i++) {
+			receive(i, i, 0);
+		}
+		assertEquals(0, target.jitter);
+
+		// Run Test
+		receive(10, 10, 16);
+
+		// Verify Test: 16 ms are 1440 ticks
+		assertEquals(1440 / 16, target.jitter);
+		assertEquals(1.0, target.getReceptionStatistics().jitter, 0.001);
+		receive(11, 11, 16);
+		assertEquals((long) (90 - 90 / 16.0), target.jitter);
+	}
+
+	/**
+	 * The fraction lost since the previous report is a fixed point number
+	 * with 8 bits after the binary point.
+	 * @throws Exception Test failed.
+	 */
+	public void testUpdateStatistics_fraction() throws Exception {
+		// Configure Test
+		for(int seq = 0; seq < 10; seq += 2) {
+			receive(seq, seq, 0);
+		}
+		target.updateStatistics();
+		assertEquals(9, target.expected);
+		assertEquals(4, target.lost);
+
+		// Run Test
+		for(int seq = 10; seq < 18; seq++) {
+			receive(seq, seq, 0);
+		}
+		receive(21, 21, 0);
+		target.updateStatistics();
+
+		// Verify Test: 4 of the 13 packets since the previous report are lost
+		assertEquals(22, target.expected);
+		assertEquals(8, target.lost);
+		assertEquals((4 << 8) / 13.0, target.fraction, 0.0001);
+	}
+
+	/**
+	 * The cumulative number of packets lost is clamped to signed 24 bits.
+	 * @throws Exception Test failed.
+	 */
+	public void testUpdateStatistics_lostClamp() throws Exception {
+		// Configure Test: jumps of 2999 lose 2998 packets each
+		int seq = 0;
+		for(int i = 0; i < 3000; i++) {
+			receive(seq & 0xFFFF, i, 0);
+			seq += 2999;
+		}
+
+		// Run Test
+		target.updateStatistics();
+
+		// Verify Test
+		assertEquals(0x7FFFFF, target.lost);
+
+		// Configure Test: duplicates are counted, so the loss turns negative
+		target = new RtcpSession(false, 16000).getMySource();
+		for(int i = 0; i <= 0x800001; i++) {
+			target.receivedPacket(0, 0, START);
+		}
+
+		// Run Test
+		target.updateStatistics();
+
+		// Verify Test
+		assertEquals(-0x800000, target.lost);
+	}
+
+	/**
+	 * LSR is the middle 32 bits of the NTP timestamp of the sender report, and
+	 * DLSR the time since its arrival in units of 1/65536 seconds.
+	 * @throws Exception Test failed.
+	 */
+	public void testUpdateStatistics_lsrDlsr() throws Exception {
+		// Configure Test
+		target.updateStatistics();
+		assertEquals(0.0, target.dlsr);
+		long arrival = System.currentTimeMillis() - 1000;
+
+		// Run Test
+		target.receivedSenderReport(0x12345678L, 0x9ABCDEF0L, arrival);
+		target.updateStatistics();
+
+		// Verify Test
+		assertEquals(0x56789ABCL, target.lst);
+		assertTrue("DLSR " + target.dlsr, target.dlsr >= 65536 && target.dlsr < 65536 * 3 / 2);
+		RtpReceptionStatistics statistics = target.getReceptionStatistics();
+		assertTrue(statistics.lastSenderReportAge >= 1000);
+	}
+
+	/**
+	 * Accounts a packet, that is sent every 20 ms.
+	 * @param seq The sequence number
+	 * @param index The index of the packet in the stream, that determines its
+	 * timestamp
+	 * @param delay The delay of its arrival in milliseconds
+	 * @return false, if the packet is not counted
+	 */
+	private boolean receive(int seq, int index, long delay) {
+		long timestamp = (long) index * TICKS;
+		long arrival = START + timestamp * 1000 / CLOCK_RATE + delay;
+		return target.receivedPacket(seq, timestamp & 0xFFFFFFFFL, arrival);
+	}
+}
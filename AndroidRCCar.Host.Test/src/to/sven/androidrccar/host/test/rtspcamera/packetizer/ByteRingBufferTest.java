@@ -0,0 +1,452 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.packetizer;
+
+import java.io.IOException;
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+import de.kp.net.rtp.packetizer.ByteRingBuffer;
+
+/**
+ * This class should test the behavior of the {@link ByteRingBuffer}.
+ *
+ * The stress tests run a producer and a consumer thread with chunks of
+ * random length and verify, that every byte arrives once and in order.
+ *
+ * @author sven
+ */
+public class ByteRingBufferTest extends AndroidTestCase {
+
+	/**
+	 * Number of bytes sent by the stress tests.
+	 */
+	private final static int STRESS_BYTES = 1 << 20;
+
+	/**
+	 * Time a test thread may take, in milliseconds.
+	 */
+	private final static long TIMEOUT = 20000;
+
+	/**
+	 * Random numbers with a fixed seed, so every run is equal.
+	 */
+	private final Random random = new Random(42);
+
+	/**
+	 * The capacity is rounded up to a power of two.
+	 */
+	public void testCapacity() {
+		assertEquals(16, new ByteRingBuffer(16).capacity());
+		assertEquals(16, new ByteRingBuffer(9).capacity());
+		assertEquals(1, new ByteRingBuffer(1).capacity());
+		try {
+			new ByteRingBuffer(0);
+			fail("IllegalArgumentException expected.");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Space drained by the consumer can be offered again.
+	 * @throws Exception Test failed.
+	 */
+	public void testOffer_afterPartialDrain() throws Exception {
+		// Configure Test
+		ByteRingBuffer target = new ByteRingBuffer(16);
+		byte[] data = sequence(0, 10);
+
+		// Run Test
+		assertTrue(target.offer(data, 0, 10));
+		assertEquals(10, target.poll(new byte[10], 0, 10));
+		boolean accepted = target.offer(data, 0, 10);
+
+		// Verify Test
+		assertTrue(accepted);
+		assertEquals(10, target.available());
+		assertEquals(0, target.getOverflowCount());
+		assertEquals(0, target.getDroppedBytes());
+	}
+
+	/**
+	 * An offer, that does not fit, is rejected as a whole and counted.
+	 * @throws Exception Test failed.
+	 */
+	public void testOffer_overflow() throws Exception {
+		// Configure Test
+		ByteRingBuffer target = new ByteRingBuffer(16);
+		byte[] data = sequence(0, 12);
+
+		// Run Test
+		assertTrue(target.offer(data, 0, 12));
+		boolean accepted = target.offer(data, 0, 5);
+
+		// Verify Test
+		assertFalse(accepted);
+		assertEquals(12, target.available());
+		assertEquals(1, target.getOverflowCount());
+		assertEquals(5, target.getDroppedBytes());
+		assertTrue(target.offer(data, 0, 4));
+		assertEquals(16, target.available());
+	}
+
+	/**
+	 * Chunks, that do not divide the capacity, wrap around the end of the ring.
+	 * @throws Exception Test failed.
+	 */
+	public void testOffer_wrapAround() throws Exception {
+		// Configure Test
+		ByteRingBuffer target = new ByteRingBuffer(16);
+		byte[] actual = new byte[7];
+
+		for(int i = 0; i < 100; i++) {
+			// Run Test
+			byte[] expected = sequence(i * 7, 7);
+			assertTrue("Offer " + i, target.offer(expected, 0, 7));
+			assertEquals(7, target.poll(actual, 0, 7));
+
+			// Verify Test
+			assertBytes(expected, actual, 7);
+		}
+		assertEquals(0, target.available());
+		assertEquals(0, target.getOverflowCount());
+	}
+
+	/**
+	 * Poll does not block on an empty buffer and returns -1 after close.
+	 * @throws Exception Test failed.
+	 */
+	public void testPoll_emptyAndClosed() throws Exception {
+		// Configure Test
+		ByteRingBuffer target = new ByteRingBuffer(16);
+		byte[] data = new byte[4];
+
+		// Run Test / Verify Test
+		assertEquals(0, target.poll(data, 0, 4));
+		assertTrue(target.offer(sequence(0, 3), 0, 3));
+		target.close();
+		assertEquals(3, target.poll(data, 0, 4));
+		assertEquals(-1, target.poll(data, 0, 4));
+	}
+
+	/**
+	 * An offer to a closed buffer fails.
+	 */
+	public void testOffer_closed() {
+		// Configure Test
+		ByteRingBuffer target = new ByteRingBuffer(16);
+		target.close();
+
+		// Run Test
+		try {
+			target.offer(new byte[1], 0, 1);
+			fail("IOException expected.");
+		} catch(IOException e) {
+			// Verify Test
+			assertTrue(target.isClosed());
+		}
+	}
+
+	/**
+	 * Invalid ranges are rejected.
+	 * @throws Exception Test failed.
+	 */
+	public void testOffer_invalidRange() throws Exception {
+		ByteRingBuffer target = new ByteRingBuffer(16);
+		try {
+			target.offer(new byte[4], 2, 3);
+			fail("IndexOutOfBoundsException expected.");
+		} catch(IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * A write larger than the capacity blocks until the consumer drains the ring;
+	 * the wait is counted as stall.
+	 * @throws Exception Test failed.
+	 */
+	public void testWrite_blocksUntilDrained() throws Exception {
+		// Configure Test
+		final ByteRingBuffer target = new ByteRingBuffer(16);
+		final byte[] expected = sequence(0, 100);
+		Worker producer = new Worker() {
+			@Override
+			protected void work() throws Exception {
+				target.write(expected, 0, expected.length);
+			}
+		};
+
+		// Run Test
+		producer.start();
+		Thread.sleep(50);
+		assertTrue("Producer must wait", producer.isAlive());
+		byte[] actual = new byte[expected.length];
+		int pos = 0;
+		while(pos < actual.length) {
+			pos += target.read(actual, pos, actual.length - pos);
+		}
+		producer.finish();
+
+		// Verify Test
+		assertBytes(expected, actual, actual.length);
+		assertEquals(1, target.getStallCount());
+		assertEquals(0, target.getOverflowCount());
+	}
+
+	/**
+	 * Producer and consumer block in turn; every byte arrives once and in order.
+	 * @throws Exception Test failed.
+	 */
+	public void testWriteRead_stress() throws Exception {
+		// Configure Test
+		final ByteRingBuffer target = new ByteRingBuffer(256);
+		final int[] chunks = chunks(STRESS_BYTES, 700);
+		Worker producer = new Worker() {
+			@Override
+			protected void work() throws Exception {
+				int pos = 0;
+				for(int chunk : chunks) {
+					target.write(sequence(pos, chunk), 0, chunk);
+					pos += chunk;
+				}
+				target.close();
+			}
+		};
+
+		// Run Test
+		producer.start();
+		long received = 0;
+		byte[] data = new byte[700];
+		int count;
+		while((count = target.read(data, 0, 1 + random.nextInt(data.length))) >= 0) {
+			// Verify Test
+			assertBytes(sequence(received, count), data, count);
+			received += count;
+		}
+		producer.finish();
+
+		// Verify Test
+		assertEquals(STRESS_BYTES, received);
+		assertEquals(0, target.getOverflowCount());
+		assertTrue("The producer must have stalled", target.getStallCount() > 0);
+	}
+
+	/**
+	 * The producer offers without blocking while the consumer polls; the consumer
+	 * receives exactly the accepted chunks, the rejected ones are counted.
+	 * @throws Exception Test failed.
+	 */
+	public void testOfferPoll_stress() throws Exception {
+		// Configure Test
+		final ByteRingBuffer target = new ByteRingBuffer(1024);
+		final int[] chunks = chunks(STRESS_BYTES, 300);
+		final long[] rejected = new long[2];
+		Worker producer = new Worker() {
+			@Override
+			protected void work() throws Exception {
+				long pos = 0;
+				for(int chunk : chunks) {
+					// the chunk carries its position, so that gaps are detected
+					if(target.offer(sequence(pos, chunk), 0, chunk)) {
+						pos += chunk;
+					} else {
+						rejected[0]++;
+						rejected[1] += chunk;
+					}
+				}
+				target.close();
+			}
+		};
+
+		// Run Test
+		producer.start();
+		long received = 0;
+		byte[] data = new byte[300];
+		int count;
+		while((count = target.poll(data, 0, 1 + random.nextInt(data.length))) >= 0) {
+			if(count == 0) {
+				Thread.yield();
+				continue;
+			}
+			// Verify Test
+			assertBytes(sequence(received, count), data, count);
+			received += count;
+		}
+		producer.finish();
+
+		// Verify Test
+		assertEquals(rejected[0], target.getOverflowCount());
+		assertEquals(rejected[1], target.getDroppedBytes());
+		assertEquals(STRESS_BYTES - rejected[1], received);
+		assertEquals(0, target.getStallCount());
+	}
+
+	/**
+	 * Close releases a consumer waiting for data; it still reads the remaining data.
+	 * @throws Exception Test failed.
+	 */
+	public void testClose_releasesConsumer() throws Exception {
+		// Configure Test
+		final ByteRingBuffer target = new ByteRingBuffer(16);
+		final int[] results = new int[2];
+		Worker consumer = new Worker() {
+			@Override
+			protected void work() throws Exception {
+				byte[] data = new byte[16];
+				results[0] = target.read(data, 0, 16);
+				results[1] = target.read(data, 0, 16);
+			}
+		};
+
+		// Run Test
+		consumer.start();
+		Thread.sleep(50);
+		assertTrue("Consumer must wait", consumer.isAlive());
+		target.offer(sequence(0, 5), 0, 5);
+		target.close();
+		consumer.finish();
+
+		// Verify Test
+		assertEquals(5, results[0]);
+		assertEquals(-1, results[1]);
+	}
+
+	/**
+	 * Close releases a producer waiting for space with an {@link IOException}.
+	 * @throws Exception Test failed.
+	 */
+	public void testClose_releasesProducer() throws Exception {
+		// Configure Test
+		final ByteRingBuffer target = new ByteRingBuffer(16);
+		final IOException[] result = new IOException[1];
+		Worker producer = new Worker() {
+			@Override
+			protected void work() throws Exception {
+				try {
+					target.write(new byte[32], 0, 32);
+				} catch(IOException e) {
+					result[0] = e;
+				}
+			}
+		};
+
+		// Run Test
+		producer.start();
+		Thread.sleep(50);
+		assertTrue("Producer must wait", producer.isAlive());
+		target.close();
+		producer.finish();
+
+		// Verify Test
+		assertNotNull(result[0]);
+		assertEquals(16, target.available());
+	}
+
+	/**
+	 * Creates the bytes of a stream at the given position.
+	 * @param position Position of the first byte in the stream
+	 * @param length Number of bytes
+	 * @return The bytes
+	 */
+	private static byte[] sequence(long position, int length) {
+		byte[] data = new byte[length];
+		for(int i = 0; i < length; i++) {
+			long pos = position + i;
+			data[i] = (byte) (pos ^ (pos >>> 8) ^ (pos >>> 16));
+		}
+		return data;
+	}
+
+	/**
+	 * Splits a stream into chunks with random length.
+	 * @param total Length of the stream
+	 * @param max Maximum length of a chunk
+	 * @return Lengths of the chunks
+	 */
+	private int[] chunks(int total, int max) {
+		int[] chunks = new int[total];
+		int count = 0;
+		for(int pos = 0; pos < total; count++) {
+			chunks[count] = Math.min(1 + random.nextInt(max), total - pos);
+			pos += chunks[count];
+		}
+		int[] result = new int[count];
+		System.arraycopy(chunks, 0, result, 0, count);
+		return result;
+	}
+
+	/**
+	 * Compares the first {@code length} bytes.
+	 * @param expected The expected bytes
+	 * @param actual The actual bytes
+	 * @param length Number of bytes to compare
+	 */
+	private static void assertBytes(byte[] expected, byte[] actual, int length) {
+		for(int i = 0; i < length; i++) {
+			assertEquals("Byte " + i, expected[i], actual[i]);
+		}
+	}
+
+	/**
+	 * A thread of the test; a failure is rethrown by {@link #finish()}.
+	 */
+	private abstract static class Worker extends Thread {
+
+		/**
+		 * The failure of the thread.
+		 */
+		private volatile Throwable failure;
+
+		/**
+		 * The work of the thread.
+		 * @throws Exception Test failed.
+		 */
+		protected abstract void work() throws Exception;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void run() {
+			try {
+				work();
+			} catch(Throwable t) {
+				failure = t;
+			}
+		}
+
+		/**
+		 * Waits for the thread to end.
+		 * @throws Exception The thread failed or did not end in time.
+		 */
+		public void finish() throws Exception {
+			join(TIMEOUT);
+			if(isAlive()) {
+				interrupt();
+				fail("Thread did not finish");
+			}
+			if(failure != null) {
+				throw new Exception(failure);
+			}
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.packetizer;
+
+import static to.sven.androidrccar.host.test.rtspcamera.packetizer.H263PacketizerTest.picture;
+import static to.sven.androidrccar.host.test.rtspcamera.packetizer.H264PacketizerTest.bytes;
+import static to.sven.androidrccar.host.test.rtspcamera.packetizer.H264PacketizerTest.concat;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import to.sven.androidrccar.host.test.rtspcamera.H263TestStream;
+import android.test.AndroidTestCase;
+import de.kp.net.rtp.packetizer.H263FrameReader;
+
+/**
+ * This class should test the splitting of H.263 streams into pictures by the
+ * {@link H263FrameReader}.
+ *
+ * @author sven
+ */
+public class H263FrameReaderTest extends AndroidTestCase {
+
+	/**
+	 * The pictures of an elementary stream are split at their picture start
+	 * codes, not at the GOB start codes.
+	 * @throws Exception Test failed.
+	 */
+	public void testReadFrame_stream() throws Exception {
+		// Configure Test
+		H263TestStream stream = new H263TestStream(42, 30, 300);
+
+		// Run Test / Verify Test
+		assertPictures(stream, new H263FrameReader(new ByteArrayInputStream(stream.getBytes())));
+	}
+
+	/**
+	 * The stream is read from the mdat atom of a 3GP stream.
+	 * @throws Exception Test failed.
+	 */
+	public void testReadFrame_mp4() throws Exception {
+		// Configure Test
+		H263TestStream stream = new H263TestStream(7, 10, 1000);
+		byte[] data = stream.getBytes();
+		int size = 8 + data.length;
+		byte[] mp4 = concat(bytes(0, 0, 0, 16), "ftyp3gp4".getBytes("ISO-8859-1"), bytes(0, 0, 0, 0),
+				bytes(size >> 24, size >> 16, size >> 8, size), "mdat".getBytes("ISO-8859-1"), data);
+
+		// Run Test / Verify Test
+		assertPictures(stream, new H263FrameReader(new ByteArrayInputStream(mp4)));
+	}
+
+	/**
+	 * Zero bytes, that stuff the stream before a picture start code, are not
+	 * part of the picture.
+	 * @throws Exception Test failed.
+	 */
+	public void testReadFrame_stuffing() throws Exception {
+		// Configure Test
+		byte[] first = picture(1, 40, 20);
+		byte[] second = picture(2, 30);
+		H263FrameReader target = new H263FrameReader(new ByteArrayInputStream(concat(first, bytes(0, 0, 0),
+				second, bytes(0, 0))));
+
+		// Run Test / Verify Test
+		assertEquals(first.length, target.readFrame());
+		assertTrue(Arrays.equals(first, Arrays.copyOf(target.getFrame(), first.length)));
+		assertEquals(second.length, target.readFrame());
+		assertTrue(Arrays.equals(second, Arrays.copyOf(target.getFrame(), second.length)));
+		assertEquals(-1, target.readFrame());
+	}
+
+	/**
+	 * A picture larger than the initial buffer is read completely.
+	 * @throws Exception Test failed.
+	 */
+	public void testReadFrame_largePicture() throws Exception {
+		// Configure Test
+		byte[] large = picture(9, 50000, 50000);
+		byte[] next = picture(10, 10);
+		H263FrameReader target = new H263FrameReader(new ByteArrayInputStream(concat(large, next)));
+
+		// Run Test / Verify Test
+		assertEquals(large.length, target.readFrame());
+		assertTrue(Arrays.equals(large, Arrays.copyOf(target.getFrame(), large.length)));
+		assertEquals(next.length, target.readFrame());
+		assertEquals(-1, target.readFrame());
+	}
+
+	/**
+	 * The temporal reference is read from the picture header; a GOB start
+	 * code is no picture start code.
+	 */
+	public void testPictureHeader() {
+		// Run Test / Verify Test
+		for(int temporalReference = 0; temporalReference < 256; temporalReference++) {
+			byte[] picture = picture(temporalReference, 10);
+			assertTrue(H263FrameReader.isPictureStart(picture, 0));
+			assertEquals(temporalReference, H263FrameReader.getTemporalReference(picture, 0));
+		}
+		assertFalse(H263FrameReader.isPictureStart(bytes(0, 0, 0x84, 0x00), 0));
+		assertFalse(H263FrameReader.isPictureStart(bytes(0, 1, 0x80, 0x00), 0));
+	}
+
+	/**
+	 * Asserts, that the pictures and their temporal references are read.
+	 * @param stream The stream
+	 * @param target The reader of the stream
+	 * @throws Exception Test failed.
+	 */
+	private static void assertPictures(H263TestStream stream, H263FrameReader target) throws Exception {
+		List<byte[]> pictures = stream.getPictures();
+		for(int i = 0; i < pictures.size(); i++) {
+			int length = target.readFrame();
+			assertEquals("Length of picture " + i, pictures.get(i).length, length);
+			assertTrue("Picture " + i, Arrays.equals(pictures.get(i), Arrays.copyOf(target.getFrame(), length)));
+			assertEquals(stream.getTemporalReference(i), H263FrameReader.getTemporalReference(target.getFrame(), 0));
+		}
+		assertEquals(-1, target.readFrame());
+	}
+}
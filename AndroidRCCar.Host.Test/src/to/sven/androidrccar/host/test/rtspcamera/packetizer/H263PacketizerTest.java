@@ -0,0 +1,260 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.packetizer;
+
+import static to.sven.androidrccar.host.test.rtspcamera.packetizer.H264PacketizerTest.bytes;
+import static to.sven.androidrccar.host.test.rtspcamera.packetizer.H264PacketizerTest.concat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import to.sven.androidrccar.host.test.rtspcamera.RtpCapture;
+import android.test.AndroidTestCase;
+import de.kp.net.rtp.packetizer.H263Packetizer;
+import de.kp.net.rtsp.RtspConstants;
+
+/**
+ * This class should test the packetization of H.263 pictures by the
+ * {@link H263Packetizer} (RFC 4629). The packets are compared byte by byte.
+ *
+ * @author sven
+ */
+public class H263PacketizerTest extends AndroidTestCase {
+
+	/**
+	 * Time to wait for the packetizer thread, in milliseconds.
+	 */
+	private final static long TIMEOUT = 5000;
+
+	/**
+	 * Maximum length of the picture data of a packet.
+	 */
+	private final static int MAX_DATA = 1400 - 12 - 2;
+
+	/**
+	 * Captures the packets.
+	 */
+	private RtpCapture capture;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		capture = new RtpCapture();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		capture.close();
+		super.tearDown();
+	}
+
+	/**
+	 * A small picture is sent in a single packet with P bit and marker; the
+	 * zero bytes of its start code are omitted.
+	 * @throws Exception Test failed.
+	 */
+	public void testSend_singlePacket() throws Exception {
+		// Configure Test
+		byte[] picture = picture(5, 200);
+
+		// Run Test
+		new H263Packetizer(null).send(picture, 0, picture.length, 1000);
+		List<byte[]> packets = capture.take(1);
+
+		// Verify Test
+		assertEquals(1, packets.size());
+		assertPacket(packets.get(0), 0, 1000, true, true, picture, 2, picture.length);
+	}
+
+	/**
+	 * A packet ends before the last GOB start code, that fits; the next packet
+	 * begins with it.
+	 * @throws Exception Test failed.
+	 */
+	public void testSend_splitAtLastGob() throws Exception {
+		// Configure Test
+		byte[] picture = picture(7, 600, 600, 600);
+
+		// Run Test
+		new H263Packetizer(null).send(picture, 0, picture.length, 3003);
+		List<byte[]> packets = capture.take(2);
+
+		// Verify Test
+		assertEquals(2, packets.size());
+		assertPacket(packets.get(0), 0, 3003, false, true, picture, 2, 1200);
+		assertPacket(packets.get(1), 1, 3003, true, true, picture, 1202, 1800);
+	}
+
+	/**
+	 * Each GOB, that does not fit into the packet of the previous one, begins
+	 * a packet.
+	 * @throws Exception Test failed.
+	 */
+	public void testSend_splitAtEachGob() throws Exception {
+		// Configure Test
+		byte[] picture = picture(1, 1000, 1000, 1000);
+
+		// Run Test
+		new H263Packetizer(null).send(picture, 0, picture.length, 0);
+		List<byte[]> packets = capture.take(3);
+
+		// Verify Test
+		assertEquals(3, packets.size());
+		assertPacket(packets.get(0), 0, 0, false, true, picture, 2, 1000);
+		assertPacket(packets.get(1), 1, 0, false, true, picture, 1002, 2000);
+		assertPacket(packets.get(2), 2, 0, true, true, picture, 2002, 3000);
+	}
+
+	/**
+	 * A GOB, that does not fit into a packet, is continued in follow-on
+	 * packets without P bit.
+	 * @throws Exception Test failed.
+	 */
+	public void testSend_followOn() throws Exception {
+		// Configure Test
+		byte[] picture = picture(3, 3000);
+
+		// Run Test
+		new H263Packetizer(null).send(picture, 0, picture.length, 0);
+		List<byte[]> packets = capture.take(3);
+
+		// Verify Test
+		assertEquals(3, packets.size());
+		assertPacket(packets.get(0), 0, 0, false, true, picture, 2, 2 + MAX_DATA);
+		assertPacket(packets.get(1), 1, 0, false, false, picture, 2 + MAX_DATA, 2 + 2 * MAX_DATA);
+		assertPacket(packets.get(2), 2, 0, true, false, picture, 2 + 2 * MAX_DATA, 3000);
+	}
+
+	/**
+	 * Each picture begins a packet at its picture start code and ends with
+	 * the marker; the sequence numbers continue.
+	 * @throws Exception Test failed.
+	 */
+	public void testSend_pictures() throws Exception {
+		// Configure Test
+		H263Packetizer target = new H263Packetizer(null);
+		byte[] first = picture(10, 1500);
+		byte[] second = picture(11, 100, 100);
+
+		// Run Test
+		target.send(first, 0, first.length, 0);
+		target.send(second, 0, second.length, 3003);
+		List<byte[]> packets = capture.take(3);
+
+		// Verify Test
+		assertEquals(3, packets.size());
+		assertPacket(packets.get(0), 0, 0, false, true, first, 2, 2 + MAX_DATA);
+		assertPacket(packets.get(1), 1, 0, true, false, first, 2 + MAX_DATA, first.length);
+		assertPacket(packets.get(2), 2, 3003, true, true, second, 2, second.length);
+	}
+
+	/**
+	 * The timestamps of the pictures of a stream advance with their temporal
+	 * references, 3003 ticks each; the temporal reference wraps at 256 and a
+	 * repeated one advances by one.
+	 * @throws Exception Test failed.
+	 */
+	public void testRun_temporalReference() throws Exception {
+		// Configure Test
+		int[] temporalReferences = { 250, 251, 253, 253, 0, 3 };
+		long[] ticks = { 0, 3003, 9009, 12012, 21021, 30030 };
+		byte[][] pictures = new byte[temporalReferences.length][];
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		for(int i = 0; i < pictures.length; i++) {
+			pictures[i] = picture(temporalReferences[i], 50 + 10 * i, 30);
+			stream.write(pictures[i]);
+		}
+		H263Packetizer target = new H263Packetizer(new ByteArrayInputStream(stream.toByteArray()));
+
+		// Run Test
+		target.startStreaming();
+		target.join(TIMEOUT);
+		List<byte[]> packets = capture.take(pictures.length);
+
+		// Verify Test
+		assertFalse(target.isAlive());
+		assertEquals(pictures.length, packets.size());
+		long start = RtpCapture.getTimestamp(packets.get(0));
+		for(int i = 0; i < pictures.length; i++) {
+			assertPacket(packets.get(i), i, (start + ticks[i]) & 0xFFFFFFFFL, true, true, pictures[i], 2,
+					pictures[i].length);
+		}
+	}
+
+	/**
+	 * Creates a picture of GOBs, that contain no start code.
+	 * @param temporalReference The temporal reference
+	 * @param lengths The lengths of the GOBs, including their start codes;
+	 * the first one begins with the picture start code
+	 * @return The picture
+	 */
+	public static byte[] picture(int temporalReference, int... lengths) {
+		ByteArrayOutputStream picture = new ByteArrayOutputStream();
+		for(int gob = 0; gob < lengths.length; gob++) {
+			byte[] header;
+			if(gob == 0) {
+				header = bytes(0, 0, 0x80 | (temporalReference >> 6), ((temporalReference & 0x3F) << 2) | 0x02);
+			} else {
+				header = bytes(0, 0, 0x80 | (gob << 2));
+			}
+			byte[] data = new byte[lengths[gob] - header.length];
+			for(int i = 0; i < data.length; i++) {
+				data[i] = (byte) (1 + (i * 7 + gob) % 255);
+			}
+			picture.write(header, 0, header.length);
+			picture.write(data, 0, data.length);
+		}
+		return picture.toByteArray();
+	}
+
+	/**
+	 * Asserts a packet byte by byte.
+	 * @param packet The packet
+	 * @param sequenceNumber The expected sequence number
+	 * @param timestamp The expected timestamp
+	 * @param marker The expected marker bit
+	 * @param sync The expected P bit
+	 * @param picture The picture
+	 * @param from The index of the first byte of the picture in the packet
+	 * @param to The index after the last byte of the picture in the packet
+	 */
+	private static void assertPacket(byte[] packet, int sequenceNumber, long timestamp, boolean marker, boolean sync,
+			byte[] picture, int from, int to) {
+		assertEquals(0x80, packet[0] & 0xFF);
+		assertEquals(RtspConstants.RTP_H263_PAYLOADTYPE, RtpCapture.getPayloadType(packet));
+		assertEquals(sequenceNumber, RtpCapture.getSequenceNumber(packet));
+		assertEquals(timestamp, RtpCapture.getTimestamp(packet));
+		assertEquals("Marker", marker, RtpCapture.hasMarker(packet));
+		byte[] expected = concat(bytes(sync ? 0x04 : 0x00, 0x00), Arrays.copyOfRange(picture, from, to));
+		byte[] actual = RtpCapture.getPayload(packet);
+		assertEquals("Payload length", expected.length, actual.length);
+		for(int i = 0; i < expected.length; i++) {
+			assertEquals("Payload byte " + i, expected[i], actual[i]);
+		}
+	}
+}
@@ -0,0 +1,380 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.packetizer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import to.sven.androidrccar.host.test.rtspcamera.RtpCapture;
+import android.test.AndroidTestCase;
+import de.kp.net.rtp.packetizer.H264Packetizer;
+import de.kp.net.rtsp.RtspConstants;
+
+/**
+ * This class should test the packetization of H.264 NAL units by the
+ * {@link H264Packetizer} (RFC 6184, non-interleaved mode). The packets are
+ * compared byte by byte.
+ *
+ * @author sven
+ */
+public class H264PacketizerTest extends AndroidTestCase {
+
+	/**
+	 * Sequence parameter set, nal_ref_idc 3.
+	 */
+	public final static byte[] SPS = bytes(0x67, 0x42, 0x00, 0x1E, 0x95, 0xA8, 0x28, 0x0F, 0x44);
+
+	/**
+	 * Picture parameter set, nal_ref_idc 3.
+	 */
+	public final static byte[] PPS = bytes(0x68, 0xCE, 0x38, 0x80);
+
+	/**
+	 * SEI, nal_ref_idc 0.
+	 */
+	public final static byte[] SEI = bytes(0x06, 0x05, 0x02, 0xAA, 0xBB, 0x80);
+
+	/**
+	 * Maximum length of a NAL unit, that is sent in a single packet.
+	 */
+	private final static int MAX_SINGLE = 1400 - 12;
+
+	/**
+	 * Maximum length of the data of an FU-A packet.
+	 */
+	private final static int MAX_FRAGMENT = 1400 - 12 - 2;
+
+	/**
+	 * Captures the packets.
+	 */
+	private RtpCapture capture;
+
+	/**
+	 * The packetizer under test.
+	 */
+	private H264Packetizer target;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		capture = new RtpCapture();
+		target = new H264Packetizer(null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		capture.close();
+		super.tearDown();
+	}
+
+	/**
+	 * Parameter sets and a small slice with the same timestamp are aggregated
+	 * into one STAP-A packet, which ends the picture.
+	 * @throws Exception Test failed.
+	 */
+	public void testSend_stapA() throws Exception {
+		// Configure Test
+		byte[] idr = slice(0x65, 100);
+
+		// Run Test
+		target.send(SPS, 0, SPS.length, 1000);
+		target.send(PPS, 0, PPS.length, 1000);
+		target.send(idr, 0, idr.length, 1000);
+		List<byte[]> packets = capture.take(1);
+
+		// Verify Test
+		assertEquals(1, packets.size());
+		byte[] packet = packets.get(0);
+		assertHeader(packet, 0, 1000, true);
+		// F = 0, NRI = 3, type = 24
+		assertPayload(concat(bytes(0x78), bytes(0, SPS.length), SPS, bytes(0, PPS.length), PPS,
+				bytes(0, idr.length), idr), packet);
+	}
+
+	/**
+	 * The NRI of the STAP-A packet is the maximum of the aggregated units.
+	 * @throws Exception Test failed.
+	 */
+	public void testSend_stapANri() throws Exception {
+		// Configure Test
+		byte[] slice = slice(0x01, 50);
+
+		// Run Test
+		target.send(SEI, 0, SEI.length, 7);
+		target.send(slice, 0, slice.length, 7);
+		target.send(SEI, 0, SEI.length, 8);
+		target.send(PPS, 0, PPS.length, 8);
+		target.send(slice, 0, slice.length, 8);
+		List<byte[]> packets = capture.take(2);
+
+		// Verify Test
+		assertEquals(2, packets.size());
+		assertHeader(packets.get(0), 0, 7, true);
+		assertPayload(concat(bytes(0x18), bytes(0, SEI.length), SEI, bytes(0, slice.length), slice), packets.get(0));
+		assertHeader(packets.get(1), 1, 8, true);
+		assertPayload(concat(bytes(0x78), bytes(0, SEI.length), SEI, bytes(0, PPS.length), PPS,
+				bytes(0, slice.length), slice), packets.get(1));
+	}
+
+	/**
+	 * A slice, that does not fit into the packet of the parameter sets, is
+	 * fragmented into FU-A packets; the parameter sets are sent before.
+	 * @throws Exception Test failed.
+	 */
+	public void testSend_fuA() throws Exception {
+		// Configure Test
+		byte[] idr = slice(0x65, 3000);
+
+		// Run Test
+		target.send(SPS, 0, SPS.length, 2000);
+		target.send(PPS, 0, PPS.length, 2000);
+		target.send(idr, 0, idr.length, 2000);
+		List<byte[]> packets = capture.take(4);
+
+		// Verify Test
+		assertEquals(4, packets.size());
+		assertHeader(packets.get(0), 0, 2000, false);
+		assertPayload(concat(bytes(0x78), bytes(0, SPS.length), SPS, bytes(0, PPS.length), PPS), packets.get(0));
+
+		// FU indicator: F and NRI of the unit, type 28; FU header: S, E, type 5
+		int[] lengths = { MAX_FRAGMENT, MAX_FRAGMENT, idr.length - 1 - 2 * MAX_FRAGMENT };
+		int[] headers = { 0x85, 0x05, 0x45 };
+		int offset = 1;
+		for(int i = 0; i < 3; i++) {
+			byte[] packet = packets.get(1 + i);
+			assertHeader(packet, 1 + i, 2000, i == 2);
+			assertPayload(concat(bytes(0x7C, headers[i]), Arrays.copyOfRange(idr, offset, offset + lengths[i])), packet);
+			offset += lengths[i];
+		}
+		assertEquals(idr.length, offset);
+	}
+
+	/**
+	 * The largest NAL unit, that fits, is sent in a single packet, the next
+	 * larger one in two FU-A packets.
+	 * @throws Exception Test failed.
+	 */
+	public void testSend_fragmentationBoundary() throws Exception {
+		// Configure Test
+		byte[] fits = slice(0x41, MAX_SINGLE);
+		byte[] larger = slice(0x01, MAX_SINGLE + 1);
+
+		// Run Test
+		target.send(fits, 0, fits.length, 10);
+		target.send(larger, 0, larger.length, 20);
+		List<byte[]> packets = capture.take(3);
+
+		// Verify Test
+		assertEquals(3, packets.size());
+		assertHeader(packets.get(0), 0, 10, true);
+		assertPayload(fits, packets.get(0));
+		assertHeader(packets.get(1), 1, 20, false);
+		assertPayload(concat(bytes(0x1C, 0x81), Arrays.copyOfRange(larger, 1, 1 + MAX_FRAGMENT)), packets.get(1));
+		assertHeader(packets.get(2), 2, 20, true);
+		assertPayload(concat(bytes(0x1C, 0x41), Arrays.copyOfRange(larger, 1 + MAX_FRAGMENT, larger.length)), packets.get(2));
+	}
+
+	/**
+	 * A parameter set, that is not followed by a unit with the same
+	 * timestamp, is sent as single NAL unit packet without marker.
+	 * @throws Exception Test failed.
+	 */
+	public void testSend_singleAggregatedUnit() throws Exception {
+		// Configure Test
+		byte[] slice = slice(0x41, 500);
+
+		// Run Test
+		target.send(SPS, 0, SPS.length, 1000);
+		target.send(slice, 0, slice.length, 4000);
+		List<byte[]> packets = capture.take(2);
+
+		// Verify Test
+		assertEquals(2, packets.size());
+		assertHeader(packets.get(0), 0, 1000, false);
+		assertPayload(SPS, packets.get(0));
+		assertHeader(packets.get(1), 1, 4000, true);
+		assertPayload(slice, packets.get(1));
+	}
+
+	/**
+	 * The NAL units of a stream are sent in order with consecutive sequence
+	 * numbers; the units can be reassembled from the packets.
+	 * @throws Exception Test failed.
+	 */
+	public void testSend_stream() throws Exception {
+		// Configure Test
+		byte[][] units = { SPS, PPS, slice(0x65, 5000), slice(0x41, 700), slice(0x01, 1500), SEI, slice(0x41, 20) };
+		long[] timestamps = { 0, 0, 0, 3000, 6000, 9000, 9000 };
+
+		for(int i = 0; i < units.length; i++) {
+			// Run Test
+			target.send(units[i], 0, units[i].length, timestamps[i]);
+		}
+		List<byte[]> packets = capture.take(9);
+
+		// Verify Test
+		assertEquals(9, packets.size());
+		ByteArrayOutputStream fragments = null;
+		int unit = 0;
+		for(int i = 0; i < packets.size(); i++) {
+			byte[] packet = packets.get(i);
+			assertEquals(i, RtpCapture.getSequenceNumber(packet));
+			assertEquals(timestamps[unit], RtpCapture.getTimestamp(packet));
+			byte[] payload = RtpCapture.getPayload(packet);
+			int type = payload[0] & 0x1F;
+			if(type == 24) {
+				for(int offset = 1; offset < payload.length; ) {
+					int length = ((payload[offset] & 0xFF) << 8) | (payload[offset + 1] & 0xFF);
+					assertTrue(Arrays.equals(units[unit++], Arrays.copyOfRange(payload, offset + 2, offset + 2 + length)));
+					offset += 2 + length;
+				}
+			} else if(type == 28) {
+				if((payload[1] & 0x80) != 0) {
+					fragments = new ByteArrayOutputStream();
+					fragments.write((payload[0] & 0xE0) | (payload[1] & 0x1F));
+				}
+				fragments.write(payload, 2, payload.length - 2);
+				if((payload[1] & 0x40) != 0) {
+					assertTrue(Arrays.equals(units[unit++], fragments.toByteArray()));
+				}
+			} else {
+				assertTrue(Arrays.equals(units[unit++], payload));
+			}
+		}
+		assertEquals(units.length, unit);
+	}
+
+	/**
+	 * At half the frame rate, a baseline stream of reference pictures only
+	 * drops all pictures after a dropped one up to the next IDR picture; the
+	 * credit saved meanwhile is spent on the pictures of the next group.
+	 * @throws Exception Test failed.
+	 */
+	public void testRun_dropUntilIdr() throws Exception {
+		// Configure Test
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		byte[] startCode = bytes(0, 0, 0, 1);
+		stream.write(concat(startCode, SPS, startCode, PPS));
+		for(int group = 0; group < 2; group++) {
+			stream.write(concat(startCode, slice(0x65, 100 + group)));
+			for(int i = 1; i < 10; i++) {
+				stream.write(concat(startCode, slice(0x41, 20 + i)));
+			}
+		}
+		H264Packetizer packetizer = new H264Packetizer(new ByteArrayInputStream(stream.toByteArray()));
+		packetizer.onRateChanged(0, RtspConstants.FPS / 2);
+
+		// Run Test
+		packetizer.startStreaming();
+		packetizer.join(5000);
+		List<byte[]> packets = capture.take(10);
+		Thread.sleep(100);
+
+		// Verify Test
+		assertFalse(packetizer.isAlive());
+		assertEquals(10, packets.size());
+		assertEquals(0, capture.take(0).size());
+		assertPayload(concat(bytes(0x78), bytes(0, SPS.length), SPS, bytes(0, PPS.length), PPS, bytes(0, 100),
+				slice(0x65, 100)), packets.get(0));
+		assertPayload(slice(0x65, 101), packets.get(1));
+		for(int i = 1; i < 9; i++) {
+			assertPayload(slice(0x41, 20 + i), packets.get(1 + i));
+		}
+	}
+
+	/**
+	 * Asserts the RTP header of a packet.
+	 * @param packet The packet
+	 * @param sequenceNumber The expected sequence number
+	 * @param timestamp The expected timestamp
+	 * @param marker The expected marker bit
+	 */
+	private static void assertHeader(byte[] packet, int sequenceNumber, long timestamp, boolean marker) {
+		assertEquals(0x80, packet[0] & 0xFF);
+		assertEquals(RtspConstants.RTP_H264_PAYLOADTYPE, RtpCapture.getPayloadType(packet));
+		assertEquals(sequenceNumber, RtpCapture.getSequenceNumber(packet));
+		assertEquals(timestamp, RtpCapture.getTimestamp(packet));
+		assertEquals("Marker", marker, RtpCapture.hasMarker(packet));
+	}
+
+	/**
+	 * Asserts the payload of a packet byte by byte.
+	 * @param expected The expected payload
+	 * @param packet The packet
+	 */
+	private static void assertPayload(byte[] expected, byte[] packet) {
+		byte[] actual = RtpCapture.getPayload(packet);
+		assertEquals("Payload length", expected.length, actual.length);
+		for(int i = 0; i < expected.length; i++) {
+			assertEquals("Payload byte " + i, expected[i], actual[i]);
+		}
+	}
+
+	/**
+	 * Creates the first slice of a picture (first_mb_in_slice = 0).
+	 * @param header The NAL unit header
+	 * @param length The length of the NAL unit
+	 * @return The slice
+	 */
+	public static byte[] slice(int header, int length) {
+		byte[] slice = new byte[length];
+		slice[0] = (byte) header;
+		slice[1] = (byte) 0x88;
+		for(int i = 2; i < length; i++) {
+			// no zero bytes, so that no start code is emulated
+			slice[i] = (byte) (1 + (i * 31 + header) % 255);
+		}
+		return slice;
+	}
+
+	/**
+	 * Creates a byte array.
+	 * @param values The values of the bytes
+	 * @return The byte array
+	 */
+	public static byte[] bytes(int... values) {
+		byte[] bytes = new byte[values.length];
+		for(int i = 0; i < values.length; i++) {
+			bytes[i] = (byte) values[i];
+		}
+		return bytes;
+	}
+
+	/**
+	 * Concatenates byte arrays.
+	 * @param arrays The arrays
+	 * @return The concatenation
+	 */
+	public static byte[] concat(byte[]... arrays) {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		for(byte[] array : arrays) {
+			stream.write(array, 0, array.length);
+		}
+		return stream.toByteArray();
+	}
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.packetizer;
+
+import android.test.AndroidTestCase;
+
+import com.orangelabs.rcs.core.ims.protocol.rtp.codec.Codec;
+import com.orangelabs.rcs.core.ims.protocol.rtp.codec.video.h263.JavaDepacketizer;
+import com.orangelabs.rcs.core.ims.protocol.rtp.util.Buffer;
+
+/**
+ * This class should test the reassembly of H.263 frames from RFC 4629 packets
+ * by the {@link JavaDepacketizer}.
+ *
+ * @author sven
+ */
+public class JavaDepacketizerTest extends AndroidTestCase {
+
+	/**
+	 * RTP timestamp increment per frame.
+	 */
+	private final static int TICKS = 3000;
+
+	/**
+	 * The depacketizer under test.
+	 */
+	private JavaDepacketizer target;
+
+	/**
+	 * The output buffer.
+	 */
+	private Buffer output;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		target = new JavaDepacketizer();
+		output = new Buffer();
+	}
+
+	/**
+	 * The payloads of a frame are reassembled behind the start code zeros,
+	 * also if they are passed at an offset in a larger buffer.
+	 * @throws Exception Test failed.
+	 */
+	public void testProcess_frame() throws Exception {
+		// Configure Test
+		Buffer first = packet(TICKS, false, 12, 1, 2, 3);
+		Buffer second = packet(TICKS, true, 0, 4, 5);
+
+		// Run Test
+		int firstResult = target.process(first, output);
+		int secondResult = target.process(second, output);
+
+		// Verify Test
+		assertEquals(Codec.OUTPUT_BUFFER_NOT_FILLED, firstResult);
+		assertEquals(Codec.BUFFER_PROCESSED_OK, secondResult);
+		assertFrame(TICKS, 0, 0, 1, 2, 3, 0, 0, 4, 5);
+	}
+
+	/**
+	 * A packet of a completed frame, that arrives late, is dropped and does
+	 * not start a bogus partial frame; the next frame is not affected.
+	 * @throws Exception Test failed.
+	 */
+	public void testProcess_straggler() throws Exception {
+		// Configure Test
+		assertEquals(Codec.BUFFER_PROCESSED_OK, target.process(packet(TICKS, true, 0, 1), output));
+
+		// Run Test
+		int stragglerResult = target.process(packet(TICKS, true, 0, 2), output);
+		int olderResult = target.process(packet(0, true, 0, 3), output);
+		int nextResult = target.process(packet(2 * TICKS, true, 0, 4), output);
+
+		// Verify Test
+		assertEquals(Codec.OUTPUT_BUFFER_NOT_FILLED, stragglerResult);
+		assertEquals(Codec.OUTPUT_BUFFER_NOT_FILLED, olderResult);
+		assertEquals(Codec.BUFFER_PROCESSED_OK, nextResult);
+		assertFrame(2 * TICKS, 0, 0, 4);
+	}
+
+	/**
+	 * Frames are completed across the wrap of the RTP timestamp.
+	 * @throws Exception Test failed.
+	 */
+	public void testProcess_timestampWrap() throws Exception {
+		// Configure Test
+		long last = 0xFFFFFFFFL - TICKS / 2;
+		assertEquals(Codec.BUFFER_PROCESSED_OK, target.process(packet(last, true, 0, 1), output));
+
+		// Run Test
+		int result = target.process(packet((last + TICKS) & 0xFFFFFFFFL, true, 0, 2), output);
+
+		// Verify Test
+		assertEquals(Codec.BUFFER_PROCESSED_OK, result);
+		assertFrame((last + TICKS) & 0xFFFFFFFFL, 0, 0, 2);
+	}
+
+	/**
+	 * Creates a packet with P bit, that begins at a start code.
+	 * @param timeStamp The RTP timestamp
+	 * @param marker Is the RTP marker set?
+	 * @param offset The offset of the packet in the buffer
+	 * @param payload The payload behind the omitted start code zeros
+	 * @return The buffer
+	 */
+	private static Buffer packet(long timeStamp, boolean marker, int offset, int... payload) {
+		byte[] data = new byte[offset + 2 + payload.length + 3];
+		data[offset] = 0x04;
+		for(int i = 0; i < payload.length; i++) {
+			data[offset + 2 + i] = (byte) payload[i];
+		}
+		Buffer buffer = new Buffer();
+		buffer.setData(data);
+		buffer.setOffset(offset);
+		buffer.setLength(2 + payload.length);
+		buffer.setTimeStamp(timeStamp);
+		buffer.setRTPMarker(marker);
+		return buffer;
+	}
+
+	/**
+	 * Asserts the frame in the output buffer.
+	 * @param timeStamp The expected RTP timestamp
+	 * @param frame The expected frame
+	 */
+	private void assertFrame(long timeStamp, int... frame) {
+		byte[] data = (byte[]) output.getData();
+		assertEquals(timeStamp, output.getTimeStamp());
+		assertEquals(frame.length, output.getLength());
+		for(int i = 0; i < frame.length; i++) {
+			assertEquals("Byte " + i, (byte) frame[i], data[output.getOffset() + i]);
+		}
+	}
+}
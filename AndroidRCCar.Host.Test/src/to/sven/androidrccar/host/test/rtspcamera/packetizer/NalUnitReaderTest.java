@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.packetizer;
+
+import static to.sven.androidrccar.host.test.rtspcamera.packetizer.H264PacketizerTest.PPS;
+import static to.sven.androidrccar.host.test.rtspcamera.packetizer.H264PacketizerTest.SPS;
+import static to.sven.androidrccar.host.test.rtspcamera.packetizer.H264PacketizerTest.bytes;
+import static to.sven.androidrccar.host.test.rtspcamera.packetizer.H264PacketizerTest.concat;
+import static to.sven.androidrccar.host.test.rtspcamera.packetizer.H264PacketizerTest.slice;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import android.test.AndroidTestCase;
+import de.kp.net.rtp.packetizer.NalUnitReader;
+
+/**
+ * This class should test the {@link NalUnitReader} with Annex-B streams and
+ * with AVCC streams in the 3GP/MP4 container of the MediaRecorder.
+ *
+ * @author sven
+ */
+public class NalUnitReaderTest extends AndroidTestCase {
+
+	/**
+	 * An IDR slice with an emulation prevention byte, which is no start code.
+	 */
+	private final static byte[] IDR = bytes(0x65, 0x88, 0x00, 0x00, 0x03, 0x01, 0xAB, 0x00, 0x00, 0x02, 0x7F);
+
+	/**
+	 * A slice, that is longer than the read buffers.
+	 */
+	private final static byte[] SLICE = slice(0x41, 20000);
+
+	/**
+	 * The NAL units of the streams.
+	 */
+	private final static byte[][] UNITS = { SPS, PPS, IDR, SLICE };
+
+	/**
+	 * NAL units with 4 and 3 byte start codes and trailing zero bytes.
+	 * @throws Exception Test failed.
+	 */
+	public void testReadNalUnit_annexB() throws Exception {
+		// Configure Test
+		byte[] stream = concat(bytes(0, 0, 0, 1), SPS, bytes(0, 0, 1), PPS, bytes(0, 0, 0, 1), IDR,
+				bytes(0, 0, 0, 0, 1), SLICE, bytes(0, 0));
+
+		// Run Test / Verify Test
+		assertUnits(stream);
+	}
+
+	/**
+	 * A stream, that begins with a 3 byte start code.
+	 * @throws Exception Test failed.
+	 */
+	public void testReadNalUnit_annexBShortStartCode() throws Exception {
+		// Configure Test
+		byte[] stream = concat(bytes(0, 0, 1), SPS, bytes(0, 0, 1), PPS, bytes(0, 0, 1), IDR, bytes(0, 0, 1), SLICE);
+
+		// Run Test / Verify Test
+		assertUnits(stream);
+	}
+
+	/**
+	 * Length prefixed NAL units in the mdat atom, preceded by ftyp and free.
+	 * @throws Exception Test failed.
+	 */
+	public void testReadNalUnit_avcc() throws Exception {
+		// Configure Test
+		byte[] stream = concat(atom("ftyp", "3gp4\000\000\000\000isom".getBytes("ISO-8859-1")),
+				atom("free", new byte[0]), mdat());
+
+		// Run Test / Verify Test
+		assertUnits(stream);
+	}
+
+	/**
+	 * An atom with 64 bit extended size is skipped.
+	 * @throws Exception Test failed.
+	 */
+	public void testReadNalUnit_avccExtendedSize() throws Exception {
+		// Configure Test
+		byte[] moov = concat(bytes(0, 0, 0, 1), "moov".getBytes("ISO-8859-1"), bytes(0, 0, 0, 0, 0, 0, 0, 16 + 5),
+				bytes(1, 2, 3, 4, 5));
+		byte[] stream = concat(atom("ftyp", "3gp4".getBytes("ISO-8859-1")), moov, mdat());
+
+		// Run Test / Verify Test
+		assertUnits(stream);
+	}
+
+	/**
+	 * The mdat atom is searched, if an atom has no valid size, as written by
+	 * phones on a stream, that is not seekable.
+	 * @throws Exception Test failed.
+	 */
+	public void testReadNalUnit_avccUnknownSize() throws Exception {
+		// Configure Test
+		byte[] stream = concat(bytes(0, 0, 0, 0), "ftyp3gp4".getBytes("ISO-8859-1"), bytes(0x12, 'm', 'd', 'a', 0x34),
+				bytes(0, 0, 0, 0), mdat());
+
+		// Run Test / Verify Test
+		assertUnits(stream);
+	}
+
+	/**
+	 * A NAL unit, that is cut off, fails.
+	 * @throws Exception Test failed.
+	 */
+	public void testReadNalUnit_avccTruncated() throws Exception {
+		// Configure Test
+		byte[] stream = mdat();
+		NalUnitReader target = new NalUnitReader(new ByteArrayInputStream(stream, 0, stream.length - 1));
+		for(int i = 0; i < UNITS.length - 1; i++) {
+			assertTrue(target.readNalUnit() > 0);
+		}
+
+		// Run Test
+		try {
+			target.readNalUnit();
+			fail("EOFException expected.");
+		} catch(EOFException e) {
+			// Verify Test
+		}
+	}
+
+	/**
+	 * The NAL units of the stream, in the mdat atom with length prefix.
+	 * @return The mdat atom
+	 * @throws Exception Test failed.
+	 */
+	private static byte[] mdat() throws Exception {
+		byte[] data = new byte[0];
+		for(byte[] unit : UNITS) {
+			data = concat(data, bytes(unit.length >> 24, unit.length >> 16, unit.length >> 8, unit.length), unit);
+		}
+		return atom("mdat", data);
+	}
+
+	/**
+	 * Creates an atom.
+	 * @param type The type
+	 * @param data The data
+	 * @return The atom
+	 * @throws Exception Test failed.
+	 */
+	private static byte[] atom(String type, byte[] data) throws Exception {
+		int size = 8 + data.length;
+		return concat(bytes(size >> 24, size >> 16, size >> 8, size), type.getBytes("ISO-8859-1"), data);
+	}
+
+	/**
+	 * Asserts, that the NAL units are read from the stream, when it is read at
+	 * once and when it is read byte by byte.
+	 * @param stream The stream
+	 * @throws Exception Test failed.
+	 */
+	private static void assertUnits(byte[] stream) throws Exception {
+		assertUnits(new ByteArrayInputStream(stream));
+		assertUnits(new ByteArrayInputStream(stream) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 1));
+			}
+		});
+	}
+
+	/**
+	 * Asserts, that the NAL units are read from the stream.
+	 * @param stream The stream
+	 * @throws IOException Test failed.
+	 */
+	private static void assertUnits(InputStream stream) throws IOException {
+		NalUnitReader target = new NalUnitReader(stream);
+		for(int i = 0; i < UNITS.length; i++) {
+			int length = target.readNalUnit();
+			assertEquals("Length of unit " + i, UNITS[i].length, length);
+			assertTrue("Unit " + i, Arrays.equals(UNITS[i], Arrays.copyOf(target.getNalUnit(), length)));
+		}
+		assertEquals(-1, target.readNalUnit());
+	}
+}
@@ -0,0 +1,453 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.request;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+import de.kp.net.rtsp.RtspConstants;
+import de.kp.net.rtsp.server.request.RtspRequest;
+import de.kp.net.rtsp.server.request.RtspRequestParser;
+
+/**
+ * This class should test the {@link RtspRequestParser}.
+ *
+ * The requests are fed in chunks of random length, so that every
+ * element of a request is split at some point. The random numbers
+ * have a fixed seed, so every run is equal.
+ *
+ * @author sven
+ */
+public class RtspRequestParserTest extends AndroidTestCase {
+
+	/**
+	 * Number of iterations of the randomized tests.
+	 */
+	private final static int ITERATIONS = 500;
+
+	/**
+	 * The headers of the SETUP request, that are shuffled.
+	 */
+	private final static String[] SETUP_HEADERS = {
+		"CSeq: 7",
+		null, // Transport
+		"Session: 12345678;timeout=60",
+		"User-Agent: VLC",
+		"Range: npt=0.000-"
+	};
+
+	/**
+	 * The parameters of the Transport header, that are shuffled.
+	 */
+	private final static String[] TRANSPORT_PARAMETERS = {
+		"unicast", "client_port=4588-4589", "mode=play"
+	};
+
+	/**
+	 * Random numbers with a fixed seed.
+	 */
+	private final Random random = new Random(42);
+
+	/**
+	 * Pipelined requests are parsed equally, however they are split.
+	 * @throws Exception Test failed.
+	 */
+	public void testParse_randomChunks() throws Exception {
+		// Configure Test
+		String requests =
+				"OPTIONS * RTSP/1.0\r\nCSeq: 1\r\n\r\n" +
+				"ANNOUNCE rtsp://10.0.0.1:8080/video RTSP/1.0\r\nCSeq: 2\r\nContent-Length: 5\r\n\r\nhello" +
+				"SETUP rtsp://10.0.0.1:8080/video RTSP/1.0\r\nCSeq: 3\r\nTransport: RTP/AVP;unicast;client_port=4588-4589\r\n\r\n" +
+				"\r\nPLAY rtsp://10.0.0.1:8080/video RTSP/1.0\nCSeq: 4\nSession: 1234\n\n" +
+				"TEARDOWN rtsp://10.0.0.1:8080/video RTSP/1.0\r\nCSeq: 5\r\nSession: 1234\r\n\r\n";
+		byte[] data = requests.getBytes("ISO-8859-1");
+		List<String> expected = parseAll(data, data.length);
+
+		// Verify Test
+		assertEquals(Arrays.asList(
+				"OPTIONS|*|RTSP/1.0|1|-1|null|null|null|",
+				"ANNOUNCE|rtsp://10.0.0.1:8080/video|RTSP/1.0|2|-1|null|null|null|hello",
+				"SETUP|rtsp://10.0.0.1:8080/video|RTSP/1.0|3|4588|null|null|RTP/AVP|",
+				"PLAY|rtsp://10.0.0.1:8080/video|RTSP/1.0|4|-1|1234|null|null|",
+				"TEARDOWN|rtsp://10.0.0.1:8080/video|RTSP/1.0|5|-1|1234|null|null|"), expected);
+
+		for(int i = 0; i < ITERATIONS; i++) {
+			// Run Test
+			List<String> actual = parseAll(data, 1 + random.nextInt(40));
+
+			// Verify Test
+			assertEquals(expected, actual);
+		}
+	}
+
+	/**
+	 * The order of the headers and of the Transport parameters, the case of
+	 * the header names and the line terminators do not change the result.
+	 * @throws Exception Test failed.
+	 */
+	public void testParse_headerOrderAndCase() throws Exception {
+		for(int i = 0; i < ITERATIONS; i++) {
+			// Configure Test
+			List<String> headers = new ArrayList<String>(Arrays.asList(SETUP_HEADERS));
+			Collections.shuffle(headers, random);
+			StringBuilder request = new StringBuilder("SETUP rtsp://10.0.0.1:8080/video RTSP/1.0\r\n");
+			for(String header : headers) {
+				if(header == null) {
+					List<String> parameters = new ArrayList<String>(Arrays.asList(TRANSPORT_PARAMETERS));
+					Collections.shuffle(parameters, random);
+					header = "Transport: RTP/AVP";
+					for(String parameter : parameters) {
+						header += (random.nextBoolean() ? "; " : ";") + parameter;
+					}
+				}
+				int colon = header.indexOf(':');
+				String name = header.substring(0, colon);
+				name = random.nextBoolean() ? name.toUpperCase() : name.toLowerCase();
+				String separator = random.nextBoolean() ? ": " : ":";
+				request.append(name).append(separator).append(header.substring(colon + 2));
+				request.append(random.nextBoolean() ? "\r\n" : "\n");
+			}
+			request.append("\r\n");
+			byte[] data = request.toString().getBytes("ISO-8859-1");
+
+			// Run Test
+			RtspRequest actual = parse(data, 1 + random.nextInt(20));
+
+			// Verify Test
+			assertNotNull(actual);
+			assertEquals(RtspConstants.SETUP, actual.getRequestType());
+			assertEquals(7, actual.getCseq());
+			assertEquals("12345678", actual.getSession());
+			assertEquals("0.000-", actual.getRange());
+			assertEquals("VLC", actual.getHeader("user-agent"));
+			assertEquals("RTP/AVP", actual.getTransportProtocol());
+			assertEquals("unicast", actual.getSessionType());
+			assertEquals(4588, actual.getClientPort());
+			assertEquals("play", actual.getTransportParameter("MODE"));
+			assertNull(actual.getInterleaved());
+			assertEquals(5, actual.getHeaderCount());
+		}
+	}
+
+	/**
+	 * A folded header value is continued on the next line.
+	 * @throws Exception Test failed.
+	 */
+	public void testParse_foldedHeader() throws Exception {
+		// Configure Test
+		byte[] data = ("SETUP rtsp://x/y RTSP/1.0\r\nCSeq: 4\r\n" +
+				"Transport: RTP/AVP/TCP;\r\n\tinterleaved=2-3\r\n\r\n").getBytes("ISO-8859-1");
+
+		// Run Test
+		RtspRequest actual = parse(data, data.length);
+
+		// Verify Test
+		assertEquals("RTP/AVP/TCP", actual.getTransportProtocol());
+		int[] channels = actual.getInterleaved();
+		assertEquals(2, channels[0]);
+		assertEquals(3, channels[1]);
+	}
+
+	/**
+	 * Interleaved packets between the requests are returned with their
+	 * channel and data.
+	 * @throws Exception Test failed.
+	 */
+	public void testParse_interleavedFrames() throws Exception {
+		// Configure Test
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		List<byte[]> payloads = new ArrayList<byte[]>();
+		for(int i = 0; i < 20; i++) {
+			byte[] payload = new byte[random.nextInt(1500)];
+			random.nextBytes(payload);
+			payloads.add(payload);
+			stream.write('$');
+			stream.write(i % 2);
+			stream.write(payload.length >> 8);
+			stream.write(payload.length);
+			stream.write(payload);
+			if(i % 5 == 0) {
+				stream.write(("GET_PARAMETER * RTSP/1.0\r\nCSeq: " + i + "\r\n\r\n").getBytes("ISO-8859-1"));
+			}
+		}
+		byte[] data = stream.toByteArray();
+
+		for(int i = 0; i < 50; i++) {
+			// Run Test
+			List<String> actual = parseAll(data, 1 + random.nextInt(200));
+
+			// Verify Test
+			assertEquals(24, actual.size());
+			int frame = 0;
+			for(String request : actual) {
+				if(request.startsWith("$")) {
+					assertEquals("$" + (frame % 2) + "|" + hex(payloads.get(frame)), request);
+					frame++;
+				} else {
+					assertEquals("GET_PARAMETER|*|RTSP/1.0|" + (frame - 1) + "|-1|null|null|null|", request);
+				}
+			}
+			assertEquals(20, frame);
+		}
+	}
+
+	/**
+	 * Requests, that do not end within the maximum size, are rejected.
+	 * @throws Exception Test failed.
+	 */
+	public void testParse_oversize() throws Exception {
+		// Configure Test
+		StringBuilder request = new StringBuilder("OPTIONS * RTSP/1.0\r\nX-Pad: ");
+		while(request.length() <= RtspRequestParser.MAX_REQUEST_SIZE) {
+			request.append("0123456789");
+		}
+		request.append("\r\n\r\n");
+
+		// Run Test / Verify Test
+		assertMalformed(request.toString(), "request too large");
+		assertMalformed("OPTIONS * RTSP/1.0\r\nCSeq: 1\r\nContent-Length: " + RtspRequestParser.MAX_REQUEST_SIZE + "\r\n\r\n",
+				"invalid Content-Length");
+		assertMalformed("$\000\377\377", "interleaved packet too large");
+
+		StringBuilder headers = new StringBuilder("OPTIONS * RTSP/1.0\r\n");
+		for(int i = 0; i <= RtspRequest.MAX_HEADERS; i++) {
+			headers.append("X-").append(i).append(": 1\r\n");
+		}
+		assertMalformed(headers.toString(), "too many headers");
+	}
+
+	/**
+	 * Control characters are rejected, except of the tab.
+	 * @throws Exception Test failed.
+	 */
+	public void testParse_controlCharacters() throws Exception {
+		for(char c = 0; c < 0x20; c++) {
+			if((c == '\t') || (c == '\r') || (c == '\n')) continue;
+			assertMalformed("OPTIONS * RTSP/1.0\r\nCSeq: 1" + c + "\r\n\r\n", "invalid character");
+			assertMalformed("OPTIONS *" + c + " RTSP/1.0\r\n\r\n", "invalid character");
+		}
+		assertMalformed("OPTIONS * RTSP/1.0\r\nX: \177\r\n\r\n", "invalid character");
+		assertMalformed("OPTIONS * RTSP/1.0\r\nX: a\rb\r\n\r\n", "invalid character");
+
+		// Verify Test
+		RtspRequest actual = parse("OPTIONS * RTSP/1.0\r\nCSeq:\t3\t\r\n\r\n".getBytes("ISO-8859-1"), 3);
+		assertEquals(3, actual.getCseq());
+	}
+
+	/**
+	 * An invalid Content-Length is rejected.
+	 * @throws Exception Test failed.
+	 */
+	public void testParse_invalidContentLength() throws Exception {
+		assertMalformed("OPTIONS * RTSP/1.0\r\nContent-Length: -1\r\n\r\n", "invalid Content-Length");
+		assertMalformed("OPTIONS * RTSP/1.0\r\nContent-Length: abc\r\n\r\n", "invalid Content-Length");
+		assertMalformed("OPTIONS * RTSP/1.0\r\nContent-Length: 99999999999\r\n\r\n", "invalid Content-Length");
+		assertMalformed("OPTIONS * RTSP/1.0\r\nContent-Length:\r\n\r\n", "invalid Content-Length");
+	}
+
+	/**
+	 * Malformed request lines and headers are rejected.
+	 * @throws Exception Test failed.
+	 */
+	public void testParse_malformed() throws Exception {
+		assertMalformed("OPTIONS\r\n\r\n", "invalid method");
+		assertMalformed("OPTIONS *\r\n\r\n", "invalid request uri");
+		assertMalformed("OPTIONS * HTTP/1.0\r\n\r\n", "invalid version");
+		assertMalformed("OPTIONS * RTSP/1.0\r\nCSeq 1\r\n\r\n", "invalid header");
+		assertMalformed("OPTIONS * RTSP/1.0\r\n folded\r\n\r\n", "invalid header");
+	}
+
+	/**
+	 * Mutated and random requests are either parsed or rejected with a
+	 * {@link ParseException}, nothing else is thrown.
+	 * @throws Exception Test failed.
+	 */
+	public void testParse_mutations() throws Exception {
+		// Configure Test
+		byte[] base = ("SETUP rtsp://10.0.0.1:8080/video RTSP/1.0\r\nCSeq: 7\r\n" +
+				"Transport: RTP/AVP;unicast;client_port=4588-4589;interleaved=0-1\r\n" +
+				"Session: 1;timeout=60\r\nRange: npt=0-\r\nContent-Length: 3\r\n\r\nabc").getBytes("ISO-8859-1");
+		String symbols = ":;=- \r\n\t,0123456789$";
+
+		for(int i = 0; i < 20 * ITERATIONS; i++) {
+			byte[] data = base.clone();
+			if(i % 10 == 0) {
+				data = new byte[random.nextInt(300)];
+				random.nextBytes(data);
+			} else {
+				for(int j = random.nextInt(6); j >= 0; j--) {
+					int position = random.nextInt(data.length);
+					switch(random.nextInt(4)) {
+						case 0:
+							data[position] = (byte) random.nextInt(256);
+							break;
+						case 1:
+							data[position] = (byte) symbols.charAt(random.nextInt(symbols.length()));
+							break;
+						case 2:
+							data = Arrays.copyOf(data, Math.max(1, position));
+							break;
+						default:
+							byte[] longer = new byte[data.length + 1];
+							System.arraycopy(data, 0, longer, 0, position);
+							longer[position] = (byte) random.nextInt(256);
+							System.arraycopy(data, position, longer, position + 1, data.length - position);
+							data = longer;
+					}
+				}
+			}
+
+			// Run Test
+			try {
+				for(String request : parseAll(data, 1 + random.nextInt(data.length + 1))) {
+					// Verify Test
+					assertNotNull(request);
+				}
+			} catch(ParseException e) {
+				// Verify Test
+				assertNotNull(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * The parser is used again after a reset.
+	 * @throws Exception Test failed.
+	 */
+	public void testReset() throws Exception {
+		// Configure Test
+		RtspRequestParser target = new RtspRequestParser();
+		try {
+			target.parse(ByteBuffer.wrap("OPTIONS * HTTP/1.0\r\n\r\n".getBytes("ISO-8859-1")));
+			fail("ParseException expected.");
+		} catch(ParseException e) {
+			// expected
+		}
+
+		// Run Test
+		target.reset();
+		RtspRequest actual = target.parse(ByteBuffer.wrap("OPTIONS * RTSP/1.0\r\nCSeq: 9\r\n\r\n".getBytes("ISO-8859-1")));
+
+		// Verify Test
+		assertEquals(RtspConstants.OPTIONS, actual.getRequestType());
+		assertEquals(9, actual.getCseq());
+	}
+
+	/**
+	 * Parses all requests of the data, which is fed in chunks of random length.
+	 * @param data The data
+	 * @param maxChunk Maximum length of a chunk
+	 * @return The description of each request
+	 * @throws ParseException The data is malformed.
+	 */
+	private List<String> parseAll(byte[] data, int maxChunk) throws ParseException {
+		RtspRequestParser parser = new RtspRequestParser();
+		List<String> requests = new ArrayList<String>();
+		int position = 0;
+		while(position < data.length) {
+			int length = Math.min(1 + random.nextInt(maxChunk), data.length - position);
+			ByteBuffer buffer = ByteBuffer.wrap(data, position, length);
+			RtspRequest request;
+			while((request = parser.parse(buffer)) != null) {
+				requests.add(describe(request));
+			}
+			assertFalse(buffer.hasRemaining());
+			position += length;
+		}
+		return requests;
+	}
+
+	/**
+	 * Parses the first request of the data, which is fed in chunks of random length.
+	 * @param data The data
+	 * @param maxChunk Maximum length of a chunk
+	 * @return The request or {@code null}, if it is incomplete
+	 * @throws ParseException The data is malformed.
+	 */
+	private RtspRequest parse(byte[] data, int maxChunk) throws ParseException {
+		RtspRequestParser parser = new RtspRequestParser();
+		int position = 0;
+		while(position < data.length) {
+			int length = Math.min(1 + random.nextInt(maxChunk), data.length - position);
+			RtspRequest request = parser.parse(ByteBuffer.wrap(data, position, length));
+			if(request != null) {
+				return request;
+			}
+			position += length;
+		}
+		return null;
+	}
+
+	/**
+	 * Asserts, that the request is rejected, however it is split.
+	 * @param request The request
+	 * @param message The expected message of the {@link ParseException}
+	 * @throws Exception Test failed.
+	 */
+	private void assertMalformed(String request, String message) throws Exception {
+		byte[] data = request.getBytes("ISO-8859-1");
+		for(int maxChunk : new int[] { 1, 7, data.length }) {
+			try {
+				parseAll(data, maxChunk);
+				fail("ParseException expected: " + request);
+			} catch(ParseException e) {
+				assertEquals(message, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Describes a request by its method, URI, version, CSeq, client port,
+	 * session, range, transport protocol and body; an interleaved packet
+	 * by its channel and data.
+	 * @param request The request
+	 * @return The description
+	 */
+	private static String describe(RtspRequest request) {
+		String content = new String(request.getData(), request.getContentStart(), request.getContentLength());
+		if(request.getChannel() >= 0) {
+			return "$" + request.getChannel() + "|" + hex(Arrays.copyOfRange(request.getData(),
+					request.getContentStart(), request.getContentStart() + request.getContentLength()));
+		}
+		return request.getMethod() + "|" + request.getUri() + "|" + request.getVersion() + "|"
+				+ request.getCseq() + "|" + request.getClientPort() + "|" + request.getSession() + "|"
+				+ request.getRange() + "|" + request.getTransportProtocol() + "|" + content;
+	}
+
+	/**
+	 * Converts bytes to a hex string.
+	 * @param data The bytes
+	 * @return The hex string
+	 */
+	private static String hex(byte[] data) {
+		StringBuilder hex = new StringBuilder();
+		for(byte b : data) {
+			hex.append(String.format("%02X", b & 0xFF));
+		}
+		return hex.toString();
+	}
+}
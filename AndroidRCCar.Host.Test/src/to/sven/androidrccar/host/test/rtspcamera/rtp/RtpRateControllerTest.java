@@ -0,0 +1,515 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.rtp;
+
+import java.net.BindException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+import de.kp.net.rtp.RtpRateController;
+import de.kp.net.rtp.RtpRateListener;
+import de.kp.net.rtp.RtpReceiverStatistics;
+
+/**
+ * This class should test the {@link RtpRateController}: receiver reports of
+ * a simulated link with configurable loss are sent to it over the loopback
+ * interface or passed to it directly, and the trajectory of the bit rate and
+ * frame rate is verified.
+ *
+ * @author sven
+ */
+public class RtpRateControllerTest extends AndroidTestCase {
+
+	/**
+	 * RTCP port of the controller.
+	 */
+	private final static int PORT = 18703;
+
+	/**
+	 * Time to wait for a rate change, in milliseconds.
+	 */
+	private final static long TIMEOUT = 5000;
+
+	/**
+	 * Minimum bit rate.
+	 */
+	private final static int MIN_BIT_RATE = 50000;
+
+	/**
+	 * Maximum bit rate.
+	 */
+	private final static int MAX_BIT_RATE = 1000000;
+
+	/**
+	 * Minimum frame rate.
+	 */
+	private final static int MIN_FRAME_RATE = 5;
+
+	/**
+	 * Maximum frame rate.
+	 */
+	private final static int MAX_FRAME_RATE = 30;
+
+	/**
+	 * Interval of the receiver reports, in milliseconds.
+	 */
+	private final static long INTERVAL = 1000;
+
+	/**
+	 * Clock of the reports, that are passed directly; it never goes back, as
+	 * the controller keeps the time of its last decrease.
+	 */
+	private static long clock = 0;
+
+	/**
+	 * The controller under test.
+	 */
+	private final RtpRateController target = RtpRateController.getInstance();
+
+	/**
+	 * The rate changes notified.
+	 */
+	private final List<int[]> changes = new ArrayList<int[]>();
+
+	/**
+	 * Records the rate changes.
+	 */
+	private final RtpRateListener listener = new RtpRateListener() {
+		public void onRateChanged(int bitRate, int frameRate) {
+			synchronized(changes) {
+				changes.add(new int[] { bitRate, frameRate });
+				changes.notifyAll();
+			}
+		}
+	};
+
+	/**
+	 * Sends the receiver reports.
+	 */
+	private DatagramSocket socket;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		target.close();
+		open();
+		target.configure(MIN_BIT_RATE, MAX_BIT_RATE, MIN_FRAME_RATE, MAX_FRAME_RATE);
+		target.addListener(listener);
+		socket = new DatagramSocket();
+		clock = Math.max(clock, System.currentTimeMillis()) + 10 * INTERVAL;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		socket.close();
+		target.removeListener(listener);
+		target.close();
+		target.configure(0, 0, 0, 0);
+		super.tearDown();
+	}
+
+	/**
+	 * The rate is cut in proportion to the fraction lost of a receiver report
+	 * received over UDP.
+	 * @throws Exception Test failed.
+	 */
+	public void testReceiveRtcp_loss() throws Exception {
+		// Configure Test
+		int fractionLost = new Link(0.25).transmit(400);
+		assertTrue("Loss above the threshold", fractionLost > 26);
+
+		// Run Test
+		sendReport(1, fractionLost, 0, -1);
+
+		// Verify Test
+		int bitRate = (int) (MAX_BIT_RATE * (512L - fractionLost) / 512);
+		assertChange(bitRate, MAX_FRAME_RATE);
+		RtpReceiverStatistics statistics = getStatistics(1);
+		assertEquals(fractionLost / 256.0, statistics.fractionLost, 0.0);
+		assertEquals(-1, statistics.roundTripTime);
+	}
+
+	/**
+	 * The rate is cut by 15%, when the round trip time from LSR and DLSR grows.
+	 * @throws Exception Test failed.
+	 */
+	public void testReceiveRtcp_roundTripTime() throws Exception {
+		// Configure Test
+		sendReport(2, 0, 0, 20);
+
+		// Run Test
+		sendReport(2, 0, 0, 200);
+
+		// Verify Test
+		assertChange(MAX_BIT_RATE * 85 / 100, MAX_FRAME_RATE);
+		RtpReceiverStatistics statistics = getStatistics(2);
+		assertTrue(statistics.toString(), Math.abs(statistics.roundTripTime - 200) <= 2);
+		assertTrue(statistics.toString(), statistics.queuingDelay > 50);
+	}
+
+	/**
+	 * The rate is cut by 15%, when the jitter grows.
+	 * @throws Exception Test failed.
+	 */
+	public void testReceiveRtcp_jitter() throws Exception {
+		// Configure Test
+		sendReport(3, 0, 10, -1);
+
+		// Run Test
+		sendReport(3, 0, 100, -1);
+
+		// Verify Test
+		assertChange(MAX_BIT_RATE * 85 / 100, MAX_FRAME_RATE);
+		assertEquals(100, getStatistics(3).jitter);
+	}
+
+	/**
+	 * A receiver report without report blocks, e.g. of a paused client, is
+	 * recorded with the SSRC, address and port of its sender.
+	 * @throws Exception Test failed.
+	 */
+	public void testReceiveRtcp_reporter() throws Exception {
+		// Configure Test
+		byte[] packet = new byte[8];
+		packet[0] = (byte) 0x80;
+		packet[1] = (byte) 201;
+		packet[3] = 1;
+		putInt(packet, 4, 8);
+		long start = System.currentTimeMillis();
+
+		// Run Test
+		socket.send(new DatagramPacket(packet, packet.length, InetAddress.getByName("127.0.0.1"), PORT));
+
+		// Verify Test
+		Integer reporter = null;
+		long deadline = start + TIMEOUT;
+		while(reporter == null && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+			reporter = target.getReporter("127.0.0.1", socket.getLocalPort());
+		}
+		assertNotNull(reporter);
+		assertEquals(8, reporter.intValue());
+		assertTrue(target.getLastReport(8) >= start);
+		assertNull(target.getReporter("127.0.0.1", socket.getLocalPort() + 1));
+		assertEquals(0, target.getLastReport(9));
+		assertTrue(target.getReceiverStatistics().isEmpty());
+	}
+
+	/**
+	 * The last report of a receiver is also recorded for reports without
+	 * address, which are received on an RTSP connection; a receiver, that is
+	 * silent for more than 20 s, is forgotten.
+	 * @throws Exception Test failed.
+	 */
+	public void testOnReporter() throws Exception {
+		// Configure Test
+		long first = tick();
+		target.onReporter(10, "10.0.0.1", 5001, first);
+		target.onReporter(11, "10.0.0.1", 5001, tick());
+
+		// Run Test
+		long last = tick();
+		target.onReporter(10, null, -1, last);
+
+		// Verify Test
+		assertEquals(10, target.getReporter("10.0.0.1", 5001).intValue());
+		assertEquals(last, target.getLastReport(10));
+		target.onReporter(12, "10.0.0.2", 5001, last + 20001);
+		assertEquals(0, target.getLastReport(10));
+		assertNull(target.getReporter("10.0.0.1", 5001));
+		assertEquals(12, target.getReporter("10.0.0.2", 5001).intValue());
+	}
+
+	/**
+	 * The rate decreases while the link loses packets and then increases in
+	 * steps of at most 5% up to the maximum, not within 2 s of a decrease.
+	 * @throws Exception Test failed.
+	 */
+	public void testOnReport_lossAndRecovery() throws Exception {
+		// Configure Test
+		Link link = new Link(0.3);
+		int bitRate = MAX_BIT_RATE;
+
+		// Run Test / Verify Test
+		for(int i = 0; i < 8; i++) {
+			int fractionLost = link.transmit(200);
+			target.onReport(4, fractionLost, 0, 40, tick());
+			bitRate = (int) (bitRate * (512L - fractionLost) / 512);
+			assertEquals(bitRate, target.getBitRate());
+			assertEquals(getFrameRate(bitRate), target.getFrameRate());
+		}
+		assertTrue(target.getBitRate() < MAX_BIT_RATE / 2);
+
+		link.setLoss(0);
+		target.onReport(4, link.transmit(200), 0, 40, tick());
+		assertEquals("No increase within 2 s of a decrease", bitRate, target.getBitRate());
+
+		int increases = 0;
+		for(int i = 0; i < 60; i++) {
+			target.onReport(4, link.transmit(200), 0, 40, tick());
+			int increase = Math.max(bitRate * 5 / 100, 1000);
+			bitRate = Math.min(MAX_BIT_RATE, bitRate + increase);
+			assertEquals(bitRate, target.getBitRate());
+			assertEquals(getFrameRate(bitRate), target.getFrameRate());
+			increases++;
+			if(bitRate == MAX_BIT_RATE) {
+				break;
+			}
+		}
+		assertEquals(MAX_BIT_RATE, target.getBitRate());
+		assertTrue("Bounded increase", increases > 10);
+
+		target.onReport(4, 0, 0, 40, tick());
+		assertEquals(MAX_BIT_RATE, target.getBitRate());
+		assertEquals(MAX_FRAME_RATE, target.getFrameRate());
+	}
+
+	/**
+	 * Below half of the maximum bit rate, the frame rate is lowered in
+	 * proportion; both stop at their minimum.
+	 * @throws Exception Test failed.
+	 */
+	public void testOnReport_frameRate() throws Exception {
+		// Configure Test
+		int bitRate = MAX_BIT_RATE;
+
+		// Run Test / Verify Test
+		for(int i = 0; i < 10; i++) {
+			target.onReport(5, 255, 0, -1, tick());
+			bitRate = Math.max(MIN_BIT_RATE, (int) (bitRate * 257L / 512));
+			assertEquals(bitRate, target.getBitRate());
+			assertEquals(getFrameRate(bitRate), target.getFrameRate());
+		}
+		assertEquals(MIN_BIT_RATE, target.getBitRate());
+		assertEquals(MIN_FRAME_RATE, target.getFrameRate());
+
+		synchronized(changes) {
+			int[] last = changes.get(changes.size() - 1);
+			assertEquals(MIN_BIT_RATE, last[0]);
+			assertEquals(MIN_FRAME_RATE, last[1]);
+		}
+	}
+
+	/**
+	 * A receiver, that loses more than 2% of the packets, holds the rate of
+	 * all receivers.
+	 * @throws Exception Test failed.
+	 */
+	public void testOnReport_slowestReceiver() throws Exception {
+		// Configure Test
+		target.onReport(6, 128, 0, -1, tick());
+		int bitRate = target.getBitRate();
+		assertEquals(MAX_BIT_RATE * 384 / 512, bitRate);
+		tick();
+
+		// Run Test
+		for(int i = 0; i < 5; i++) {
+			long now = tick();
+			target.onReport(6, 10, 0, -1, now);
+			target.onReport(7, 0, 0, -1, now);
+		}
+
+		// Verify Test
+		assertEquals(bitRate, target.getBitRate());
+		target.onReport(6, 0, 0, -1, tick());
+		assertEquals(bitRate + bitRate * 5 / 100, target.getBitRate());
+	}
+
+	/**
+	 * Opens the RTCP port of the controller; the port of the previous test
+	 * may be released only when its receiving thread has left.
+	 * @throws Exception Test failed.
+	 */
+	private void open() throws Exception {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while(true) {
+			try {
+				target.open(PORT);
+				return;
+			} catch(BindException e) {
+				if(System.currentTimeMillis() > deadline) {
+					throw e;
+				}
+				Thread.sleep(20);
+			}
+		}
+	}
+
+	/**
+	 * @return The time of the next report
+	 */
+	private static long tick() {
+		clock += INTERVAL;
+		return clock;
+	}
+
+	/**
+	 * @param bitRate A bit rate
+	 * @return The frame rate, that is expected for the bit rate
+	 */
+	private static int getFrameRate(int bitRate) {
+		if(bitRate >= MAX_BIT_RATE / 2) {
+			return MAX_FRAME_RATE;
+		}
+		return Math.max(MIN_FRAME_RATE, (int) ((long) MAX_FRAME_RATE * bitRate / (MAX_BIT_RATE / 2)));
+	}
+
+	/**
+	 * Sends a receiver report with a single report block to the controller.
+	 * @param reporter SSRC of the receiver
+	 * @param fractionLost Fraction lost (1/256)
+	 * @param jitter Jitter in milliseconds
+	 * @param roundTripTime Round trip time in milliseconds or -1 to send no LSR
+	 * @throws Exception Test failed.
+	 */
+	private void sendReport(int reporter, int fractionLost, long jitter, long roundTripTime) throws Exception {
+		long lsr = 0;
+		long dlsr = 0;
+		if(roundTripTime >= 0) {
+			long delay = 500;
+			dlsr = (delay << 16) / 1000;
+			lsr = getNtpMiddle(System.currentTimeMillis() - roundTripTime - delay);
+		}
+		byte[] packet = new byte[32];
+		packet[0] = (byte) 0x81;
+		packet[1] = (byte) 201;
+		packet[3] = 7;
+		putInt(packet, 4, reporter);
+		putInt(packet, 8, 0x12345678);
+		putInt(packet, 12, fractionLost << 24);
+		putInt(packet, 16, 1000);
+		putInt(packet, 20, jitter * 90);
+		putInt(packet, 24, lsr);
+		putInt(packet, 28, dlsr);
+		socket.send(new DatagramPacket(packet, packet.length, InetAddress.getByName("127.0.0.1"), PORT));
+	}
+
+	/**
+	 * @param time A time in milliseconds since 1970
+	 * @return The middle 32 bits of the NTP timestamp of the time
+	 */
+	private static long getNtpMiddle(long time) {
+		long seconds = time / 1000 + 2208988800L;
+		long fraction = ((time % 1000) << 16) / 1000;
+		return ((seconds & 0xFFFF) << 16) | fraction;
+	}
+
+	/**
+	 * Writes 32 bits in network byte order.
+	 * @param data The buffer
+	 * @param offset The offset
+	 * @param value The value
+	 */
+	private static void putInt(byte[] data, int offset, long value) {
+		for(int i = 0; i < 4; i++) {
+			data[offset + i] = (byte) (value >> (24 - 8 * i));
+		}
+	}
+
+	/**
+	 * Waits for a rate change and asserts it.
+	 * @param bitRate The expected bit rate
+	 * @param frameRate The expected frame rate
+	 * @throws InterruptedException Test failed.
+	 */
+	private void assertChange(int bitRate, int frameRate) throws InterruptedException {
+		synchronized(changes) {
+			long deadline = System.currentTimeMillis() + TIMEOUT;
+			while(changes.isEmpty() && System.currentTimeMillis() < deadline) {
+				changes.wait(100);
+			}
+			assertEquals("Rate changes", 1, changes.size());
+			assertEquals(bitRate, changes.get(0)[0]);
+			assertEquals(frameRate, changes.get(0)[1]);
+		}
+		assertEquals(bitRate, target.getBitRate());
+	}
+
+	/**
+	 * @param reporter SSRC of a receiver
+	 * @return The statistics of the receiver
+	 */
+	private RtpReceiverStatistics getStatistics(int reporter) {
+		for(RtpReceiverStatistics statistics : target.getReceiverStatistics()) {
+			if(statistics.ssrc == reporter) {
+				return statistics;
+			}
+		}
+		fail("No statistics of " + reporter);
+		return null;
+	}
+
+	/**
+	 * A link, that loses packets at random, and the fraction lost a receiver
+	 * reports for it.
+	 */
+	private static class Link {
+
+		/**
+		 * Decides, which packets are lost.
+		 */
+		private final Random random = new Random(42);
+
+		/**
+		 * The probability of a packet to be lost.
+		 */
+		private double loss;
+
+		/**
+		 * @param loss The probability of a packet to be lost
+		 */
+		public Link(double loss) {
+			this.loss = loss;
+		}
+
+		/**
+		 * @param loss The probability of a packet to be lost
+		 */
+		public void setLoss(double loss) {
+			this.loss = loss;
+		}
+
+		/**
+		 * Transmits packets over the link.
+		 * @param packets The number of packets
+		 * @return The fraction lost (1/256) as in RFC 3550, 6.4.1
+		 */
+		public int transmit(int packets) {
+			int lost = 0;
+			for(int i = 0; i < packets; i++) {
+				if(random.nextDouble() < loss) {
+					lost++;
+				}
+			}
+			return Math.min(255, lost * 256 / packets);
+		}
+	}
+}
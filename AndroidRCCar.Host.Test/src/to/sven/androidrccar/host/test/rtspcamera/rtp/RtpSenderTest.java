@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.rtp;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import to.sven.androidrccar.host.test.rtspcamera.RtpCapture;
+import android.test.AndroidTestCase;
+import de.kp.net.rtp.RtpSendQueue;
+import de.kp.net.rtp.RtpSender;
+import de.kp.net.rtp.RtpSocket;
+
+/**
+ * This class should test the {@link RtpSender} and its {@link RtpSendQueue}s
+ * with receivers on the loopback interface, one of which does not keep up.
+ *
+ * @author sven
+ */
+public class RtpSenderTest extends AndroidTestCase {
+
+	/**
+	 * Time a step of the test may take, in milliseconds.
+	 */
+	private final static long TIMEOUT = 5000;
+
+	/**
+	 * Number of packets, that are sent.
+	 */
+	private final static int PACKETS = 200;
+
+	/**
+	 * Number of packets, that are sent before the sender waits for the fast
+	 * receivers; less than the capacity of the queues.
+	 */
+	private final static int BATCH = 16;
+
+	/**
+	 * The loopback address.
+	 */
+	private InetAddress loopback;
+
+	/**
+	 * The receivers, that keep up.
+	 */
+	private final List<Receiver> fast = new ArrayList<Receiver>();
+
+	/**
+	 * The receiver, that does not keep up.
+	 */
+	private Receiver slow;
+
+	/**
+	 * The sockets registered with the {@link RtpSender}.
+	 */
+	private final List<RtpSocket> sockets = new ArrayList<RtpSocket>();
+
+	/**
+	 * Blocks the socket of the slow receiver.
+	 */
+	private final CountDownLatch gate = new CountDownLatch(1);
+
+	/**
+	 * Counted down, when the slow socket is blocked.
+	 */
+	private final CountDownLatch blocked = new CountDownLatch(1);
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		loopback = InetAddress.getByName("127.0.0.1");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		gate.countDown();
+		for(RtpSocket socket : sockets) {
+			RtpSender.getInstance().removeReceiver(socket);
+			socket.close();
+		}
+		for(Receiver receiver : fast) {
+			receiver.close();
+		}
+		if(slow != null) {
+			slow.close();
+		}
+		super.tearDown();
+	}
+
+	/**
+	 * The fast receivers get every packet in order, while the queue of the
+	 * slow receiver drops its oldest packets.
+	 * @throws Exception Test failed.
+	 */
+	public void testSend_slowReceiver() throws Exception {
+		// Configure Test
+		for(int i = 0; i < 3; i++) {
+			Receiver receiver = new Receiver();
+			fast.add(receiver);
+			register(new RtpSocket(loopback, receiver.getPort()));
+		}
+		slow = new Receiver();
+		register(new RtpSocket(loopback, slow.getPort()) {
+			@Override
+			public void send(byte[] data, int offset, int length) throws IOException {
+				blocked.countDown();
+				try {
+					gate.await();
+				} catch(InterruptedException e) {
+					throw new IOException(e.getMessage());
+				}
+				super.send(data, offset, length);
+			}
+		});
+		assertEquals(4, RtpSender.getInstance().getReceiverCount());
+
+		// Run Test
+		send(0);
+		assertTrue(blocked.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		for(int seq = 1; seq < PACKETS; seq++) {
+			send(seq);
+			if(seq % BATCH == 0) {
+				awaitFast(seq + 1);
+			}
+		}
+		awaitFast(PACKETS);
+		long dropped = RtpSender.getInstance().getDroppedCount();
+		gate.countDown();
+
+		// Verify Test
+		int capacity = RtpSendQueue.DEFAULT_CAPACITY;
+		assertEquals(PACKETS - 1 - capacity, dropped);
+		for(Receiver receiver : fast) {
+			List<Integer> received = receiver.await(PACKETS);
+			assertEquals(PACKETS, received.size());
+			for(int seq = 0; seq < PACKETS; seq++) {
+				assertEquals(seq, received.get(seq).intValue());
+			}
+		}
+		List<Integer> received = slow.await(1 + capacity);
+		assertEquals(1 + capacity, received.size());
+		assertEquals(0, received.get(0).intValue());
+		for(int i = 1; i <= capacity; i++) {
+			assertEquals(PACKETS - capacity - 1 + i, received.get(i).intValue());
+		}
+	}
+
+	/**
+	 * A receiver, that is removed, gets no further packets, and the others
+	 * are not affected.
+	 * @throws Exception Test failed.
+	 */
+	public void testRemoveReceiver() throws Exception {
+		// Configure Test
+		RtpCapture kept = new RtpCapture();
+		RtpCapture removed = new RtpCapture();
+		sockets.add(kept);
+		sockets.add(removed);
+		assertEquals(2, RtpSender.getInstance().getReceiverCount());
+		send(0);
+		assertEquals(1, kept.take(1).size());
+		assertEquals(1, removed.take(1).size());
+
+		// Run Test
+		removed.close();
+		send(1);
+
+		// Verify Test
+		assertEquals(1, RtpSender.getInstance().getReceiverCount());
+		List<byte[]> packets = kept.take(1);
+		assertEquals(1, packets.size());
+		assertEquals(1, RtpCapture.getSequenceNumber(packets.get(0)));
+		assertEquals(0, removed.take(0).size());
+	}
+
+	/**
+	 * Registers a socket with the {@link RtpSender}.
+	 * @param socket The socket
+	 */
+	private void register(RtpSocket socket) {
+		sockets.add(socket);
+		RtpSender.getInstance().addReceiver(socket);
+	}
+
+	/**
+	 * Sends an RTP packet with a sequence number to all receivers.
+	 * @param seq The sequence number
+	 * @throws IOException Test failed.
+	 */
+	private static void send(int seq) throws IOException {
+		byte[] packet = new byte[172];
+		packet[0] = (byte) 0x80;
+		packet[1] = 97;
+		packet[2] = (byte) (seq >> 8);
+		packet[3] = (byte) seq;
+		for(int i = 12; i < packet.length; i++) {
+			packet[i] = (byte) (seq + i);
+		}
+		RtpSender.getInstance().send(packet, 0, packet.length);
+	}
+
+	/**
+	 * Waits, until the fast receivers got the packets.
+	 * @param count The number of packets
+	 * @throws Exception Test failed.
+	 */
+	private void awaitFast(int count) throws Exception {
+		for(Receiver receiver : fast) {
+			assertEquals(count, receiver.await(count).size());
+		}
+	}
+
+	/**
+	 * Receives RTP packets on the loopback interface and records their
+	 * sequence numbers.
+	 */
+	private static class Receiver extends Thread {
+
+		/**
+		 * The socket.
+		 */
+		private final DatagramSocket socket;
+
+		/**
+		 * The sequence numbers of the packets received.
+		 */
+		private final List<Integer> received = new ArrayList<Integer>();
+
+		/**
+		 * Opens the socket and starts to receive.
+		 * @throws SocketException Test failed.
+		 */
+		public Receiver() throws SocketException {
+			socket = new DatagramSocket(0, null);
+			socket.setReceiveBufferSize(1 << 20);
+			socket.setSoTimeout(100);
+			setDaemon(true);
+			start();
+		}
+
+		/**
+		 * @return The local port
+		 */
+		public int getPort() {
+			return socket.getLocalPort();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void run() {
+			DatagramPacket packet = new DatagramPacket(new byte[1500], 1500);
+			while(!socket.isClosed()) {
+				try {
+					socket.receive(packet);
+				} catch(SocketTimeoutException e) {
+					continue;
+				} catch(IOException e) {
+					return;
+				}
+				byte[] data = packet.getData();
+				synchronized(this) {
+					received.add(((data[2] & 0xFF) << 8) | (data[3] & 0xFF));
+					notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Waits for packets.
+		 * @param count The expected number of packets
+		 * @return The sequence numbers of the packets received so far
+		 * @throws InterruptedException Test failed.
+		 */
+		public synchronized List<Integer> await(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + TIMEOUT;
+			while(received.size() < count && System.currentTimeMillis() < deadline) {
+				wait(100);
+			}
+			return new ArrayList<Integer>(received);
+		}
+
+		/**
+		 * Stops to receive.
+		 */
+		public void close() {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+
+import to.sven.androidrccar.host.test.rtspcamera.H263TestStream;
+import android.test.AndroidTestCase;
+
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtcpSession;
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtpPacket;
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtpPacketReceiver;
+import com.orangelabs.rcs.platform.network.NetworkFactory;
+
+import de.kp.net.rtp.RtpSender;
+import de.kp.net.rtp.packetizer.H263FrameReader;
+import de.kp.net.rtp.packetizer.H263Packetizer;
+import de.kp.net.rtsp.RtspConstants;
+import de.kp.net.rtsp.client.RtspControl;
+import de.kp.net.rtsp.server.RtspServer;
+
+/**
+ * This class should test the streaming of the {@link RtspServer} over the
+ * loopback interface: an H.263 elementary stream is packetized and sent to a
+ * client over UDP and to a client interleaved on the RTSP connection. Both
+ * must reassemble the pictures of the stream.
+ *
+ * @author sven
+ */
+public class RtspLoopbackTest extends AndroidTestCase {
+
+	/**
+	 * Port of the RTSP server.
+	 */
+	private final static int PORT = 18554;
+
+	/**
+	 * Time a step of the test may take, in milliseconds.
+	 */
+	private final static long TIMEOUT = 10000;
+
+	/**
+	 * The stream, that is sent.
+	 */
+	private final H263TestStream stream = new H263TestStream(42, 60, 1500);
+
+	/**
+	 * The server under test.
+	 */
+	private RtspServer server;
+
+	/**
+	 * The client receiving over UDP.
+	 */
+	private RtspControl udpClient;
+
+	/**
+	 * The client receiving interleaved.
+	 */
+	private RtspControl tcpClient;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		if(NetworkFactory.getFactory() == null) {
+			NetworkFactory.loadFactory("com.orangelabs.rcs.platform.network.AndroidNetworkFactory");
+		}
+		server = new RtspServer(PORT, RtspConstants.VideoEncoder.H263_ENCODER);
+		new Thread(server).start();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		if(udpClient != null) {
+			udpClient.stop();
+		}
+		if(tcpClient != null) {
+			tcpClient.stop();
+		}
+		server.stop();
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while(!server.isTerminated() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		super.tearDown();
+	}
+
+	/**
+	 * The pictures are delivered completely and in order over UDP and
+	 * interleaved on the RTSP connection.
+	 * @throws Exception Test failed.
+	 */
+	public void testStream_udpAndInterleaved() throws Exception {
+		// Configure Test
+		udpClient = new RtspControl("rtsp://127.0.0.1:" + PORT + "/video", false);
+		tcpClient = new RtspControl("rtsp://127.0.0.1:" + PORT + "/video", true);
+		awaitState(udpClient, RtspConstants.READY);
+		awaitState(tcpClient, RtspConstants.READY);
+		assertTrue(tcpClient.isInterleaved());
+
+		Collector udp = new Collector(new RtpPacketReceiver(udpClient.getClientPort(), new RtcpSession(false, 16000)));
+		Collector tcp = new Collector(new RtpPacketReceiver(tcpClient.getRtpConnection(), new RtcpSession(false, 16000)));
+
+		udpClient.play();
+		tcpClient.play();
+		awaitState(udpClient, RtspConstants.PLAYING);
+		awaitState(tcpClient, RtspConstants.PLAYING);
+		awaitReceivers(2);
+
+		// Run Test
+		sendStream(1);
+
+		// Verify Test
+		assertPictures(stream.getPictures(), udp.await(stream.getPictures().size()));
+		assertPictures(stream.getPictures(), tcp.await(stream.getPictures().size()));
+	}
+
+	/**
+	 * A client, that does not read its connection, does neither hold up the
+	 * server nor the other clients; its packets are dropped.
+	 * @throws Exception Test failed.
+	 */
+	public void testStream_congestedClient() throws Exception {
+		// Configure Test
+		tcpClient = new RtspControl("rtsp://127.0.0.1:" + PORT + "/video", true);
+		awaitState(tcpClient, RtspConstants.READY);
+		Collector tcp = new Collector(new RtpPacketReceiver(tcpClient.getRtpConnection(), new RtcpSession(false, 16000)));
+		tcpClient.play();
+		awaitState(tcpClient, RtspConstants.PLAYING);
+
+		Socket congested = new Socket("127.0.0.1", PORT);
+		congested.setReceiveBufferSize(4096);
+		String response = request(congested, "SETUP", "Transport: RTP/AVP/TCP;unicast;interleaved=4-5\r\n", 1);
+		assertTrue(response, response.startsWith("RTSP/1.0 200 OK"));
+		assertTrue(response, response.contains("interleaved=4-5"));
+		int index = response.indexOf("Session: ") + 9;
+		String session = response.substring(index, response.indexOf("\r\n", index)).split(";")[0];
+		response = request(congested, "PLAY", "Session: " + session + "\r\n", 2);
+		assertTrue(response, response.startsWith("RTSP/1.0 200 OK"));
+		awaitReceivers(2);
+
+		// Run Test
+		int repetitions = 20;
+		sendStream(repetitions);
+		long dropped = RtpSender.getInstance().getDroppedCount();
+
+		// Verify Test
+		assertTrue("Packets of the congested client must be dropped", dropped > 0);
+		List<byte[]> pictures = tcp.await(repetitions * stream.getPictures().size());
+		for(int i = 0; i < repetitions; i++) {
+			int size = stream.getPictures().size();
+			assertPictures(stream.getPictures(), pictures.subList(i * size, (i + 1) * size));
+		}
+
+		Socket probe = new Socket("127.0.0.1", PORT);
+		probe.setSoTimeout((int) TIMEOUT);
+		assertTrue(request(probe, "OPTIONS", "", 1).startsWith("RTSP/1.0 200 OK"));
+		probe.close();
+
+		congested.close();
+		awaitReceivers(1);
+	}
+
+	/**
+	 * Reads the stream with the {@link H263FrameReader} and sends its pictures
+	 * with the {@link H263Packetizer}.
+	 * @param repetitions Number of times the stream is sent
+	 * @throws Exception Test failed.
+	 */
+	private void sendStream(int repetitions) throws Exception {
+		H263Packetizer packetizer = new H263Packetizer(null);
+		long timestamp = 0;
+		for(int i = 0; i < repetitions; i++) {
+			H263FrameReader reader = new H263FrameReader(new ByteArrayInputStream(stream.getBytes()));
+			int length;
+			while((length = reader.readFrame()) >= 0) {
+				packetizer.send(reader.getFrame(), 0, length, timestamp);
+				timestamp += 3003;
+				// the loopback interface drops UDP packets, that are sent in a burst
+				Thread.sleep(2);
+			}
+		}
+	}
+
+	/**
+	 * Asserts, that the pictures are equal.
+	 * @param expected The expected pictures
+	 * @param actual The received pictures
+	 */
+	private static void assertPictures(List<byte[]> expected, List<byte[]> actual) {
+		assertEquals(expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); i++) {
+			assertTrue("Picture " + i, Arrays.equals(expected.get(i), actual.get(i)));
+		}
+	}
+
+	/**
+	 * Waits for the state of a client.
+	 * @param client The client
+	 * @param state The expected state
+	 * @throws Exception Test failed.
+	 */
+	private static void awaitState(RtspControl client, int state) throws Exception {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while(client.getState() != state && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(state, client.getState());
+	}
+
+	/**
+	 * Waits for the number of receivers of the {@link RtpSender}.
+	 * @param count The expected number
+	 * @throws Exception Test failed.
+	 */
+	private static void awaitReceivers(int count) throws Exception {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while(RtpSender.getInstance().getReceiverCount() != count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(count, RtpSender.getInstance().getReceiverCount());
+	}
+
+	/**
+	 * Sends an RTSP request and reads the response headers.
+	 * @param socket The connection
+	 * @param method The method
+	 * @param headers Further headers
+	 * @param cseq The sequence number
+	 * @return The response headers
+	 * @throws Exception Test failed.
+	 */
+	private static String request(Socket socket, String method, String headers, int cseq) throws Exception {
+		socket.getOutputStream().write((method + " rtsp://127.0.0.1:" + PORT + "/video RTSP/1.0\r\nCSeq: "
+				+ cseq + "\r\n" + headers + "\r\n").getBytes("ISO-8859-1"));
+		InputStream input = socket.getInputStream();
+		StringBuilder response = new StringBuilder();
+		while(response.length() < 4 || !response.substring(response.length() - 4).equals("\r\n\r\n")) {
+			int b = input.read();
+			if(b < 0) {
+				break;
+			}
+			response.append((char) b);
+		}
+		return response.toString();
+	}
+
+	/**
+	 * Reassembles the pictures received by an {@link RtpPacketReceiver}.
+	 */
+	private class Collector extends Thread {
+
+		/**
+		 * The receiver.
+		 */
+		private final RtpPacketReceiver receiver;
+
+		/**
+		 * The reassembled pictures.
+		 */
+		private final H263TestStream.Depacketizer depacketizer = new H263TestStream.Depacketizer();
+
+		/**
+		 * Starts to collect.
+		 * @param receiver The receiver
+		 */
+		public Collector(RtpPacketReceiver receiver) {
+			this.receiver = receiver;
+			setDaemon(true);
+			start();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void run() {
+			RtpPacket packet;
+			while((packet = receiver.readRtpPacket()) != null) {
+				depacketizer.add(packet.data, packet.payloadoffset, packet.payloadlength, packet.marker == 1);
+			}
+		}
+
+		/**
+		 * Waits for the pictures and stops to collect.
+		 * @param count The expected number of pictures
+		 * @return The pictures
+		 * @throws Exception Test failed.
+		 */
+		public List<byte[]> await(int count) throws Exception {
+			long deadline = System.currentTimeMillis() + TIMEOUT;
+			while(depacketizer.getPictures().size() < count && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			receiver.close();
+			return depacketizer.getPictures();
+		}
+	}
+}
@@ -0,0 +1,371 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ *
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ *
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.test.rtspcamera.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import android.test.AndroidTestCase;
+import de.kp.net.rtsp.client.api.Message;
+import de.kp.net.rtsp.client.api.Transport;
+import de.kp.net.rtsp.client.api.TransportListener;
+import de.kp.net.rtsp.client.transport.InterleavedConnection;
+import de.kp.net.rtsp.client.transport.TCPTransport;
+
+/**
+ * This class should test the separation of interleaved packets from the RTSP
+ * messages of a connection.
+ *
+ * The demultiplexer is internal to the {@link TCPTransport}, so it is tested
+ * through a loopback connection: a server socket writes the stream in chunks,
+ * which the transport mostly reads as they are written. The result must not
+ * depend on the chunks, but the chunks decide which path is taken.
+ *
+ * @author sven
+ */
+public class InterleavedDemultiplexerTest extends AndroidTestCase {
+
+	/**
+	 * Time to wait for the stream, in milliseconds.
+	 */
+	private final static long TIMEOUT = 10000;
+
+	/**
+	 * The end of the stream.
+	 */
+	private final static String END = "RTSP/1.0 200 OK\r\nCSeq: 999\r\n\r\n";
+
+	/**
+	 * Random numbers with a fixed seed, so every run is equal.
+	 */
+	private final Random random = new Random(42);
+
+	/**
+	 * The server side of the connection.
+	 */
+	private ServerSocket serverSocket;
+
+	/**
+	 * The stream of the server side.
+	 */
+	private OutputStream output;
+
+	/**
+	 * The transport under test.
+	 */
+	private TCPTransport transport;
+
+	/**
+	 * The connections of channel 0 and 1; channel 2 has none.
+	 */
+	private InterleavedConnection[] connections;
+
+	/**
+	 * The message bytes, that are passed on by the transport.
+	 */
+	private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+	/**
+	 * The message bytes, that are expected.
+	 */
+	private final ByteArrayOutputStream messages = new ByteArrayOutputStream();
+
+	/**
+	 * The packets, that are expected on channel 0 and 1.
+	 */
+	private final List<List<byte[]>> frames = new ArrayList<List<byte[]>>();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		serverSocket = new ServerSocket(0);
+
+		transport = new TCPTransport();
+		transport.setTransportListener(new TransportListener() {
+			@Override
+			public void connected(Transport t) { }
+			@Override
+			public void error(Transport t, Throwable error) { }
+			@Override
+			public void error(Transport t, Message message, Throwable error) { }
+			@Override
+			public void remoteDisconnection(Transport t) { }
+			@Override
+			public void dataSent(Transport t) { }
+			@Override
+			public void dataReceived(Transport t, byte[] data, int size) {
+				synchronized(received) {
+					received.write(data, 0, size);
+					received.notifyAll();
+				}
+			}
+		});
+		connections = new InterleavedConnection[2];
+		for(int channel = 0; channel < 2; channel++) {
+			connections[channel] = new InterleavedConnection(transport, channel);
+			transport.setInterleavedConnection(channel, connections[channel]);
+			frames.add(new ArrayList<byte[]>());
+		}
+		transport.connect(new URI("rtsp://127.0.0.1:" + serverSocket.getLocalPort()));
+
+		Socket socket = serverSocket.accept();
+		socket.setTcpNoDelay(true);
+		output = socket.getOutputStream();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		transport.disconnect();
+		serverSocket.close();
+		super.tearDown();
+	}
+
+	/**
+	 * Packets, that are read at once, are passed on without copy.
+	 * @throws Exception Test failed.
+	 */
+	public void testProcess_framesReadAtOnce() throws Exception {
+		// Configure Test
+		List<byte[]> chunks = new ArrayList<byte[]>();
+		for(int i = 0; i < 100; i++) {
+			chunks.add(i % 4 == 0 ? message(i) : frame(i % 3, random.nextInt(1400)));
+		}
+
+		// Run Test
+		for(byte[] chunk : chunks) {
+			write(chunk);
+		}
+
+		// Verify Test
+		verify();
+	}
+
+	/**
+	 * The header of a packet is split at each of its bytes.
+	 * @throws Exception Test failed.
+	 */
+	public void testProcess_splitFrameHeaders() throws Exception {
+		for(int i = 0; i < 40; i++) {
+			// Configure Test
+			byte[] frame = frame(i % 2, 1 + random.nextInt(100));
+			int split = 1 + i % 4;
+
+			// Run Test
+			write(Arrays.copyOfRange(frame, 0, split));
+			write(Arrays.copyOfRange(frame, split, frame.length));
+			if(i % 5 == 0) {
+				write(message(i));
+			}
+		}
+
+		// Verify Test
+		verify();
+	}
+
+	/**
+	 * Packets larger than the read buffer of the transport are collected over
+	 * several reads, also when their beginning is read with another packet.
+	 * @throws Exception Test failed.
+	 */
+	public void testProcess_largeFrames() throws Exception {
+		// Configure Test
+		byte[] data = concat(frame(0, 10), frame(1, 20000), frame(0, 65535), message(1), frame(1, 0));
+
+		// Run Test
+		write(data);
+
+		// Verify Test
+		verify();
+	}
+
+	/**
+	 * The body of a message, announced by the Content-Length header, is not
+	 * searched for packets.
+	 * @throws Exception Test failed.
+	 */
+	public void testProcess_messageBodies() throws Exception {
+		// Configure Test
+		String body = "v=0\r\n$\000\000\001x\r\n\r\n$";
+		byte[] describe = ("RTSP/1.0 200 OK\r\nCSeq: 2\r\ncontent-LENGTH:  " + body.length()
+				+ "\r\n\r\n" + body).getBytes("ISO-8859-1");
+		messages.write(describe);
+		byte[] data = concat(frame(0, 10), describe, frame(1, 30));
+
+		// Run Test
+		for(int i = 0; i < data.length; i++) {
+			write(new byte[] { data[i] });
+		}
+
+		// Verify Test
+		verify();
+	}
+
+	/**
+	 * A random mix of messages and packets is split in chunks of random length.
+	 * @throws Exception Test failed.
+	 */
+	public void testProcess_randomChunks() throws Exception {
+		// Configure Test
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		for(int i = 0; i < 200; i++) {
+			if(random.nextInt(3) == 0) {
+				stream.write(message(i));
+			} else {
+				stream.write(frame(random.nextInt(3), random.nextInt(3000)));
+			}
+		}
+		byte[] data = stream.toByteArray();
+
+		// Run Test
+		int position = 0;
+		while(position < data.length) {
+			int length = Math.min(1 + random.nextInt(random.nextBoolean() ? 6 : 9000), data.length - position);
+			write(Arrays.copyOfRange(data, position, position + length));
+			position += length;
+		}
+
+		// Verify Test
+		verify();
+	}
+
+	/**
+	 * Creates a message; it has a body with line breaks and a '$', if the
+	 * number is odd.
+	 * @param number The CSeq of the message
+	 * @return The message, which is expected to be passed on
+	 * @throws IOException Test failed.
+	 */
+	private byte[] message(int number) throws IOException {
+		String message = "RTSP/1.0 200 OK\r\nCSeq: " + number + "\r\n";
+		if(number % 2 == 1) {
+			String body = "v=0\r\n\r\n$" + random.nextInt() + "\r\n";
+			message += (random.nextBoolean() ? "Content-Length: " : "content-length:") + body.length() + "\r\n\r\n" + body;
+		} else {
+			message += "\r\n";
+		}
+		byte[] data = message.getBytes("ISO-8859-1");
+		messages.write(data);
+		return data;
+	}
+
+	/**
+	 * Creates an interleaved packet; packets of channel 0 and 1 are expected
+	 * on their connection, those of channel 2 are discarded.
+	 * @param channel The channel
+	 * @param length The length of the data
+	 * @return The packet
+	 */
+	private byte[] frame(int channel, int length) {
+		byte[] frame = new byte[4 + length];
+		frame[0] = '$';
+		frame[1] = (byte) channel;
+		frame[2] = (byte) (length >> 8);
+		frame[3] = (byte) length;
+		for(int i = 4; i < frame.length; i++) {
+			frame[i] = (byte) random.nextInt(256);
+		}
+		if(channel < 2) {
+			frames.get(channel).add(Arrays.copyOfRange(frame, 4, frame.length));
+		}
+		return frame;
+	}
+
+	/**
+	 * Writes a chunk and waits a little, so that it is read on its own.
+	 * @param chunk The chunk
+	 * @throws Exception Test failed.
+	 */
+	private void write(byte[] chunk) throws Exception {
+		output.write(chunk);
+		output.flush();
+		Thread.sleep(1);
+	}
+
+	/**
+	 * Waits for the end of the stream and compares the messages passed on and
+	 * the packets queued on each connection with the expected ones.
+	 * @throws Exception Test failed.
+	 */
+	private void verify() throws Exception {
+		write(END.getBytes("ISO-8859-1"));
+		messages.write(END.getBytes("ISO-8859-1"));
+
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		synchronized(received) {
+			while(received.size() < messages.size() && System.currentTimeMillis() < deadline) {
+				received.wait(100);
+			}
+			assertEquals(new String(messages.toByteArray(), "ISO-8859-1"),
+					new String(received.toByteArray(), "ISO-8859-1"));
+		}
+
+		// all packets have been queued before the end of the stream;
+		// if one is missing, the disconnect releases the receiver
+		Timer watchdog = new Timer(true);
+		watchdog.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				transport.disconnect();
+			}
+		}, TIMEOUT);
+
+		byte[] buffer = new byte[65536];
+		for(int channel = 0; channel < 2; channel++) {
+			List<byte[]> expected = frames.get(channel);
+			assertTrue("Queue size exceeded", expected.size() <= 256);
+			for(int i = 0; i < expected.size(); i++) {
+				int length = connections[channel].receive(buffer);
+				assertTrue("Channel " + channel + ", packet " + i,
+						Arrays.equals(expected.get(i), Arrays.copyOf(buffer, length)));
+			}
+			assertEquals(0, connections[channel].getDroppedCount());
+		}
+		watchdog.cancel();
+	}
+
+	/**
+	 * Concatenates byte arrays.
+	 * @param arrays The arrays
+	 * @return The concatenation
+	 */
+	private static byte[] concat(byte[]... arrays) {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		for(byte[] array : arrays) {
+			stream.write(array, 0, array.length);
+		}
+		return stream.toByteArray();
+	}
+}
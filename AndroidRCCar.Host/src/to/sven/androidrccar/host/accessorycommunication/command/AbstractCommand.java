@@ -20,7 +20,6 @@
 package to.sven.androidrccar.host.accessorycommunication.command;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
@@ -29,6 +28,7 @@ import to.sven.androidrccar.common.exception.RangeException;
 import to.sven.androidrccar.common.utils.CRC8;
 import to.sven.androidrccar.host.accessorycommunication.exception.AccessoryConnectionProblemException;
 import to.sven.androidrccar.host.accessorycommunication.impl.AccessoryCommunication;
+import to.sven.androidrccar.host.accessorycommunication.impl.ResponseFrameReader;
 import to.sven.androidrccar.host.accessorycommunication.model.ErrorId;
 import to.sven.androidrccar.host.accessorycommunication.model.RequestCommand;
 import to.sven.androidrccar.host.accessorycommunication.model.ResponseMessage;
@@ -53,9 +53,9 @@ public abstract class AbstractCommand implements Runnable {
 	private final OutputStream outputStream;
 	
 	/**
-	 * The {@link InputStream} to received messages from the µController.  
+	 * The {@link ResponseFrameReader} to received messages from the µController.  
 	 */
-	private final InputStream inputStream;
+	private final ResponseFrameReader responseReader;
 	
 	/**
 	 * A {@link Charset} for converting {@link Byte}s to a {@link String}.
@@ -68,19 +68,28 @@ public abstract class AbstractCommand implements Runnable {
 	 */
 	protected AbstractCommand(ICommandListener commandListener) {
 		this.commandListener = commandListener;
-		this.inputStream = commandListener.getInputStream();
+		this.responseReader = commandListener.getResponseReader();
 		this.outputStream = commandListener.getOutputStream();
 	}
 	
 	/**
 	 * Sends the command; receives and processes the response.
+	 * If the {@link ICommandListener} provides a {@link CommandPipeline},
+	 * the command is only sent and the pipeline processes the response later.
 	 * If a exception occurs, it will be delegated to {@link ICommandListener#connectionProblem}. 
 	 */
 	@Override
 	public void run() {
 		try {
-			sendCommand();
-			receiveAndProcessResponse();
+			CommandPipeline pipeline = commandListener.getCommandPipeline();
+			if(pipeline != null) {
+				pipeline.send(this);
+			} else {
+				sendCommand((byte) 0);
+				MessageFrame response = commandListener.getResponseFrame();
+				responseReader.readFrame(response.array());
+				handleResponse(response);
+			}
 		} catch (IOException e) {
 			commandListener.connectionProblem(new AccessoryConnectionProblemException(e));
 		}
@@ -88,18 +97,21 @@ public abstract class AbstractCommand implements Runnable {
 	
 	/**
 	 * Send the command with its payload.
+	 * The command is encoded into the {@link ICommandListener#getCommandFrame()}.
+	 * @param sequence The sequence number, that the µController sends back with the response.
+	 * 				   (See {@link AccessoryCommunication#SEQUENCE_POSITION})
 	 * @throws IOException A exception occurs on write.
 	 */
-	private void sendCommand() throws IOException {
+	void sendCommand(byte sequence) throws IOException {
 		int len = AccessoryCommunication.COMMAND_LENGTH;
-		byte[] buffer = new byte[len];
+		MessageFrame frame = commandListener.getCommandFrame();
+		byte[] buffer = frame.clear();
 		RequestCommand command = getRequestCommandType();
 		buffer[0] = command.messageId;
 		if(command.payloadLength > 0) {
-			ByteBuffer payload = ByteBuffer.allocate(command.payloadLength); 
-			fillPayload(payload);
-			System.arraycopy(payload.array(), 0, buffer, 1, command.payloadLength);
+			fillPayload(frame.payload(command.payloadLength));
 		}
+		buffer[AccessoryCommunication.SEQUENCE_POSITION] = sequence;
 		buffer[len-1] = CRC8.calc(buffer, len-1);
 		outputStream.write(buffer);
 	}
@@ -123,65 +135,33 @@ public abstract class AbstractCommand implements Runnable {
 	protected abstract void fillPayload(ByteBuffer payload);
 	
 	/**
-	 * Reads the response from the {@link InputStream},
-	 * validates it, and processes it depending on the received type.
-	 * @throws IOException Something is wrong with the connection or the received message.
+	 * Processes the validated response depending on the received type.
+	 * @param response The complete response
+	 * @throws IOException Something is wrong with the received message.
+	 * @see ResponseFrameReader#readFrame(byte[])
 	 */
-	private void receiveAndProcessResponse() throws IOException {
-		byte[] responseBuffer = receiveResponse();
-		validateMessage(responseBuffer);
-		ResponseMessage responseMessage = mapResponseMessage(responseBuffer);
-		ByteBuffer payload = getPayload(responseMessage, responseBuffer);
+	void handleResponse(MessageFrame response) throws IOException {
+		ResponseMessage responseMessage = mapResponseMessage(response.array());
+		ByteBuffer payload = getPayload(responseMessage, response);
 		processResponse(responseMessage, payload);
 	}
 	
 	/**
-	 * Calculates a CRC8 Checksum of the first 15 bytes
-	 * and check if it equals with last byte (the checksum byte). 
-	 * @param responseBuffer The complete response
-	 * @throws IOException Is thrown if the validation failed.
-	 */
-	private void validateMessage(byte[] responseBuffer) throws IOException {
-		int pos = AccessoryCommunication.REPSONE_MESSAGE_LENGTH-1;
-		byte exceptedChecksum = CRC8.calc(responseBuffer, pos);
-		if(responseBuffer[pos] != exceptedChecksum) {
-			throw new IOException("Checksum validation failed.");
-		}
-	} // TODO: Test thiz!
-
-	/**
-	 * Extract the payload and and wrap it into a {@link ByteBuffer}
+	 * Extract the payload of the response.
 	 * @param responseMessage The type with the payload length
-	 * @param responseBuffer The complete response
-	 * @return The payload
+	 * @param response The complete response
+	 * @return The payload or null, if the response has no payload.
 	 */
 	private ByteBuffer getPayload(ResponseMessage responseMessage,
-								  byte[] responseBuffer) {
+								  MessageFrame response) {
 		short payloadLength = responseMessage.payloadLength;
 		ByteBuffer payload = null;
 		if(payloadLength > 0) {
-			payload = ByteBuffer.wrap(responseBuffer, 1, payloadLength);
+			payload = response.payload(payloadLength);
 		}
 		return payload;
 	}
 
-	/**
-	 * Receives the response message from the µController.
-	 * @return The complete response
-	 * @throws IOException If a exception on read occurs or the stream is closed.
-	 */
-	private byte[] receiveResponse() throws IOException {
-		byte[] buffer = new byte[AccessoryCommunication.REPSONE_MESSAGE_LENGTH];
-		int len = inputStream.read(buffer);
-		if(len == -1) {
-			throw new IOException("Stream is closed.");
-		} else if(len != AccessoryCommunication.REPSONE_MESSAGE_LENGTH) {
-			throw new IOException("Invalid response packet length."); // TODO: Wait for other bytes?
-		}
-		
-		return buffer;
-	}
-	
 	/**
 	 * Maps the response byte to a {@link ResponseMessage}.
 	 * @param responseBuffer The complete response
@@ -30,6 +30,9 @@ import to.sven.androidrccar.host.accessorycommunication.model.ResponseMessage;
  * Implementation for sending {@link RequestCommand#ADJUST_SPEED}.
  * Processes a {@link ResponseMessage#REQUEST_OK} as response.
  * 
+ * The speed can be changed with {@link #setSpeed(float)}, so one instance
+ * can be sent again and again.
+ * 
  * @author sven
  *
  */
@@ -38,7 +41,7 @@ public class AdjustSpeedCommand extends AbstractCommandWithOkResponse {
 	/**
 	 * @see AdjustSpeedMessage#speed
 	 */
-	private final float speed;
+	private float speed;
 
 	/**
 	 * Default Constructor
@@ -47,15 +50,23 @@ public class AdjustSpeedCommand extends AbstractCommandWithOkResponse {
 	 */
 	public AdjustSpeedCommand(ICommandListener commandListener, float speed) {
 		super(commandListener);
+		setSpeed(speed);
+	}
+	
+	/**
+	 * Changes the speed, that is sent with the next run.
+	 * @param speed {@link AdjustSpeedMessage#speed}
+	 */
+	public synchronized void setSpeed(float speed) {
+		validateInputs(speed);
 		this.speed = speed;
-		
-		validateInputs();
 	}
 	
 	/**
-	 * Validates passed arguments in the constructor.
+	 * Validates passed arguments.
+	 * @param speed {@link AdjustSpeedMessage#speed}
 	 */
-	private void validateInputs() {
+	private void validateInputs(float speed) {
 		boolean backward = commandListener.getCarFeatures().driveBackward;
 		float min = backward?-1f:0;
 		
@@ -76,7 +87,7 @@ public class AdjustSpeedCommand extends AbstractCommandWithOkResponse {
 	 * Fills {@link #speed} into {@code payload}.
 	 */
 	@Override
-	protected void fillPayload(ByteBuffer payload) {
+	protected synchronized void fillPayload(ByteBuffer payload) {
 		short speedInt = (short) (speed*Short.MAX_VALUE);
 		payload.putShort(speedInt);
 	}
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.accessorycommunication.command;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import to.sven.androidrccar.host.accessorycommunication.exception.AccessoryConnectionProblemException;
+import to.sven.androidrccar.host.accessorycommunication.impl.AccessoryCommunication;
+import to.sven.androidrccar.host.accessorycommunication.impl.ResponseFrameReader;
+
+/**
+ * Sends commands without waiting for the response of the previous command.
+ * 
+ * Up to {@link #MAX_COMMANDS_IN_FLIGHT} commands can be sent before the first response is received.
+ * Every command gets a sequence number, that the µController sends back with the response
+ * (Protocol version {@link AccessoryCommunication#PIPELINED_PROTOCOL_VERSION} or newer).
+ * A own thread receives the responses and matches them with the commands.
+ * The commands process their responses in the communication thread, like without pipeline:
+ * Before the next command is sent or in a {@link Runnable}, that is posted by
+ * {@link ICommandListener#postToCommunicationThread}.
+ * 
+ * @author sven
+ *
+ */
+public class CommandPipeline {
+	
+	/**
+	 * Maximal number of commands, that are sent but not answered.
+	 */
+	public final static int MAX_COMMANDS_IN_FLIGHT = 4;
+	
+	/**
+	 * Maximal time in milliseconds to wait for a response, if {@link #MAX_COMMANDS_IN_FLIGHT} is reached.
+	 */
+	public final static int RESPONSE_TIMEOUT = 1000;
+	
+	/**
+	 * The sent commands, that are not answered yet. The index is the sequence number.
+	 */
+	private final AbstractCommand[] commandsInFlight = new AbstractCommand[256];
+	
+	/**
+	 * Number of sent commands, whose responses are not processed yet.
+	 * Only used by the communication thread.
+	 */
+	private int commandsInFlightCount = 0;
+	
+	/**
+	 * The sequence number of the next command.
+	 * Only used by the communication thread.
+	 */
+	private int nextSequence = 0;
+	
+	/**
+	 * Received responses, that wait for processing in the communication thread.
+	 * There are never more than {@link #MAX_COMMANDS_IN_FLIGHT}.
+	 */
+	private final BlockingQueue<ReceivedResponse> receivedResponses =
+			new ArrayBlockingQueue<ReceivedResponse>(MAX_COMMANDS_IN_FLIGHT);
+	
+	/**
+	 * Preallocated {@link ReceivedResponse}s, that the {@link #responseThread} can receive into.
+	 */
+	private final BlockingQueue<ReceivedResponse> freeResponses =
+			new ArrayBlockingQueue<ReceivedResponse>(MAX_COMMANDS_IN_FLIGHT);
+	
+	/**
+	 * Is {@link #responseRunner} posted to the communication thread and didn't run yet?
+	 */
+	private final AtomicBoolean responseRunnerPosted = new AtomicBoolean(false);
+	
+	/**
+	 * The {@link ICommandListener}
+	 */
+	private final ICommandListener commandListener;
+	
+	/**
+	 * The {@link ResponseFrameReader} to received messages from the µController.
+	 */
+	private final ResponseFrameReader responseReader;
+	
+	/**
+	 * The {@link InputStream} of the {@link #responseReader}.
+	 * Closed by {@link #close()}, because that is the only way to stop a blocking read.
+	 */
+	private final InputStream inputStream;
+	
+	/**
+	 * Was {@link #close()} called?
+	 */
+	private volatile boolean closed = false;
+	
+	/**
+	 * Default Constructor
+	 * @param commandListener The {@link ICommandListener}
+	 */
+	public CommandPipeline(ICommandListener commandListener) {
+		this.commandListener = commandListener;
+		this.responseReader = commandListener.getResponseReader();
+		this.inputStream = commandListener.getInputStream();
+		for(int i = 0; i < MAX_COMMANDS_IN_FLIGHT; i++) {
+			freeResponses.add(new ReceivedResponse());
+		}
+	}
+	
+	/**
+	 * Starts receiving the responses.
+	 */
+	public void start() {
+		responseThread.start();
+	}
+	
+	/**
+	 * Stops receiving the responses.
+	 * The {@link InputStream} of the µController is closed, so a blocking read returns.
+	 */
+	public void close() {
+		closed = true;
+		responseThread.interrupt();
+		try {
+			inputStream.close();
+		} catch (IOException e) {
+			// The response thread stops anyway.
+		}
+	}
+	
+	/**
+	 * Sends the command. Processes the received responses before.
+	 * Waits for a response, if {@link #MAX_COMMANDS_IN_FLIGHT} commands are not answered yet.
+	 * Called from the communication thread.
+	 * @param command The command that should send to the µController
+	 * @throws IOException The µController doesn't answer, a response is invalid or a exception occurs on write.
+	 */
+	void send(AbstractCommand command) throws IOException {
+		processReceivedResponses();
+		long deadline = System.currentTimeMillis() + RESPONSE_TIMEOUT;
+		while(commandsInFlightCount >= MAX_COMMANDS_IN_FLIGHT) {
+			long timeout = deadline - System.currentTimeMillis();
+			ReceivedResponse response;
+			try {
+				response = (timeout > 0) ? receivedResponses.poll(timeout, TimeUnit.MILLISECONDS) : null;
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted while waiting for a response.");
+			}
+			if(response == null) {
+				throw new IOException("No response from the µController for " + RESPONSE_TIMEOUT + "ms.");
+			}
+			process(response);
+		}
+		
+		commandsInFlightCount++;
+		int sequence = nextSequence;
+		nextSequence = (nextSequence + 1) & 0xFF;
+		synchronized(commandsInFlight) {
+			commandsInFlight[sequence] = command;
+		}
+		command.sendCommand((byte) sequence);
+	}
+	
+	/**
+	 * Removes the command with the {@code sequence} number from the {@link #commandsInFlight}.
+	 * @param sequence The sequence number
+	 * @return The command
+	 * @throws IOException No command with this sequence number is in flight.
+	 */
+	private AbstractCommand takeCommand(int sequence) throws IOException {
+		AbstractCommand command;
+		synchronized(commandsInFlight) {
+			command = commandsInFlight[sequence];
+			commandsInFlight[sequence] = null;
+		}
+		if(command == null) {
+			throw new IOException("Received a response with the unexpected sequence number " + sequence + ".");
+		}
+		return command;
+	}
+	
+	/**
+	 * Lets the commands process all received responses.
+	 * Called from the communication thread.
+	 * @throws IOException A response is invalid.
+	 */
+	private void processReceivedResponses() throws IOException {
+		ReceivedResponse response;
+		while((response = receivedResponses.poll()) != null) {
+			process(response);
+		}
+	}
+	
+	/**
+	 * Lets the command process its response and gives the {@link ReceivedResponse} free.
+	 * Called from the communication thread.
+	 * @param response The response and its command
+	 * @throws IOException The response is invalid.
+	 */
+	private void process(ReceivedResponse response) throws IOException {
+		AbstractCommand command = response.command;
+		response.command = null;
+		commandsInFlightCount--;
+		try {
+			command.handleResponse(response.frame);
+		} finally {
+			freeResponses.add(response);
+		}
+	}
+	
+	/**
+	 * Processes the received responses in the communication thread,
+	 * if no command is sent, that would do it.
+	 */
+	private final Runnable responseRunner = new Runnable() {
+		@Override
+		public void run() {
+			responseRunnerPosted.set(false);
+			try {
+				processReceivedResponses();
+			} catch (IOException e) {
+				if(!closed) {
+					commandListener.connectionProblem(new AccessoryConnectionProblemException(e));
+				}
+			}
+		}
+	};
+	
+	/**
+	 * Receives the responses and matches them with the commands.
+	 * (There is always a free {@link ReceivedResponse} for the response of a command in flight.)
+	 */
+	private final Thread responseThread = new Thread() {
+		@Override
+		public void run() {
+			try {
+				while(!closed) {
+					ReceivedResponse response = freeResponses.take();
+					byte[] frame = response.frame.array();
+					responseReader.readFrame(frame);
+					response.command = takeCommand(frame[AccessoryCommunication.SEQUENCE_POSITION] & 0xFF);
+					receivedResponses.add(response);
+					if(responseRunnerPosted.compareAndSet(false, true)) {
+						commandListener.postToCommunicationThread(responseRunner);
+					}
+				}
+			} catch (IOException e) {
+				if(!closed) {
+					commandListener.connectionProblem(new AccessoryConnectionProblemException(e));
+				}
+			} catch (InterruptedException e) {
+				// Closed.
+			}
+		}
+	};
+	
+	/**
+	 * A received response and the command, that it answers.
+	 */
+	private static class ReceivedResponse {
+		
+		/**
+		 * The response.
+		 */
+		final MessageFrame frame = new MessageFrame();
+		
+		/**
+		 * The command or null, if the response is not received yet.
+		 */
+		AbstractCommand command;
+	}
+}
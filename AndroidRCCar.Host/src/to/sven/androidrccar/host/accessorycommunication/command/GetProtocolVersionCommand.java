@@ -67,16 +67,18 @@ public class GetProtocolVersionCommand extends AbstractCommand {
 	}
 
 	/**
-	 * Sends a {@link GetFeaturesCommand} if protocol version match,
+	 * Sends a {@link GetFeaturesCommand} if protocol version is supported,
 	 * else the {@link ICommandListener} will be informed about that problem. 
 	 */
 	@Override
 	protected void processExpectedResponse(ByteBuffer payload) {
 		short protocolVersion = payload.getShort();
 		
-		if(protocolVersion != AccessoryCommunication.PROTOCOL_VERSION) {
+		if(protocolVersion < AccessoryCommunication.MIN_PROTOCOL_VERSION ||
+		   protocolVersion > AccessoryCommunication.PROTOCOL_VERSION) {
 			commandListener.protocolVersionNotMatch(AccessoryCommunication.PROTOCOL_VERSION, protocolVersion);
 		} else {
+			commandListener.setProtocolVersion(protocolVersion);
 			commandListener.postCommand(new GetFeaturesCommand(commandListener));
 		}
 	}
@@ -24,6 +24,7 @@ import java.io.OutputStream;
 
 import to.sven.androidrccar.host.accessorycommunication.contract.IAccessoryCommunicationListener;
 import to.sven.androidrccar.host.accessorycommunication.impl.AccessoryCommunication;
+import to.sven.androidrccar.host.accessorycommunication.impl.ResponseFrameReader;
 import to.sven.androidrccar.host.accessorycommunication.model.CarFeatures;
 
 /**
@@ -47,6 +48,28 @@ public interface ICommandListener extends IAccessoryCommunicationListener {
 	 * @return {@link InputStream}
 	 */
 	OutputStream getOutputStream();
+	
+	/**
+	 * The {@link ResponseFrameReader} to received complete responses from the µController.
+	 * It reads from the {@link #getInputStream()}.
+	 * @return {@link ResponseFrameReader}
+	 */
+	ResponseFrameReader getResponseReader();
+	
+	/**
+	 * The reusable {@link MessageFrame}, that the commands are encoded into.
+	 * Only used by the communication thread.
+	 * @return {@link MessageFrame}
+	 */
+	MessageFrame getCommandFrame();
+	
+	/**
+	 * The reusable {@link MessageFrame}, that the responses are received into,
+	 * if the commands wait for their responses (no {@link CommandPipeline}).
+	 * Only used by the communication thread.
+	 * @return {@link MessageFrame}
+	 */
+	MessageFrame getResponseFrame();
 
 	/**
 	 * Set the features that supported by the car.
@@ -65,4 +88,26 @@ public interface ICommandListener extends IAccessoryCommunicationListener {
 	 * @param command The command that should send to the µController
 	 */
 	void postCommand(AbstractCommand command); 
+	
+	/**
+	 * Post a {@link Runnable} to the communication thread,
+	 * e.g. the processing of the responses, that the {@link CommandPipeline} received.
+	 * Does nothing, if the communication is stopped.
+	 * @param runnable The {@link Runnable}
+	 */
+	void postToCommunicationThread(Runnable runnable);
+	
+	/**
+	 * Set the protocol version, that the µController speaks.
+	 * Is called before any other command is sent.
+	 * @param version A supported protocol version.
+	 */
+	void setProtocolVersion(short version);
+	
+	/**
+	 * Get the {@link CommandPipeline}, if the µController supports
+	 * more than one command at once.
+	 * @return {@link CommandPipeline} or null, if every command must wait for its response.
+	 */
+	CommandPipeline getCommandPipeline();
 }
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.accessorycommunication.command;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import to.sven.androidrccar.host.accessorycommunication.impl.AccessoryCommunication;
+
+/**
+ * A reusable buffer for one command or one response message.
+ * 
+ * The commands encode and decode directly into the frame,
+ * so sending a command and receiving its response doesn't allocate anything.
+ * A frame may only be used by one thread.
+ * 
+ * @author sven
+ *
+ */
+public final class MessageFrame {
+	
+	/**
+	 * The bytes of the message.
+	 */
+	private final byte[] bytes = new byte[AccessoryCommunication.COMMAND_LENGTH];
+	
+	/**
+	 * Wraps {@link #bytes} for reading and writing the payload.
+	 */
+	private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+	
+	/**
+	 * Returns the bytes of the message.
+	 * @return The complete message
+	 */
+	public byte[] array() {
+		return bytes;
+	}
+	
+	/**
+	 * Sets all bytes of the message to 0.
+	 * @return The complete message
+	 */
+	public byte[] clear() {
+		Arrays.fill(bytes, (byte) 0);
+		return bytes;
+	}
+	
+	/**
+	 * Returns the payload, which starts after the message type id.
+	 * @param length Length of the payload in bytes.
+	 * @return A {@link ByteBuffer}, whose position is the first and whose limit
+	 * 		   is behind the last byte of the payload.
+	 */
+	public ByteBuffer payload(int length) {
+		buffer.clear();
+		buffer.position(1);
+		buffer.limit(1 + length);
+		return buffer;
+	}
+}
@@ -31,6 +31,9 @@ import to.sven.androidrccar.host.accessorycommunication.model.ResponseMessage;
  * Implementation for sending {@link RequestCommand#ROTATE_CAM}.
  * Processes a {@link ResponseMessage#REQUEST_OK} as response.
  * 
+ * The position can be changed with {@link #setPosition(float, float)}, so one instance
+ * can be sent again and again.
+ * 
  * @author sven
  *
  */
@@ -54,17 +57,26 @@ public class RotateCameraCommand extends AbstractCommandWithOkResponse {
 	 */
 	public RotateCameraCommand(ICommandListener commandListener, float pan, float tilt) {
 		super(commandListener);
-		
+		setPosition(pan, tilt);
+	}
+	
+	/**
+	 * Changes the position, that is sent with the next run.
+	 * @param pan {@link RotateCameraMessage#pan}
+	 * @param tilt @link {@link RotateCameraMessage#tilt}
+	 */
+	public synchronized void setPosition(float pan, float tilt) {
+		validateInputs(pan, tilt);
 		this.pan = pan;
 		this.tilt = tilt;
-		
-		validateInputs();
 	}
 	
 	/**
-	 * Validates passed arguments in the constructor.
+	 * Validates passed arguments.
+	 * @param pan {@link RotateCameraMessage#pan}
+	 * @param tilt @link {@link RotateCameraMessage#tilt}
 	 */
-	private void validateInputs() {
+	private void validateInputs(float pan, float tilt) {
 		CarFeatures features = commandListener.getCarFeatures();
 		if(pan > features.cameraPanMax || pan < -1*features.cameraPanMin) {
 			throw new RangeException("pan", pan);
@@ -86,7 +98,7 @@ public class RotateCameraCommand extends AbstractCommandWithOkResponse {
 	 * Fills {@link #pan} and {@link #tilt} into {@code payload}.
 	 */
 	@Override
-	protected void fillPayload(ByteBuffer payload) {
+	protected synchronized void fillPayload(ByteBuffer payload) {
 		CarFeatures features = commandListener.getCarFeatures();
 		
 		short panShort;
@@ -30,6 +30,9 @@ import to.sven.androidrccar.host.accessorycommunication.model.ResponseMessage;
  * Implementation for sending {@link RequestCommand#TURN_CAR}.
  * Processes a {@link ResponseMessage#REQUEST_OK} as response.
  * 
+ * The rotation can be changed with {@link #setRotation(float)}, so one instance
+ * can be sent again and again.
+ * 
  * @author sven
  *
  */
@@ -38,7 +41,7 @@ public class TurnCarCommand extends AbstractCommandWithOkResponse {
 	/**
 	 * @see TurnCarMessage#rotation
 	 */
-	private final float rotation;
+	private float rotation;
 
 	/**
 	 * Default Constructor
@@ -47,15 +50,23 @@ public class TurnCarCommand extends AbstractCommandWithOkResponse {
 	 */
 	public TurnCarCommand(ICommandListener commandListener, float rotation) {
 		super(commandListener);
+		setRotation(rotation);
+	}
+	
+	/**
+	 * Changes the rotation, that is sent with the next run.
+	 * @param rotation {@link TurnCarMessage#rotation}
+	 */
+	public synchronized void setRotation(float rotation) {
+		validateInputs(rotation);
 		this.rotation = rotation;
-
-		validateInputs();
 	}
 	
 	/**
-	 * Validates passed arguments in the constructor.
+	 * Validates passed arguments.
+	 * @param rotation {@link TurnCarMessage#rotation}
 	 */
-	private void validateInputs() {
+	private void validateInputs(float rotation) {
 		if(rotation > 1 || rotation < -1) {
 			throw new RangeException("rotation", rotation);
 		}
@@ -73,7 +84,7 @@ public class TurnCarCommand extends AbstractCommandWithOkResponse {
 	 * Fills the {@link #rotation} into the payload.
 	 */
 	@Override
-	protected void fillPayload(ByteBuffer payload) {
+	protected synchronized void fillPayload(ByteBuffer payload) {
 		short rotationInt = (short) (rotation*Short.MAX_VALUE);
 		payload.putShort(rotationInt);
 	}
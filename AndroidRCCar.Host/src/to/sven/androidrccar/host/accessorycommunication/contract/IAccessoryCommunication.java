@@ -79,4 +79,18 @@ public interface IAccessoryCommunication extends Closeable {
 	 * @throws IllegalArgumentException If {@code listener} is null.
 	 */
 	void setListener(IAccessoryCommunicationListener listener);
+	
+	/**
+	 * Returns the number of commands, that wait for sending.
+	 * The waiting value of an actuator (speed, steering, camera) counts as one command.
+	 * @return The number of waiting commands.
+	 */
+	int getCommandQueueDepth();
+	
+	/**
+	 * Returns the number of actuator commands, that were replaced by a newer
+	 * command for the same actuator before they were sent.
+	 * @return The number of dropped commands since start.
+	 */
+	long getDroppedCommandCount();
 }
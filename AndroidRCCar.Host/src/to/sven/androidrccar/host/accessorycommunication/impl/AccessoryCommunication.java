@@ -25,12 +25,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 
 import to.sven.androidrccar.host.accessorycommunication.command.AbstractCommand;
 import to.sven.androidrccar.host.accessorycommunication.command.AdjustSpeedCommand;
+import to.sven.androidrccar.host.accessorycommunication.command.CommandPipeline;
 import to.sven.androidrccar.host.accessorycommunication.command.GetBatteryStateCommand;
 import to.sven.androidrccar.host.accessorycommunication.command.GetProtocolVersionCommand;
 import to.sven.androidrccar.host.accessorycommunication.command.ICommandListener;
+import to.sven.androidrccar.host.accessorycommunication.command.MessageFrame;
 import to.sven.androidrccar.host.accessorycommunication.command.RotateCameraCommand;
 import to.sven.androidrccar.host.accessorycommunication.command.TurnCarCommand;
 import to.sven.androidrccar.host.accessorycommunication.contract.IAccessoryCommunication;
@@ -39,6 +42,7 @@ import to.sven.androidrccar.host.accessorycommunication.exception.AccessoryConne
 import to.sven.androidrccar.host.accessorycommunication.model.CarFeatures;
 import android.os.Handler;
 import android.os.Looper;
+import android.util.Log;
 
 
 /**
@@ -48,6 +52,14 @@ import android.os.Looper;
  * It uses a {@link Handler} that post the message (a {@link AbstractCommand}) to a 
  * communication thread. The thread sends the message and
  * wait until it gets the answer.
+ * If the µController supports protocol version {@link #PIPELINED_PROTOCOL_VERSION},
+ * the thread only waits if {@link CommandPipeline#MAX_COMMANDS_IN_FLIGHT} commands are not answered.
+ * 
+ * The commands wait in a own queue. For every actuator (speed, steering, camera)
+ * only the newest value waits: A newer command replaces the waiting one.
+ * All other commands keep their order.
+ * The actuator commands are reused and all commands are encoded into
+ * the same {@link MessageFrame}, so steering doesn't produce garbage.
  * @author sven
  *
  */
@@ -56,10 +68,28 @@ public class AccessoryCommunication implements IAccessoryCommunication, ICommand
 	// TODO: Call close on exit
 	// TODO: Handle: onError with new Logic attached! -> IsAlive?
 	
+	/**
+	 * Used as Log Tag.
+	 * @see Log
+	 */
+	private static final String LOG_TAG = "AccessoryCommunication";
+	
 	/**
 	 * Version of the implemented protocol between µController and Host.
 	 */
-	public final static short PROTOCOL_VERSION = 1;
+	public final static short PROTOCOL_VERSION = 2;
+	
+	/**
+	 * Oldest version of the protocol between µController and Host, that is still supported.
+	 * Version 1 doesn't send the sequence number back, so only one command can be sent at once.
+	 */
+	public final static short MIN_PROTOCOL_VERSION = 1;
+	
+	/**
+	 * First version of the protocol, that sends the sequence number of the command back with the response.
+	 * @see CommandPipeline
+	 */
+	public final static short PIPELINED_PROTOCOL_VERSION = 2;
 	
 	/**
 	 * Number of bytes of a command.
@@ -71,6 +101,14 @@ public class AccessoryCommunication implements IAccessoryCommunication, ICommand
 	 */
 	public final static int REPSONE_MESSAGE_LENGTH = 16;
 	
+	/**
+	 * Position of the sequence number in a command and in a response message.
+	 * It's the byte before the checksum, which isn't used by any payload.
+	 * Since protocol version {@link #PIPELINED_PROTOCOL_VERSION} the µController
+	 * copies it from the command to the response.
+	 */
+	public final static int SEQUENCE_POSITION = COMMAND_LENGTH - 2;
+	
 	/**
 	 * The {@link OutputStream} to send message to the µController.
 	 */
@@ -81,6 +119,11 @@ public class AccessoryCommunication implements IAccessoryCommunication, ICommand
 	 */
 	private final InputStream inputStream;
 	
+	/**
+	 * Reads the responses from the {@link #inputStream}.
+	 */
+	private final ResponseFrameReader responseReader;
+	
 	/**
 	 * A monitor object, that is used to ensure that the {@link #communicationThreadHandler}
 	 * is set after start of {@link #communicationThread} before {@link #startCommunication()} returns.
@@ -97,6 +140,71 @@ public class AccessoryCommunication implements IAccessoryCommunication, ICommand
 	 */
 	private volatile CarFeatures carFeatures;
 	
+	/**
+	 * The commands (and {@link ActuatorSlot}s), that wait for the {@link #communicationThread}.
+	 * Also used as lock for the {@link ActuatorSlot}s and {@link #commandQueueRunnerPosted}.
+	 */
+	private final ArrayDeque<Runnable> commandQueue = new ArrayDeque<Runnable>();
+	
+	/**
+	 * Is {@link #commandQueueRunner} posted to the {@link #communicationThreadHandler}?
+	 */
+	private boolean commandQueueRunnerPosted = false;
+	
+	/**
+	 * Number of actuator values, that were replaced by a newer one before they were sent.
+	 */
+	private long droppedCommandCount = 0;
+	
+	/**
+	 * Newest {@link AdjustSpeedCommand}.
+	 */
+	private final ActuatorSlot speedSlot = new ActuatorSlot();
+	
+	/**
+	 * Newest {@link TurnCarCommand}.
+	 */
+	private final ActuatorSlot rotationSlot = new ActuatorSlot();
+	
+	/**
+	 * Newest {@link RotateCameraCommand}.
+	 */
+	private final ActuatorSlot cameraSlot = new ActuatorSlot();
+	
+	/**
+	 * The reused {@link AdjustSpeedCommand} or null, if the speed wasn't adjusted yet.
+	 * Guarded by {@link #commandQueue}.
+	 */
+	private AdjustSpeedCommand speedCommand;
+	
+	/**
+	 * The reused {@link TurnCarCommand} or null, if the car wasn't turned yet.
+	 * Guarded by {@link #commandQueue}.
+	 */
+	private TurnCarCommand rotationCommand;
+	
+	/**
+	 * The reused {@link RotateCameraCommand} or null, if the camera wasn't rotated yet.
+	 * Guarded by {@link #commandQueue}.
+	 */
+	private RotateCameraCommand cameraCommand;
+	
+	/**
+	 * The commands are encoded into this frame. Only used by the {@link #communicationThread}.
+	 */
+	private final MessageFrame commandFrame = new MessageFrame();
+	
+	/**
+	 * The responses are received into this frame. Only used by the {@link #communicationThread}.
+	 */
+	private final MessageFrame responseFrame = new MessageFrame();
+	
+	/**
+	 * Sends the commands, if the µController supports more than one command at once.
+	 * Otherwise null.
+	 */
+	private volatile CommandPipeline commandPipeline;
+	
 	/**
 	 * A {@link Handler} associated with the applications main thread (the one with the activities).
 	 */
@@ -128,6 +236,7 @@ public class AccessoryCommunication implements IAccessoryCommunication, ICommand
 	public AccessoryCommunication(OutputStream outputStream, InputStream inputStream, Handler mainThreadHandler) {
 		this.outputStream = outputStream;
 		this.inputStream = inputStream;
+		this.responseReader = new ResponseFrameReader(inputStream);
 		this.mainThreadHandler = mainThreadHandler;
 	}
 	
@@ -147,7 +256,7 @@ public class AccessoryCommunication implements IAccessoryCommunication, ICommand
 					} catch (InterruptedException e) { /* We wait for it. */ }
 				}
 		}
-		communicationThreadHandler.post(new GetProtocolVersionCommand(this));
+		enqueue(new GetProtocolVersionCommand(this));
 	}
 	
 	/**
@@ -190,7 +299,14 @@ public class AccessoryCommunication implements IAccessoryCommunication, ICommand
 	@Override
 	public void adjustSpeed(float speed) {
 		if(communicationThreadHandler != null) {
-			communicationThreadHandler.post(new AdjustSpeedCommand(this, speed));
+			synchronized(commandQueue) {
+				if(speedCommand == null) {
+					speedCommand = new AdjustSpeedCommand(this, speed);
+				} else {
+					speedCommand.setSpeed(speed);
+				}
+				speedSlot.enqueue(speedCommand);
+			}
 		}
 	}
 	
@@ -200,7 +316,14 @@ public class AccessoryCommunication implements IAccessoryCommunication, ICommand
 	@Override
 	public void turnCar(float rotation) {
 		if(communicationThreadHandler != null) {
-			communicationThreadHandler.post(new TurnCarCommand(this, rotation));
+			synchronized(commandQueue) {
+				if(rotationCommand == null) {
+					rotationCommand = new TurnCarCommand(this, rotation);
+				} else {
+					rotationCommand.setRotation(rotation);
+				}
+				rotationSlot.enqueue(rotationCommand);
+			}
 		}
 	}
 
@@ -210,7 +333,14 @@ public class AccessoryCommunication implements IAccessoryCommunication, ICommand
 	@Override
 	public void rotateCamera(float pan, float tilt) {
 		if(communicationThreadHandler != null) {
-			communicationThreadHandler.post(new RotateCameraCommand(this, pan, tilt));
+			synchronized(commandQueue) {
+				if(cameraCommand == null) {
+					cameraCommand = new RotateCameraCommand(this, pan, tilt);
+				} else {
+					cameraCommand.setPosition(pan, tilt);
+				}
+				cameraSlot.enqueue(cameraCommand);
+			}
 		}
 	}
 
@@ -220,7 +350,7 @@ public class AccessoryCommunication implements IAccessoryCommunication, ICommand
 	@Override
 	public void requestBatteryState() {
 		if(communicationThreadHandler != null) {
-			communicationThreadHandler.post(new GetBatteryStateCommand(this));
+			enqueue(new GetBatteryStateCommand(this));
 		}
 	}
 	
@@ -249,6 +379,17 @@ public class AccessoryCommunication implements IAccessoryCommunication, ICommand
 			});
 			communicationThreadHandler = null;
 		}
+		if(commandPipeline != null) {
+			commandPipeline.close();
+		}
+		synchronized(commandQueue) {
+			Log.i(LOG_TAG, "Closed with " + commandQueue.size() + " waiting commands; " +
+						   droppedCommandCount + " commands were replaced by newer ones.");
+			commandQueue.clear();
+			speedSlot.clear();
+			rotationSlot.clear();
+			cameraSlot.clear();
+		}
 		// TODO: Close Streams?
 	}
 
@@ -347,6 +488,30 @@ public class AccessoryCommunication implements IAccessoryCommunication, ICommand
 	public InputStream getInputStream() {
 		return inputStream;
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ResponseFrameReader getResponseReader() {
+		return responseReader;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageFrame getCommandFrame() {
+		return commandFrame;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MessageFrame getResponseFrame() {
+		return responseFrame;
+	}
 
 	/**
 	 * {@inheritDoc}
@@ -356,6 +521,27 @@ public class AccessoryCommunication implements IAccessoryCommunication, ICommand
 		return outputStream;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * Starts the {@link CommandPipeline}, if the µController supports it.
+	 */
+	@Override
+	public void setProtocolVersion(short version) {
+		if(version >= PIPELINED_PROTOCOL_VERSION && commandPipeline == null) {
+			CommandPipeline pipeline = new CommandPipeline(this);
+			pipeline.start();
+			commandPipeline = pipeline;
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public CommandPipeline getCommandPipeline() {
+		return commandPipeline;
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -364,6 +550,139 @@ public class AccessoryCommunication implements IAccessoryCommunication, ICommand
 		if(communicationThreadHandler == null) {
 			throw new IllegalStateException("The communication wasn't started or was already stopped.");
 		}
-		communicationThreadHandler.post(command);
+		enqueue(command);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void postToCommunicationThread(Runnable runnable) {
+		Handler handler = communicationThreadHandler;
+		if(handler != null) {
+			handler.post(runnable);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getCommandQueueDepth() {
+		synchronized(commandQueue) {
+			return commandQueue.size();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getDroppedCommandCount() {
+		synchronized(commandQueue) {
+			return droppedCommandCount;
+		}
+	}
+	
+	/**
+	 * Appends a command to the {@link #commandQueue}.
+	 * @param command The command or {@link ActuatorSlot}
+	 */
+	private void enqueue(Runnable command) {
+		synchronized(commandQueue) {
+			commandQueue.add(command);
+			postCommandQueueRunner();
+		}
+	}
+	
+	/**
+	 * Posts the {@link #commandQueueRunner}, if it isn't posted yet.
+	 * Call only with the lock of {@link #commandQueue}.
+	 */
+	private void postCommandQueueRunner() {
+		Handler handler = communicationThreadHandler;
+		if(!commandQueueRunnerPosted && handler != null) {
+			commandQueueRunnerPosted = handler.post(commandQueueRunner);
+		}
+	}
+	
+	/**
+	 * Runs the first command of the {@link #commandQueue} in the {@link #communicationThread}.
+	 * Posts itself again, if there are more commands.
+	 * (So the Looper can quit between two commands.)
+	 */
+	private final Runnable commandQueueRunner = new Runnable() {
+		@Override
+		public void run() {
+			Runnable command;
+			synchronized(commandQueue) {
+				command = commandQueue.poll();
+				commandQueueRunnerPosted = false;
+				if(!commandQueue.isEmpty()) {
+					postCommandQueueRunner();
+				}
+			}
+			if(command != null) {
+				command.run();
+			}
+		}
+	};
+	
+	/**
+	 * Holds the newest command for one actuator, while it waits in the {@link #commandQueue}.
+	 * A newer command (or the same command with a newer value) replaces the waiting one,
+	 * but keeps its position in the queue.
+	 */
+	private class ActuatorSlot implements Runnable {
+		
+		/**
+		 * The newest command or null, if no command was enqueued yet.
+		 */
+		private AbstractCommand command;
+		
+		/**
+		 * Is the slot in the {@link #commandQueue}?
+		 */
+		private boolean queued = false;
+		
+		/**
+		 * Sets the newest command and appends the slot to the {@link #commandQueue},
+		 * if it isn't there already.
+		 * @param newCommand The newest command for this actuator.
+		 */
+		public void enqueue(AbstractCommand newCommand) {
+			synchronized(commandQueue) {
+				if(queued) {
+					droppedCommandCount++;
+				} else {
+					queued = true;
+					AccessoryCommunication.this.enqueue(this);
+				}
+				command = newCommand;
+			}
+		}
+		
+		/**
+		 * Marks the slot as not queued, after the {@link #commandQueue} was cleared.
+		 * Call only with the lock of {@link #commandQueue}.
+		 */
+		public void clear() {
+			queued = false;
+		}
+		
+		/**
+		 * Runs the newest command.
+		 */
+		@Override
+		public void run() {
+			AbstractCommand newestCommand;
+			synchronized(commandQueue) {
+				newestCommand = queued ? command : null;
+				queued = false;
+			}
+			if(newestCommand != null) {
+				newestCommand.run();
+			}
+		}
 	}
 }
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (C) 2012 Sven Nobis
+ * 
+ * This file is part of AndroidRCCar (http://androidrccar.sven.to)
+ * 
+ * AndroidRCCar is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This source code is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *  
+ * You should have received a copy of the GNU General Public License
+ * along with this source code; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ ******************************************************************************/
+package to.sven.androidrccar.host.accessorycommunication.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import to.sven.androidrccar.common.utils.CRC8;
+
+/**
+ * Reads the response messages of the µController from the {@link InputStream}.
+ * 
+ * Short reads are collected in a preallocated ring buffer until a response is complete.
+ * If the checksum of a response is wrong, the reader slides byte by byte
+ * until it finds a valid response again (resynchronization).
+ * The reader never reads more bytes than the current response needs.
+ * 
+ * The counters are only written by the reading thread. They are volatile,
+ * so they can be polled without waiting for a blocked {@link #readFrame}.
+ * 
+ * @author sven
+ *
+ */
+public class ResponseFrameReader {
+	
+	/**
+	 * Length of a response.
+	 */
+	private final static int FRAME_LENGTH = AccessoryCommunication.REPSONE_MESSAGE_LENGTH;
+	
+	/**
+	 * Maximal number of bytes, that are skipped to find a valid response.
+	 * If there are more invalid bytes, the connection is considered as broken.
+	 */
+	public final static int MAX_SKIPPED_BYTES = 4 * FRAME_LENGTH;
+	
+	/**
+	 * The stream of the µController.
+	 */
+	private final InputStream inputStream;
+	
+	/**
+	 * Received bytes, that aren't returned yet.
+	 */
+	private final byte[] ring = new byte[2 * FRAME_LENGTH];
+	
+	/**
+	 * Position of the first byte in the {@link #ring}.
+	 */
+	private int head = 0;
+	
+	/**
+	 * Number of bytes in the {@link #ring}.
+	 */
+	private int count = 0;
+	
+	/**
+	 * Number of valid responses.
+	 */
+	private volatile long frameCount = 0;
+	
+	/**
+	 * Number of failed checksum validations.
+	 */
+	private volatile long crcErrorCount = 0;
+	
+	/**
+	 * Number of resynchronizations.
+	 */
+	private volatile long framingErrorCount = 0;
+	
+	/**
+	 * Number of skipped bytes.
+	 */
+	private volatile long skippedByteCount = 0;
+	
+	/**
+	 * Default Constructor
+	 * @param inputStream The {@link InputStream} to received messages from the µController.
+	 */
+	public ResponseFrameReader(InputStream inputStream) {
+		this.inputStream = inputStream;
+	}
+	
+	/**
+	 * Reads the next valid response. Waits until it is complete.
+	 * @param frame Receives the response. Must have the length {@link AccessoryCommunication#REPSONE_MESSAGE_LENGTH}.
+	 * @throws IOException If a exception on read occurs, the stream is closed
+	 * 					   or no valid response is found within {@link #MAX_SKIPPED_BYTES}.
+	 */
+	public synchronized void readFrame(byte[] frame) throws IOException {
+		int skipped = 0;
+		while(true) {
+			while(count < FRAME_LENGTH) {
+				fill(FRAME_LENGTH - count);
+			}
+			
+			int first = Math.min(FRAME_LENGTH, ring.length - head);
+			System.arraycopy(ring, head, frame, 0, first);
+			System.arraycopy(ring, 0, frame, first, FRAME_LENGTH - first);
+			
+			if(CRC8.calc(frame, FRAME_LENGTH - 1) == frame[FRAME_LENGTH - 1]) {
+				remove(FRAME_LENGTH);
+				frameCount++;
+				return;
+			}
+			
+			crcErrorCount++;
+			if(skipped == 0) {
+				framingErrorCount++;
+			}
+			if(skipped == MAX_SKIPPED_BYTES) {
+				throw new IOException("Checksum validation failed.");
+			}
+			remove(1);
+			skipped++;
+			skippedByteCount++;
+		}
+	}
+	
+	/**
+	 * Reads up to {@code max} bytes into the {@link #ring}.
+	 * @param max Maximal number of bytes.
+	 * @throws IOException If a exception on read occurs or the stream is closed.
+	 */
+	private void fill(int max) throws IOException {
+		int tail = (head + count) % ring.length;
+		int len = Math.min(max, ring.length - tail);
+		int read = inputStream.read(ring, tail, len);
+		if(read == -1) {
+			throw new IOException("Stream is closed.");
+		}
+		count += read;
+	}
+	
+	/**
+	 * Removes bytes from the begin of the {@link #ring}.
+	 * @param len Number of bytes.
+	 */
+	private void remove(int len) {
+		head = (head + len) % ring.length;
+		count -= len;
+	}
+	
+	/**
+	 * Returns the number of valid responses.
+	 * @return Number of responses
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+	
+	/**
+	 * Returns the number of failed checksum validations.
+	 * @return Number of errors
+	 */
+	public long getCrcErrorCount() {
+		return crcErrorCount;
+	}
+	
+	/**
+	 * Returns the number of resynchronizations:
+	 * How often the begin of a response was lost.
+	 * @return Number of errors
+	 */
+	public long getFramingErrorCount() {
+		return framingErrorCount;
+	}
+	
+	/**
+	 * Returns the number of bytes, that were skipped to find a valid response.
+	 * @return Number of bytes
+	 */
+	public long getSkippedByteCount() {
+		return skippedByteCount;
+	}
+}
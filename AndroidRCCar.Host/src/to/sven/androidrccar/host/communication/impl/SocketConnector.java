@@ -20,10 +20,12 @@
 package to.sven.androidrccar.host.communication.impl;
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.Collections;
 
 import org.apache.http.conn.util.InetAddressUtils;
@@ -59,6 +61,11 @@ public class SocketConnector extends AsyncTask<Object, Object, AsyncTaskResult<S
 	 */
 	private volatile int port;
 	
+	/**
+	 * Use non-blocking I/O for the connection?
+	 */
+	private volatile boolean nonBlockingIo;
+	
 	/**
 	 * Default Constructor
 	 * @param dependencyContainer The {@link IHostDependencyContainer}
@@ -97,12 +104,13 @@ public class SocketConnector extends AsyncTask<Object, Object, AsyncTaskResult<S
 	}
 	
 	/**
-	 * Retrieves the {@link #port} from the configuration.
+	 * Retrieves the {@link #port} and {@link #nonBlockingIo} from the configuration.
 	 */
 	@Override
 	protected void onPreExecute() {
 		super.onPreExecute();
 		port = dc.getConfiguration().getPort();
+		nonBlockingIo = dc.getConfiguration().useNonBlockingIo();
 	}
 	
 	/**
@@ -111,9 +119,18 @@ public class SocketConnector extends AsyncTask<Object, Object, AsyncTaskResult<S
 	@Override
 	protected AsyncTaskResult<Socket> doInBackground(Object... params) {
 		try {
-			ServerSocket serverSocket = new ServerSocket(port);
-			Socket socket = serverSocket.accept();
-			serverSocket.close();
+			Socket socket;
+			if(nonBlockingIo) {
+				// Channels, so the connection can use non-blocking I/O:
+				ServerSocketChannel serverChannel = ServerSocketChannel.open();
+				serverChannel.socket().bind(new InetSocketAddress(port));
+				socket = serverChannel.accept().socket();
+				serverChannel.close();
+			} else {
+				ServerSocket serverSocket = new ServerSocket(port);
+				socket = serverSocket.accept();
+				serverSocket.close();
+			}
 			return new AsyncTaskResult<Socket>(socket);
 		} catch(Exception ex) {
 			return new AsyncTaskResult<Socket>(ex);
@@ -23,6 +23,7 @@ import to.sven.androidrccar.common.communication.model.AuthenticationFailedMessa
 import to.sven.androidrccar.common.communication.model.AuthenticationMessage;
 import to.sven.androidrccar.common.communication.model.FeatureMessage;
 import to.sven.androidrccar.common.communication.model.GreetingMessage;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
 import to.sven.androidrccar.common.utils.CryptUtils;
 import to.sven.androidrccar.host.accessorycommunication.model.CarFeatures;
 import to.sven.androidrccar.host.service.contract.IHostConfigurationService;
@@ -46,6 +47,7 @@ public class AuthenticationMessageHandler extends
 	
 	/**
 	 *  Checks if the client has send the correct password.
+	 *  If the client accepted an other {@link MessageEncoding}, it's used for the answer.
 	 *  
 	 *  If: {@link #AuthenticationSuccessfull()}
 	 *  If not: {@link #AuthenticationFailed()}
@@ -58,6 +60,10 @@ public class AuthenticationMessageHandler extends
 						   			 .getPassword();
 		String expectedHash = CryptUtils.encryptPassword(password, logic.getSalt());
 		
+		if(message.encoding != null && message.encoding != MessageEncoding.json) {
+			logic.setMessageEncoding(message.encoding);
+		}
+		
 		if(message.passwordHash.equals(expectedHash)) {
 			AuthenticationSuccessfull();
 		} else {
@@ -24,6 +24,7 @@ import java.io.IOException;
 import to.sven.androidrccar.common.communication.model.BatteryPowerMessage;
 import to.sven.androidrccar.common.communication.model.GreetingMessage;
 import to.sven.androidrccar.common.communication.model.Message;
+import to.sven.androidrccar.common.communication.model.MessageEncoding;
 import to.sven.androidrccar.common.logic.impl.AbstractLogic;
 import to.sven.androidrccar.common.utils.CryptUtils;
 import to.sven.androidrccar.host.accessorycommunication.contract.IAccessoryCommunication;
@@ -68,7 +69,10 @@ public class HostLogic extends AbstractLogic<IHostDependencyContainer, IHostLogi
 	 */
 	public HostLogic(IHostDependencyContainer container) {
 		super(container);
-		salt = CryptUtils.generateSalt();
+		GreetingMessage greetingMessage = new GreetingMessage(Message.PROTOCOL_VERSION,
+															  CryptUtils.generateSalt(),
+															  MessageEncoding.binary);
+		salt = greetingMessage.authSalt;
 		if(container.getCarFeatures().batteryPower) {
 			batteryPowerCyclicTask = new BatteryPowerCyclicTask(container.getAccessoryCommunication(), container.getHandler());
 		}
@@ -83,7 +87,7 @@ public class HostLogic extends AbstractLogic<IHostDependencyContainer, IHostLogi
 		
 		initialized();
 		
-		sendMessage(new GreetingMessage(Message.PROTOCOL_VERSION, salt));
+		sendMessage(greetingMessage);
 	}
 
 	/**
@@ -71,6 +71,13 @@ public interface IHostConfigurationService {
 	 */
 	int getPort();
 	
+	/**
+	 * Should the connection to the client use non-blocking I/O?
+	 * If not, the stream based communication is used.
+	 * @return True if enabled.
+	 */
+	public boolean useNonBlockingIo();
+	
 	/**
 	 * Get the password for client authentication.
 	 * @return Stored password or if no password is stored, a generated.
@@ -68,6 +68,11 @@ public class HostConfigurationService implements IHostConfigurationService {
 	 */
 	private final static String PASSWORD_KEY = "Password";
 	
+	/**
+	 * Key for value in {@link #prefs} used by {@link #useNonBlockingIo()}.
+	 */
+	private final static String NON_BLOCKING_IO_KEY = "NonBlockingIo";
+	
 	/**
 	 * The Object where the configuration is stored.
 	 */
@@ -137,6 +142,14 @@ public class HostConfigurationService implements IHostConfigurationService {
 		return prefs.getInt(PORT_KEY, ConnectionParameter.DEFAULT_PORT);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean useNonBlockingIo() {
+		return prefs.getBoolean(NON_BLOCKING_IO_KEY, true);
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -21,10 +21,12 @@ package com.orangelabs.rcs.core.ims.protocol.rtp;
 
 
 import com.orangelabs.rcs.core.ims.protocol.rtp.codec.Codec;
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtpReceptionStatistics;
 import com.orangelabs.rcs.core.ims.protocol.rtp.format.Format;
 import com.orangelabs.rcs.core.ims.protocol.rtp.media.MediaOutput;
 import com.orangelabs.rcs.core.ims.protocol.rtp.stream.MediaRendererStream;
 import com.orangelabs.rcs.core.ims.protocol.rtp.stream.RtpInputStream;
+import com.orangelabs.rcs.platform.network.DatagramConnection;
 import com.orangelabs.rcs.utils.logger.Logger;
 
 /**
@@ -40,6 +42,20 @@ public class MediaRtpReceiver {
 	 * Local port number (RTP listening port)
 	 */
 	private int localPort;
+
+	/**
+	 * RTP and RTCP connections, used instead of the local port
+	 */
+	private DatagramConnection rtpConnection = null;
+
+	private DatagramConnection rtcpConnection = null;
+
+	/**
+	 * Remote address and RTCP port, the receiver reports are sent to
+	 */
+	private String remoteAddress = null;
+
+	private int remoteRtcpPort = -1;
 
     /**
      * RTP Input Stream
@@ -60,6 +76,30 @@ public class MediaRtpReceiver {
 		this.localPort = localPort;
 	}
 
+    /**
+     * Constructor
+     *
+     * @param localPort Local port number
+     * @param remoteAddress Remote address, the receiver reports are sent to
+     * @param remoteRtcpPort Remote RTCP port
+     */
+	public MediaRtpReceiver(int localPort, String remoteAddress, int remoteRtcpPort) {
+		this.localPort = localPort;
+		this.remoteAddress = remoteAddress;
+		this.remoteRtcpPort = remoteRtcpPort;
+	}
+
+    /**
+     * Constructor
+     *
+     * @param rtpConnection Opened RTP connection, e.g. an interleaved channel
+     * @param rtcpConnection Opened RTCP connection
+     */
+	public MediaRtpReceiver(DatagramConnection rtpConnection, DatagramConnection rtcpConnection) {
+		this.rtpConnection = rtpConnection;
+		this.rtcpConnection = rtcpConnection;
+	}
+
     /**
      * Prepare the RTP session
      *
@@ -71,7 +111,11 @@ public class MediaRtpReceiver {
             throws RtpException {
     	try {
 			// Create the input stream
-            inputStream = new RtpInputStream(localPort, format);
+            if (rtpConnection != null) {
+            	inputStream = new RtpInputStream(rtpConnection, rtcpConnection, format);
+            } else {
+            	inputStream = new RtpInputStream(localPort, remoteAddress, remoteRtcpPort, format);
+            }
     		inputStream.open();
 			if (logger.isActivated()) {
 				logger.debug("Input stream: " + inputStream.getClass().getName());
@@ -137,4 +181,16 @@ public class MediaRtpReceiver {
     public RtpInputStream getInputStream() {
         return inputStream;
     }
+
+    /**
+     * Returns the statistics of the reception
+     *
+     * @return Statistics or null, if the session is not prepared
+     */
+    public RtpReceptionStatistics getReceptionStatistics() {
+        if (inputStream == null) {
+            return null;
+        }
+        return inputStream.getReceptionStatistics();
+    }
 }
@@ -54,17 +54,33 @@ public class H263RtpHeader{
 		this.PEBIT = PEBIT;
 	}		
 	
+	/**
+	 * Constructor
+	 */
+	public H263RtpHeader(){
+	}
+
 	/**
 	 * Constructor
 	 * 
 	 * @param data
 	 */
 	public H263RtpHeader(byte[] data){
-		RR = (byte)(data[0]>>3);
-		P = (data[0]&0x4) != 0;
-		V = (data[0]&0x2) != 0;
-		PLEN = ((data[0]&0x1)<<5)|(data[1]>>3);
-		PEBIT = data[1]&0x7;
+		read(data, 0);
+	}
+
+	/**
+	 * Read the header, so that one instance can be reused for every packet
+	 * 
+	 * @param data
+	 * @param offset
+	 */
+	public void read(byte[] data, int offset){
+		RR = (byte)((data[offset]&0xff)>>3);
+		P = (data[offset]&0x4) != 0;
+		V = (data[offset]&0x2) != 0;
+		PLEN = ((data[offset]&0x1)<<5)|((data[offset+1]&0xff)>>3);
+		PEBIT = data[offset+1]&0x7;
 	}
 
 }
@@ -25,6 +25,12 @@ import com.orangelabs.rcs.core.ims.protocol.rtp.util.Buffer;
 /**
  * Reassembles H263+ RTP packets into H263+ frames, as per RFC 4629
  * Complete frames are sent to decoder once reassembled
+ *
+ * Each payload is copied once into the growable buffer of a pooled
+ * frame assembler; a complete frame is handed downstream by reference
+ * and its assembler is reused once the next packet is processed, i.e.
+ * after the frame has been decoded. Packets of a completed or older
+ * frame, that arrive late, are dropped.
  */
 public class JavaDepacketizer extends VideoCodec {
 
@@ -39,6 +45,18 @@ public class JavaDepacketizer extends VideoCodec {
 	 */
 	private static int MAX_H263P_FRAME_SIZE = 8192;
 
+	/**
+	 * Payload header, reused for every packet
+	 */
+	private H263RtpHeader h263PRtpHeader = new H263RtpHeader();
+
+	/**
+	 * Timestamp of the last completed frame, if any
+	 */
+	private long lastCompletedTimeStamp;
+
+	private boolean completed = false;
+
 	/**
 	 * Constructor
 	 */
@@ -53,45 +71,75 @@ public class JavaDepacketizer extends VideoCodec {
 	 * @return Processing result
 	 */
 	public int process(Buffer input, Buffer output){
-		if (!input.isDiscard())	{			
-			assemblersCollection.put(input);
+		if (!input.isDiscard() && !isLate(input.getTimeStamp()))	{			
+			FrameAssembler assembler = assemblersCollection.put(input, h263PRtpHeader);
 			
-			if (assemblersCollection.getLastActiveAssembler().complete()){
-				assemblersCollection.getLastActiveAssembler().copyToBuffer(output);
-				assemblersCollection.removeOldestThan(input.getTimeStamp());
-				return BUFFER_PROCESSED_OK;
-			}else{	
-				output.setDiscard(true);
-				return OUTPUT_BUFFER_NOT_FILLED;
+			if (assembler.complete()){
+				// Older frames can't be completed anymore
+				assemblersCollection.removeOlderThan(assembler.getTimeStamp());
+				assemblersCollection.release(assembler);
+				lastCompletedTimeStamp = assembler.getTimeStamp();
+				completed = true;
+
+				if (assembler.copyToBuffer(output)){
+					return BUFFER_PROCESSED_OK;
+				}
 			}		
-		}else{
-			output.setDiscard(true);
-			return OUTPUT_BUFFER_NOT_FILLED;
 		}		
+		output.setDiscard(true);
+		return OUTPUT_BUFFER_NOT_FILLED;
+	}
+
+	/**
+	 * Does a packet belong to the last completed frame or an older one?
+	 * Such a straggler would start a bogus partial frame.
+	 */
+	private boolean isLate(long timeStamp){
+		return completed && !FrameAssemblerCollection.isOlder(lastCompletedTimeStamp, timeStamp);
 	}
 	
 	/**
 	 * Used to assemble fragments with the same timestamp into a single frame.
 	 */
 	static class FrameAssembler{
+		/**
+		 * Initial size of the frame buffer, it grows with the largest frame
+		 */
+		private final static int INITIAL_SIZE = 4096;
+
 		private boolean rtpMarker = false; // have we received the RTP marker that signifies the end of a frame?
-		private byte[] reassembledData = null;
+		private byte[] reassembledData = new byte[INITIAL_SIZE];
+		private int reassembledLength = 0;
 		private long timeStamp = -1;
 		private Format format = null;
+		private boolean inUse = false;
+
+		/**
+		 * Start a new frame
+		 */
+		public void reset(long timeStamp, Format format){
+			this.timeStamp = timeStamp;
+			this.format = format;
+			rtpMarker = false;
+			reassembledLength = 0;
+			inUse = true;
+		}
 
 		/**
 		 * Add the buffer (which contains a fragment) to the assembler.
 		 */
-		public void put(Buffer buffer){
+		public void put(Buffer buffer, H263RtpHeader h263PRtpHeader){
 			// Read rtpMarker
 			rtpMarker = (buffer.isRTPMarkerSet());
 
-			if (buffer.getLength() <= 2){
+			int length = buffer.getLength();
+			if (length <= 2){
 				return; // no actual data in buffer, no need to keep.  Typically happens when RTP marker is set.
 			}
 			
 			byte[] currentRtpPacketData = ((byte[])buffer.getData());
-		    H263RtpHeader h263PRtpHeader = new H263RtpHeader(currentRtpPacketData);
+			int offset = buffer.getOffset();
+			h263PRtpHeader.read(currentRtpPacketData, offset);
 		    
 		    int headerSize = h263PRtpHeader.HEADER_SIZE;
 		    if (h263PRtpHeader.V) {
@@ -104,31 +152,33 @@ public class JavaDepacketizer extends VideoCodec {
         		  headerSize += h263PRtpHeader.PLEN;
         	  }
 
+			if (headerSize >= length){
+				return; // malformed packet
+			}
+
+			int payloadLength = length - headerSize;
+			ensureCapacity(reassembledLength + payloadLength + 2);
+
         	  if (h263PRtpHeader.P) {
         	    // Prepend two zero bytes to the start of the payload proper
-        	    // Hack: Do this by shrinking header by 2 bytes
-        		headerSize -= 2;
-        	    currentRtpPacketData[headerSize] = 0x00;
-        	    currentRtpPacketData[headerSize+1] = 0x00;
+				reassembledData[reassembledLength++] = 0x00;
+				reassembledData[reassembledLength++] = 0x00;
         	  }
 
-        	  if (reassembledData == null){
-        		  // First packet
-        		  timeStamp = buffer.getTimeStamp();
-        		  format = buffer.getFormat();
+			System.arraycopy(currentRtpPacketData, offset + headerSize, reassembledData, reassembledLength, payloadLength);
+			reassembledLength += payloadLength;
+		}
         		
-        		  // Copy packet data to reassembledData
-        		  reassembledData = new byte[currentRtpPacketData.length-headerSize];
-        		  System.arraycopy(currentRtpPacketData, headerSize, reassembledData, 0, currentRtpPacketData.length-headerSize);
-        	  } else {
-    			// Concatenate new data to reassembledData
-        		byte[] data = new byte[reassembledData.length+buffer.getLength()];
-       			System.arraycopy(reassembledData, 0, data, 0, reassembledData.length);
-       			System.arraycopy(currentRtpPacketData, headerSize, data, reassembledData.length, buffer.getLength());
-    			// Copy data to reassembledData
-    			reassembledData = new byte[data.length];
-    			System.arraycopy(data, 0, reassembledData, 0, data.length);
-      		}        	  
+		/**
+		 * Grow the frame buffer to hold at least the given number of bytes
+		 */
+		private void ensureCapacity(int size){
+			if (size <= reassembledData.length){
+				return;
+			}
+			byte[] data = new byte[Math.max(size, reassembledData.length * 2)];
+			System.arraycopy(reassembledData, 0, data, 0, reassembledLength);
+			reassembledData = data;
 		}
 		
 		/**
@@ -138,7 +188,7 @@ public class JavaDepacketizer extends VideoCodec {
 			if (!rtpMarker){
 				return false;	// need an rtp marker to signify end
 			}
-			if (reassembledData.length <= 0){
+			if (reassembledLength <= 0){
 				return false;	// need data beyond the header
 			}
 			// TODO: if some of the last ones come in after the marker, there will be blank squares in the lower right.
@@ -147,25 +197,28 @@ public class JavaDepacketizer extends VideoCodec {
 		
 		/**
 		 * Assumes that complete() has been called and returns true.
+		 * The frame data is passed by reference.
+		 *
+		 * @return false, if the frame is too large for the decoder
 		 */
-		private void copyToBuffer(Buffer bDest){
+		private boolean copyToBuffer(Buffer bDest){
 			if (!rtpMarker)
 				throw new IllegalStateException();
-			if (reassembledData.length <= 0)
+			if (reassembledLength <= 0)
 				throw new IllegalStateException();	
 			
-			if (reassembledData.length<=MAX_H263P_FRAME_SIZE){
+			if (reassembledLength<=MAX_H263P_FRAME_SIZE){
 				// If the frame data can be processed by native module, ie reassembled frame size not too big 
 				// Set buffer
 				bDest.setData(reassembledData);
-				bDest.setLength(reassembledData.length);
+				bDest.setLength(reassembledLength);
 				bDest.setOffset(0);
 				bDest.setTimeStamp(timeStamp);
 				bDest.setFormat(format);
 				bDest.setFlags(Buffer.FLAG_RTP_MARKER | Buffer.FLAG_RTP_TIME);
+				return true;
 			}
-			// Set reassembledData to null
-			reassembledData = null;
+			return false;
 		}
 		
 		/**
@@ -181,108 +234,89 @@ public class JavaDepacketizer extends VideoCodec {
 	/**
 	 * Used to manage different timestamps, as packets could be coming not in order.
 	 * 
-	 * Data is an array of FrameAssemblers, sorted by timestamps (oldest is first, newest is last)
+	 * Data is a fixed pool of FrameAssemblers; when all are in use, the
+	 * one with the oldest timestamp is given up for a new frame
 	 */
 	static class FrameAssemblerCollection{
 		final static int NUMBER_OF_ASSEMBLERS = 5;
 		private FrameAssembler[] assemblers = new FrameAssembler[NUMBER_OF_ASSEMBLERS];
-		private int activeAssembler = 0;
-		private int numberOfAssemblers = 0;
-		
+
 		/**
-		 * Add the buffer (which contains a fragment) to the right assembler.  
+		 * Constructor
 		 */
-		public void put(Buffer buffer){
-			activeAssembler = getAssembler(buffer.getTimeStamp());
-			assemblers[activeAssembler].put(buffer);
+		public FrameAssemblerCollection(){
+			for (int i=0; i<NUMBER_OF_ASSEMBLERS; i++){
+				assemblers[i] = new FrameAssembler();
+			}
 		}
 		
 		/**
-		 * Get the active frame assembler
-		 * 
-		 * @return frameAssembler Last active assembler
+		 * Add the buffer (which contains a fragment) to the right assembler.  
+		 *
+		 * @return frameAssembler The assembler of the buffer
 		 */
-		public FrameAssembler getLastActiveAssembler(){
-			return assemblers[activeAssembler];
+		public FrameAssembler put(Buffer buffer, H263RtpHeader h263PRtpHeader){
+			FrameAssembler assembler = getAssembler(buffer);
+			assembler.put(buffer, h263PRtpHeader);
+			return assembler;
 		}
 		
 		/**
-		 * Create a new frame assembler for given timeStamp
+		 * Get the assembler used for the timestamp of the buffer
 		 * 
-		 * @param timeStamp
-		 * @return assembler number Position of the assembler in the collection
+		 * @param buffer
+		 * @return  FrameAssembler associated to timeStamp
 		 */
-		public int createNewAssembler(long timeStamp){
-			int spot = -1;
-			if (numberOfAssemblers< NUMBER_OF_ASSEMBLERS-1){
-				// If there's enough space left to create a new assembler
-				// We search its spot
-				for (int i=0;i<numberOfAssemblers;i++){
-					if (timeStamp <assemblers[i].getTimeStamp()){
-						spot = i;
+		private FrameAssembler getAssembler(Buffer buffer){
+			long timeStamp = buffer.getTimeStamp();
+			FrameAssembler free = null;
+			FrameAssembler oldest = null;
+			for (int i=0; i<NUMBER_OF_ASSEMBLERS; i++){
+				FrameAssembler assembler = assemblers[i];
+				if (!assembler.inUse){
+					if (free == null){
+						free = assembler;
 					}
+				} else if (assembler.getTimeStamp() == timeStamp){
+					return assembler;
+				} else if (oldest == null || isOlder(assembler.getTimeStamp(), oldest.getTimeStamp())){
+					oldest = assembler;
 				}
-				if (spot ==-1){
-					spot = numberOfAssemblers;
-				}
-				numberOfAssemblers++;
-				// Decale all assemblers with newest timeStamp to the right
-				for (int i=numberOfAssemblers;i>spot;i--){
-					assemblers[i] = assemblers[i-1];
-				}
-				assemblers[spot] = new FrameAssembler();
-			}else{
-				// Not enough space, we destroy the oldest assembler
-				for (int i=1;i<NUMBER_OF_ASSEMBLERS;i++){
-					assemblers[i-1]=assemblers[i];
-				}
-				// Last spot is for the new assembler
-				assemblers[NUMBER_OF_ASSEMBLERS-1] = new FrameAssembler();
-				spot = numberOfAssemblers;
 			}
-			return spot;
+			// Given timestamp never used, we start a new frame
+			FrameAssembler assembler = (free != null) ? free : oldest;
+			assembler.reset(timeStamp, buffer.getFormat());
+			return assembler;
 		}
 		
 		/**
-		 * Get the assembler used for given timestamp
-		 *
-		 * @param timeStamp
-		 * @return  FrameAssembler associated to timeStamp
+		 * Release an assembler, its data stays valid until it is reused
+		 * 
+		 * @param assembler
 		 */
-		public int getAssembler(long timeStamp){
-			int assemblerNumber = -1;
-			for (int i=0; i<numberOfAssemblers; i++){
-				if (assemblers[i].getTimeStamp() == timeStamp){
-					assemblerNumber = i;
-				}
-			}
-			if (assemblerNumber==-1){
-				// Given timestamp never used, we create a new assembler
-				assemblerNumber = createNewAssembler(timeStamp);
-			}
-			return assemblerNumber;
+		public void release(FrameAssembler assembler){
+			assembler.inUse = false;
 		}
 		
 		/**
-		 * Remove oldest FrameAssembler than given timeStamp 
+		 * Remove FrameAssemblers older than given timeStamp
 		 * (if given timeStamp has been rendered, then oldest ones are no more of no use)
-		 * This also removes given timeStamp
-		 * 
+		 *
 		 * @param timeStamp
 		 */
-		public void removeOldestThan(long timeStamp){
-			// Find spot from which to remove
-			int spot = numberOfAssemblers-1;
-			for (int i=0;i<numberOfAssemblers;i++){
-				if (timeStamp <=assemblers[i].getTimeStamp()){
-					spot = i;
+		public void removeOlderThan(long timeStamp){
+			for (int i=0; i<NUMBER_OF_ASSEMBLERS; i++){
+				if (assemblers[i].inUse && isOlder(assemblers[i].getTimeStamp(), timeStamp)){
+					assemblers[i].inUse = false;
 				}
 			}
-			// remove all assemblers with oldest timeStamp to the left
-			for (int i=numberOfAssemblers;i>spot;i--){
-				assemblers[i-1] = assemblers[i];
-			}
-			numberOfAssemblers -=spot+1;
+		}
+		
+		/**
+		 * Compare RTP timestamps, which wrap around
+		 */
+		private static boolean isOlder(long timeStamp, long other){
+			return (int)(timeStamp - other) < 0;
 		}
 	}
 }
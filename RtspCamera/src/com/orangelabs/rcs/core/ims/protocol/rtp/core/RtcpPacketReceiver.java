@@ -87,6 +87,19 @@ public class RtcpPacketReceiver extends Thread {
         }		
 	}
 
+    /**
+     * Constructor
+     *
+     * @param connection Opened connection, e.g. an interleaved channel
+     * @param rtcpSession the RTCP session
+     */
+    public RtcpPacketReceiver(DatagramConnection connection, RtcpSession rtcpSession) {
+        super();
+
+        this.rtcpSession = rtcpSession;
+        this.datagramConnection = connection;
+	}
+
 	/**
      * Close the receiver
      *
@@ -120,6 +133,8 @@ public class RtcpPacketReceiver extends Thread {
 				packet.length = data.length;
 				packet.offset = 0;
 				packet.receivedAt = System.currentTimeMillis();
+				packet.remoteAddress = datagramConnection.getRemoteAddress();
+				packet.remotePort = datagramConnection.getRemotePort();
 
 		        // Process the received packet
 				handlePacket(packet);
@@ -235,9 +250,11 @@ public class RtcpPacketReceiver extends Thread {
 						srp.octetcount = (long) in.readInt() & 0xffffffffL;
 						srp.reports = new RtcpReport[firstbyte];
 
+                        // the NTP timestamp is reported back as LSR
                         RtpSource sourceSR = rtcpSession.getMySource();
                         if (sourceSR != null)
-                            sourceSR.timeOfLastRTCPArrival = rtcpSession.currentTime();
+                            sourceSR.receivedSenderReport(srp.ntptimestampmsw, srp.ntptimestamplsw,
+                                    rtcpSession.currentTime());
 
 						for (int i = 0; i < srp.reports.length; i++) {
 							RtcpReport report = new RtcpReport();
@@ -22,8 +22,9 @@ import com.orangelabs.rcs.platform.network.DatagramConnection;
 import com.orangelabs.rcs.platform.network.NetworkFactory;
 import com.orangelabs.rcs.utils.logger.Logger;
 
+import de.kp.net.rtp.RtpSender;
+
 import java.io.IOException;
-import java.util.Random;
 import java.util.Vector;
 
 /**
@@ -67,16 +68,27 @@ public class RtcpPacketTransmitter extends Thread {
      */
     private boolean closed = false;
 
-    /**
-     * Random value
-     */
-    private Random rand = new Random();
-
     /**
      * The logger
      */
 	private final Logger logger = Logger.getLogger(this.getClass().getName());
 
+    /**
+     * Constructor - the packets are broadcast to the receivers of the
+     * RtpSender, like the RTP packets of the session
+     *
+     * @param rtcpSession the RTCP session
+     */
+    public RtcpPacketTransmitter(RtcpSession rtcpSession) {
+        super();
+
+        this.rtcpSession = rtcpSession;
+
+        if (logger.isActivated()) {
+            logger.debug("RTCP broadcast transmitter initiated with SSRC: " + rtcpSession.SSRC);
+        }
+    }
+
     /**
      * Constructor
      *
@@ -181,7 +193,10 @@ public class RtcpPacketTransmitter extends Thread {
                             }
                         } else {
                             if (!closed) {
-                                transmit(assembleRtcpPacket());
+                                byte[] packet = assembleRtcpPacket();
+                                if (packet.length > 0) {
+                                    transmit(packet);
+                                }
                                 if (rtcpSession.isByeRequested && !waitingForByeBackoff) {
                                     // We have sent a BYE packet, so terminate
                                     terminate = true;
@@ -218,8 +233,11 @@ public class RtcpPacketTransmitter extends Thread {
         RtpSource s = rtcpSession.getMySource();
         if ((s.activeSender) && (rtcpSession.timeOfLastRTCPSent < rtcpSession.timeOfLastRTPSent)) {
             data = RtcpPacketUtils.append(data, assembleSenderReportPacket());
-        } else {
+        } else if (datagramConnection != null) {
             data = RtcpPacketUtils.append(data, assembleReceiverReportPacket());
+        } else {
+            // A broadcast sender receives nothing to report on
+            return data;
         }
 
         // SDES packets
@@ -249,17 +267,27 @@ public class RtcpPacketTransmitter extends Thread {
         byte V_P_RC = (byte)((RtcpPacket.VERSION << 6) | (RtcpPacket.PADDING << 5) | (0x00));
         byte ss[] = RtcpPacketUtils.longToBytes(rtcpSession.SSRC, 4);
         byte PT[] = RtcpPacketUtils.longToBytes((long)RtcpPacket.RTCP_SR, 1);
-        byte NTP_TimeStamp[] = RtcpPacketUtils.longToBytes(rtcpSession.currentTime(), 8);
-        short randomOffset = (short)Math.abs(rand.nextInt() & 0x000000FF);
-        byte RTP_TimeStamp[] = RtcpPacketUtils.longToBytes((long)rtcpSession.tc
-                + randomOffset, 4);
-        byte SenderPacketCount[] = RtcpPacketUtils.longToBytes(rtcpSession.packetCount, 4);
-        byte SenderOctetCount[] = RtcpPacketUtils.longToBytes(rtcpSession.octetCount, 4);
 
-        // report block
+        // The wallclock time and the RTP timestamp refer to the same instant,
+        // so that receivers can synchronize the media clock (RFC 3550, 6.4.1)
+        byte NTP_TimeStamp[];
+        byte RTP_TimeStamp[];
+        byte SenderPacketCount[];
+        byte SenderOctetCount[];
+        synchronized (rtcpSession) {
+            long now = rtcpSession.currentTime();
+            NTP_TimeStamp = RtcpPacketUtils.longToBytes(RtcpPacketUtils.toNtpTimestamp(now), 8);
+            RTP_TimeStamp = RtcpPacketUtils.longToBytes(rtcpSession.getRtpTimestamp(now), 4);
+            SenderPacketCount = RtcpPacketUtils.longToBytes(rtcpSession.packetCount, 4);
+            SenderOctetCount = RtcpPacketUtils.longToBytes(rtcpSession.octetCount, 4);
+        }
+
+        // report block, if RTP packets have been received
         byte receptionReportBlocks[] = new byte[0];
-        receptionReportBlocks = RtcpPacketUtils.append(receptionReportBlocks,
-                assembleRTCPReceptionReport());
+        if (rtcpSession.getMySource().noOfRTPPacketsRcvd > 0) {
+            receptionReportBlocks = RtcpPacketUtils.append(receptionReportBlocks,
+                    assembleRTCPReceptionReport());
+        }
         byte receptionReports = (byte)(receptionReportBlocks.length / 24);
         V_P_RC = (byte)(V_P_RC | (byte)(receptionReports & 0x1F));
 
@@ -403,9 +431,13 @@ public class RtcpPacketTransmitter extends Thread {
         stats.numPackets++;
         rtcpSession.updateavgrtcpsize(packet.length);
         rtcpSession.timeOfLastRTCPSent = rtcpSession.currentTime();
-		// Send data over UDP
+		// Send data over UDP, or to all receivers of the RtpSender
 		try {
-			datagramConnection.send(remoteAddress, remotePort, data);
+			if (datagramConnection != null) {
+				datagramConnection.send(remoteAddress, remotePort, data);
+			} else {
+				RtpSender.getInstance().sendRtcp(data, 0, data.length);
+			}
 		} catch(IOException e) {
 			if (logger.isActivated()) {
 				logger.error("Can't send the RTCP packet", e);
@@ -424,9 +456,13 @@ public class RtcpPacketTransmitter extends Thread {
         stats.numPackets++;
         rtcpSession.updateavgrtcpsize(packet.length);
         rtcpSession.timeOfLastRTCPSent = rtcpSession.currentTime();
-        // Send data over UDP
+        // Send data over UDP, or to all receivers of the RtpSender
         try {
-            datagramConnection.send(remoteAddress, remotePort, packet);
+            if (datagramConnection != null) {
+                datagramConnection.send(remoteAddress, remotePort, packet);
+            } else {
+                RtpSender.getInstance().sendRtcp(packet, 0, packet.length);
+            }
         } catch (IOException e) {
             if (logger.isActivated()) {
                 logger.error("Can't send the RTCP packet", e);
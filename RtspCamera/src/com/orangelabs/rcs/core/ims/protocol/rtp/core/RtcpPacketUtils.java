@@ -25,6 +25,24 @@ package com.orangelabs.rcs.core.ims.protocol.rtp.core;
  */
 public class RtcpPacketUtils {
 
+    /**
+     * Seconds from 1900-01-01 (NTP era 0) to 1970-01-01
+     */
+    public static final long NTP_OFFSET = 2208988800L;
+
+    /**
+     * Convert a wallclock time to the 64 bit NTP format, i.e. the
+     * seconds since 1900 and their fraction in units of 1/2^32 s.
+     *
+     * @param time wallclock time in milliseconds since 1970
+     * @return NTP timestamp
+     */
+    public static long toNtpTimestamp(long time) {
+        long seconds = time / 1000 + NTP_OFFSET;
+        long fraction = ((time % 1000) << 32) / 1000;
+        return (seconds << 32) | fraction;
+    }
+
     /**
      * Convert 64 bit long to n bytes.
      *
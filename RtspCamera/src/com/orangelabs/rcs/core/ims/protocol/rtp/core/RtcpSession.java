@@ -134,6 +134,23 @@ public class RtcpSession {
     */
     public long octetCount;
 
+    /**
+     * RTP timestamp of the last RTP packet sent by this source
+     */
+    public long lastRtpTimestamp;
+
+    /**
+     * Wallclock time (ms), at which the sample of the last RTP packet
+     * was taken; together with its RTP timestamp it maps the media
+     * clock to the wallclock
+     */
+    public long lastSamplingTime;
+
+    /**
+     * Clock rate of the RTP timestamps (Hz)
+     */
+    private int clockRate = 90000;
+
     /**
      * Initialize the Random Number Generator.
      */
@@ -237,6 +254,45 @@ public class RtcpSession {
         avgrtcpsize = (int)(0.0625 * (double)size + 0.9375 * (double)avgrtcpsize);
     }
 
+    /**
+     * Setter of the clock rate of the RTP timestamps
+     *
+     * @param clockRate clock rate (Hz)
+     */
+    public void setClockRate(int clockRate) {
+        this.clockRate = clockRate;
+        rtpSource.setClockRate(clockRate);
+    }
+
+    /**
+     * Account a RTP packet sent by this source for the sender reports
+     *
+     * @param rtpTimestamp RTP timestamp of the packet
+     * @param samplingTime Wallclock time (ms) at which its sample was taken
+     * @param payloadLength Number of payload octets
+     */
+    public synchronized void rtpPacketSent(long rtpTimestamp, long samplingTime, int payloadLength) {
+        packetCount++;
+        octetCount += payloadLength;
+
+        lastRtpTimestamp = rtpTimestamp;
+        lastSamplingTime = samplingTime;
+
+        timeOfLastRTPSent = currentTime();
+        rtpSource.activeSender = true;
+    }
+
+    /**
+     * Returns the RTP timestamp, that corresponds to the given wallclock
+     * time; it is extrapolated from the last RTP packet sent.
+     *
+     * @param time Wallclock time (ms)
+     * @return RTP timestamp (32 bit)
+     */
+    public synchronized long getRtpTimestamp(long time) {
+        return (lastRtpTimestamp + (time - lastSamplingTime) * clockRate / 1000) & 0xFFFFFFFFL;
+    }
+
     /**
      * Returns a self source object.
      *
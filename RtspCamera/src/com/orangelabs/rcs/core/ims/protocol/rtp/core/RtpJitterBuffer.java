@@ -0,0 +1,495 @@
+package com.orangelabs.rcs.core.ims.protocol.rtp.core;
+
+/**
+ * RTP jitter buffer. Packets are ordered by their extended sequence
+ * number and released at their RTP timestamp plus a playout delay
+ * that follows the interarrival jitter (RFC 3550, 6.4.1).
+ *
+ * A missing packet is given up as soon as a later packet is due;
+ * a packet that arrives after its sequence number has been released
+ * or given up is dropped as late, and raises the playout delay to
+ * what it would have needed.
+ */
+public class RtpJitterBuffer {
+	/**
+	 * Number of packets the buffer can hold (power of two)
+	 */
+	private static final int CAPACITY = 512;
+
+	/**
+	 * Lower bound of the playout delay (ms)
+	 */
+	private static final int MIN_DELAY = 10;
+
+	/**
+	 * Upper bound of the playout delay (ms)
+	 */
+	private static final int MAX_DELAY = 500;
+
+	/**
+	 * Playout delay as a multiple of the jitter
+	 */
+	private static final int JITTER_FACTOR = 3;
+
+	/**
+	 * Length of the windows the lowest transit time is taken from (ms)
+	 */
+	private static final long TRANSIT_WINDOW = 5000;
+
+	/**
+	 * Sequence number distances beyond which a packet is out of the
+	 * sequence window (RFC 3550, A.1)
+	 */
+	private static final int MAX_DROPOUT = 3000;
+	private static final int MAX_MISORDER = 100;
+
+	/**
+	 * RTP clock rate
+	 */
+	private int clockRate;
+
+	/**
+	 * Buffered packets, indexed by extended sequence number. The payload
+	 * is copied into the data of the slot, which is kept for reuse.
+	 */
+	private RtpPacket[] slots = new RtpPacket[CAPACITY];
+
+	/**
+	 * Extended sequence number of the buffered packets, -1 if empty
+	 */
+	private long[] slotSeqnums = new long[CAPACITY];
+
+	/**
+	 * Extended RTP timestamp of the buffered packets
+	 */
+	private long[] slotTimestamps = new long[CAPACITY];
+
+	/**
+	 * Number of buffered packets
+	 */
+	private int size = 0;
+
+	/**
+	 * Packet returned by take, reused for every packet; its data is
+	 * swapped with the data of the released slot
+	 */
+	private RtpPacket released = new RtpPacket();
+
+	/**
+	 * Highest extended sequence number received
+	 */
+	private long maxSeqnum;
+
+	/**
+	 * Next extended sequence number to release
+	 */
+	private long nextSeqnum;
+
+	/**
+	 * Sequence number that confirms a restart of the sender, if it
+	 * follows a packet out of the sequence window
+	 */
+	private int badSeqnum = -1;
+
+	/**
+	 * Highest extended RTP timestamp received
+	 */
+	private long maxTimestamp;
+
+	/**
+	 * Transit time (ms) of the last packet and the base line of the
+	 * transit time, i.e. of a packet that was not delayed. The base
+	 * line is the lowest transit time of the current and the previous
+	 * window, so that it follows clock drift and route changes; the
+	 * highest transit time of these windows is tracked as well.
+	 */
+	private long lastTransit;
+	private long baseTransit;
+	private long windowMinTransit;
+	private long windowMaxTransit;
+	private long previousMinTransit;
+	private long previousMaxTransit;
+	private long windowStart;
+
+	/**
+	 * Interarrival jitter (1/16 ms)
+	 */
+	private long jitter = 0;
+
+	/**
+	 * Current playout delay (ms)
+	 */
+	private long playoutDelay = MIN_DELAY;
+
+	/**
+	 * Is a first packet received
+	 */
+	private boolean started = false;
+
+	/**
+	 * Is a packet released since the start
+	 */
+	private boolean releasing = false;
+
+	/**
+	 * Is buffer closed
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Statistics
+	 */
+	private long receivedCount = 0;
+	private long releasedCount = 0;
+	private long lostCount = 0;
+	private long lateCount = 0;
+	private long duplicateCount = 0;
+	private long overflowCount = 0;
+	private long resetCount = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param clockRate RTP clock rate
+	 */
+	public RtpJitterBuffer(int clockRate) {
+		this.clockRate = clockRate;
+
+		for (int i = 0; i < CAPACITY; i++) {
+			slots[i] = new RtpPacket();
+			slotSeqnums[i] = -1;
+		}
+	}
+
+	/**
+	 * Add a received packet. The payload is copied, so the packet
+	 * and its data may be reused by the caller afterwards.
+	 *
+	 * @param packet RTP packet
+	 */
+	public synchronized void put(RtpPacket packet) {
+		if (closed) {
+			return;
+		}
+
+		int seqnum = packet.seqnum & 0xffff;
+		long timestamp = packet.timestamp & 0xffffffffL;
+
+		if (!started) {
+			restart(seqnum, timestamp, packet.receivedAt);
+		}
+
+		// Extend the sequence number and timestamp relative to the highest received
+		long extSeqnum = maxSeqnum + (short) (seqnum - (int) maxSeqnum);
+		long extTimestamp = maxTimestamp + (int) (timestamp - maxTimestamp);
+
+		receivedCount++;
+
+		if (extSeqnum - maxSeqnum > MAX_DROPOUT || maxSeqnum - extSeqnum > MAX_MISORDER) {
+			if (seqnum != badSeqnum) {
+				// A stray packet, unless the next one follows it
+				badSeqnum = (seqnum + 1) & 0xffff;
+				lateCount++;
+				return;
+			}
+
+			// The sender has restarted or jumped
+			resetCount++;
+			clear();
+			restart(seqnum, timestamp, packet.receivedAt);
+			extSeqnum = maxSeqnum;
+			extTimestamp = maxTimestamp;
+		}
+		badSeqnum = -1;
+
+		if (extSeqnum < nextSeqnum && !releasing) {
+			// Reordered before the first packet, which is not released yet
+			nextSeqnum = extSeqnum;
+		}
+
+		if (extSeqnum < nextSeqnum) {
+			// Released or given up already; the delay must cover this packet in future
+			lateCount++;
+			long transit = packet.receivedAt - extTimestamp * 1000 / clockRate;
+			playoutDelay = Math.max(playoutDelay, Math.min(MAX_DELAY, transit - baseTransit));
+			return;
+		}
+
+		int slot = (int) (extSeqnum & (CAPACITY - 1));
+		if (slotSeqnums[slot] == extSeqnum) {
+			duplicateCount++;
+			return;
+		}
+
+		// Make room by dropping the oldest packets
+		while (extSeqnum - nextSeqnum >= CAPACITY) {
+			int oldest = (int) (nextSeqnum & (CAPACITY - 1));
+			if (slotSeqnums[oldest] == nextSeqnum) {
+				slotSeqnums[oldest] = -1;
+				size--;
+				overflowCount++;
+			} else {
+				lostCount++;
+			}
+			nextSeqnum++;
+		}
+
+		RtpPacket copy = slots[slot];
+		if (copy.data == null || copy.data.length < packet.payloadlength) {
+			copy.data = new byte[packet.payloadlength];
+		}
+		System.arraycopy(packet.data, packet.payloadoffset, copy.data, 0, packet.payloadlength);
+		copy.offset = 0;
+		copy.length = packet.payloadlength;
+		copy.receivedAt = packet.receivedAt;
+		copy.marker = packet.marker;
+		copy.payloadType = packet.payloadType;
+		copy.seqnum = (int) extSeqnum;
+		copy.timestamp = packet.timestamp;
+		copy.ssrc = packet.ssrc;
+		copy.payloadoffset = 0;
+		copy.payloadlength = packet.payloadlength;
+
+		slotSeqnums[slot] = extSeqnum;
+		slotTimestamps[slot] = extTimestamp;
+		size++;
+
+		if (extSeqnum > maxSeqnum) {
+			maxSeqnum = extSeqnum;
+		}
+		if (extTimestamp > maxTimestamp) {
+			maxTimestamp = extTimestamp;
+		}
+
+		updateDelay(extTimestamp, packet.receivedAt);
+
+		notifyAll();
+	}
+
+	/**
+	 * Take the next packet in sequence number order (blocking method).
+	 * The returned packet and its payload data are reused by the next
+	 * call; its sequence number is the extended sequence number.
+	 *
+	 * @return RTP packet or null, if the buffer is closed
+	 * @throws InterruptedException
+	 */
+	public synchronized RtpPacket take() throws InterruptedException {
+		while (!closed) {
+			if (size == 0) {
+				wait();
+				continue;
+			}
+
+			// The first buffered packet; missing ones before it are given up when it is due
+			long seqnum = nextSeqnum;
+			while (slotSeqnums[(int) (seqnum & (CAPACITY - 1))] != seqnum) {
+				seqnum++;
+			}
+			int slot = (int) (seqnum & (CAPACITY - 1));
+
+			long wait = getPlayoutTime(slotTimestamps[slot]) - System.currentTimeMillis();
+			if (wait > 0) {
+				wait(wait);
+				continue;
+			}
+
+			lostCount += seqnum - nextSeqnum;
+			nextSeqnum = seqnum + 1;
+			releasing = true;
+
+			RtpPacket packet = slots[slot];
+			byte[] spare = released.data;
+			released.data = packet.data;
+			released.offset = packet.offset;
+			released.length = packet.length;
+			released.receivedAt = packet.receivedAt;
+			released.marker = packet.marker;
+			released.payloadType = packet.payloadType;
+			released.seqnum = packet.seqnum;
+			released.timestamp = packet.timestamp;
+			released.ssrc = packet.ssrc;
+			released.payloadoffset = packet.payloadoffset;
+			released.payloadlength = packet.payloadlength;
+
+			packet.data = spare;
+			slotSeqnums[slot] = -1;
+			size--;
+			releasedCount++;
+
+			return released;
+		}
+		return null;
+	}
+
+	/**
+	 * Close the buffer, a blocked take returns null
+	 */
+	public synchronized void close() {
+		closed = true;
+		clear();
+		notifyAll();
+	}
+
+	/**
+	 * Restart at the given packet
+	 */
+	private void restart(int seqnum, long timestamp, long arrival) {
+		maxSeqnum = seqnum;
+		nextSeqnum = seqnum;
+		maxTimestamp = timestamp;
+		lastTransit = arrival - timestamp * 1000 / clockRate;
+		baseTransit = lastTransit;
+		windowMinTransit = lastTransit;
+		windowMaxTransit = lastTransit;
+		previousMinTransit = lastTransit;
+		previousMaxTransit = lastTransit;
+		windowStart = arrival;
+		started = true;
+		releasing = false;
+	}
+
+	/**
+	 * Drop all buffered packets
+	 */
+	private void clear() {
+		for (int i = 0; i < CAPACITY; i++) {
+			slotSeqnums[i] = -1;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Update jitter and playout delay with the transit time of a packet.
+	 * The delay rises at once, but falls slowly, once the spread of the
+	 * transit times has dropped.
+	 */
+	private void updateDelay(long timestamp, long arrival) {
+		long transit = arrival - timestamp * 1000 / clockRate;
+
+		long d = Math.abs(transit - lastTransit);
+		jitter += d - ((jitter + 8) >> 4);
+		lastTransit = transit;
+
+		if (arrival - windowStart >= TRANSIT_WINDOW) {
+			previousMinTransit = windowMinTransit;
+			previousMaxTransit = windowMaxTransit;
+			windowMinTransit = transit;
+			windowMaxTransit = transit;
+			windowStart = arrival;
+		} else {
+			windowMinTransit = Math.min(windowMinTransit, transit);
+			windowMaxTransit = Math.max(windowMaxTransit, transit);
+		}
+		baseTransit = Math.min(windowMinTransit, previousMinTransit);
+
+		// Enough to cover the jitter and the spread of the recent transit times
+		long spread = Math.max(windowMaxTransit, previousMaxTransit) - baseTransit;
+		long target = Math.max(JITTER_FACTOR * jitter >> 4, spread);
+		target = Math.max(MIN_DELAY, Math.min(MAX_DELAY, target));
+		if (target > playoutDelay) {
+			playoutDelay = target;
+		} else {
+			playoutDelay -= (playoutDelay - target + 63) >> 6;
+		}
+	}
+
+	/**
+	 * Local time (ms) a packet with the given extended timestamp is due
+	 */
+	private long getPlayoutTime(long timestamp) {
+		return timestamp * 1000 / clockRate + baseTransit + playoutDelay;
+	}
+
+	/**
+	 * Returns the interarrival jitter
+	 *
+	 * @return Milliseconds
+	 */
+	public synchronized long getJitter() {
+		return jitter >> 4;
+	}
+
+	/**
+	 * Returns the current playout delay
+	 *
+	 * @return Milliseconds
+	 */
+	public synchronized long getPlayoutDelay() {
+		return playoutDelay;
+	}
+
+	/**
+	 * Returns the number of buffered packets
+	 *
+	 * @return Count
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of packets received
+	 *
+	 * @return Count
+	 */
+	public synchronized long getReceivedCount() {
+		return receivedCount;
+	}
+
+	/**
+	 * Returns the number of packets released
+	 *
+	 * @return Count
+	 */
+	public synchronized long getReleasedCount() {
+		return releasedCount;
+	}
+
+	/**
+	 * Returns the number of packets given up, because they did not arrive
+	 * before a later packet was due
+	 *
+	 * @return Count
+	 */
+	public synchronized long getLostCount() {
+		return lostCount;
+	}
+
+	/**
+	 * Returns the number of packets dropped, because they arrived after
+	 * being given up or far outside the sequence window
+	 *
+	 * @return Count
+	 */
+	public synchronized long getLateCount() {
+		return lateCount;
+	}
+
+	/**
+	 * Returns the number of duplicate packets dropped
+	 *
+	 * @return Count
+	 */
+	public synchronized long getDuplicateCount() {
+		return duplicateCount;
+	}
+
+	/**
+	 * Returns the number of packets dropped, because the buffer was full
+	 *
+	 * @return Count
+	 */
+	public synchronized long getOverflowCount() {
+		return overflowCount;
+	}
+
+	/**
+	 * Returns the number of restarts caused by sequence number jumps
+	 *
+	 * @return Count
+	 */
+	public synchronized long getResetCount() {
+		return resetCount;
+	}
+}
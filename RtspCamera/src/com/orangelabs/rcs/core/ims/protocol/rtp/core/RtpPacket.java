@@ -18,8 +18,6 @@
 
 package com.orangelabs.rcs.core.ims.protocol.rtp.core;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 
 import com.orangelabs.rcs.core.ims.protocol.rtp.util.Packet;
@@ -39,6 +37,12 @@ public class RtpPacket extends Packet {
 	public int payloadoffset;
 	public int payloadlength;
 
+	/**
+	 * Buffer the packet is assembled in; it is reused by
+	 * subsequent calls of assemble
+	 */
+	private byte[] assembled;
+
 	public RtpPacket() {
 		super();
 	}
@@ -49,23 +53,40 @@ public class RtpPacket extends Packet {
 		base = packet;
 	}
 
+	/**
+	 * Assemble header and payload into data. The array is
+	 * reused by the next call, so data is only valid until then.
+	 * 
+	 * @param length Packet length
+	 * @throws IOException
+	 */
 	public void assemble(int length) throws IOException {
 		this.length = length;
 		this.offset = 0;
 
-		ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream(length);
-		DataOutputStream dataoutputstream = new DataOutputStream(bytearrayoutputstream);
-		dataoutputstream.writeByte(128);
+		if (assembled == null || assembled.length < length) {
+			assembled = new byte[length];
+		}
+		byte[] packet = assembled;
+
+		packet[0] = (byte) 128;
 		int i = payloadType;
 		if (marker == 1) {
 			i = payloadType | 0x80;
 		}
-		dataoutputstream.writeByte((byte) i);
-		dataoutputstream.writeShort(seqnum);
-		dataoutputstream.writeInt((int) timestamp);
-		dataoutputstream.writeInt(ssrc);
-		dataoutputstream.write(base.data, payloadoffset, payloadlength);
-		data = bytearrayoutputstream.toByteArray();
+		packet[1] = (byte) i;
+		packet[2] = (byte) (seqnum >> 8);
+		packet[3] = (byte) seqnum;
+		packet[4] = (byte) (timestamp >> 24);
+		packet[5] = (byte) (timestamp >> 16);
+		packet[6] = (byte) (timestamp >> 8);
+		packet[7] = (byte) timestamp;
+		packet[8] = (byte) (ssrc >> 24);
+		packet[9] = (byte) (ssrc >> 16);
+		packet[10] = (byte) (ssrc >> 8);
+		packet[11] = (byte) ssrc;
+		System.arraycopy(base.data, payloadoffset, packet, 12, payloadlength);
+		data = packet;
 	}
 
 	public int calcLength() {
@@ -50,6 +50,16 @@ public class RtpPacketReceiver {
      */
 	private int bufferSize = DEFAULT_DATAGRAM_SIZE;
 
+	/**
+	 * Buffer the datagrams are received in, reused for every packet
+	 */
+	private byte[] receiveBuffer = null;
+
+	/**
+	 * RTP packet, reused for every packet
+	 */
+	private RtpPacket packet = new RtpPacket();
+
 	/**
 	 * Datagram connection
 	 */
@@ -81,6 +91,17 @@ public class RtpPacketReceiver {
 		}
 	}
 
+    /**
+     * Constructor
+     *
+     * @param connection Opened connection, e.g. an interleaved channel
+     * @param rtcpSession the RTCP session
+     */
+    public RtpPacketReceiver(DatagramConnection connection, RtcpSession rtcpSession) {
+        this.rtcpSession = rtcpSession;
+        this.datagramConnection = connection;
+	}
+
 	/**
 	 * Close the receiver
 	 */
@@ -100,29 +121,30 @@ public class RtpPacketReceiver {
 	}
 
     /**
-     * Read a RTP packet (blocking method)
+     * Read a RTP packet (blocking method). The packet and its data,
+     * i.e. the receive buffer, are reused by the next call.
      *
      * @return RTP packet
      */
 	public RtpPacket readRtpPacket() {
 		try {
 			// Wait a new packet
-            byte[] data = datagramConnection.receive(bufferSize);
+			if (receiveBuffer == null || receiveBuffer.length != bufferSize) {
+				receiveBuffer = new byte[bufferSize];
+			}
+            int length = datagramConnection.receive(receiveBuffer);
 
 			// Parse the RTP packet
-			RtpPacket pkt = parseRtpPacket(data);
+			RtpPacket pkt = parseRtpPacket(receiveBuffer, length);
 			if (pkt.payloadType != 12) {
 				// Update statistics
 				stats.numPackets++;
-                stats.numBytes += data.length;
+                stats.numBytes += length;
 
                 RtpSource s = rtcpSession.getMySource();
                 s.activeSender = true;
-                s.timeOfLastRTPArrival = rtcpSession.currentTime();
-                s.updateSeq(pkt.seqnum);
-                if (s.noOfRTPPacketsRcvd == 0)
-                    s.base_seq = pkt.seqnum;
-                s.noOfRTPPacketsRcvd++;
+                s.SSRC = pkt.ssrc;
+                s.receivedPacket(pkt.seqnum, pkt.timestamp & 0xFFFFFFFFL, pkt.receivedAt);
 
 				return pkt;
 			} else {
@@ -152,13 +174,13 @@ public class RtpPacketReceiver {
      * Parse the RTP packet
      *
      * @param data RTP packet not yet parsed
+     * @param length RTP packet length
      * @return RTP packet
      */
-	private RtpPacket parseRtpPacket(byte[] data) {
-		RtpPacket packet = new RtpPacket();
+	private RtpPacket parseRtpPacket(byte[] data, int length) {
 		try {
 			// Read RTP packet length
-            packet.length = data.length;
+            packet.length = length;
 
             // Set received timestamp
             packet.receivedAt = System.currentTimeMillis();
@@ -184,11 +206,12 @@ public class RtpPacketReceiver {
 			packet.ssrc = (((data[8] & 0xff) << 24) | ((data[9] & 0xff) << 16)
 					| ((data[10] & 0xff) << 8) | (data[11] & 0xff));
 
-			// Read media data after the 12 byte header which is constant
+			// Media data follows the 12 byte header which is constant; it is
+			// left in the receive buffer
+			packet.data = data;
+			packet.offset = 0;
 			packet.payloadoffset = 12;
 			packet.payloadlength = packet.length - packet.payloadoffset;
-			packet.data = new byte[packet.payloadlength];
-			System.arraycopy(data, packet.payloadoffset, packet.data, 0, packet.payloadlength);
 
 			// Update the buffer size
 			if (!recvBufSizeSet) {
@@ -55,6 +55,16 @@ public class RtpPacketTransmitter {
 	 */
 	private RtpStatisticsTransmitter stats = new RtpStatisticsTransmitter();
 
+	/**
+	 * Payload of the RTP packet, reused for every packet
+	 */
+	private Packet payload = new Packet();
+
+	/**
+	 * RTP packet, reused for every packet
+	 */
+	private RtpPacket rtppacket = new RtpPacket(payload);
+
 	/**
 	 * Datagram connection
 	 */
@@ -173,12 +183,10 @@ public class RtpPacketTransmitter {
 		if (data == null) {
 			return null;
 		}
-		Packet packet = new Packet();
-		packet.data = data;
-		packet.offset = 0;
-		packet.length = buffer.getLength();
+		payload.data = data;
+		payload.offset = 0;
+		payload.length = buffer.getLength();
 
-		RtpPacket rtppacket = new RtpPacket(packet);
 		if ((buffer.getFlags() & 0x800) != 0) {
 			rtppacket.marker = 1;
 		} else {
@@ -201,16 +209,9 @@ public class RtpPacketTransmitter {
      * @throws IOException
      */
 	private void transmit(Packet packet) {
-		// Prepare data to be sent
-		byte[] data = packet.data;
-		
-		if (packet.offset > 0) {
-			System.arraycopy(data, packet.offset, data = new byte[packet.length], 0, packet.length);
-		}
-
-		// broadcast data
+		// broadcast data; the sender copies it, so the packet may be reused
     	try {
-			RtpSender.getInstance().send(data);
+			RtpSender.getInstance().send(packet.data, packet.offset, packet.length);
 		} catch (IOException e1) {
 			// TODO Auto-generated catch block
 			e1.printStackTrace();
@@ -0,0 +1,67 @@
+package com.orangelabs.rcs.core.ims.protocol.rtp.core;
+
+/**
+ * Snapshot of the statistics of the reception from a RTP source,
+ * as they are reported in the RTCP reception report blocks
+ * (RFC 3550, 6.4.1)
+ */
+public class RtpReceptionStatistics {
+	/**
+	 * Time the snapshot was taken (ms)
+	 */
+	public long time = 0;
+
+	/**
+	 * SSRC of the source
+	 */
+	public int ssrc = 0;
+
+	/**
+	 * Number of RTP packets received
+	 */
+	public long packetsReceived = 0;
+
+	/**
+	 * Number of RTP packets expected from the sequence numbers
+	 */
+	public long packetsExpected = 0;
+
+	/**
+	 * Cumulative number of RTP packets lost, negative if
+	 * duplicates have been received
+	 */
+	public long packetsLost = 0;
+
+	/**
+	 * Fraction of RTP packets lost (0..1) in the interval
+	 * of the last reception report
+	 */
+	public double fractionLost = 0;
+
+	/**
+	 * Extended highest sequence number received
+	 */
+	public long highestSequence = 0;
+
+	/**
+	 * Interarrival jitter (ms)
+	 */
+	public double jitter = 0;
+
+	/**
+	 * Time since the last SR packet has been received (ms),
+	 * -1 if no SR has been received yet
+	 */
+	public long lastSenderReportAge = -1;
+
+	/**
+	 * Returns a string representation for logging
+	 *
+	 * @return String
+	 */
+	public String toString() {
+		return "received=" + packetsReceived + ", expected=" + packetsExpected
+				+ ", lost=" + packetsLost + ", fractionLost=" + fractionLost
+				+ ", jitter=" + jitter + "ms, lastSR=" + lastSenderReportAge + "ms";
+	}
+}
@@ -55,17 +55,18 @@ public class RtpSource {
     public long last_seq;
 
     /**
-     * Interarrival jitter.
+     * Interarrival jitter, in RTP timestamp units.
      */
     public long jitter;
 
     /**
-     * Last SR Packet from this source.
+     * Middle 32 bits of the NTP timestamp of the last SR packet from
+     * this source (LSR), 0 if no SR has been received yet.
      */
     public long lst;
 
     /**
-     * Delay since last SR packet.
+     * Delay since last SR packet, in units of 1/65536 seconds (DLSR).
      */
     public double dlsr;
 
@@ -121,14 +122,45 @@ public class RtpSource {
 
     /**
      * Keep track of the wrapping around of RTP sequence numbers, since RTP Seq No. are
-     * only 16 bits
+     * only 16 bits; counts the wraps in units of RTP_SEQ_MOD
      */
     public long cycles;
 
     /**
-     * Since Packets lost is a 24 bit number, it should be clamped at WRAPMAX = 0xFFFFFFFF
+     * RTP sequence numbers are 16 bits
      */
-    public long WRAPMAX = 0xFFFFFFFF;
+    public static final int RTP_SEQ_MOD = 1 << 16;
+
+    /**
+     * Largest jump ahead of the sequence number, that is taken as packet loss
+     * (RFC 3550, A.1)
+     */
+    private static final int MAX_DROPOUT = 3000;
+
+    /**
+     * Largest jump back of the sequence number, that is taken as reordering
+     */
+    private static final int MAX_MISORDER = 100;
+
+    /**
+     * Sequence number, that confirms a large jump as a restart of the source
+     */
+    private int bad_seq = RTP_SEQ_MOD + 1;
+
+    /**
+     * Relative transit time of the previous RTP packet, in RTP timestamp units
+     */
+    private long transit;
+
+    /**
+     * Interarrival jitter estimate, in RTP timestamp units
+     */
+    private double jitterEstimate;
+
+    /**
+     * Clock rate of the RTP timestamps (Hz)
+     */
+    private int clockRate = 90000;
 
     /**
      * Constructor requires an SSRC for it to be a valid source. The constructor initializes
@@ -155,6 +187,15 @@ public class RtpSource {
         received_prior = 0;
     }
 
+    /**
+     * Setter of the clock rate of the RTP timestamps
+     *
+     * @param clockRate clock rate (Hz)
+     */
+    public synchronized void setClockRate(int clockRate) {
+        this.clockRate = clockRate;
+    }
+
     /**
      * Returns the extended maximum sequence for a source
      * considering that sequences cycle.
@@ -167,26 +208,101 @@ public class RtpSource {
     }
 
     /**
-     * This safe sequence update function will try to
-     * determine if seq has wrapped over resulting in a
-     * new cycle.  It sets the cycle -- source level
-     * variable which keeps track of wraparounds.
+     * Account a RTP packet received from this source: the sequence number
+     * is validated and extended, and the interarrival jitter is estimated
+     * from the arrival time and the RTP timestamp (RFC 3550, A.1 and A.8).
+     *
+     * @param seq Sequence number (16 bit)
+     * @param timestamp RTP timestamp
+     * @param arrival Arrival time (ms)
+     * @return false, if the packet is out of sequence and not counted
+     */
+    public synchronized boolean receivedPacket(int seq, long timestamp, long arrival) {
+        if (!updateSeq(seq & (RTP_SEQ_MOD - 1))) {
+            return false;
+        }
+        timeOfLastRTPArrival = arrival;
+
+        // Relative transit time; the difference is taken in 32 bits,
+        // so that a wrap of the RTP timestamp does not disturb it
+        long transit = arrival * clockRate / 1000 - timestamp;
+        if (noOfRTPPacketsRcvd > 1) {
+            int d = Math.abs((int)(transit - this.transit));
+            jitterEstimate += (d - jitterEstimate) / 16;
+            jitter = (long)jitterEstimate;
+        }
+        this.transit = transit;
+        return true;
+    }
+
+    /**
+     * Initialize the sequence and jitter state with the first
+     * packet or after a restart of the source
+     *
+     * @param seq  Sequence Number
+     */
+    private void initSeq(int seq) {
+        base_seq = seq;
+        max_seq = seq;
+        bad_seq = RTP_SEQ_MOD + 1;
+        cycles = 0;
+        noOfRTPPacketsRcvd = 0;
+        expected_prior = 0;
+        received_prior = 0;
+        transit = 0;
+        jitterEstimate = 0;
+        jitter = 0;
+    }
+
+    /**
+     * This safe sequence update function determines if seq has wrapped
+     * over resulting in a new cycle, or jumped so far that the packet is
+     * dropped until the source is found to have restarted (RFC 3550, A.1).
      *
      * @param seq  Sequence Number
+     * @return false, if the packet is not counted
      */
-    public void updateSeq(long seq) {
-        // If the diferrence between max_seq and seq
-        // is more than 1000, then we can assume that
-        // cycle has wrapped around.
-        if (max_seq == 0)
-            max_seq = seq;
-        else {
-            if (max_seq - seq > 0.5 * WRAPMAX)
-                cycles += WRAPMAX;
-
-            max_seq = seq;
+    private boolean updateSeq(int seq) {
+        if (noOfRTPPacketsRcvd == 0) {
+            initSeq(seq);
+        } else {
+            int udelta = (seq - (int)max_seq) & (RTP_SEQ_MOD - 1);
+            if (udelta < MAX_DROPOUT) {
+                // In order, with permissible gap
+                if (seq < max_seq) {
+                    // Sequence number wrapped, count another 64K cycle
+                    cycles += RTP_SEQ_MOD;
+                }
+                max_seq = seq;
+            } else if (udelta <= RTP_SEQ_MOD - MAX_MISORDER) {
+                // The sequence number made a very large jump
+                if (seq == bad_seq) {
+                    // Two sequential packets, assume that the other side
+                    // restarted without telling us
+                    initSeq(seq);
+                } else {
+                    bad_seq = (seq + 1) & (RTP_SEQ_MOD - 1);
+                    return false;
+                }
+            }
+            // else duplicate or reordered packet
         }
+        noOfRTPPacketsRcvd++;
+        return true;
+    }
 
+    /**
+     * Account a SR packet received from this source, its NTP timestamp
+     * is reported back as LSR
+     *
+     * @param ntpTimestampMsw Most significant word of the NTP timestamp
+     * @param ntpTimestampLsw Least significant word of the NTP timestamp
+     * @param arrival Arrival time (ms)
+     */
+    public synchronized void receivedSenderReport(long ntpTimestampMsw, long ntpTimestampLsw, long arrival) {
+        lst = ((ntpTimestampMsw & 0xFFFF) << 16) | ((ntpTimestampLsw >> 16) & 0xFFFF);
+        timeofLastSRRcvd = arrival;
+        timeOfLastRTCPArrival = arrival;
     }
 
     /**
@@ -195,7 +311,7 @@ public class RtpSource {
      * This method is called prior to sending a Sender Report(SR)or a Receiver Report(RR)
      * which will include a Reception Report block about this source.
      */
-    public int updateStatistics() {
+    public synchronized int updateStatistics() {
         // Set all the relevant parameters
 
         // Calculate the highest sequence number received in an RTP Data Packet
@@ -207,9 +323,11 @@ public class RtpSource {
         expected = getExtendedMax() - base_seq + 1;
         lost = expected - noOfRTPPacketsRcvd;
 
-        // Clamping at 0xffffff
-        if (lost > 0xffffff)
-            lost = 0xffffff;
+        // Clamping to signed 24 bits
+        if (lost > 0x7fffff)
+            lost = 0x7fffff;
+        else if (lost < -0x800000)
+            lost = -0x800000;
 
         // Calculate the fraction lost
         long expected_interval = expected - expected_prior;
@@ -225,12 +343,38 @@ public class RtpSource {
         else
             fraction = (lost_interval << 8) / (double) expected_interval;
 
-        // dlsr - express it in units of 1/65336 seconds
-        dlsr = (timeofLastSRRcvd - currentTime()) / 65536;
+        // dlsr - express it in units of 1/65536 seconds, 0 if no SR has been received
+        if (lst == 0)
+            dlsr = 0;
+        else
+            dlsr = (long)((currentTime() - timeofLastSRRcvd) * 65536 / 1000);
 
         return 0;
     }
 
+    /**
+     * Returns the statistics of the reception from this source
+     *
+     * @return Statistics
+     */
+    public synchronized RtpReceptionStatistics getReceptionStatistics() {
+        RtpReceptionStatistics stats = new RtpReceptionStatistics();
+        long time = currentTime();
+        stats.time = time;
+        stats.ssrc = SSRC;
+        stats.packetsReceived = noOfRTPPacketsRcvd;
+        if (noOfRTPPacketsRcvd > 0) {
+            stats.highestSequence = getExtendedMax();
+            stats.packetsExpected = getExtendedMax() - base_seq + 1;
+            stats.packetsLost = stats.packetsExpected - noOfRTPPacketsRcvd;
+        }
+        stats.fractionLost = fraction / 256;
+        stats.jitter = jitterEstimate * 1000 / clockRate;
+        if (lst != 0)
+            stats.lastSenderReportAge = time - (long)timeofLastSRRcvd;
+        return stats;
+    }
+
     /**
      * Returns current time from the Date().getTime() function.
      *
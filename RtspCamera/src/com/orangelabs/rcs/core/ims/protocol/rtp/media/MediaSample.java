@@ -30,11 +30,23 @@ public class MediaSample {
 	 */
 	private byte[] data;
 	
+	/**
+	 * Offset and length of the sample in the data
+	 */
+	private int offset;
+	
+	private int length;
+	
 	/**
 	 * Time stamp
 	 */
 	private long time;
 	
+	/**
+	 * Is the sample a key frame
+	 */
+	private boolean keyFrame;
+	
 	/**
 	 * Constructor
 	 * 
@@ -42,8 +54,35 @@ public class MediaSample {
 	 * @param time Time stamp
 	 */
 	public MediaSample(byte[] data, long time) {
+		this(data, time, false);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param data Data
+	 * @param time Time stamp
+	 * @param keyFrame Is the sample a key frame, i.e. decodable without the previous samples
+	 */
+	public MediaSample(byte[] data, long time, boolean keyFrame) {
+		this(data, 0, (data != null) ? data.length : 0, time, keyFrame);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param data Data, the sample is passed by reference
+	 * @param offset Offset of the sample in the data
+	 * @param length Length of the sample
+	 * @param time Time stamp
+	 * @param keyFrame Is the sample a key frame, i.e. decodable without the previous samples
+	 */
+	public MediaSample(byte[] data, int offset, int length, long time, boolean keyFrame) {
 		this.data = data;
+		this.offset = offset;
+		this.length = length;
 		this.time = time;
+		this.keyFrame = keyFrame;
 	}
 
 	/**
@@ -55,17 +94,22 @@ public class MediaSample {
 		return data;
 	}
 	
+	/**
+	 * Returns the offset of the data sample
+	 * 
+	 * @return Offset in the byte array
+	 */
+	public int getOffset() {
+		return offset;
+	}
+	
 	/**
 	 * Returns the length of the data sample
 	 * 
 	 * @return Data sample length
 	 */
 	public int getLength() {
-		if (data != null) {
-			return data.length;
-		} else {
-			return 0;
-		}
+		return length;
 	}
 
 	/**
@@ -76,4 +120,13 @@ public class MediaSample {
 	public long getTimeStamp() {
 		return time;
 	}	
+
+	/**
+	 * Is the sample a key frame
+	 * 
+	 * @return Boolean
+	 */
+	public boolean isKeyFrame() {
+		return keyFrame;
+	}
 }
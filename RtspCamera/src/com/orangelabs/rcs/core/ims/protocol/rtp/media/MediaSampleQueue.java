@@ -0,0 +1,207 @@
+package com.orangelabs.rcs.core.ims.protocol.rtp.media;
+
+/**
+ * Bounded queue of media samples between a producer (e.g. an encoder)
+ * and the media processor.
+ *
+ * Adding a sample never blocks: when the queue is full, the oldest
+ * sample that is not a key frame is dropped (or the oldest key frame,
+ * if the queue holds key frames only), so that memory and latency stay
+ * bounded when the consumer can't keep up.
+ */
+public class MediaSampleQueue {
+	/**
+	 * Queued samples, a circular array
+	 */
+	private MediaSample[] samples;
+
+	/**
+	 * Index of the oldest sample
+	 */
+	private int head = 0;
+
+	/**
+	 * Number of queued samples
+	 */
+	private int size = 0;
+
+	/**
+	 * Is the queue closed
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Highest number of queued samples
+	 */
+	private int highWaterMark = 0;
+
+	/**
+	 * Number of added samples
+	 */
+	private long addedCount = 0;
+
+	/**
+	 * Number of dropped samples
+	 */
+	private long droppedCount = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity Maximum number of queued samples
+	 */
+	public MediaSampleQueue(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		samples = new MediaSample[capacity];
+	}
+
+	/**
+	 * Add a sample, dropping an older one if the queue is full.
+	 * Samples added after close are ignored.
+	 *
+	 * @param sample Sample
+	 * @return false, if an older sample has been dropped or the queue is closed
+	 */
+	public synchronized boolean offer(MediaSample sample) {
+		if (closed) {
+			return false;
+		}
+
+		boolean dropped = false;
+		if (size == samples.length) {
+			drop();
+			dropped = true;
+		}
+
+		samples[(head + size) % samples.length] = sample;
+		size++;
+		addedCount++;
+		if (size > highWaterMark) {
+			highWaterMark = size;
+		}
+
+		notifyAll();
+		return !dropped;
+	}
+
+	/**
+	 * Drop the oldest sample that is not a key frame, or the oldest
+	 * sample if all are key frames
+	 */
+	private void drop() {
+		int victim = 0;
+		for (int i = 0; i < size; i++) {
+			if (!samples[(head + i) % samples.length].isKeyFrame()) {
+				victim = i;
+				break;
+			}
+		}
+
+		// Close the gap by moving the older samples up
+		for (int i = victim; i > 0; i--) {
+			samples[(head + i) % samples.length] = samples[(head + i - 1) % samples.length];
+		}
+		samples[head] = null;
+		head = (head + 1) % samples.length;
+		size--;
+		droppedCount++;
+	}
+
+	/**
+	 * Remove the oldest sample, waiting until one is added, the timeout
+	 * expires or the queue is closed
+	 *
+	 * @param timeout Timeout in milliseconds
+	 * @return Sample or null, if the timeout expired or the queue is closed
+	 * @throws InterruptedException
+	 */
+	public synchronized MediaSample poll(long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while ((size == 0) && !closed) {
+			long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0) {
+				return null;
+			}
+			wait(wait);
+		}
+
+		if (size == 0) {
+			return null;
+		}
+
+		MediaSample sample = samples[head];
+		samples[head] = null;
+		head = (head + 1) % samples.length;
+		size--;
+		return sample;
+	}
+
+	/**
+	 * Close the queue, queued samples are discarded and waiting
+	 * consumers are released
+	 */
+	public synchronized void close() {
+		closed = true;
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = null;
+		}
+		size = 0;
+		notifyAll();
+	}
+
+	/**
+	 * Is the queue closed
+	 *
+	 * @return Boolean
+	 */
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Returns the maximum number of queued samples
+	 *
+	 * @return Capacity
+	 */
+	public int getCapacity() {
+		return samples.length;
+	}
+
+	/**
+	 * Returns the number of queued samples
+	 *
+	 * @return Depth
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the highest number of queued samples so far
+	 *
+	 * @return High-water mark
+	 */
+	public synchronized int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	/**
+	 * Returns the number of added samples
+	 *
+	 * @return Count
+	 */
+	public synchronized long getAddedCount() {
+		return addedCount;
+	}
+
+	/**
+	 * Returns the number of samples dropped as the queue was full
+	 *
+	 * @return Count
+	 */
+	public synchronized long getDroppedCount() {
+		return droppedCount;
+	}
+}
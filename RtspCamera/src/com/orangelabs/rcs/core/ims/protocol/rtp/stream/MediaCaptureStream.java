@@ -120,6 +120,7 @@ public class MediaCaptureStream implements ProcessorInputStream {
     	
     	// Create a buffer
 	    buffer.setData(sample.getData());   	
+	    buffer.setOffset(sample.getOffset());
 	    buffer.setLength(sample.getLength());
     	buffer.setFormat(format);
     	buffer.setSequenceNumber(seqNo++);
@@ -84,7 +84,9 @@ public class MediaRendererStream implements ProcessorOutputStream {
      * @throws Exception
      */
     public void write(Buffer buffer) throws Exception {
-    	MediaSample sample = new MediaSample((byte[])buffer.getData(), buffer.getTimeStamp());
+    	// The frame is passed by reference, with its offset and length
+    	MediaSample sample = new MediaSample((byte[])buffer.getData(), buffer.getOffset(),
+    			buffer.getLength(), buffer.getTimeStamp(), false);
     	renderer.writeSample(sample);
     }
 }
@@ -21,11 +21,15 @@ package com.orangelabs.rcs.core.ims.protocol.rtp.stream;
 
 
 import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtcpPacketReceiver;
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtcpPacketTransmitter;
 import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtcpSession;
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtpJitterBuffer;
 import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtpPacket;
 import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtpPacketReceiver;
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtpReceptionStatistics;
 import com.orangelabs.rcs.core.ims.protocol.rtp.format.Format;
 import com.orangelabs.rcs.core.ims.protocol.rtp.util.Buffer;
+import com.orangelabs.rcs.platform.network.DatagramConnection;
 import com.orangelabs.rcs.utils.logger.Logger;
 
 /**
@@ -34,11 +38,31 @@ import com.orangelabs.rcs.utils.logger.Logger;
  * @author jexa7410
  */
 public class RtpInputStream implements ProcessorInputStream {
+    /**
+     * RTP clock rate of the video formats
+     */
+    private static final int CLOCK_RATE = 90000;
+
     /**
      * Local port
      */
     private int localPort;
 
+    /**
+     * RTP and RTCP connections, if the packets are not
+     * received on local UDP ports
+     */
+    private DatagramConnection rtpConnection = null;
+
+    private DatagramConnection rtcpConnection = null;
+
+    /**
+     * Remote address and RTCP port, the receiver reports are sent to
+     */
+    private String remoteAddress = null;
+
+    private int remoteRtcpPort = -1;
+
 	/**
 	 * RTP receiver
 	 */
@@ -49,6 +73,21 @@ public class RtpInputStream implements ProcessorInputStream {
 	 */
 	private RtcpPacketReceiver rtcpReceiver =  null;
 
+	/**
+	 * RTCP transmitter of the receiver reports
+	 */
+	private RtcpPacketTransmitter rtcpTransmitter = null;
+
+	/**
+	 * Jitter buffer between the RTP receiver and the processor
+	 */
+	private RtpJitterBuffer jitterBuffer = null;
+
+	/**
+	 * Thread feeding the jitter buffer
+	 */
+	private Thread receiverThread = null;
+
     /**
      * Input buffer
      */
@@ -82,6 +121,36 @@ public class RtpInputStream implements ProcessorInputStream {
         rtcpSession = new RtcpSession(false, 16000);
     }
 
+    /**
+     * Constructor
+     *
+     * @param localPort Local port
+     * @param remoteAddress Remote address, the receiver reports are sent to
+     * @param remoteRtcpPort Remote RTCP port
+     * @param inputFormat Input format
+     */
+    public RtpInputStream(int localPort, String remoteAddress, int remoteRtcpPort, Format inputFormat) {
+		this(localPort, inputFormat);
+
+		this.remoteAddress = remoteAddress;
+		this.remoteRtcpPort = remoteRtcpPort;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param rtpConnection Opened RTP connection
+     * @param rtcpConnection Opened RTCP connection
+     * @param inputFormat Input format
+     */
+    public RtpInputStream(DatagramConnection rtpConnection, DatagramConnection rtcpConnection, Format inputFormat) {
+		this.rtpConnection = rtpConnection;
+		this.rtcpConnection = rtcpConnection;
+		this.inputFormat = inputFormat;
+
+        rtcpSession = new RtcpSession(false, 16000);
+    }
+
     /**
      * Open the input stream
      *
@@ -89,11 +158,42 @@ public class RtpInputStream implements ProcessorInputStream {
      */
     public void open() throws Exception {
 
-    	// Create the RTP receiver
-        rtpReceiver = new RtpPacketReceiver(localPort, rtcpSession);
-    	// Create the RTCP receiver
-        rtcpReceiver = new RtcpPacketReceiver(localPort + 1, rtcpSession);
+    	if (rtpConnection != null) {
+        	// Receive from the given connections
+            rtpReceiver = new RtpPacketReceiver(rtpConnection, rtcpSession);
+            rtcpReceiver = new RtcpPacketReceiver(rtcpConnection, rtcpSession);
+    	} else {
+        	// Create the RTP receiver
+            rtpReceiver = new RtpPacketReceiver(localPort, rtcpSession);
+        	// Create the RTCP receiver
+            rtcpReceiver = new RtcpPacketReceiver(localPort + 1, rtcpSession);
+    	}
         rtcpReceiver.start();
+
+        // Send receiver reports, so that the sender measures the round trip
+        // time; the RTCP connection is shared with the receiver
+        if (rtcpConnection != null) {
+            rtcpTransmitter = new RtcpPacketTransmitter(null, 0, rtcpSession, rtcpConnection);
+        } else if ((remoteAddress != null) && (remoteRtcpPort > 0)) {
+            rtcpTransmitter = new RtcpPacketTransmitter(remoteAddress, remoteRtcpPort, rtcpSession,
+                    rtcpReceiver.getConnection());
+        }
+        if (rtcpTransmitter != null) {
+            rtcpTransmitter.start();
+        }
+
+        // Feed the jitter buffer until the RTP receiver fails or is closed
+        jitterBuffer = new RtpJitterBuffer(CLOCK_RATE);
+        receiverThread = new Thread() {
+            public void run() {
+                RtpPacket rtpPacket;
+                while ((rtpPacket = rtpReceiver.readRtpPacket()) != null) {
+                    jitterBuffer.put(rtpPacket);
+                }
+                jitterBuffer.close();
+            }
+        };
+        receiverThread.start();
     }
 
     /**
@@ -106,10 +206,20 @@ public class RtpInputStream implements ProcessorInputStream {
 				rtpReceiver.close();
 			}
 
+			// Close the RTCP transmitter
+			if (rtcpTransmitter != null) {
+				rtcpTransmitter.close();
+			}
+
 			// Close the RTCP receiver
 			if (rtcpReceiver != null) {
 				rtcpReceiver.close();
 			}
+
+			// Close the jitter buffer
+			if (jitterBuffer != null) {
+				jitterBuffer.close();
+			}
 		} catch(Exception e) {
 			if (logger.isActivated()) {
 				logger.error("Can't close correctly RTP ressources", e);
@@ -126,6 +236,15 @@ public class RtpInputStream implements ProcessorInputStream {
     	return rtpReceiver;
     }
 
+    /**
+     * Returns the jitter buffer
+     *
+     * @return Jitter buffer
+     */
+    public RtpJitterBuffer getJitterBuffer() {
+        return jitterBuffer;
+    }
+
     /**
      * Returns the RTCP receiver
      *
@@ -136,14 +255,26 @@ public class RtpInputStream implements ProcessorInputStream {
     }
 
     /**
-     * Read from the input stream without blocking
+     * Returns the statistics of the reception from the remote source:
+     * packets received and lost, interarrival jitter and the age of the
+     * last sender report
+     *
+     * @return Statistics
+     */
+    public RtpReceptionStatistics getReceptionStatistics() {
+        return rtcpSession.getMySource().getReceptionStatistics();
+    }
+
+    /**
+     * Read the next packet from the input stream, once it is due to be
+     * played out (blocking method)
      *
-     * @return Buffer
+     * @return Buffer or null, if the stream is closed
      * @throws Exception
      */
     public Buffer read() throws Exception {
-    	// Wait and read a RTP packet
-    	RtpPacket rtpPacket = rtpReceiver.readRtpPacket();
+    	// Wait for the next RTP packet to be played out
+    	RtpPacket rtpPacket = jitterBuffer.take();
     	if (rtpPacket == null) {
     		return null;
     	}
@@ -151,7 +282,7 @@ public class RtpInputStream implements ProcessorInputStream {
     	// Create a buffer
         buffer.setData(rtpPacket.data);
         buffer.setLength(rtpPacket.payloadlength);
-        buffer.setOffset(0);
+        buffer.setOffset(rtpPacket.payloadoffset);
         buffer.setFormat(inputFormat);
     	buffer.setSequenceNumber(rtpPacket.seqnum);
     	buffer.setFlags(Buffer.FLAG_RTP_MARKER | Buffer.FLAG_RTP_TIME);
@@ -44,6 +44,16 @@ public class Packet {
 	 */
 	public long receivedAt;
 
+	/**
+	 * Address of the sender, or null if unknown
+	 */
+	public String remoteAddress;
+
+	/**
+	 * Port of the sender, or -1 if unknown
+	 */
+	public int remotePort = -1;
+
 	/**
 	 * Constructor
 	 */
@@ -60,5 +70,7 @@ public class Packet {
 		length = packet.length;
 		offset = packet.offset;
 		receivedAt = packet.receivedAt;
+		remoteAddress = packet.remoteAddress;
+		remotePort = packet.remotePort;
 	}
 }
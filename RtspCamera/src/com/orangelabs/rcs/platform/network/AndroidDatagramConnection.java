@@ -34,6 +34,19 @@ public class AndroidDatagramConnection implements DatagramConnection {
 	 * Datagram connection
 	 */
 	private DatagramSocket connection = null; 
+
+	/**
+	 * Datagram packet used by receive(byte[])
+	 */
+	private DatagramPacket datagram = new DatagramPacket(new byte[0], 0);
+
+	/**
+	 * Sender of the last received datagram; kept as address
+	 * object, so that receiving does not allocate a string
+	 */
+	private InetAddress remoteAddress = null;
+
+	private int remotePort = -1;
 	
 	/**
 	 * Constructor
@@ -84,6 +97,8 @@ public class AndroidDatagramConnection implements DatagramConnection {
 			byte[] buf = new byte[bufferSize];
 			DatagramPacket packet = new DatagramPacket(buf, buf.length);
 			connection.receive(packet);
+			remoteAddress = packet.getAddress();
+			remotePort = packet.getPort();
 			
 			int packetLength = packet.getLength();
 	        byte[] bytes =  packet.getData();
@@ -104,6 +119,25 @@ public class AndroidDatagramConnection implements DatagramConnection {
 	public byte[] receive() throws IOException {
 		return receive(DatagramConnection.DEFAULT_DATAGRAM_SIZE);
 	}
+
+	/**
+	 * Receive data into a given buffer
+	 * 
+	 * @param buffer Buffer, reused by the caller
+	 * @return Number of bytes received
+	 * @throws IOException
+	 */
+	public int receive(byte[] buffer) throws IOException {
+		if (connection != null) {
+			datagram.setData(buffer, 0, buffer.length);
+			connection.receive(datagram);
+			remoteAddress = datagram.getAddress();
+			remotePort = datagram.getPort();
+			return datagram.getLength();
+		} else {
+			throw new IOException("Connection not openned");
+		}
+	}
 	
 	/**
 	 * Send data
@@ -154,4 +188,23 @@ public class AndroidDatagramConnection implements DatagramConnection {
 			throw new IOException("Connection not openned");
 		}
 	}
+
+	/**
+	 * Returns the address of the sender of the last received datagram
+	 * 
+	 * @return Address or null, if unknown
+	 */
+	public String getRemoteAddress() {
+		InetAddress address = remoteAddress;
+		return (address == null) ? null : address.getHostAddress();
+	}
+
+	/**
+	 * Returns the port of the sender of the last received datagram
+	 * 
+	 * @return Port or -1, if unknown
+	 */
+	public int getRemotePort() {
+		return remotePort;
+	}
 }
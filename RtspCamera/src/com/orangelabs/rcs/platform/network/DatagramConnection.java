@@ -80,6 +80,15 @@ public interface DatagramConnection {
 	 */
 	public byte[] receive(int bufferSize) throws IOException;	
 	
+	/**
+	 * Receive data into a given buffer
+	 * 
+	 * @param buffer Buffer, reused by the caller
+	 * @return Number of bytes received
+	 * @throws IOException
+	 */
+	public int receive(byte[] buffer) throws IOException;
+	
 	/**
 	 * Returns the local address
 	 * 
@@ -95,4 +104,18 @@ public interface DatagramConnection {
 	 * @throws IOException
 	 */
 	public int getLocalPort() throws IOException;
+
+	/**
+	 * Returns the address of the sender of the last received datagram
+	 * 
+	 * @return Address or null, if unknown
+	 */
+	public String getRemoteAddress();
+
+	/**
+	 * Returns the port of the sender of the last received datagram
+	 * 
+	 * @return Port or -1, if unknown
+	 */
+	public int getRemotePort();
 }
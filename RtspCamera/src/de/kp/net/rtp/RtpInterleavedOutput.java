@@ -0,0 +1,25 @@
+package de.kp.net.rtp;
+
+import java.io.IOException;
+
+/**
+ * This interface describes a connection, that carries
+ * RTP and RTCP packets interleaved with the RTSP messages
+ * (RFC 2326, 10.12); it is implemented by the RTSP session
+ * of the respective client.
+ */
+public interface RtpInterleavedOutput {
+
+	/**
+	 * Send a packet framed with the '$' channel header; the
+	 * invocation blocks, while the connection is congested
+	 * 
+	 * @param channel
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @throws IOException
+	 */
+	public void writeInterleaved(int channel, byte[] data, int offset, int length) throws IOException;
+
+}
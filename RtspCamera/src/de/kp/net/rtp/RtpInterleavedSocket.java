@@ -0,0 +1,63 @@
+package de.kp.net.rtp;
+
+import java.io.IOException;
+
+/**
+ * This RTP socket sends the RTP packets over the RTSP
+ * connection of a client, rather than via UDP; it is
+ * used for clients that request interleaved transport,
+ * e.g. when UDP is blocked or heavily lossy.
+ * 
+ * The socket is registered with the {@link RtpSender}
+ * like a UDP socket, so that the packets are sent by
+ * the dedicated thread of its {@link RtpSendQueue}.
+ */
+public class RtpInterleavedSocket extends RtpSocket {
+
+	private final RtpInterleavedOutput output;
+	
+	// channels that carry the RTP and RTCP packets
+	private final int channel;
+	private final int rtcpChannel;
+	
+	public RtpInterleavedSocket(RtpInterleavedOutput output, int channel, int rtcpChannel) {
+		this.output  = output;
+		this.channel = channel;
+		this.rtcpChannel = rtcpChannel;
+	}
+	
+	public int getChannel() {
+		return channel;
+	}
+	
+	public int getRtcpChannel() {
+		return rtcpChannel;
+	}
+	
+	/** Receiving is done by the RTSP connection */
+	public void receive(RtpPacket rtpPacket) throws IOException {
+		throw new IOException("Interleaved RTP socket does not receive");
+	}
+
+	/** Sends a RTP packet over the RTSP connection */
+	public void send(RtpPacket rtpPacket) throws IOException {
+		send(rtpPacket.getPacket(), 0, rtpPacket.getLength());
+	}
+
+	/** Sends a RTP packet, given as a range of a buffer, over the RTSP connection */
+	public void send(byte[] data, int offset, int length) throws IOException {
+
+		if (this.suspended == true) return;
+		output.writeInterleaved(channel, data, offset, length);
+		
+	}
+
+	/** Sends a RTCP packet over the RTSP connection */
+	public void sendRtcp(byte[] data, int offset, int length) throws IOException {
+
+		if (this.suspended == true) return;
+		output.writeInterleaved(rtcpChannel, data, offset, length);
+		
+	}
+
+}
@@ -0,0 +1,630 @@
+package de.kp.net.rtp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.util.Log;
+
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtcpPacketReceiver;
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtcpReceiverReportPacket;
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtcpReport;
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtcpSenderReportPacket;
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtcpSession;
+import com.orangelabs.rcs.core.ims.protocol.rtp.event.RtcpEvent;
+import com.orangelabs.rcs.core.ims.protocol.rtp.event.RtcpEventListener;
+import com.orangelabs.rcs.core.ims.protocol.rtp.event.RtcpReceiverReportEvent;
+import com.orangelabs.rcs.core.ims.protocol.rtp.event.RtcpSenderReportEvent;
+import com.orangelabs.rcs.core.ims.protocol.rtp.util.Packet;
+import com.orangelabs.rcs.platform.FactoryException;
+import com.orangelabs.rcs.platform.network.DatagramConnection;
+import com.orangelabs.rcs.platform.network.NetworkFactory;
+
+/**
+ * This class adapts the bit rate and frame rate of the
+ * video stream to the reception quality reported by the
+ * RTP consumers in their RTCP receiver reports.
+ *
+ * The rate follows an additive increase / multiplicative
+ * decrease scheme: it is cut in proportion to the loss of
+ * a receiver losing more than 10% of the packets, and by
+ * 15% when the jitter or round trip time of a receiver
+ * grows (queues fill up before packets are lost); it is
+ * raised by 5% while every receiver loses less than 2%.
+ * The slowest receiver thereby determines the rate of
+ * all, as they share the same encoder.
+ *
+ * Below half of the maximum bit rate, the frame rate is
+ * lowered in proportion, so that the remaining pictures
+ * keep an acceptable quality.
+ */
+public class RtpRateController implements RtcpEventListener {
+
+	private static String TAG = "RtpRateController";
+
+	/*
+	 * Thresholds of the fraction lost as carried by the
+	 * report (1/256): about 10% and 2%
+	 */
+	private static final int LOSS_HIGH = 26;
+	private static final int LOSS_LOW = 5;
+
+	/*
+	 * Growth of jitter or round trip time (ms) above the
+	 * base line of a receiver that indicates congestion
+	 */
+	private static final long DELAY_THRESHOLD = 50;
+
+	private static final int DELAY_DECREASE_PERCENT = 15;
+	private static final int INCREASE_PERCENT = 5;
+
+	/*
+	 * No increase within this time (ms) after a decrease,
+	 * so that the next reports reflect the lowered rate
+	 */
+	private static final long INCREASE_HOLD = 2000;
+
+	/*
+	 * Receivers report at least every 5 s (RFC 3550, 6.2);
+	 * a receiver that is silent for longer is ignored
+	 */
+	private static final long REPORT_TIMEOUT = 20000;
+
+	private static final int CLOCK_RATE = 90000;
+
+	/*
+	 * Seconds from 1900 (NTP epoch) to 1970
+	 */
+	private static final long NTP_OFFSET = 2208988800L;
+
+	private static RtpRateController instance = new RtpRateController();
+
+	private final HashMap<Integer, Receiver> receivers = new HashMap<Integer, Receiver>();
+
+	/*
+	 * Senders of receiver (or sender) reports by SSRC, also
+	 * of reports without report blocks, e.g. of a paused
+	 * client; they keep the RTSP sessions of UDP clients alive
+	 */
+	private final HashMap<Integer, Reporter> reporters = new HashMap<Integer, Reporter>();
+
+	private final CopyOnWriteArrayList<RtpRateListener> listeners = new CopyOnWriteArrayList<RtpRateListener>();
+
+	private RtcpPacketReceiver rtcpReceiver;
+
+	private int minBitRate;
+	private int maxBitRate;
+	private int minFrameRate;
+	private int maxFrameRate;
+
+	private int bitRate;
+	private int frameRate;
+
+	private int notifiedBitRate;
+	private int notifiedFrameRate;
+
+	private long lastDecrease = 0;
+
+	private RtpRateController() {
+	}
+
+	public static RtpRateController getInstance() {
+		if (instance == null) instance = new RtpRateController();
+		return instance;
+	}
+
+	/**
+	 * Set the bounds of the rates and start at the maximum
+	 *
+	 * @param minBitRate
+	 * @param maxBitRate
+	 * @param minFrameRate
+	 * @param maxFrameRate
+	 */
+	public void configure(int minBitRate, int maxBitRate, int minFrameRate, int maxFrameRate) {
+
+		synchronized (this) {
+
+			this.minBitRate = minBitRate;
+			this.maxBitRate = maxBitRate;
+			this.minFrameRate = minFrameRate;
+			this.maxFrameRate = maxFrameRate;
+
+			bitRate = maxBitRate;
+			frameRate = maxFrameRate;
+
+			notifiedBitRate = bitRate;
+			notifiedFrameRate = frameRate;
+
+			receivers.clear();
+			reporters.clear();
+
+		}
+
+		notifyListeners(maxBitRate, maxFrameRate);
+
+	}
+
+	/**
+	 * Listen for RTCP reports on the given UDP port
+	 *
+	 * @param port
+	 * @throws IOException
+	 */
+	public synchronized void open(int port) throws IOException {
+
+		if (rtcpReceiver != null) return;
+
+		if (NetworkFactory.getFactory() == null) {
+			try {
+				NetworkFactory.loadFactory("com.orangelabs.rcs.platform.network.AndroidNetworkFactory");
+
+			} catch (FactoryException e) {
+				throw new IOException(e.getMessage());
+			}
+		}
+
+		rtcpReceiver = new RtcpPacketReceiver(port, new RtcpSession(false, 16000));
+		rtcpReceiver.addRtcpListener(this);
+		rtcpReceiver.start();
+
+	}
+
+	public synchronized void close() {
+
+		if (rtcpReceiver == null) return;
+
+		try {
+			rtcpReceiver.close();
+
+		} catch (IOException e) {
+			// nothing todo
+		}
+
+		rtcpReceiver = null;
+		receivers.clear();
+		reporters.clear();
+
+	}
+
+	/**
+	 * Evaluate a RTCP packet, that has not been received
+	 * on the UDP port, but interleaved on the RTSP connection
+	 * of a client
+	 *
+	 * @param data
+	 * @param offset
+	 * @param length
+	 */
+	public void receiveRtcpPacket(byte[] data, int offset, int length) {
+
+		RtcpPacketReceiver receiver;
+		synchronized (this) {
+			receiver = rtcpReceiver;
+		}
+
+		if (receiver == null) return;
+
+		// the buffer of the connection is reused
+		Packet packet = new Packet();
+		packet.data = new byte[length];
+		System.arraycopy(data, offset, packet.data, 0, length);
+
+		packet.length = length;
+		packet.offset = 0;
+		packet.receivedAt = System.currentTimeMillis();
+
+		receiver.handlePacket(packet);
+
+	}
+
+	/**
+	 * Send a RTCP packet (a sender report) to a client
+	 * from the RTCP port of the server; the packet is
+	 * dropped, if the port is not open
+	 *
+	 * @param address
+	 * @param port
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @throws IOException
+	 */
+	public void sendRtcpPacket(InetAddress address, int port, byte[] data, int offset, int length) throws IOException {
+
+		RtcpPacketReceiver receiver;
+		synchronized (this) {
+			receiver = rtcpReceiver;
+		}
+
+		DatagramConnection connection = (receiver == null) ? null : receiver.getConnection();
+		if (connection == null) return;
+
+		byte[] packet = new byte[length];
+		System.arraycopy(data, offset, packet, 0, length);
+
+		connection.send(address.getHostAddress(), port, packet);
+
+	}
+
+	public void addListener(RtpRateListener listener) {
+		listeners.addIfAbsent(listener);
+	}
+
+	public void removeListener(RtpRateListener listener) {
+		listeners.remove(listener);
+	}
+
+	public synchronized int getBitRate() {
+		return bitRate;
+	}
+
+	public synchronized int getFrameRate() {
+		return frameRate;
+	}
+
+	/**
+	 * Retrieve the reception quality of the receivers,
+	 * that have reported recently
+	 *
+	 * @return statistics per receiver
+	 */
+	public synchronized List<RtpReceiverStatistics> getReceiverStatistics() {
+
+		long now = System.currentTimeMillis();
+
+		removeSilentReceivers(now);
+
+		List<RtpReceiverStatistics> statistics = new ArrayList<RtpReceiverStatistics>();
+		for (Receiver receiver:receivers.values()) {
+			statistics.add(receiver.getStatistics());
+		}
+
+		return statistics;
+
+	}
+
+	/**
+	 * Receive RTCP event; receiver reports (and report
+	 * blocks of sender reports) are evaluated
+	 */
+	public void receiveRtcpEvent(RtcpEvent event) {
+
+		int reporter;
+		RtcpReport[] reports;
+
+		if (event instanceof RtcpReceiverReportEvent) {
+			RtcpReceiverReportPacket packet = (RtcpReceiverReportPacket) event.getPacket();
+			reporter = packet.ssrc;
+			reports = packet.reports;
+
+		} else if (event instanceof RtcpSenderReportEvent) {
+			RtcpSenderReportPacket packet = (RtcpSenderReportPacket) event.getPacket();
+			reporter = packet.ssrc;
+			reports = packet.reports;
+
+		} else {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		onReporter(reporter, event.getPacket().remoteAddress, event.getPacket().remotePort, now);
+
+		if (reports == null) return;
+
+		for (RtcpReport report:reports) {
+
+			long jitter = ((long) report.jitter & 0xFFFFFFFFL) * 1000 / CLOCK_RATE;
+			onReport(reporter, report.fractionlost, jitter, getRoundTripTime(report, now), now);
+
+		}
+
+	}
+
+	/**
+	 * Record the receipt of a report; the address and port
+	 * are unknown for reports received on an RTSP connection
+	 *
+	 * @param reporter SSRC of the reporting receiver
+	 * @param address address the report was sent from or null
+	 * @param port port the report was sent from or -1
+	 * @param now current time (ms)
+	 */
+	public synchronized void onReporter(int reporter, String address, int port, long now) {
+
+		Reporter entry = reporters.get(reporter);
+		if (entry == null) {
+			removeSilentReporters(now);
+
+			entry = new Reporter();
+			reporters.put(reporter, entry);
+		}
+
+		if (address != null) {
+			entry.address = address;
+			entry.port = port;
+		}
+
+		entry.lastReport = now;
+
+	}
+
+	/**
+	 * Find the receiver, that sends its reports from the
+	 * given address and port
+	 *
+	 * @param address
+	 * @param port
+	 * @return SSRC of the receiver, that has reported last,
+	 * or null if none has reported recently
+	 */
+	public synchronized Integer getReporter(String address, int port) {
+
+		Integer ssrc = null;
+		long last = 0;
+
+		for (Map.Entry<Integer, Reporter> entry:reporters.entrySet()) {
+
+			Reporter reporter = entry.getValue();
+			if (reporter.port != port || address.equals(reporter.address) == false || reporter.lastReport < last) continue;
+
+			ssrc = entry.getKey();
+			last = reporter.lastReport;
+
+		}
+
+		return ssrc;
+
+	}
+
+	/**
+	 * Time of the last report of a receiver
+	 *
+	 * @param reporter SSRC of the receiver
+	 * @return time (ms) or 0, if it has not reported recently
+	 */
+	public synchronized long getLastReport(int reporter) {
+
+		Reporter entry = reporters.get(reporter);
+		return (entry == null) ? 0 : entry.lastReport;
+
+	}
+
+	/**
+	 * Evaluate a single report block
+	 *
+	 * @param reporter SSRC of the reporting receiver
+	 * @param fractionLost fraction lost (1/256)
+	 * @param jitter interarrival jitter (ms)
+	 * @param roundTripTime round trip time (ms) or -1, if unknown
+	 * @param now current time (ms)
+	 */
+	public void onReport(int reporter, int fractionLost, long jitter, long roundTripTime, long now) {
+
+		int notifyBitRate;
+		int notifyFrameRate;
+
+		synchronized (this) {
+
+			// the reports are kept for the statistics, even
+			// if the rate is not controlled
+			Receiver receiver = receivers.get(reporter);
+			if (receiver == null) {
+				removeSilentReceivers(now);
+
+				receiver = new Receiver(reporter);
+				receivers.put(reporter, receiver);
+			}
+
+			receiver.update(fractionLost, jitter, roundTripTime, now);
+
+			if (maxBitRate == 0) return;
+
+			/*
+			 * A decrease is triggered by the fresh report only,
+			 * an increase requires all receivers to be fine
+			 */
+			int rate = bitRate;
+			if (receiver.fractionLost > LOSS_HIGH) {
+				rate = (int) (rate * (512L - receiver.fractionLost) / 512);
+				lastDecrease = now;
+
+			} else if (receiver.getQueuingDelay() > DELAY_THRESHOLD) {
+				rate = rate * (100 - DELAY_DECREASE_PERCENT) / 100;
+				lastDecrease = now;
+
+			} else if (now - lastDecrease >= INCREASE_HOLD && allReceiversFine(now)) {
+				rate = rate + Math.max(rate * INCREASE_PERCENT / 100, 1000);
+
+			}
+
+			bitRate = Math.max(minBitRate, Math.min(maxBitRate, rate));
+			frameRate = getFrameRate(bitRate);
+
+			/*
+			 * Listeners are notified of changes above 5% (or 
+			 * reaching a bound) only, as an encoder may have
+			 * to be re-initialized
+			 */
+			boolean changed = frameRate != notifiedFrameRate || Math.abs(bitRate - notifiedBitRate) * 20 >= notifiedBitRate
+					|| (bitRate != notifiedBitRate && (bitRate == minBitRate || bitRate == maxBitRate));
+			
+			if (changed == false) return;
+
+			notifiedBitRate = bitRate;
+			notifiedFrameRate = frameRate;
+
+			notifyBitRate = bitRate;
+			notifyFrameRate = frameRate;
+
+		}
+
+		Log.d(TAG, "rate changed: " + notifyBitRate + " bit/s, " + notifyFrameRate + " fps");
+		notifyListeners(notifyBitRate, notifyFrameRate);
+
+	}
+
+	private boolean allReceiversFine(long now) {
+
+		Iterator<Receiver> iterator = receivers.values().iterator();
+		while (iterator.hasNext()) {
+
+			Receiver receiver = iterator.next();
+			if (now - receiver.lastReport > REPORT_TIMEOUT) {
+				iterator.remove();
+				continue;
+			}
+
+			if (receiver.fractionLost >= LOSS_LOW || receiver.getQueuingDelay() > DELAY_THRESHOLD) return false;
+
+		}
+
+		return true;
+
+	}
+
+	private void removeSilentReceivers(long now) {
+
+		Iterator<Receiver> iterator = receivers.values().iterator();
+		while (iterator.hasNext()) {
+			if (now - iterator.next().lastReport > REPORT_TIMEOUT) iterator.remove();
+		}
+
+	}
+
+	private void removeSilentReporters(long now) {
+
+		Iterator<Reporter> iterator = reporters.values().iterator();
+		while (iterator.hasNext()) {
+			if (now - iterator.next().lastReport > REPORT_TIMEOUT) iterator.remove();
+		}
+
+	}
+
+	private int getFrameRate(int bitRate) {
+
+		int half = maxBitRate / 2;
+		if (bitRate >= half) return maxFrameRate;
+
+		return Math.max(minFrameRate, (int) ((long) maxFrameRate * bitRate / half));
+
+	}
+
+	private void notifyListeners(int bitRate, int frameRate) {
+
+		for (RtpRateListener listener:listeners) {
+			listener.onRateChanged(bitRate, frameRate);
+		}
+
+	}
+
+	/*
+	 * Round trip time from the middle 32 bits of the NTP time
+	 * of the last sender report (LSR) and the delay since its
+	 * receipt (DLSR), RFC 3550, 6.4.1; unknown until sender
+	 * reports are sent
+	 */
+	private static long getRoundTripTime(RtcpReport report, long now) {
+
+		if (report.lsr == 0) return -1;
+
+		long seconds = now / 1000 + NTP_OFFSET;
+		long fraction = ((now % 1000) << 16) / 1000;
+		long arrival = ((seconds & 0xFFFF) << 16) | fraction;
+
+		long roundTripTime = ((arrival - report.lsr - report.dlsr) & 0xFFFFFFFFL) * 1000 >> 16;
+		return (roundTripTime < REPORT_TIMEOUT) ? roundTripTime : -1;
+
+	}
+
+	/*
+	 * Where a receiver sends its reports from and when
+	 * it has reported last
+	 */
+	private static class Reporter {
+
+		String address;
+		int port = -1;
+
+		long lastReport;
+
+	}
+
+	/*
+	 * The last report of a receiver; the base lines follow
+	 * the lowest jitter and round trip time seen and rise
+	 * slowly, so that a constant delay is not taken as
+	 * congestion for ever
+	 */
+	private static class Receiver {
+
+		final int ssrc;
+
+		int fractionLost;
+
+		long jitter;
+		long baseJitter = -1;
+
+		long roundTripTime = -1;
+		long baseRoundTripTime = -1;
+
+		long lastReport;
+
+		Receiver(int ssrc) {
+			this.ssrc = ssrc;
+		}
+
+		void update(int fractionLost, long jitter, long roundTripTime, long now) {
+
+			this.fractionLost = fractionLost;
+			this.lastReport = now;
+
+			this.jitter = jitter;
+			baseJitter = getBase(baseJitter, jitter);
+
+			if (roundTripTime >= 0) {
+				this.roundTripTime = roundTripTime;
+				baseRoundTripTime = getBase(baseRoundTripTime, roundTripTime);
+			}
+
+		}
+
+		long getQueuingDelay() {
+
+			long delay = jitter - baseJitter;
+			if (roundTripTime >= 0) delay = Math.max(delay, roundTripTime - baseRoundTripTime);
+
+			return delay;
+
+		}
+
+		RtpReceiverStatistics getStatistics() {
+
+			RtpReceiverStatistics statistics = new RtpReceiverStatistics();
+
+			statistics.ssrc = ssrc;
+			statistics.fractionLost = fractionLost / 256.0;
+			statistics.jitter = jitter;
+			statistics.roundTripTime = roundTripTime;
+			statistics.queuingDelay = getQueuingDelay();
+			statistics.lastReport = lastReport;
+
+			return statistics;
+
+		}
+
+		private static long getBase(long base, long value) {
+
+			if (base < 0 || value < base) return value;
+			return base + (value - base) / 8;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,18 @@
+package de.kp.net.rtp;
+
+/**
+ * This interface is implemented by encoders and
+ * packetizers that follow the rate decisions of
+ * the {@link RtpRateController}.
+ */
+public interface RtpRateListener {
+
+	/**
+	 * Called when the target rates have changed
+	 *
+	 * @param bitRate target bit rate (bit/s)
+	 * @param frameRate target frame rate (frames/s)
+	 */
+	void onRateChanged(int bitRate, int frameRate);
+
+}
@@ -0,0 +1,35 @@
+package de.kp.net.rtp;
+
+/**
+ * This class holds the reception quality of a single
+ * RTP consumer, as it is known from its last RTCP
+ * receiver report; it is a snapshot, that may be polled
+ * e.g. to log the link quality or tune the video settings.
+ */
+public class RtpReceiverStatistics {
+
+	// SSRC of the reporting receiver
+	public int ssrc;
+
+	// fraction of the packets lost (0..1) since
+	// the previous report of the receiver
+	public double fractionLost;
+
+	// interarrival jitter (ms)
+	public long jitter;
+
+	// round trip time (ms) or -1, if unknown
+	public long roundTripTime;
+
+	// growth of the jitter or round trip time above
+	// the base line of the receiver (ms)
+	public long queuingDelay;
+
+	// time of the last report (ms)
+	public long lastReport;
+
+	public String toString() {
+		return "ssrc=" + (ssrc & 0xFFFFFFFFL) + ", fractionLost=" + fractionLost + ", jitter=" + jitter + "ms, rtt=" + roundTripTime + "ms, queuingDelay=" + queuingDelay + "ms";
+	}
+
+}
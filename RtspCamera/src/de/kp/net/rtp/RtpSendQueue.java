@@ -0,0 +1,255 @@
+package de.kp.net.rtp;
+
+import java.io.IOException;
+
+import android.util.Log;
+
+/**
+ * This class decouples a single RTP consumer from the
+ * packetizer thread: packets are copied into a bounded
+ * ring of reusable slots and sent by a dedicated thread
+ * straight from their slot.
+ * 
+ * When the consumer does not keep up, the oldest packet
+ * is dropped, so a slow or paused viewer never blocks
+ * the encoder.
+ */
+public class RtpSendQueue implements Runnable {
+
+	private static String TAG = "RtpSendQueue";
+
+	/*
+	 * Number of packets that may be pending for
+	 * a single receiver before the oldest is dropped
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/*
+	 * Initial size of a slot; this covers a MTU
+	 * sized RTP packet, larger packets grow the slot
+	 */
+	private static final int SLOT_SIZE = 1500;
+	
+	private final RtpSocket receiver;
+	
+	private final int capacity;
+	
+	/*
+	 * One slot more than the capacity, for the packet
+	 * that is being sent
+	 */
+	private final byte[][] slots;
+	private final int[] lengths;
+	
+	// marks the slots that hold RTCP packets
+	private final boolean[] rtcp;
+
+	/*
+	 * Index of the oldest pending packet and the
+	 * number of packets in the ring; both are guarded
+	 * by the monitor of this queue
+	 */
+	private int head = 0;
+	private int count = 0;
+	
+	/*
+	 * Set while the head slot is being sent; the
+	 * producer must not overwrite it meanwhile
+	 */
+	private boolean busy = false;
+	
+	private long dropped = 0;
+	private long sent = 0;
+	
+	private boolean running = true;
+
+	private final Thread thread;
+	
+	public RtpSendQueue(RtpSocket receiver) {
+		this(receiver, DEFAULT_CAPACITY);
+	}
+	
+	public RtpSendQueue(RtpSocket receiver, int capacity) {
+		
+		if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+		
+		this.receiver = receiver;
+		this.capacity = capacity;
+		
+		this.slots   = new byte[capacity + 1][SLOT_SIZE];
+		this.lengths = new int[capacity + 1];
+		this.rtcp    = new boolean[capacity + 1];
+		
+		this.thread = new Thread(this, TAG);
+		this.thread.setDaemon(true);
+		this.thread.start();
+
+	}
+	
+	public RtpSocket getReceiver() {
+		return receiver;
+	}
+	
+	/**
+	 * Copy a packet into the queue; if the queue is
+	 * full, the oldest pending packet is overwritten.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 */
+	public void offer(byte[] data, int offset, int length) {
+		offer(data, offset, length, false);
+	}
+	
+	/**
+	 * Copy a RTCP packet into the queue; it is sent
+	 * in order with the RTP packets
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 */
+	public void offerRtcp(byte[] data, int offset, int length) {
+		offer(data, offset, length, true);
+	}
+	
+	private synchronized void offer(byte[] data, int offset, int length, boolean control) {
+		
+		if (running == false) return;
+		
+		if (count - (busy ? 1 : 0) == capacity) {
+			
+			if (busy) {
+				/*
+				 * Keep the slot being sent at the head and
+				 * drop the oldest pending packet behind it
+				 */
+				int next = (head + 1) % slots.length;
+				
+				byte[] slot  = slots[next];
+				slots[next]  = slots[head];
+				slots[head]  = slot;
+				lengths[next] = lengths[head];
+				rtcp[next]    = rtcp[head];
+			}
+			
+			head = (head + 1) % slots.length;
+			count--;
+			dropped++;
+		}
+		
+		int tail = (head + count) % slots.length;
+		if (slots[tail].length < length) slots[tail] = new byte[length];
+		
+		System.arraycopy(data, offset, slots[tail], 0, length);
+		lengths[tail] = length;
+		rtcp[tail]    = control;
+		
+		count++;
+		notify();
+
+	}
+
+	/**
+	 * Number of packets that were dropped because
+	 * this receiver did not keep up
+	 */
+	public synchronized long getDroppedCount() {
+		return dropped;
+	}
+
+	/**
+	 * Number of packets that were handed over to
+	 * the receiver's socket
+	 */
+	public synchronized long getSentCount() {
+		return sent;
+	}
+	
+	/**
+	 * Stop the sender thread; pending packets are
+	 * discarded. The thread is only signalled, so
+	 * that the caller (e.g. the selector thread of
+	 * the RTSP server) never waits for a send that
+	 * is blocked in the socket; the daemon exits
+	 * after that send
+	 */
+	public synchronized void stop() {
+		
+		running = false;
+		count = 0;
+		notify();
+		
+	}
+	
+	private synchronized boolean isRunning() {
+		return running;
+	}
+	
+	public void run() {
+
+		/*
+		 * The packet is sent from its slot; the slot stays
+		 * at the head and is marked busy, so that the
+		 * producer does not overwrite it while we are
+		 * blocked in the socket
+		 */
+		byte[] buffer;
+		int length;
+		boolean control;
+		boolean done;
+		
+		while (true) {
+			
+			synchronized (this) {
+
+				while (running && count == 0) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				
+				if (running == false) return;
+				
+				buffer  = slots[head];
+				length  = lengths[head];
+				control = rtcp[head];
+				busy    = true;
+				
+			}
+			
+			done = false;
+			try {
+				if (control) {
+					receiver.sendRtcp(buffer, 0, length);
+				} else {
+					receiver.send(buffer, 0, length);
+					done = true;
+				}
+
+			} catch (IOException e) {
+				// the socket of a stopped queue may be closed
+				if (isRunning()) Log.w(TAG, "RTP packet sent failed: " + e.getMessage());
+			}
+			
+			synchronized (this) {
+				
+				busy = false;
+				if (running == false) return;
+				
+				// the slot being sent is still at the head
+				head = (head + 1) % slots.length;
+				count--;
+				
+				if (done) sent++;
+				
+			}
+
+		}
+
+	}
+
+}
@@ -1,32 +1,38 @@
 package de.kp.net.rtp;
 
 import java.io.IOException;
-import java.util.Vector;
 
 /**
  * This class is responsible for sending
  * RTP packets via RTP to a set of registered
  * consumers.
  * 
+ * Every consumer is served by its own {@link RtpSendQueue};
+ * the receivers are held in a copy-on-write array, so that
+ * sending neither locks nor waits for a slow consumer.
+ * 
  * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
  *
  */
 public class RtpSender {
 
+	private static final RtpSendQueue[] NO_RECEIVERS = new RtpSendQueue[0];
+	
 	private static RtpSender instance = new RtpSender();
 	
 	/*
-	 * This vector holds a set of RTP sockets that
-	 * are registered consumers of RTP packets.
+	 * This array holds a set of send queues for the RTP 
+	 * sockets that are registered consumers of RTP packets;
+	 * it is replaced (never modified) on registration changes
 	 */
-	private Vector<RtpSocket> receivers;
+	private volatile RtpSendQueue[] receivers;
 	
 	private RtpSender() {
-		receivers = new Vector<RtpSocket>();
+		receivers = NO_RECEIVERS;
 	}
 	
 	public int getReceiverCount() {
-		return receivers.size();
+		return receivers.length;
 	}
 	
 	public static RtpSender getInstance() {
@@ -39,16 +45,62 @@ public class RtpSender {
 	 * 
 	 * @param receiver
 	 */
-	public void addReceiver(RtpSocket receiver) {
-		receivers.add(receiver);
+	public synchronized void addReceiver(RtpSocket receiver) {
+
+		RtpSendQueue[] current = receivers;
+		for (RtpSendQueue queue:current) {
+			if (queue.getReceiver() == receiver) return;
+		}
+		
+		RtpSendQueue[] next = new RtpSendQueue[current.length + 1];
+		System.arraycopy(current, 0, next, 0, current.length);
+		next[current.length] = new RtpSendQueue(receiver);
+		
+		receivers = next;
+		
 	}
 	
 	/**
 	 * De-register RTP packet consumer
 	 * @param receiver
 	 */
-	public void removeReceiver(RtpSocket receiver) {
-		receivers.remove(receiver);
+	public synchronized void removeReceiver(RtpSocket receiver) {
+
+		RtpSendQueue[] current = receivers;
+		for (int i = 0; i < current.length; i++) {
+			
+			if (current[i].getReceiver() != receiver) continue;
+			
+			RtpSendQueue[] next = NO_RECEIVERS;
+			if (current.length > 1) {
+				next = new RtpSendQueue[current.length - 1];
+				System.arraycopy(current, 0, next, 0, i);
+				System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+			}
+			
+			receivers = next;
+			current[i].stop();
+			
+			return;
+
+		}
+		
+	}
+	
+	/**
+	 * Number of packets dropped for all registered
+	 * RTP packet consumers, because they did not
+	 * keep up with the sender.
+	 */
+	public long getDroppedCount() {
+
+		long dropped = 0;
+		for (RtpSendQueue queue:receivers) {
+			dropped += queue.getDroppedCount();
+		}
+		
+		return dropped;
+
 	}
 	
 	/**
@@ -58,12 +110,8 @@ public class RtpSender {
 	 * @param rtpPacket
 	 * @throws IOException
 	 */
-	public synchronized void send(RtpPacket rtpPacket) throws IOException {
-
-		for (RtpSocket receiver:receivers) {
-			receiver.send(rtpPacket);
-		}
-		
+	public void send(RtpPacket rtpPacket) throws IOException {
+		send(rtpPacket.getPacket(), 0, rtpPacket.getLength());
 	}
 
 	/**
@@ -73,10 +121,43 @@ public class RtpSender {
 	 * @param rtpPacket
 	 * @throws IOException
 	 */
-	public synchronized void send(byte[] data) throws IOException {
+	public void send(byte[] data) throws IOException {
+		send(data, 0, data.length);
+	}
+
+	/**
+	 * Send RTP packet, given as a range of a buffer,
+	 * to all registered RTP packet consumers. The data
+	 * is copied, so the buffer may be reused on return.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @throws IOException
+	 */
+	public void send(byte[] data, int offset, int length) throws IOException {
+
+		for (RtpSendQueue queue:receivers) {
+			queue.offer(data, offset, length);
+		}
+		
+	}
+
+	/**
+	 * Send RTCP packet, given as a range of a buffer,
+	 * to all registered RTP packet consumers; it is
+	 * queued with the RTP packets and sent to the RTCP
+	 * port or channel of each consumer.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @throws IOException
+	 */
+	public void sendRtcp(byte[] data, int offset, int length) throws IOException {
 
-		for (RtpSocket receiver:receivers) {
-			receiver.send(data);
+		for (RtpSendQueue queue:receivers) {
+			queue.offerRtcp(data, offset, length);
 		}
 		
 	}
@@ -85,10 +166,23 @@ public class RtpSender {
 	 * De-register all registered RTP consumers
 	 */
 	public void clear() {
-		receivers.clear();
+
+		RtpSendQueue[] current;
+		synchronized (this) {
+			current = receivers;
+			receivers = NO_RECEIVERS;
+		}
+		
+		for (RtpSendQueue queue:current) {
+			queue.stop();
+		}
+
 	}
 	
+	/**
+	 * Stop sending; the send threads are signalled to terminate
+	 */
 	public void stop() {
-		// TODO
+		clear();
 	}
 }
@@ -51,7 +51,10 @@ public class RtpSocket {
 	 * UDP data packets
 	 */
 	
-	boolean suspended = false;
+	volatile boolean suspended = false;
+	
+	/** Is the UDP socket created (and closed) by this RTP socket */
+	boolean ownSocket = false;
 	
 	/** Creates a new RTP socket (sender and receiver) 
 	 * @throws SocketException */
@@ -60,6 +63,8 @@ public class RtpSocket {
 		this.socket = new DatagramSocket();
 		this.socket.connect(remoteAddress, remotePort);
 		
+		this.ownSocket = true;
+		
 		this.remoteAddress = remoteAddress;
 		this.remotePort    = remotePort;
 		
@@ -80,6 +85,10 @@ public class RtpSocket {
 	
 	}
 
+	/** Creates a RTP socket without UDP socket, for subclasses using another transport **/
+	protected RtpSocket() {
+	}
+
 	/** Returns the RTP DatagramSocket */
 	public DatagramSocket getSocket() {
 		return this.socket;
@@ -116,11 +125,15 @@ public class RtpSocket {
 
 	/** Sends a RTP packet from this socket */
 	public void send(byte[] data) throws IOException {
+		send(data, 0, data.length);
+	}
+
+	/** Sends a RTP packet, given as a range of a buffer, from this socket */
+	public void send(byte[] data, int offset, int length) throws IOException {
 
 		if (this.suspended == true) return;
 		
-		datagram.setData(data);
-		datagram.setLength(data.length);
+		datagram.setData(data, offset, length);
 		
 		datagram.setAddress(remoteAddress);
 		datagram.setPort(remotePort);
@@ -129,12 +142,24 @@ public class RtpSocket {
 	
 	}
 	
+	/** 
+	 * Sends a RTCP packet to the RTCP port of the receiver, i.e. the port
+	 * following its RTP port; it is sent from the RTCP port of the server.
+	 */
+	public void sendRtcp(byte[] data, int offset, int length) throws IOException {
+
+		if (this.suspended == true) return;
+		RtpRateController.getInstance().sendRtcpPacket(remoteAddress, remotePort + 1, data, offset, length);
+		
+	}
+	
 	public void suspend(boolean suspended) {
 		this.suspended = suspended;
 	}
 	
-	/** Closes this socket */
-	public void close() { // socket.close();
+	/** Closes this socket; a UDP socket passed in is left open */
+	public void close() {
+		if (ownSocket) socket.close();
 	}
 
 }
@@ -0,0 +1,324 @@
+package de.kp.net.rtp.packetizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class is a bounded byte FIFO for exactly one producer
+ * and one consumer thread. It does not lock: each index is
+ * written by one side only and published with ordered writes,
+ * so fill and drain may run on separate threads.
+ * 
+ * Unlike a plain ring buffer, unread data is never overwritten:
+ * write blocks until there is space, offer rejects the data,
+ * and both cases are counted.
+ */
+public class ByteRingBuffer {
+
+	/*
+	 * Time a blocked thread waits before it checks the
+	 * indexes again, in case a wake-up was missed
+	 */
+	private static final long PARK_NANOS = 1000000L;
+	
+	private final byte[] buffer;
+	private final int mask;
+	
+	/*
+	 * Position of the next byte to read and to write; head
+	 * is written by the consumer only, tail by the producer
+	 */
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	
+	/*
+	 * Last seen index of the other side; it saves reading
+	 * the shared index as long as it suffices
+	 */
+	private long cachedHead = 0;
+	private long cachedTail = 0;
+	
+	private volatile boolean closed = false;
+	
+	private volatile Thread waitingProducer;
+	private volatile Thread waitingConsumer;
+
+	/*
+	 * Statistics, written by the producer only
+	 */
+	private volatile long overflowCount = 0;
+	private volatile long droppedBytes = 0;
+	private volatile long stallCount = 0;
+	
+	/**
+	 * @param capacity Capacity in bytes, rounded up to a power of two
+	 */
+	public ByteRingBuffer(int capacity) {
+		
+		if (capacity < 1 || capacity > (1 << 30)) throw new IllegalArgumentException("Invalid capacity: " + capacity);
+
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) size <<= 1;
+		
+		buffer = new byte[size];
+		mask = size - 1;
+	
+	}
+	
+	public int capacity() {
+		return buffer.length;
+	}
+	
+	/**
+	 * Number of bytes that may be read without blocking
+	 */
+	public int available() {
+		return (int) (tail.get() - head.get());
+	}
+	
+	/**
+	 * Write all bytes or none (non-blocking, producer only). 
+	 * Rejected data is counted as overflow.
+	 * 
+	 * @return false, if there is not enough space
+	 * @throws IOException if the buffer is closed
+	 */
+	public boolean offer(byte[] data, int offset, int length) throws IOException {
+		
+		checkRange(data, offset, length);
+		if (closed) throw new IOException("Ring buffer is closed");
+		
+		if (free(length) < length) {
+			overflowCount++;
+			droppedBytes += length;
+			return false;
+		}
+		
+		put(data, offset, length);
+		return true;
+	
+	}
+	
+	/**
+	 * Write all bytes, wait for space if necessary (producer only).
+	 * Every time the producer has to wait, a stall is counted.
+	 * 
+	 * @throws IOException if the buffer is or gets closed
+	 */
+	public void write(byte[] data, int offset, int length) throws IOException {
+		
+		checkRange(data, offset, length);
+		
+		boolean stalled = false;
+		while (length > 0) {
+			
+			if (closed) throw new IOException("Ring buffer is closed");
+			
+			int count = Math.min(free(length), length);
+			if (count > 0) {
+				put(data, offset, count);
+				offset += count;
+				length -= count;
+				continue;
+			}
+			
+			if (stalled == false) {
+				stallCount++;
+				stalled = true;
+			}
+			
+			waitingProducer = Thread.currentThread();
+			if (free(1) == 0 && closed == false) LockSupport.parkNanos(this, PARK_NANOS);
+			waitingProducer = null;
+			
+			if (Thread.interrupted()) throw new InterruptedIOException();
+			
+		}
+		
+	}
+	
+	/**
+	 * Read up to length bytes without blocking (consumer only)
+	 * 
+	 * @return number of bytes read, -1 if the buffer is closed and empty
+	 */
+	public int poll(byte[] data, int offset, int length) {
+		
+		checkRange(data, offset, length);
+		
+		int count = Math.min(filled(length), length);
+		if (count == 0) return (closed && filled(1) == 0) ? -1 : 0;
+		
+		get(data, offset, count);
+		return count;
+	
+	}
+	
+	/**
+	 * Read up to length bytes, wait until at least one
+	 * byte is available (consumer only)
+	 * 
+	 * @return number of bytes read, -1 if the buffer is closed and empty
+	 * @throws IOException if the thread is interrupted
+	 */
+	public int read(byte[] data, int offset, int length) throws IOException {
+		
+		if (length == 0) return 0;
+		
+		while (true) {
+			
+			int count = poll(data, offset, length);
+			if (count != 0) return count;
+			
+			waitingConsumer = Thread.currentThread();
+			if (filled(1) == 0 && closed == false) LockSupport.parkNanos(this, PARK_NANOS);
+			waitingConsumer = null;
+			
+			if (Thread.interrupted()) throw new InterruptedIOException();
+		
+		}
+		
+	}
+	
+	/**
+	 * Close the buffer (either side); the consumer may
+	 * still read the remaining data
+	 */
+	public void close() {
+		closed = true;
+		wakeUp(waitingProducer);
+		wakeUp(waitingConsumer);
+	}
+	
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	/**
+	 * Number of offers that were rejected
+	 */
+	public long getOverflowCount() {
+		return overflowCount;
+	}
+	
+	/**
+	 * Number of bytes that were rejected by offer
+	 */
+	public long getDroppedBytes() {
+		return droppedBytes;
+	}
+	
+	/**
+	 * Number of writes that had to wait for the consumer
+	 */
+	public long getStallCount() {
+		return stallCount;
+	}
+	
+	/**
+	 * Returns a blocking input stream view for the consumer
+	 */
+	public InputStream getInputStream() {
+		
+		return new InputStream() {
+			
+			private final byte[] single = new byte[1];
+
+			@Override
+			public int read() throws IOException {
+				return (ByteRingBuffer.this.read(single, 0, 1) < 0) ? -1 : (single[0] & 0xFF);
+			}
+
+			@Override
+			public int read(byte[] data, int offset, int length) throws IOException {
+				return ByteRingBuffer.this.read(data, offset, length);
+			}
+
+			@Override
+			public int available() {
+				return ByteRingBuffer.this.available();
+			}
+
+			@Override
+			public void close() {
+				ByteRingBuffer.this.close();
+			}
+
+		};
+	
+	}
+
+	/*
+	 * Free space as seen by the producer; the head is read
+	 * again, if the cached one leaves less than required
+	 */
+	private int free(int required) {
+		
+		long t = tail.get();
+		
+		int free = buffer.length - (int) (t - cachedHead);
+		if (free >= required) return free;
+		
+		cachedHead = head.get();
+		return buffer.length - (int) (t - cachedHead);
+	
+	}
+	
+	/*
+	 * Filled space as seen by the consumer; the tail is read
+	 * again, if the cached one provides less than required
+	 */
+	private int filled(int required) {
+		
+		long h = head.get();
+		
+		int filled = (int) (cachedTail - h);
+		if (filled >= required) return filled;
+		
+		cachedTail = tail.get();
+		return (int) (cachedTail - h);
+	
+	}
+	
+	private void put(byte[] data, int offset, int length) {
+		
+		long t = tail.get();
+		int index = (int) t & mask;
+		
+		int first = Math.min(length, buffer.length - index);
+		System.arraycopy(data, offset, buffer, index, first);
+		System.arraycopy(data, offset + first, buffer, 0, length - first);
+		
+		// publish the data after it has been copied
+		tail.lazySet(t + length);
+		wakeUp(waitingConsumer);
+	
+	}
+	
+	private void get(byte[] data, int offset, int length) {
+		
+		long h = head.get();
+		int index = (int) h & mask;
+		
+		int first = Math.min(length, buffer.length - index);
+		System.arraycopy(buffer, index, data, offset, first);
+		System.arraycopy(buffer, 0, data, offset + first, length - first);
+		
+		// release the space after it has been copied
+		head.lazySet(h + length);
+		wakeUp(waitingProducer);
+	
+	}
+	
+	private static void wakeUp(Thread thread) {
+		if (thread != null) LockSupport.unpark(thread);
+	}
+
+	private static void checkRange(byte[] data, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > data.length) throw new IndexOutOfBoundsException();
+	}
+
+}
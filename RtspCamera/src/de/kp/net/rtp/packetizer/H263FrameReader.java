@@ -0,0 +1,151 @@
+package de.kp.net.rtp.packetizer;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+
+/**
+ * This class splits an H.263 elementary stream into 
+ * pictures at the (byte aligned) picture start codes. 
+ * The stream may be embedded into the mdat atom of a 
+ * 3GP/MP4 stream, as written by the MediaRecorder.
+ */
+public class H263FrameReader {
+
+	private PushbackInputStream is;
+	private boolean started = false;
+	
+	/*
+	 * This buffer holds the last picture read, beginning
+	 * with its start code; it is reused and grows with
+	 * the largest picture
+	 */
+	private byte[] frame = new byte[65536];
+	
+	private byte[] header = new byte[16];
+	
+	/*
+	 * The third byte of the next picture start code has 
+	 * already been consumed, when a picture is complete
+	 */
+	private int pending = -1;
+	
+	public H263FrameReader(InputStream is) {
+		this.is = new PushbackInputStream(new BufferedInputStream(is), 4);
+	}
+	
+	/**
+	 * Returns the buffer holding the picture that was
+	 * read by the last call of readFrame
+	 */
+	public byte[] getFrame() {
+		return frame;
+	}
+	
+	/**
+	 * Returns true, if the data at offset starts with a
+	 * picture start code (22 bits: 0000 0000 0000 0000 1000 00)
+	 */
+	public static boolean isPictureStart(byte[] data, int offset) {
+		return data[offset] == 0 && data[offset + 1] == 0 && (data[offset + 2] & 0xFC) == 0x80;
+	}
+	
+	/**
+	 * Returns the temporal reference of the picture, that
+	 * starts at offset with its picture start code
+	 */
+	public static int getTemporalReference(byte[] data, int offset) {
+		return ((data[offset + 2] & 0x03) << 6) | ((data[offset + 3] & 0xFF) >> 2);
+	}
+
+	/**
+	 * Read the next picture into the buffer returned by
+	 * getFrame (blocking method). Data preceding the first
+	 * picture start code is discarded.
+	 * 
+	 * @return length of the picture, -1 at end of stream
+	 * @throws IOException
+	 */
+	public int readFrame() throws IOException {
+		
+		if (started == false) {
+
+			started = true;
+			
+			if (Mp4Atoms.readFully(is, header, 0, 4) == false) return -1;
+			if (isPictureStart(header, 0)) {
+				is.unread(header, 0, 4);
+			
+			} else {
+				// the four bytes are the size of the first atom
+				Mp4Atoms.skipToMdat(is, header);
+			}
+
+		}
+		
+		int length = 0;
+		int zeros  = 0;
+		
+		boolean inPicture = false;
+		
+		if (pending >= 0) {
+			frame[length++] = 0;
+			frame[length++] = 0;
+			frame[length++] = (byte) pending;
+			
+			inPicture = true;
+			pending = -1;
+		}
+
+		int b;
+		while ((b = is.read()) >= 0) {
+			
+			if (zeros >= 2 && (b & 0xFC) == 0x80) {
+				
+				// start code of the next picture; further zeros
+				// preceding it are stuffing
+				if (inPicture) {
+					pending = b;
+					return length - zeros;
+				}
+				
+				// the first picture of the stream
+				length = 0;
+				frame[length++] = 0;
+				frame[length++] = 0;
+				frame[length++] = (byte) b;
+				
+				inPicture = true;
+				zeros = 0;
+				continue;
+
+			}
+			
+			zeros = (b == 0) ? zeros + 1 : 0;
+
+			// data preceding the first start code is discarded
+			if (inPicture) {
+				ensureCapacity(length + 1);
+				frame[length++] = (byte) b;
+			}
+		
+		}
+
+		// end of stream terminates the last picture
+		return inPicture ? length - zeros : -1;
+	
+	}
+	
+	private void ensureCapacity(int length) {
+		
+		if (frame.length >= length) return;
+		
+		byte[] buffer = new byte[Math.max(length, frame.length * 2)];
+		System.arraycopy(frame, 0, buffer, 0, frame.length);
+		
+		frame = buffer;
+	
+	}
+
+}
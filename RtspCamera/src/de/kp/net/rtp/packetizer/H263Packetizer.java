@@ -10,163 +10,243 @@ import de.kp.net.rtp.RtpPacket;
 import de.kp.net.rtp.RtpSender;
 import de.kp.net.rtsp.RtspConstants;
 
+/**
+ * This class packetizes H.263 pictures as specified by 
+ * RFC 4629: packets preferably begin at a picture or GOB
+ * start code, whose leading zero bytes are then replaced
+ * by the P bit; larger segments are split into follow-on
+ * packets. The last packet of a picture carries the marker.
+ */
 public class H263Packetizer extends AbstractPacketizer implements Runnable {
 
-	private String TAG = "H263Sender";
+	private String TAG = "H263Packetizer";
 
-	private boolean videoQualityHigh = true;
-	// private int fps;
+	private final int packetSize = 1400;
 	
-	private boolean change;
+	protected final int rtpHeaderLength = 12; // Rtp header length
 	
+	/*
+	 * Payload header (RFC 4629, 5.1) without extra picture
+	 * header and VRC; only the P bit is used
+	 */
+	private final int payloadHeaderLength = 2;
+	
+	/*
+	 * The temporal reference counts in units of 1001/30000 s,
+	 * i.e. 3003 ticks of the 90 kHz RTP clock
+	 */
+	private static final int TICKS_PER_TR = 3003;
+	
+	/*
+	 * Maximum time to wait for a picture that is ahead of
+	 * the timeline; if the stream is late by more than this,
+	 * the timeline is restarted
+	 */
+	private static final long MAX_PACING_DELAY = 1000;
+	
+	private byte[] buffer = new byte[packetSize];
+	private RtpPacket rtpPacket = new RtpPacket(buffer, 0);
+
+	private int seqn = 0;
+	
+	/*
+	 * Timeline: the temporal reference and RTP timestamp of
+	 * the last picture and wall clock time of its start
+	 */
+	private int lastTemporalReference = -1;
+	private long timestamp = 0;
+	private long timelineTimestamp;
+	private long timelineStart;
+	private boolean timelineStarted = false;
+	
+	/*
+	 * Statistics of the last full second
+	 */
+	private volatile int framesPerSecond = 0;
+	private volatile int bytesPerSecond = 0;
+	
+	private int frameCount = 0;
+	private int byteCount = 0;
+	private long statisticsStart = 0;
+
 	public H263Packetizer(InputStream fis) throws SocketException {
 		this.fis = fis;
 		this.rtpSender = RtpSender.getInstance(); 
+		
+		rtpPacket.setPayloadType(RtspConstants.RTP_H263_PAYLOADTYPE);
 	}
 	
 	public void run() {
 		
-		int frame_size = 1400;
-		byte[] buffer = new byte[frame_size + 14];
-		buffer[12] = 4;
-
-		RtpPacket rtpPacket = new RtpPacket(buffer, 0);
-		
-		int seqn = 0;
-		int num, number = 0, src, dest, len = 0, head = 0, lasthead = 0, lasthead2 = 0, cnt = 0, stable = 0;
-		
-		long now, lasttime = 0;
+		H263FrameReader reader = new H263FrameReader(fis);
 		
-		double avgrate = videoQualityHigh ? 45000 : 24000;
-		double avglen = avgrate / 20;
-
-		rtpPacket.setPayloadType(RtspConstants.RTP_H263_PAYLOADTYPE);
-
-		// while (Receiver.listener_video != null && videoValid()) {
-		while (running) {
-
-			num = -1;
-			try {
-				num = fis.read(buffer, 14 + number, frame_size - number);
+		try {
+			
+			while (running) {
+				
+				int length = reader.readFrame();
+				if (length < 0) break;
 
-			} catch (IOException e) {
-				Log.w(TAG , e.getMessage());
-				break;
+				byte[] frame = reader.getFrame();
+				if (length < 4) continue;
+				
+				long timestamp = nextTimestamp(H263FrameReader.getTemporalReference(frame, 0));
+				pace(timestamp);
+				
+				send(frame, 0, length, timestamp);
+				
 			}
+			
+		} catch (IOException e) {
+			if (running) Log.w(TAG, "H263 packetizing failed: " + e.getMessage());
 
-			if (num < 0) {
-				try {
-					sleep(20);
-				} catch (InterruptedException e) {
-					break;
-				}
-				continue;
-			}
-			number += num;
-			head += num;
+		} catch (InterruptedException e) {
+			// stopped
+		}
+		
+	}
+	
+	/**
+	 * Frames per second of the last full second
+	 */
+	public int getFramesPerSecond() {
+		return framesPerSecond;
+	}
+	
+	/**
+	 * Bytes per second of the last full second
+	 */
+	public int getBytesPerSecond() {
+		return bytesPerSecond;
+	}
 
-			try {
+	/**
+	 * Send a single picture, beginning with its picture
+	 * start code.
+	 * 
+	 * @param frame
+	 * @param offset
+	 * @param length
+	 * @param timestamp RTP timestamp (90 kHz clock)
+	 * @throws IOException
+	 */
+	public void send(byte[] frame, int offset, int length, long timestamp) throws IOException {
+		
+		int maxPayload = packetSize - rtpHeaderLength - payloadHeaderLength;
+		int end = offset + length;
+		
+		int start = offset;
+		while (start < end) {
 			
-				now = SystemClock.elapsedRealtime();
-				
-				if (lasthead != head + fis.available() && ++stable >= 5 && now - lasttime > 700) {
-					if (cnt != 0 && len != 0)
-						avglen = len / cnt;
-					
-					if (lasttime != 0) {
-						// fps = (int) ((double) cnt * 1000 / (now - lasttime));
-						avgrate = (double) ((head + fis.available()) - lasthead2) * 1000 / (now - lasttime);
+			boolean syncPoint = isStartCode(frame, start, end);
+			
+			// the two zero bytes of a start code are not sent
+			int dataStart = syncPoint ? start + 2 : start;
+			int limit = Math.min(dataStart + maxPayload, end);
+			
+			// end the packet before the last start code that fits,
+			// so that the next packet begins with it
+			int stop = limit;
+			if (limit < end) {
+				for (int i = limit; i > dataStart; i--) {
+					if (isStartCode(frame, i, end)) {
+						stop = i;
+						break;
 					}
-					
-					lasttime = now;
-					lasthead = head + fis.available();
-					
-					lasthead2 = head;
-					len = cnt = stable = 0;
 				}
-			
-			} catch (IOException e1) {
-				Log.w(TAG, e1.getMessage());
-				break;
 			}
-
-			for (num = 14; num <= 14 + number - 2; num++)
-				if (buffer[num] == 0 && buffer[num + 1] == 0)
-					break;
 			
-			if (num > 14 + number - 2) {
-				num = 0;
-				rtpPacket.setMarker(false);
-			} else {
-				num = 14 + number - num;
-				rtpPacket.setMarker(true);
-			}
-
+			buffer[rtpHeaderLength]     = (byte) (syncPoint ? 0x04 : 0x00); // P bit
+			buffer[rtpHeaderLength + 1] = 0;
+			
+			System.arraycopy(frame, dataStart, buffer, rtpHeaderLength + payloadHeaderLength, stop - dataStart);
+			
 			rtpPacket.setSequenceNumber(seqn++);
-			rtpPacket.setPayloadLength(number - num + 2);
+			rtpPacket.setTimestamp(timestamp);
+			rtpPacket.setMarker(stop == end);
+			rtpPacket.setPayloadLength(payloadHeaderLength + stop - dataStart);
 			
-			if (seqn > 10)
-				
-				try {
-					
-					rtpSender.send(rtpPacket);
-					len += number - num;
-
-				} catch (IOException e) {
-					Log.w(TAG, "RTP packet sent failed");
-					break;
-				}
+			rtpSender.send(rtpPacket);
 
-			if (num > 0) {
+			start = stop;
+		
+		}
+		
+		count(length);
 
-				num -= 2;
-				dest = 14;
-				
-				src = 14 + number - num;
-				if (num > 0 && buffer[src] == 0) {
-					src++;
-					num--;
-				}
-				
-				number = num;
-				while (num-- > 0)
-					buffer[dest++] = buffer[src++];
-				
-				buffer[12] = 4;
-
-				cnt++;
-				try {
-					if (avgrate != 0)
-						Thread.sleep((int) (avglen / avgrate * 1000));
-				} catch (Exception e) {
-					break;
-				}
-				rtpPacket.setTimestamp(SystemClock.elapsedRealtime() * 90);
+	}
 
-			} else {
-				number = 0;
-				buffer[12] = 0;
-			}
-			if (change) {
-				change = false;
-				long time = SystemClock.elapsedRealtime();
-
-				try {
-					while (fis.read(buffer, 14, frame_size) > 0 && SystemClock.elapsedRealtime() - time < 3000)
-						;
-				} catch (Exception e) {
-				}
-				number = 0;
-				buffer[12] = 0;
-			}
+	/*
+	 * A byte aligned picture or GOB start code: 16 zero
+	 * bits followed by a one bit
+	 */
+	private static boolean isStartCode(byte[] data, int offset, int end) {
+		return offset + 2 < end && data[offset] == 0 && data[offset + 1] == 0 && (data[offset + 2] & 0x80) != 0;
+	}
+
+	/*
+	 * The RTP timestamp advances with the temporal reference of
+	 * the pictures, i.e. with the capture time instead of the
+	 * time the picture leaves the encoder
+	 */
+	private long nextTimestamp(int temporalReference) {
+		
+		if (lastTemporalReference < 0) {
+			timestamp = SystemClock.elapsedRealtime() * 90;
+
+		} else {
+			
+			int delta = (temporalReference - lastTemporalReference) & 0xFF;
+			timestamp += (delta == 0 ? 1 : delta) * TICKS_PER_TR;
+		
 		}
+		
+		lastTemporalReference = temporalReference;
+		return timestamp;
+	
+	}
+	
+	/*
+	 * Wait until the picture is due, if the stream delivers 
+	 * pictures faster than their timestamps advance
+	 */
+	private void pace(long timestamp) throws InterruptedException {
+		
+		long now = SystemClock.elapsedRealtime();
+		long due = timelineStart + (timestamp - timelineTimestamp) / 90;
+		
+		if (timelineStarted == false || due > now + MAX_PACING_DELAY || due < now - MAX_PACING_DELAY) {
 
-		rtpSender.stop();
+			timelineStart = now;
+			timelineTimestamp = timestamp;
+			timelineStarted = true;
+			
+			return;
+		}
+		
+		if (due > now) Thread.sleep(due - now);
 
-		try {
-			while (fis.read(buffer, 0, frame_size) > 0)
-				;
-		} catch (IOException e) {
+	}
+	
+	private void count(int length) {
+		
+		long now = SystemClock.elapsedRealtime();
+		if (statisticsStart == 0) statisticsStart = now;
+		
+		frameCount++;
+		byteCount += length;
+		
+		if (now - statisticsStart >= 1000) {
+			
+			framesPerSecond = (int) (frameCount * 1000L / (now - statisticsStart));
+			bytesPerSecond  = (int) (byteCount * 1000L / (now - statisticsStart));
+			
+			frameCount = 0;
+			byteCount = 0;
+			statisticsStart = now;
+		
 		}
-	}	
-}
\ No newline at end of file
+
+	}
+
+}
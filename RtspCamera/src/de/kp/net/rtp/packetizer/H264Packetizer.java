@@ -5,275 +5,403 @@ import java.io.InputStream;
 import java.net.SocketException;
 
 import de.kp.net.rtp.RtpPacket;
+import de.kp.net.rtp.RtpRateController;
+import de.kp.net.rtp.RtpRateListener;
 import de.kp.net.rtp.RtpSender;
 import de.kp.net.rtsp.RtspConstants;
 
 import android.os.SystemClock;
 import android.util.Log;
 
-public class H264Packetizer extends AbstractPacketizer implements Runnable {
+/**
+ * This class packetizes H.264 NAL units as specified
+ * by RFC 6184 (non-interleaved mode): small parameter
+ * set and SEI units are aggregated into STAP-A packets,
+ * units that exceed the packet size are fragmented into
+ * FU-A packets, all others are sent as single NAL unit
+ * packets.
+ * 
+ * When the rate control lowers the frame rate, pictures
+ * that are not used for reference (nal_ref_idc = 0) are
+ * dropped. Baseline encoders emit reference pictures only;
+ * once one of them is dropped, all pictures up to the next
+ * IDR picture are dropped, as they depend on it. The encoder
+ * (MediaRecorder) can not be asked for a key frame, so the
+ * gap lasts until its next regular IDR picture; the credit
+ * saved meanwhile is spent on the following pictures.
+ */
+public class H264Packetizer extends AbstractPacketizer implements Runnable, RtpRateListener {
 
 	private final int packetSize = 1400;
 	
-	private long oldtime = SystemClock.elapsedRealtime(), delay = 20;
-	private long latency, oldlat = oldtime;
+	protected final int rtpHeaderLength = 12; // Rtp header length
+	
+	/*
+	 * NAL unit types (RFC 6184, Table 1)
+	 */
+	private static final int NAL_SLICE     = 1;
+	private static final int NAL_IDR_SLICE = 5;
+	private static final int NAL_SEI       = 6;
+	private static final int NAL_SPS       = 7;
+	private static final int NAL_PPS       = 8;
+	private static final int NAL_AUD       = 9;
+	private static final int NAL_STAP_A    = 24;
+	private static final int NAL_FU_A      = 28;
 	
-	private int available = 0, oldavailable = 0, nalUnitLength = 0, numberNalUnit = 0, len = 0;
-	private H264Fifo fifo = new H264Fifo(500000);
+	private String TAG = "H264Packetizer";
 
-	protected InputStream fis = null;
+	/*
+	 * The encoder output is drained into this buffer by a
+	 * separate thread, so that the encoder is not blocked 
+	 * while NAL units are packetized and sent
+	 */
+	private ByteRingBuffer fifo = new ByteRingBuffer(512 * 1024);
 
-	protected byte[] buffer = new byte[16384 * 2];
+	private byte[] buffer = new byte[packetSize];
+	private RtpPacket rtpPacket = new RtpPacket(buffer, 0);
 
-	protected final int rtpHeaderLength = 12; // Rtp header length
-	private String TAG = "H264Packetizer";
+	private int seqn = 0;
+	
+	/*
+	 * Payload length of the STAP-A packet that is built
+	 * in the buffer and the number of aggregated units
+	 */
+	private int aggregatedLength = 0;
+	private int aggregatedCount = 0;
+	private long aggregatedTimestamp;
+	
+	/*
+	 * Timestamp of the current access unit and whether
+	 * a slice of this access unit has been seen
+	 */
+	private long timestamp = -1;
+	private boolean sliceSeen = false;
+	
+	/*
+	 * Frame rate requested by the rate control, the credit
+	 * of pictures to send (in units of 1/FPS picture), 
+	 * whether the slices of the current picture are dropped
+	 * and whether all pictures up to the next IDR picture
+	 * are dropped
+	 */
+	private volatile int frameRate = RtspConstants.FPS;
+	private int frameCredit = 0;
+	private boolean dropping = false;
+	private boolean skipping = false;
+	private int droppedCount = 0;
 
 	public H264Packetizer(InputStream fis) throws SocketException {
 		this.fis = fis;
 		this.rtpSender = RtpSender.getInstance();
+		
+		rtpPacket.setPayloadType(RtspConstants.RTP_H264_PAYLOADTYPE);
 	}
 
 	public void run() {
 
-		int seqn = 0;
-		byte[] buffer = new byte[16384*2];
-
-		RtpPacket rtpPacket = new RtpPacket(buffer, 0);
-		rtpPacket.setPayloadType(RtspConstants.RTP_H264_PAYLOADTYPE);
-
-		// skip the mpeg4 header
-
-		try {
-
-			// skip all atoms preceding mdat atom
-			skipMDAT();
-
-			// some phones do not set length correctly when stream is not
-			// seekable, still we need to skip the header
-			if (len <= 0) {
-				while (true) {
-					while (fis.read() != 'm')
-						;
-					fis.read(buffer, rtpHeaderLength, 3);
-					if (buffer[rtpHeaderLength] == 'd' && buffer[rtpHeaderLength + 1] == 'a' && buffer[rtpHeaderLength + 2] == 't')
-						break;
-				}
+		Thread filler = new Thread(TAG + "Fill") {
+			public void run() {
+				fill();
 			}
-			len = 0;
-
-		} catch (IOException e) {
-			Log.w(TAG , e.getMessage());
-			return;
-		}
-
-		while (running) {
-			
-			/* If there are NAL units in the FIFO ready to be sent, we send one */
-			// send();
-
-			/*
-			 * Read a NAL unit in the FIFO and send it If it is too big, we
-			 * split it in FU-A units (RFC 3984)
-			 */
-			int sum = 1, len = 0, nalUnitLength;
-
-			if (numberNalUnit != 0) {
-
-				/* Read nal unit length (4 bytes) and nal unit header (1 byte) */
-				len = fifo.read(buffer, rtpHeaderLength, 5);
-				nalUnitLength = (buffer[rtpHeaderLength + 3] & 0xFF) + (buffer[rtpHeaderLength + 2] & 0xFF) * 256
-						+ (buffer[rtpHeaderLength + 1] & 0xFF) * 65536;
-
-//				 Log.d(TAG ,"send- NAL unit length: " + nalUnitLength);
-
-				// rsock.updateTimestamp(SystemClock.elapsedRealtime() * 90);
-				rtpPacket.setTimestamp(SystemClock.elapsedRealtime() * 90);
-
-				/* Small nal unit => Single nal unit */
-				if (nalUnitLength <= packetSize - rtpHeaderLength - 2) {
-
-					buffer[rtpHeaderLength] = buffer[rtpHeaderLength + 4];
-					len = fifo.read(buffer, rtpHeaderLength + 1, nalUnitLength - 1);
-
-					rtpPacket.setMarker(true);
-
-					try {
-
-						rtpPacket.setSequenceNumber(seqn++);
-						rtpPacket.setPayloadLength(nalUnitLength);
-					
-						rtpSender.send(rtpPacket);
-
-					} catch (IOException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}
-
-				}
-
-				/* Large nal unit => Split nal unit */
-				else {
-
-					/* Set FU-A indicator */
-					buffer[rtpHeaderLength] = 28;
-					buffer[rtpHeaderLength] += (buffer[rtpHeaderLength + 4] & 0x60) & 0xFF; // FU indicator
-					// NRI
-					// buffer[rtphl] += 0x80;
-
-					/* Set FU-A header */
-					buffer[rtpHeaderLength + 1] = (byte) (buffer[rtpHeaderLength + 4] & 0x1F); // FU header
-					// type
-					buffer[rtpHeaderLength + 1] += 0x80; // Start bit
-
-					while (sum < nalUnitLength) {
-
-						if (!running)
-							break;
-						
-						len = fifo.read(buffer, 
-								rtpHeaderLength + 2, 
-								nalUnitLength - sum > packetSize - rtpHeaderLength - 2 ? packetSize - rtpHeaderLength - 2 : nalUnitLength - sum);
-						sum += len;
-						if (len < 0)
-							break;
-
-						/* Last packet before next NAL */
-						if (sum >= nalUnitLength) {
-							// End bit on
-							buffer[rtpHeaderLength + 1] += 0x40;
-
-							// rsock.markNextPacket();
-							rtpPacket.setMarker(true);
-
-						}
-
-						try {
-							
-							// rsock.send(len + rtpHeaderLength + 2);
-							rtpPacket.setSequenceNumber(seqn++);
-							rtpPacket.setPayloadLength(len + 2);
-
-							rtpSender.send(rtpPacket);
-							
-						} catch (IOException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-
-						/* Switch start bit */
-						buffer[rtpHeaderLength + 1] = (byte) (buffer[rtpHeaderLength + 1] & 0x7F);
+		};
+		
+		filler.setDaemon(true);
+		filler.start();
+		
+		NalUnitReader reader = new NalUnitReader(fifo.getInputStream());
 
-//						Log.d(TAG,"send--- FU-A unit, end:"+(boolean)(sum >= nalUnitLength));
+		RtpRateController rateController = RtpRateController.getInstance();
+		rateController.configure(RtspConstants.BITRATE * 250, RtspConstants.BITRATE * 1000, 1, RtspConstants.FPS);
+		rateController.addListener(this);
 
-					}
+		try {
 
+			while (running) {
+				
+				int length = reader.readNalUnit();
+				if (length < 0) break;
+				
+				if (length == 0) continue;
+				
+				byte[] nalUnit = reader.getNalUnit();
+				
+				/*
+				 * The encoder output carries no presentation time; so
+				 * each access unit is stamped when its first NAL unit
+				 * is delivered by the encoder (90 kHz clock)
+				 */
+				if (startsAccessUnit(nalUnit, length)) {
+					timestamp = SystemClock.elapsedRealtime() * 90;
+					sliceSeen = false;
 				}
+				
+				if (isDropped(nalUnit, length)) continue;
+				
+				send(nalUnit, 0, length, timestamp);
 
-				numberNalUnit--;
-
-//				Log.d(TAG,"NAL UNIT SENT> " + numberNalUnit);
 			}
 
-			/*
-			 * If the camera has delivered new NAL units we copy them in the
-			 * FIFO Then, the delay between two send call is latency/nbNalu
-			 * with: latency: how long it took to the camera to output new data
-			 * nbNalu: number of NAL units in the FIFO
-			 */
-			fillFifo();
-
-			try {
-				Thread.sleep(delay);
+			flush();
 
-			} catch (InterruptedException e) {
-				return;
-			}
+		} catch (IOException e) {
+			if (running) Log.w(TAG , "H264 packetizing failed: " + e.getMessage());
 
+		} finally {
+			rateController.removeListener(this);
+			fifo.close();
 		}
 
+		Log.d(TAG, "pictures dropped by rate control: " + droppedCount);
+
 	}
 
-	// skip all atoms preceeding mdat atom
+	public void onRateChanged(int bitRate, int frameRate) {
+		this.frameRate = frameRate;
+	}
 	
-	private void skipMDAT() throws IOException {
-
-		while (true) {
+	/*
+	 * Decide at the first slice of a picture, whether the 
+	 * picture is sent at the requested frame rate; a dropped
+	 * picture still counts as seen for the access unit logic.
+	 * IDR pictures are always sent, they end a gap
+	 */
+	private boolean isDropped(byte[] nalUnit, int length) {
+		
+		int type = nalUnit[0] & 0x1F;
+		if (type < NAL_SLICE || type > NAL_IDR_SLICE) return false;
+		
+		if (length > 1 && (nalUnit[1] & 0x80) != 0) {
 			
-			fis.read(buffer, rtpHeaderLength, 8);
-			if (buffer[rtpHeaderLength + 4] == 'm' && buffer[rtpHeaderLength + 5] == 'd' && buffer[rtpHeaderLength + 6] == 'a' && buffer[rtpHeaderLength + 7] == 't')
-				break;
+			frameCredit += frameRate;
+			if (type == NAL_IDR_SLICE) {
+				frameCredit = Math.max(frameCredit - RtspConstants.FPS, 0);
+				dropping = false;
+				skipping = false;
 			
-			len = (buffer[rtpHeaderLength + 3] & 0xFF) + (buffer[rtpHeaderLength + 2] & 0xFF) * 256 + (buffer[rtpHeaderLength + 1] & 0xFF) * 65536;
-			if (len <= 0)
-				break;
-
-			fis.read(buffer, rtpHeaderLength, len - 8);
+			} else if (skipping) {
+				dropping = true;
+				droppedCount++;
+			
+			} else if (frameCredit >= RtspConstants.FPS) {
+				frameCredit -= RtspConstants.FPS;
+				dropping = false;
+			
+			} else if ((nalUnit[0] & 0x60) != 0) {
+				// reference picture, the following pictures depend on it
+				skipping = true;
+				dropping = true;
+				droppedCount++;
+			
+			} else {
+				dropping = true;
+				droppedCount++;
+			
+			}
 		
 		}
-
-	}
+		
+		if (dropping) sliceSeen = true;
+		return dropping;
 	
-	private void fillFifo() {
+	}
 
+	/*
+	 * Copy the encoder output into the fifo until the
+	 * stream ends or is closed by stopStreaming
+	 */
+	private void fill() {
+		
+		byte[] chunk = new byte[8192];
+		
 		try {
-
-			available = fis.available();
-
-			if (available > oldavailable) {
-
-				long now = SystemClock.elapsedRealtime();
-				latency = now - oldlat;
-				
-				oldlat = now;
-				oldavailable = available;
+			
+			int count;
+			while ((count = fis.read(chunk, 0, chunk.length)) >= 0) {
+				fifo.write(chunk, 0, count);
 			}
+			
+		} catch (IOException e) {
+			if (running && fifo.isClosed() == false) Log.w(TAG , "Reading encoder output failed: " + e.getMessage());
 
-			if (numberNalUnit == 0 && available > 4) {
-				numberNalUnit = nalUnitLength - len == 0 ? numberNalUnit : numberNalUnit + 1;
-			} else
-				return;
-
-			while ((available = fis.available()) >= 4) {
-
-				fis.read(buffer, rtpHeaderLength, nalUnitLength - len);
-				fifo.write(buffer, rtpHeaderLength, nalUnitLength - len);
+		} finally {
+			fifo.close();
+		}
+		
+		Log.d(TAG, "fifo stalls: " + fifo.getStallCount());
 
-				/* Read NAL unit and copy it in the fifo */
-				len = fis.read(buffer, rtpHeaderLength, 4);
-				nalUnitLength = (buffer[rtpHeaderLength + 3] & 0xFF) + (buffer[rtpHeaderLength + 2] & 0xFF) * 256
-						+ (buffer[rtpHeaderLength + 1] & 0xFF) * 65536;
-				
-				len = fis.read(buffer, rtpHeaderLength + 4, nalUnitLength);
-				fifo.write(buffer, rtpHeaderLength, len + 4);
+	}
 
-				if (len == nalUnitLength)
-					numberNalUnit++;
+	/**
+	 * Send a single NAL unit (without start code or length 
+	 * prefix). VCL NAL units terminate the access unit, i.e.
+	 * the encoder is expected to emit one slice per picture.
+	 * 
+	 * @param nalUnit
+	 * @param offset
+	 * @param length
+	 * @param timestamp RTP timestamp (90 kHz clock)
+	 * @throws IOException
+	 */
+	public void send(byte[] nalUnit, int offset, int length, long timestamp) throws IOException {
+		
+		int type = nalUnit[offset] & 0x1F;
+		boolean slice = (type >= NAL_SLICE && type <= NAL_IDR_SLICE);
+		
+		if (slice) sliceSeen = true;
+		
+		// units of a STAP-A packet must share the timestamp
+		if (aggregatedCount > 0 && aggregatedTimestamp != timestamp) flush();
+		
+		if (isAggregatable(type) || aggregatedCount > 0) {
 
-//				Log.i(TAG,"fifo- available: " + available + ", len: " + len + ", naluLength: " + nalUnitLength);
+			if (aggregate(nalUnit, offset, length, timestamp)) {
+				if (slice) flush(true);
+				return;
+			}
 
-				if (fis.available() < 4) {
+			flush();
 
-					delay = latency / numberNalUnit;
-					oldavailable = fis.available();
-//					Log.i(TAG,"fifo- latency: "+latency+", nbNalu: "+numberNalUnit+", delay: "+delay+" avfifo: "+fifo.available());
+			if (isAggregatable(type) && aggregate(nalUnit, offset, length, timestamp)) return;
 
-				}
+		}
+		
+		if (length <= packetSize - rtpHeaderLength) {
+			sendSingle(nalUnit, offset, length, timestamp, slice);
 
-			}
+		} else {
+			sendFragmented(nalUnit, offset, length, timestamp, slice);
+		
+		}
+	
+	}
 
+	/*
+	 * A new access unit begins with an access unit delimiter,
+	 * parameter set or SEI following a slice, or with the
+	 * first slice of a picture (first_mb_in_slice = 0)
+	 */
+	private boolean startsAccessUnit(byte[] nalUnit, int length) {
+		
+		if (timestamp < 0) return true;
+		
+		int type = nalUnit[0] & 0x1F;
+		if (type == NAL_AUD) return true;
+		
+		if (type >= NAL_SLICE && type <= NAL_IDR_SLICE) {
+			return sliceSeen && length > 1 && (nalUnit[1] & 0x80) != 0;
 		}
+		
+		return sliceSeen && (type == NAL_SEI || type == NAL_SPS || type == NAL_PPS);
 
-		catch (IOException e) {
-			return;
+	}
+	
+	private boolean isAggregatable(int type) {
+		return type == NAL_SEI || type == NAL_SPS || type == NAL_PPS || type == NAL_AUD;
+	}
+	
+	/*
+	 * Append a NAL unit to the STAP-A packet in the buffer,
+	 * if it fits
+	 */
+	private boolean aggregate(byte[] nalUnit, int offset, int length, long timestamp) {
+		
+		int start = (aggregatedCount == 0) ? rtpHeaderLength + 1 : rtpHeaderLength + aggregatedLength;
+		if (start + 2 + length > packetSize) return false;
+		
+		if (aggregatedCount == 0) {
+			buffer[rtpHeaderLength] = NAL_STAP_A;
+			aggregatedLength = 1;
+			aggregatedTimestamp = timestamp;
 		}
+		
+		// F is set, if any unit has it set; NRI is the maximum
+		int indicator = buffer[rtpHeaderLength] & 0xFF;
+		int nal = nalUnit[offset] & 0xFF;
+		buffer[rtpHeaderLength] = (byte) ((indicator & 0x80) | (nal & 0x80) | Math.max(indicator & 0x60, nal & 0x60) | NAL_STAP_A);
+		
+		buffer[start]     = (byte) (length >> 8);
+		buffer[start + 1] = (byte) length;
+		System.arraycopy(nalUnit, offset, buffer, start + 2, length);
+		
+		aggregatedLength += 2 + length;
+		aggregatedCount++;
+		
+		return true;
+	
+	}
+	
+	private void flush() throws IOException {
+		flush(false);
+	}
+	
+	/*
+	 * Send the STAP-A packet in the buffer; a single unit
+	 * is sent as single NAL unit packet instead
+	 */
+	private void flush(boolean marker) throws IOException {
+		
+		if (aggregatedCount == 0) return;
+		
+		int length = aggregatedLength;
+		if (aggregatedCount == 1) {
+			length -= 3;
+			System.arraycopy(buffer, rtpHeaderLength + 3, buffer, rtpHeaderLength, length);
+		}
+		
+		aggregatedCount = 0;
+		aggregatedLength = 0;
+		
+		sendPacket(length, aggregatedTimestamp, marker);
 
 	}
+	
+	private void sendSingle(byte[] nalUnit, int offset, int length, long timestamp, boolean marker) throws IOException {
+		
+		System.arraycopy(nalUnit, offset, buffer, rtpHeaderLength, length);
+		sendPacket(length, timestamp, marker);
+	
+	}
+	
+	/*
+	 * Split a NAL unit into FU-A units (RFC 6184, 5.8); the NAL
+	 * header is not sent but carried by FU indicator and header
+	 */
+	private void sendFragmented(byte[] nalUnit, int offset, int length, long timestamp, boolean marker) throws IOException {
+		
+		int nal = nalUnit[offset] & 0xFF;
+		
+		int sum = 1;
+		while (sum < length) {
+			
+			int len = Math.min(length - sum, packetSize - rtpHeaderLength - 2);
+			
+			/* FU indicator: F and NRI of the unit, type 28 */
+			buffer[rtpHeaderLength] = (byte) ((nal & 0xE0) | NAL_FU_A);
+			
+			/* FU header: start and end bit, type of the unit */
+			int header = nal & 0x1F;
+			if (sum == 1) header |= 0x80;
+			if (sum + len == length) header |= 0x40;
+			
+			buffer[rtpHeaderLength + 1] = (byte) header;
+			System.arraycopy(nalUnit, offset + sum, buffer, rtpHeaderLength + 2, len);
+			
+			sum += len;
+			sendPacket(len + 2, timestamp, marker && sum == length);
+
+		}
 
-    // Useful for debug
-    protected String printBuffer(int start,int end) {
-            String str = "";
-            for (int i=start;i<end;i++) str+=","+Integer.toHexString(buffer[i]&0xFF);
-            return str;
-    }
+	}
+	
+	private void sendPacket(int payloadLength, long timestamp, boolean marker) throws IOException {
+		
+		rtpPacket.setSequenceNumber(seqn++);
+		rtpPacket.setTimestamp(timestamp);
+		rtpPacket.setMarker(marker);
+		rtpPacket.setPayloadLength(payloadLength);
+		
+		rtpSender.send(rtpPacket);
+	
+	}
 
 }
@@ -0,0 +1,125 @@
+package de.kp.net.rtp.packetizer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Helpers to read the 3GP/MP4 stream of the MediaRecorder,
+ * which is shared by the H.263 and H.264 readers.
+ */
+final class Mp4Atoms {
+
+	private static final byte[] MDAT = { 'm', 'd', 'a', 't' };
+	
+	private Mp4Atoms() {
+	}
+	
+	/**
+	 * Skip all atoms preceding the mdat atom; the size of
+	 * the first atom is expected in header[0..3].
+	 * 
+	 * @param is
+	 * @param header at least 16 bytes
+	 * @throws IOException
+	 */
+	static void skipToMdat(InputStream is, byte[] header) throws IOException {
+		
+		while (true) {
+			
+			if (readFully(is, header, 4, 4) == false) throw new EOFException();
+			if (isMdat(header, 4)) return;
+			
+			long size = readInt(header, 0) & 0xFFFFFFFFL;
+			long skip = size - 8;
+
+			if (size == 1) {
+				// 64 bit extended size
+				if (readFully(is, header, 8, 8) == false) throw new EOFException();
+				skip = ((readInt(header, 8) & 0xFFFFFFFFL) << 32 | (readInt(header, 12) & 0xFFFFFFFFL)) - 16;
+			}
+			
+			if (size == 0 || skip < 0) {
+				
+				// some phones do not set the length correctly when the
+				// stream is not seekable, so we search the mdat atom
+				scanForMdat(is);
+				return;
+
+			}
+			
+			skip(is, skip);
+			if (readFully(is, header, 0, 4) == false) throw new EOFException();
+		
+		}
+
+	}
+
+	private static void scanForMdat(InputStream is) throws IOException {
+		
+		int matched = 0;
+		while (matched < 4) {
+			
+			int b = is.read();
+			if (b < 0) throw new EOFException();
+			
+			if (b == MDAT[matched]) {
+				matched++;
+			} else {
+				matched = (b == MDAT[0]) ? 1 : 0;
+			}
+
+		}
+
+	}
+
+	private static boolean isMdat(byte[] data, int offset) {
+		return data[offset] == 'm' && data[offset + 1] == 'd' && data[offset + 2] == 'a' && data[offset + 3] == 't';
+	}
+
+	private static void skip(InputStream is, long count) throws IOException {
+		
+		while (count > 0) {
+			
+			long skipped = is.skip(count);
+			if (skipped <= 0) {
+				if (is.read() < 0) throw new EOFException();
+				skipped = 1;
+			}
+			
+			count -= skipped;
+		
+		}
+
+	}
+	
+	/**
+	 * Read exactly length bytes.
+	 * 
+	 * @return false, if the stream ends before the first byte
+	 * @throws IOException
+	 */
+	static boolean readFully(InputStream is, byte[] buffer, int offset, int length) throws IOException {
+		
+		int done = 0;
+		while (done < length) {
+			
+			int count = is.read(buffer, offset + done, length - done);
+			if (count < 0) {
+				if (done == 0) return false;
+				throw new EOFException();
+			}
+			
+			done += count;
+
+		}
+		
+		return true;
+	
+	}
+	
+	static int readInt(byte[] data, int offset) {
+		return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+	}
+
+}
@@ -0,0 +1,168 @@
+package de.kp.net.rtp.packetizer;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This class reads H.264 NAL units from an encoder output
+ * stream. Both AVCC input, i.e. length prefixed NAL units
+ * within the mdat atom of a 3GP/MP4 stream, and Annex-B
+ * input, i.e. NAL units separated by start codes, are
+ * supported; the format is detected from the first bytes.
+ */
+public class NalUnitReader {
+
+	/*
+	 * The input format is detected by the first call
+	 * of readNalUnit
+	 */
+	private static final int FORMAT_UNKNOWN = 0;
+	private static final int FORMAT_AVCC    = 1;
+	private static final int FORMAT_ANNEX_B = 2;
+	
+	private InputStream is;
+	private int format = FORMAT_UNKNOWN;
+	
+	/*
+	 * This buffer holds the last NAL unit read; it is 
+	 * reused and grows with the largest NAL unit
+	 */
+	private byte[] nalUnit = new byte[65536];
+	
+	private byte[] header = new byte[16];
+	
+	/*
+	 * Annex-B only: the first byte of the next NAL unit has
+	 * already been consumed while searching the start code
+	 */
+	private int pending = -1;
+	
+	public NalUnitReader(InputStream is) {
+		this.is = new BufferedInputStream(is);
+	}
+	
+	/**
+	 * Returns the buffer holding the NAL unit that
+	 * was read by the last call of readNalUnit
+	 */
+	public byte[] getNalUnit() {
+		return nalUnit;
+	}
+
+	/**
+	 * Read the next NAL unit into the buffer returned 
+	 * by getNalUnit (blocking method).
+	 * 
+	 * @return length of the NAL unit, -1 at end of stream
+	 * @throws IOException
+	 */
+	public int readNalUnit() throws IOException {
+		
+		if (format == FORMAT_UNKNOWN) {
+			if (readFully(header, 0, 4) == false) return -1;
+			format = detectFormat();
+		}
+		
+		if (format == FORMAT_ANNEX_B) {
+			return readAnnexB();
+		}
+		
+		return readAvcc();
+
+	}
+	
+	/*
+	 * The first four bytes of the stream are expected
+	 * in header[0..3]
+	 */
+	private int detectFormat() throws IOException {
+		
+		if (header[0] == 0 && header[1] == 0) {
+
+			if (header[2] == 1) {
+				pending = header[3] & 0xFF;
+				return FORMAT_ANNEX_B;
+			}
+			
+			if (header[2] == 0 && header[3] == 1) {
+				pending = is.read();
+				return FORMAT_ANNEX_B;
+			}
+		}
+		
+		// the four bytes are the size of the first atom
+		Mp4Atoms.skipToMdat(is, header);
+		return FORMAT_AVCC;
+
+	}
+	
+	private int readAvcc() throws IOException {
+		
+		if (readFully(header, 0, 4) == false) return -1;
+		
+		int length = Mp4Atoms.readInt(header, 0);
+		if (length < 0) throw new IOException("Invalid NAL unit length: " + length);
+		
+		ensureCapacity(length);
+		if (readFully(nalUnit, 0, length) == false) throw new EOFException();
+		
+		return length;
+
+	}
+	
+	/*
+	 * The NAL unit ends with the next start code, i.e. we
+	 * only know it is complete when the next one begins
+	 */
+	private int readAnnexB() throws IOException {
+		
+		int length = 0;
+		int zeros  = 0;
+		
+		int b = pending;
+		pending = -1;
+
+		while (b >= 0) {
+			
+			if (b == 1 && zeros >= 2) {
+
+				// start code of the next NAL unit; the leading zeros
+				// are either part of it or trailing zero bytes
+				pending = is.read();
+				return length - zeros;
+
+			}
+			
+			zeros = (b == 0) ? zeros + 1 : 0;
+			
+			ensureCapacity(length + 1);
+			nalUnit[length++] = (byte) b;
+			
+			b = is.read();
+		
+		}
+
+		// end of stream terminates the last NAL unit
+		length -= zeros;
+		return (length > 0) ? length : -1;
+	
+	}
+	
+	private void ensureCapacity(int length) {
+		
+		if (nalUnit.length >= length) return;
+		
+		byte[] buffer = new byte[Math.max(length, nalUnit.length * 2)];
+		System.arraycopy(nalUnit, 0, buffer, 0, nalUnit.length);
+		
+		nalUnit = buffer;
+	
+	}
+	
+	private boolean readFully(byte[] buffer, int offset, int length) throws IOException {
+		return Mp4Atoms.readFully(is, buffer, offset, length);
+	}
+
+}
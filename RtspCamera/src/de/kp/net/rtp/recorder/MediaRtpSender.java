@@ -74,7 +74,7 @@ public class MediaRtpSender {
 
             // Create the output stream aka the Renderer
             outputStream = new RtpOutputStream();
-            // outputStream.open();
+            outputStream.open();
 			
             if (logger.isActivated()) {
 				logger.debug("Output stream: " + outputStream.getClass().getName());
@@ -30,14 +30,19 @@ import com.orangelabs.rcs.core.ims.protocol.rtp.format.video.VideoFormat;
 import com.orangelabs.rcs.core.ims.protocol.rtp.media.MediaException;
 import com.orangelabs.rcs.core.ims.protocol.rtp.media.MediaInput;
 import com.orangelabs.rcs.core.ims.protocol.rtp.media.MediaSample;
+import com.orangelabs.rcs.core.ims.protocol.rtp.media.MediaSampleQueue;
 import com.orangelabs.rcs.service.api.client.media.IMediaEventListener;
 import com.orangelabs.rcs.service.api.client.media.IMediaPlayer;
 import com.orangelabs.rcs.service.api.client.media.MediaCodec;
 import com.orangelabs.rcs.service.api.client.media.video.VideoCodec;
-import com.orangelabs.rcs.utils.FifoBuffer;
 import com.orangelabs.rcs.utils.logger.Logger;
 
+import de.kp.net.rtp.RtpRateController;
+import de.kp.net.rtp.RtpRateListener;
+
+import android.graphics.ImageFormat;
 import android.hardware.Camera;
+import android.os.Build;
 import android.os.SystemClock;
 import android.util.Log;
 
@@ -46,7 +51,7 @@ import java.util.Vector;
 /**
  * Live RTP video player. Supports only H.263 and H264 QCIF formats.
  */
-public class RtspVideoRecorder extends IMediaPlayer.Stub implements Camera.PreviewCallback {
+public class RtspVideoRecorder extends IMediaPlayer.Stub implements Camera.PreviewCallback, RtpRateListener {
 
     /**
      * List of supported video codecs
@@ -90,6 +95,11 @@ public class RtspVideoRecorder extends IMediaPlayer.Stub implements Camera.Previ
      */
     private CameraBuffer frameBuffer = null;
 
+    /**
+     * Video capture thread
+     */
+    private CaptureThread captureThread = null;
+
     /**
      * Is player opened
      */
@@ -98,7 +108,7 @@ public class RtspVideoRecorder extends IMediaPlayer.Stub implements Camera.Previ
     /**
      * Is player started
      */
-    private boolean started = false;
+    private volatile boolean started = false;
 
     /**
      * Video start time
@@ -117,6 +127,23 @@ public class RtspVideoRecorder extends IMediaPlayer.Stub implements Camera.Previ
 
 	private String TAG = "RtspVideoRecorder";
 
+    /**
+     * Lowest frame rate the rate control may choose
+     */
+    private static final int MIN_FRAME_RATE = 5;
+
+    /**
+     * Minimum time (ms) between two re-initializations of the
+     * encoder, as each one starts with an intra frame
+     */
+    private static final long ENCODER_UPDATE_INTERVAL = 5000;
+
+    /**
+     * Target rates of the rate control
+     */
+    private volatile int targetBitRate;
+    private volatile int targetFrameRate;
+
     /**
      * Constructor
      */
@@ -221,16 +248,7 @@ public class RtspVideoRecorder extends IMediaPlayer.Stub implements Camera.Previ
 
             } else if (selectedVideoCodec.getCodecName().equalsIgnoreCase(H263Config.CODEC_NAME)) {
                 // Default H263
-                NativeH263EncoderParams params = new NativeH263EncoderParams();
-            
-                params.setEncFrameRate(selectedVideoCodec.getFramerate());
-                params.setBitRate(selectedVideoCodec.getBitrate());
-                
-                params.setTickPerSrc(params.getTimeIncRes() / selectedVideoCodec.getFramerate());
-                params.setIntraPeriod(-1);
-                params.setNoFrameSkipped(false);
-                
-                int result = NativeH263Encoder.InitEncoder(params);
+                int result = initH263Encoder(selectedVideoCodec.getBitrate(), selectedVideoCodec.getFramerate());
                 
                 if (result != 1) {
                 	
@@ -274,6 +292,45 @@ public class RtspVideoRecorder extends IMediaPlayer.Stub implements Camera.Previ
         // Player is opened
         opened = true;
 
+        // Follow the receiver reports
+        targetBitRate = selectedVideoCodec.getBitrate();
+        targetFrameRate = selectedVideoCodec.getFramerate();
+
+        RtpRateController rateController = RtpRateController.getInstance();
+        rateController.configure(targetBitRate / 4, targetBitRate, Math.min(MIN_FRAME_RATE, targetFrameRate), targetFrameRate);
+        rateController.addListener(this);
+
+    }
+
+    /**
+     * Init the H.263 encoder
+     *
+     * @param bitRate Bit rate
+     * @param frameRate Frame rate
+     * @return Result code of the encoder
+     */
+    private int initH263Encoder(int bitRate, int frameRate) {
+        NativeH263EncoderParams params = new NativeH263EncoderParams();
+
+        params.setEncFrameRate(frameRate);
+        params.setBitRate(bitRate);
+
+        params.setTickPerSrc(params.getTimeIncRes() / frameRate);
+        params.setIntraPeriod(-1);
+        params.setNoFrameSkipped(false);
+
+        return NativeH263Encoder.InitEncoder(params);
+    }
+
+    /**
+     * Rate changed by the rate control
+     *
+     * @param bitRate Bit rate
+     * @param frameRate Frame rate
+     */
+    public void onRateChanged(int bitRate, int frameRate) {
+        targetBitRate = bitRate;
+        targetFrameRate = frameRate;
     }
 
     /**
@@ -284,7 +341,14 @@ public class RtspVideoRecorder extends IMediaPlayer.Stub implements Camera.Previ
             // Already closed
             return;
         }
+        RtpRateController.getInstance().removeListener(this);
+
         // Close the RTP layer
+        if (logger.isActivated()) {
+            logger.debug("Frame queue: high-water mark " + rtpInput.getHighWaterMark()
+                    + ", " + rtpInput.getDroppedCount() + " of " + rtpInput.getAddedCount() + " frames dropped"
+                    + ", latency " + rtpInput.getAverageLatency() + " ms average, " + rtpInput.getMaxLatency() + " ms max");
+        }
         rtpInput.close();
         rtpMediaSender.stopSession();
 
@@ -324,6 +388,7 @@ public class RtspVideoRecorder extends IMediaPlayer.Stub implements Camera.Previ
         rtpMediaSender.startSession();
         
         // Start capture
+        captureThread = new CaptureThread();
         captureThread.start();
 
         // Player is started
@@ -416,6 +481,35 @@ public class RtspVideoRecorder extends IMediaPlayer.Stub implements Camera.Previ
         }
     }
 
+    /**
+     * Attach the camera. From API level 8 on, preview frames are
+     * delivered in the reusable buffers of the frame pool, which are
+     * given back to the camera once a frame is encoded or skipped.
+     * Call after the preview size has been set.
+     *
+     * @param camera Camera
+     */
+    public void attachCamera(Camera camera) {
+        if (frameBuffer != null) {
+            frameBuffer.attach(camera);
+        } else {
+            camera.setPreviewCallback(this);
+        }
+    }
+
+    /**
+     * Detach the camera, before it is released
+     *
+     * @param camera Camera
+     */
+    public void detachCamera(Camera camera) {
+        if (frameBuffer != null) {
+            frameBuffer.detach(camera);
+        } else {
+            camera.setPreviewCallback(null);
+        }
+    }
+
     /**
      * Preview frame from the camera
      *
@@ -424,108 +518,346 @@ public class RtspVideoRecorder extends IMediaPlayer.Stub implements Camera.Previ
      */
     public void onPreviewFrame(byte[] data, Camera camera) {
         if (frameBuffer != null)
-            frameBuffer.setFrame(data);
+            frameBuffer.setFrame(data, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Returns the average time (ms) from the capture of a frame until
+     * it is handed to the RTP sender
+     *
+     * @return Latency
+     */
+    public long getAverageLatency() {
+        MediaRtpInput input = rtpInput;
+        return (input != null) ? input.getAverageLatency() : 0;
     }
 
     /**
-     * Camera buffer
+     * Returns the highest time (ms) from the capture of a frame until
+     * it is handed to the RTP sender
+     *
+     * @return Latency
+     */
+    public long getMaxLatency() {
+        MediaRtpInput input = rtpInput;
+        return (input != null) ? input.getMaxLatency() : 0;
+    }
+
+    /**
+     * Camera buffer: holds the last captured frame until the capture
+     * thread takes it. A frame that is replaced before it is taken
+     * is skipped.
      */
     private class CameraBuffer {
         /**
-         * YUV frame where frame size is always (videoWidth*videoHeight*3)/2
+         * Number of preview buffers: one filled by the camera, one
+         * waiting and one being encoded
+         */
+        private static final int BUFFER_COUNT = 3;
+
+        /**
+         * Camera the buffers are given back to, null if the camera
+         * allocates the frames itself
+         */
+        private Camera camera = null;
+
+        /**
+         * Size of the preview buffers
+         */
+        private int frameSize = 0;
+
+        /**
+         * YUV frame waiting to be encoded
+         */
+        private byte frame[] = null;
+
+        /**
+         * Capture time of the waiting frame
+         */
+        private long captureTime;
+
+        /**
+         * Capture time of the frame taken last
+         */
+        private long takenCaptureTime;
+
+        /**
+         * Register the preview callback and the preview buffers
+         *
+         * @param camera Camera
          */
-        private byte frame[] = new byte[(selectedVideoCodec.getWidth()
-                * selectedVideoCodec.getHeight() * 3) / 2];
+        public synchronized void attach(Camera camera) {
+            frame = null;
+
+            if (Build.VERSION.SDK_INT >= 8) {
+                Camera.Parameters parameters = camera.getParameters();
+                Camera.Size size = parameters.getPreviewSize();
+                frameSize = size.width * size.height * ImageFormat.getBitsPerPixel(parameters.getPreviewFormat()) / 8;
+
+                this.camera = camera;
+                camera.setPreviewCallbackWithBuffer(RtspVideoRecorder.this);
+                for (int i = 0; i < BUFFER_COUNT; i++) {
+                    camera.addCallbackBuffer(new byte[frameSize]);
+                }
+            } else {
+                camera.setPreviewCallback(RtspVideoRecorder.this);
+            }
+        }
+
+        /**
+         * Unregister the preview callback
+         *
+         * @param camera Camera
+         */
+        public synchronized void detach(Camera camera) {
+            if (this.camera != null) {
+                this.camera = null;
+                camera.setPreviewCallbackWithBuffer(null);
+            } else {
+                camera.setPreviewCallback(null);
+            }
+            frame = null;
+        }
 
         /**
          * Set the last captured frame
          *
          * @param frame Frame
+         * @param captureTime Capture time
          */
-        public void setFrame(byte[] frame) {
+        public synchronized void setFrame(byte[] frame, long captureTime) {
+            if (this.frame != null) {
+                // The capture thread didn't keep up
+                recycle(this.frame);
+            }
+
             this.frame = frame;
+            this.captureTime = captureTime;
+            notifyAll();
         }
 
         /**
-         * Return the last captured frame
+         * Wait for and take the next captured frame
          *
          * @return Frame
+         * @throws InterruptedException
          */
-        public byte[] getFrame() {
-            return frame;
+        public synchronized byte[] takeFrame() throws InterruptedException {
+            while (frame == null) {
+                wait();
+            }
+
+            byte[] data = frame;
+            frame = null;
+            takenCaptureTime = captureTime;
+            return data;
         }
-    }
 
-    /**
-     * Video capture thread
-     */
-    private Thread captureThread = new Thread() {
         /**
-         * Timestamp
+         * Return the capture time of the frame taken last
+         *
+         * @return Time (ms)
          */
-        private long timeStamp = 0;
+        public synchronized long getCaptureTime() {
+            return takenCaptureTime;
+        }
 
+        /**
+         * Give a frame that is no longer used back to the camera
+         *
+         * @param data Frame
+         */
+        public synchronized void recycle(byte[] data) {
+            if ((camera != null) && (data.length == frameSize)) {
+                camera.addCallbackBuffer(data);
+            }
+        }
+    }
+
+    /**
+     * Video capture thread, encodes each frame as it is captured
+     */
+    private class CaptureThread extends Thread {
         /**
          * Processing
          */
         public void run() {
-//            if (rtpInput == null) {
-//                return;
-//            }
-
-            int timeToSleep = 1000 / selectedVideoCodec.getFramerate();
-            int timestampInc = 90000 / selectedVideoCodec.getFramerate();
-            byte[] frameData;
-            byte[] encodedFrame;
-            long encoderTs = 0;
-            long oldTs = System.currentTimeMillis();
-
-            while (started) {
-                // Set timestamp
-                long time = System.currentTimeMillis();
-                encoderTs = encoderTs + (time - oldTs);
-
-                // Get data to encode
-                frameData = frameBuffer.getFrame();
-                
-                // Encode frame
-                int encodeResult;
-                if (selectedVideoCodec.getCodecName().equalsIgnoreCase(H264Config.CODEC_NAME)) {
-                    encodedFrame = NativeH264Encoder.EncodeFrame(frameData, encoderTs);
-                    encodeResult = NativeH264Encoder.getLastEncodeStatus();
-                } else {
-                    encodedFrame = NativeH263Encoder.EncodeFrame(frameData, encoderTs);
-                    encodeResult = 0;
-                }
+            boolean h264 = selectedVideoCodec.getCodecName().equalsIgnoreCase(H264Config.CODEC_NAME);
 
-                if (encodeResult == 0 && encodedFrame.length > 0) {
-                    // Send encoded frame                	
-                    rtpInput.addFrame(encodedFrame, timeStamp += timestampInc);
-                }
+            int encoderBitRate = selectedVideoCodec.getBitrate();
+            int encoderFrameRate = selectedVideoCodec.getFramerate();
+            long encoderUpdate = SystemClock.elapsedRealtime();
+            long encoderDropped = 0;
+
+            long startTime = -1;
+            long nextCaptureTime = 0;
+
+            try {
+                while (started) {
+                    // Wait for the next frame
+                    byte[] frameData = frameBuffer.takeFrame();
+                    long time = frameBuffer.getCaptureTime();
+
+                    /*
+                     * The H.263 encoder is re-initialized for a new frame
+                     * rate or a bit rate that differs by more than 25%,
+                     * and after frames have been dropped from the queue,
+                     * as its intra frame ends the errors of the dropped
+                     * predicted frames
+                     */
+                    int frameRate = targetFrameRate;
+
+                    int bitRate = targetBitRate;
+                    long dropped = rtpInput.getDroppedCount();
+                    if (!h264 && time - encoderUpdate >= ENCODER_UPDATE_INTERVAL
+                            && (Math.abs(bitRate - encoderBitRate) * 4 > encoderBitRate || frameRate != encoderFrameRate
+                                    || dropped != encoderDropped)) {
+
+                        NativeH263Encoder.DeinitEncoder();
+                        if (initH263Encoder(bitRate, frameRate) != 1) {
+                            if (logger.isActivated()) {
+                                logger.error("Can't re-init the video encoder");
+                            }
+                            frameBuffer.recycle(frameData);
+                            break;
+                        }
+
+                        encoderBitRate = bitRate;
+                        encoderFrameRate = frameRate;
+                        encoderUpdate = time;
+                        encoderDropped = dropped;
+                    }
+
+                    /*
+                     * The frame rate is applied by skipping frames that
+                     * are captured too early, with a tolerance of a
+                     * quarter frame for the capture jitter
+                     */
+                    long interval = 1000 / frameRate;
+                    if (time < nextCaptureTime - interval / 4) {
+                        frameBuffer.recycle(frameData);
+                        continue;
+                    }
 
-                // Sleep between frames if necessary
-                long delta = System.currentTimeMillis() - time;
-                if (delta < timeToSleep) {
-                    try {
-                        Thread.sleep((timeToSleep - delta) - (((timeToSleep - delta) * 10) / 100));
-                    } catch (InterruptedException e) {
+                    nextCaptureTime += interval;
+                    if (nextCaptureTime < time) {
+                        nextCaptureTime = time + interval;
+                    }
+
+                    if (startTime < 0) {
+                        startTime = time;
+                    }
+
+                    // Encode frame
+                    byte[] encodedFrame;
+                    int encodeResult;
+                    if (h264) {
+                        encodedFrame = NativeH264Encoder.EncodeFrame(frameData, time - startTime);
+                        encodeResult = NativeH264Encoder.getLastEncodeStatus();
+                    } else {
+                        encodedFrame = NativeH263Encoder.EncodeFrame(frameData, time - startTime);
+                        encodeResult = 0;
+                    }
+
+                    frameBuffer.recycle(frameData);
+
+                    if (encodeResult == 0 && encodedFrame.length > 0) {
+                        // Send encoded frame, stamped with the capture time (90 kHz)
+                        rtpInput.addFrame(encodedFrame, time * 90, isKeyFrame(encodedFrame, h264));
                     }
                 }
+            } catch (InterruptedException e) {
+                // Player stopped
+            }
+        }
+    }
 
-                // Update old timestamp
-                oldTs = time;
+    /**
+     * Is the encoded frame decodable on its own: an H.263 intra picture
+     * (picture coding type of PTYPE or PLUSPTYPE, ITU-T H.263 5.1.3 and
+     * 5.1.4) or an H.264 IDR slice or parameter set
+     *
+     * @param frame Encoded frame
+     * @param h264 Is the frame H.264
+     * @return Boolean
+     */
+    private static boolean isKeyFrame(byte[] frame, boolean h264) {
+        if (h264) {
+            // Skip a start code
+            int offset = 0;
+            while ((offset < frame.length - 1) && (frame[offset] == 0)) {
+                offset++;
+            }
+            offset = ((offset >= 2) && (frame[offset] == 1)) ? offset + 1 : 0;
+            if (offset >= frame.length) {
+                return false;
             }
+
+            int type = frame[offset] & 0x1F;
+            return (type == 5) || (type == 7) || (type == 8);
         }
-    };
+
+        // PSC (22 bits) and TR (8 bits) precede PTYPE
+        if ((frame.length < 8) || (frame[0] != 0) || (frame[1] != 0) || ((frame[2] & 0xFC) != 0x80)) {
+            return false;
+        }
+
+        if (getBits(frame, 35, 3) != 7) {
+            return getBits(frame, 38, 1) == 0;
+        }
+
+        // PLUSPTYPE: UFEP, OPPTYPE if UFEP is 1, then MPPTYPE starting with the picture type code
+        int ufep = getBits(frame, 38, 3);
+        return getBits(frame, (ufep == 1) ? 59 : 41, 3) == 0;
+    }
+
+    /**
+     * Read bits (most significant first)
+     *
+     * @param data Data
+     * @param position Position of the first bit
+     * @param count Number of bits
+     * @return Value
+     */
+    private static int getBits(byte[] data, int position, int count) {
+        int value = 0;
+        for (int i = position; i < position + count; i++) {
+            value = (value << 1) | ((data[i >> 3] >> (7 - (i & 7))) & 1);
+        }
+        return value;
+    }
 
     /**
      * Media RTP input
      */
     private static class MediaRtpInput implements MediaInput {
+        /**
+         * Maximum number of encoded frames waiting to be sent
+         */
+        private static final int QUEUE_CAPACITY = 8;
+
+        /**
+         * Time (ms) a read waits before it checks whether the input is closed
+         */
+        private static final long READ_TIMEOUT = 500;
+
         /**
          * Received frames
          */
-        private FifoBuffer fifo = null;
+        private volatile MediaSampleQueue queue = null;
+
+        /**
+         * Number of frames of closed queues
+         */
+        private long addedCount = 0;
+        private long droppedCount = 0;
+        private int highWaterMark = 0;
+
+        /**
+         * Time (ms) from capture to read, smoothed (1/16) and highest
+         */
+        private volatile long averageLatency = -1;
+        private volatile long maxLatency = 0;
 
         /**
          * Constructor
@@ -534,14 +866,17 @@ public class RtspVideoRecorder extends IMediaPlayer.Stub implements Camera.Previ
         }
 
         /**
-         * Add a new video frame
+         * Add a new video frame. If the sender doesn't keep up and the
+         * queue is full, the oldest frame that is not a key frame is dropped.
          *
          * @param data Data
          * @param timestamp Timestamp
+         * @param keyFrame Is the frame a key frame
          */
-        public void addFrame(byte[] data, long timestamp) {
-            if (fifo != null) {
-                fifo.addObject(new MediaSample(data, timestamp));
+        public void addFrame(byte[] data, long timestamp, boolean keyFrame) {
+            MediaSampleQueue queue = this.queue;
+            if (queue != null) {
+                queue.offer(new MediaSample(data, timestamp, keyFrame));
             }
         }
 
@@ -549,34 +884,101 @@ public class RtspVideoRecorder extends IMediaPlayer.Stub implements Camera.Previ
          * Open the player
          */
         public void open() {
-            fifo = new FifoBuffer();
+            queue = new MediaSampleQueue(QUEUE_CAPACITY);
         }
 
         /**
          * Close the player
          */
-        public void close() {
-            if (fifo != null) {
-                fifo.close();
-                fifo = null;
+        public synchronized void close() {
+            MediaSampleQueue queue = this.queue;
+            if (queue != null) {
+                queue.close();
+                this.queue = null;
+
+                addedCount += queue.getAddedCount();
+                droppedCount += queue.getDroppedCount();
+                highWaterMark = Math.max(highWaterMark, queue.getHighWaterMark());
             }
         }
 
+        /**
+         * Returns the number of added frames
+         *
+         * @return Count
+         */
+        public synchronized long getAddedCount() {
+            MediaSampleQueue queue = this.queue;
+            return addedCount + ((queue != null) ? queue.getAddedCount() : 0);
+        }
+
+        /**
+         * Returns the number of frames dropped as the sender didn't keep up
+         *
+         * @return Count
+         */
+        public synchronized long getDroppedCount() {
+            MediaSampleQueue queue = this.queue;
+            return droppedCount + ((queue != null) ? queue.getDroppedCount() : 0);
+        }
+
+        /**
+         * Returns the highest number of frames waiting to be sent
+         *
+         * @return High-water mark
+         */
+        public synchronized int getHighWaterMark() {
+            MediaSampleQueue queue = this.queue;
+            return Math.max(highWaterMark, (queue != null) ? queue.getHighWaterMark() : 0);
+        }
+
+        /**
+         * Returns the smoothed time (ms) from capture to read
+         *
+         * @return Latency
+         */
+        public long getAverageLatency() {
+            return Math.max(averageLatency, 0);
+        }
+
+        /**
+         * Returns the highest time (ms) from capture to read
+         *
+         * @return Latency
+         */
+        public long getMaxLatency() {
+            return maxLatency;
+        }
+
         /**
          * Read a media sample (blocking method)
          *
-         * @return Media sample
+         * @return Media sample or null, if the player has been closed
          * @throws MediaException
          */
         public MediaSample readSample() throws MediaException {
+            MediaSampleQueue queue = this.queue;
+            if (queue == null) {
+                throw new MediaException("Media input not opened");
+            }
+
             try {
-                if (fifo != null) {
-                    return (MediaSample)fifo.getObject();
-                } else {
-                    throw new MediaException("Media input not opened");
+                MediaSample sample = queue.poll(READ_TIMEOUT);
+                while ((sample == null) && !queue.isClosed()) {
+                    sample = queue.poll(READ_TIMEOUT);
+                }
+
+                if (sample != null) {
+                    // Samples are stamped with their capture time
+                    long latency = SystemClock.elapsedRealtime() - sample.getTimeStamp() / 90;
+                    averageLatency = (averageLatency < 0) ? latency : averageLatency + (latency - averageLatency) / 16;
+                    maxLatency = Math.max(maxLatency, latency);
                 }
-            } catch (Exception e) {
-                throw new MediaException("Can't read media sample");
+                return sample;
+            } catch (InterruptedException e) {
+                // Keep the interrupt status for the processor thread
+                Thread.currentThread().interrupt();
+                throw new MediaException("Media sample read interrupted");
             }
         }
     }
@@ -18,6 +18,7 @@
 
 package de.kp.net.rtp.stream;
 
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtcpPacketTransmitter;
 import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtcpSession;
 import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtpPacket;
 import com.orangelabs.rcs.core.ims.protocol.rtp.stream.ProcessorOutputStream;
@@ -27,27 +28,59 @@ import com.orangelabs.rcs.utils.logger.Logger;
 
 import de.kp.net.rtp.RtpSender;
 
+import android.os.SystemClock;
+
 import java.io.IOException;
 
 /**
  * RTP output stream
  *
+ * The timestamps of the samples are their capture time taken from
+ * SystemClock.elapsedRealtime() at the video clock rate; the RTCP
+ * sender reports map them to the wallclock.
+ *
  * @author Peter Arwanitis (arwanitis@dr-kruscheundpartner.de)
  * @author Stefan Krusche  (krusche@dr-kruscheundpartner.de)
  * 
  */
 public class RtpOutputStream implements ProcessorOutputStream {
  
+    /**
+     * RTP clock rate of the video formats
+     */
+    private static final int CLOCK_RATE = 90000;
+
     /**
      * Sequence number
      */
 	private int seqNumber = 0;
 
+    /**
+     * Payload of the RTP packet, reused for every packet
+     */
+	private Packet payload = new Packet();
+
+    /**
+     * RTP packet, reused for every packet
+     */
+	private RtpPacket rtpPacket = new RtpPacket(payload);
+
     /**
      * RTCP Session
      */
     private RtcpSession rtcpSession = null;
 
+    /**
+     * RTCP transmitter of the sender reports
+     */
+    private RtcpPacketTransmitter rtcpTransmitter = null;
+
+    /**
+     * Wallclock time (ms) at which SystemClock.elapsedRealtime() was 0;
+     * taken once when the stream is opened
+     */
+    private long wallclockOffset = 0;
+
     /**
      * The logger
      */
@@ -57,15 +90,49 @@ public class RtpOutputStream implements ProcessorOutputStream {
 
     	// Used to build SSCR 
     	rtcpSession = new RtcpSession(true, 16000);
+    	rtcpSession.setClockRate(CLOCK_RATE);
 
     }
 
+    /**
+     * Open the stream; the sender reports are sent periodically
+     * to the receivers of the RTP packets
+     */
     public void open() throws Exception {
+
+    	if (rtcpTransmitter != null) return;
+
+    	wallclockOffset = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+
+    	rtcpTransmitter = new RtcpPacketTransmitter(rtcpSession);
+    	rtcpTransmitter.start();
+
     }
 
     public void close() {
+
+    	if (rtcpTransmitter == null) return;
+
+    	try {
+    		rtcpTransmitter.close();
+
+    	} catch (IOException e) {
+    		// nothing todo
+    	}
+
+    	rtcpTransmitter = null;
+
 	}
 
+    /**
+     * Returns the RTCP session of this stream
+     *
+     * @return RTCP session
+     */
+    public RtcpSession getRtcpSession() {
+    	return rtcpSession;
+    }
+
     /**
      * Write to the stream without blocking
      *
@@ -85,6 +152,10 @@ public class RtpOutputStream implements ProcessorOutputStream {
     	// Send the RTP packet to the remote destination
     	transmit(packet);
     
+    	// Account the packet for the sender reports
+    	long samplingTime = wallclockOffset + buffer.getTimeStamp() * 1000 / CLOCK_RATE;
+    	rtcpSession.rtpPacketSent(buffer.getTimeStamp(), samplingTime, packet.payloadlength);
+    
     }
 
     /**
@@ -98,13 +169,11 @@ public class RtpOutputStream implements ProcessorOutputStream {
 		byte data[] = (byte[])buffer.getData();
 		if (data == null) return null;
 
-		Packet packet = new Packet();
-		packet.data = data;
+		payload.data = data;
 		
-		packet.offset = 0;
-		packet.length = buffer.getLength();
+		payload.offset = 0;
+		payload.length = buffer.getLength();
 
-		RtpPacket rtpPacket = new RtpPacket(packet);
 		if ((buffer.getFlags() & 0x800) != 0) {
 			rtpPacket.marker = 1;
 		
@@ -134,16 +203,9 @@ public class RtpOutputStream implements ProcessorOutputStream {
      */
 	private void transmit(Packet packet) {
 
-		// Prepare data to be sent
-		byte[] data = packet.data;
-		
-		if (packet.offset > 0) {
-			System.arraycopy(data, packet.offset, data = new byte[packet.length], 0, packet.length);
-		}
-
-		// broadcast data
+		// broadcast data; the sender copies it, so the packet may be reused
     	try {
-			RtpSender.getInstance().send(data);
+			RtpSender.getInstance().send(packet.data, packet.offset, packet.length);
 
     	} catch (IOException e) {
 
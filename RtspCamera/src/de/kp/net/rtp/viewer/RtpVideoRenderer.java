@@ -24,6 +24,7 @@ import com.orangelabs.rcs.core.ims.protocol.rtp.codec.video.h263.H263Config;
 import com.orangelabs.rcs.core.ims.protocol.rtp.codec.video.h263.decoder.NativeH263Decoder;
 import com.orangelabs.rcs.core.ims.protocol.rtp.codec.video.h264.H264Config;
 import com.orangelabs.rcs.core.ims.protocol.rtp.codec.video.h264.decoder.NativeH264Decoder;
+import com.orangelabs.rcs.core.ims.protocol.rtp.core.RtpReceptionStatistics;
 import com.orangelabs.rcs.core.ims.protocol.rtp.format.video.H263VideoFormat;
 import com.orangelabs.rcs.core.ims.protocol.rtp.format.video.H264VideoFormat;
 import com.orangelabs.rcs.core.ims.protocol.rtp.format.video.VideoFormat;
@@ -141,12 +142,24 @@ public class RtpVideoRenderer extends IMediaRenderer.Stub {
      */
     
     public RtpVideoRenderer(String uri) throws Exception {
+        this(uri, false);
+    }
+
+    /**
+     * Constructor Force a RTSP Server Uri
+     * 
+     * @param uri RTSP Server Uri
+     * @param interleaved Receive the RTP packets on the RTSP
+     * connection (RTP over TCP) instead of UDP
+     * @throws Exception 
+     */
+    public RtpVideoRenderer(String uri, boolean interleaved) throws Exception {
         
         /*
          * The RtspControl opens a connection to an RtspServer, that
          * is determined by the URI provided.
          */
-        rtspControl = new RtspControl(uri);    
+        rtspControl = new RtspControl(uri, interleaved);    
         
         /*
          * wait unit the rtspControl has achieved status READY; in this 
@@ -163,8 +176,10 @@ public class RtpVideoRenderer extends IMediaRenderer.Stub {
          */
         
     	// localRtpPort = NetworkRessourceManager.generateLocalRtpPort();
-    	localRtpPort = rtspControl.getClientPort();
-        reservePort(localRtpPort);
+    	if (rtspControl.isInterleaved() == false) {
+    		localRtpPort = rtspControl.getClientPort();
+    		reservePort(localRtpPort);
+    	}
 
         /*
          * The media resources associated with the SDP descriptor are
@@ -228,6 +243,20 @@ public class RtpVideoRenderer extends IMediaRenderer.Stub {
         return localRtpPort;
     }
 
+    /**
+     * Returns the statistics of the RTP reception (loss, jitter),
+     * e.g. to be polled by the user interface or logged; the round
+     * trip time is measured by the server from the receiver reports
+     *
+     * @return Statistics or null, if the renderer is not opened
+     */
+    public RtpReceptionStatistics getReceptionStatistics() {
+        if (rtpReceiver == null) {
+            return null;
+        }
+        return rtpReceiver.getReceptionStatistics();
+    }
+
     /**
      * Reserve a port.
      *
@@ -340,7 +369,11 @@ public class RtpVideoRenderer extends IMediaRenderer.Stub {
             rtpOutput = new MediaRtpOutput();
             rtpOutput.open();
             
-            rtpReceiver = new MediaRtpReceiver(localRtpPort);
+            if (rtspControl.isInterleaved()) {
+            	rtpReceiver = new MediaRtpReceiver(rtspControl.getRtpConnection(), rtspControl.getRtcpConnection());
+            } else {
+            	rtpReceiver = new MediaRtpReceiver(localRtpPort, rtspControl.getServerAddress(), rtspControl.getServerRtcpPort());
+            }
             rtpReceiver.prepareSession(rtpOutput, videoFormat);
 
         } catch (Exception e) {
@@ -523,6 +556,12 @@ public class RtpVideoRenderer extends IMediaRenderer.Stub {
          */
         private int decodedFrame[];
 
+        /**
+         * Encoded frame handed to the native decoder, reused while the
+         * frame length does not change
+         */
+        private byte encodedFrame[] = new byte[0];
+
         /**
          * Bitmap frame
          */
@@ -556,8 +595,9 @@ public class RtpVideoRenderer extends IMediaRenderer.Stub {
          * @param sample Sample
          */
         public void writeSample(MediaSample sample) {
+            byte[] frame = getFrame(sample);
             if (selectedVideoCodec.getCodecName().equalsIgnoreCase(H264Config.CODEC_NAME)) {
-                if (NativeH264Decoder.DecodeAndConvert(sample.getData(), decodedFrame) == 1) {
+                if (NativeH264Decoder.DecodeAndConvert(frame, decodedFrame) == 1) {
                     rgbFrame.setPixels(decodedFrame, 0, selectedVideoCodec.getWidth(), 0, 0,
                             selectedVideoCodec.getWidth(), selectedVideoCodec.getHeight());
                     if (surface != null) {
@@ -565,7 +605,7 @@ public class RtpVideoRenderer extends IMediaRenderer.Stub {
                     }
                 }
             } else { // default H263
-                if (NativeH263Decoder.DecodeAndConvert(sample.getData(), decodedFrame,
+                if (NativeH263Decoder.DecodeAndConvert(frame, decodedFrame,
                         sample.getTimeStamp()) == 1) {
                     rgbFrame.setPixels(decodedFrame, 0, selectedVideoCodec.getWidth(), 0, 0,
                             selectedVideoCodec.getWidth(), selectedVideoCodec.getHeight());
@@ -575,6 +615,26 @@ public class RtpVideoRenderer extends IMediaRenderer.Stub {
                 }
             }
         }
+
+        /**
+         * Returns the frame of a sample as a whole array. The native decoders
+         * take no offset and length, so a frame passed by reference in a
+         * larger buffer is copied into an array of its exact size.
+         *
+         * @param sample Sample
+         * @return Frame
+         */
+        private byte[] getFrame(MediaSample sample) {
+            byte[] data = sample.getData();
+            if ((sample.getOffset() == 0) && (sample.getLength() == data.length)) {
+                return data;
+            }
+            if (encodedFrame.length != sample.getLength()) {
+                encodedFrame = new byte[sample.getLength()];
+            }
+            System.arraycopy(data, sample.getOffset(), encodedFrame, 0, encodedFrame.length);
+            return encodedFrame;
+        }
     }
 
 	@Override
@@ -61,6 +61,11 @@ public class RtspConstants {
     public static String SERVER_VERSION = "0.1";
     
     public static int PORT_BASE = 3000;
+    
+	// timeout (s) of an RTSP session without any request,
+	// announced to the clients with the SETUP response
+	public static final int SESSION_TIMEOUT = 60;
+    
     public static int[] PORTS_RTSP_RTP = {PORT_BASE, (PORT_BASE + 1)};
     
 	public static final String DIR_MULTIMEDIA = "../";
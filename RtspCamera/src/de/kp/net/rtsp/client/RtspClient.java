@@ -190,6 +190,29 @@ public class RtspClient implements TransportListener {
 		}
 	}
 
+	/**
+	 * Request the RTP packets interleaved on the RTSP
+	 * connection; RTP is received on the given channel,
+	 * RTCP on the next one
+	 */
+	public void setupInterleaved(URI uri, String resource, int channel) {
+		
+		this.uri = uri;
+		try {
+			
+			String channelParam = "interleaved=" + channel + "-" + (1 + channel);
+			String finalURI = uri.toString();
+			
+			if ((resource != null) && (resource.equals("*") == false))
+				finalURI += '/' + resource;
+			
+			send(getSetup(finalURI, -1, new TransportHeader(LowerTransport.TCP, "unicast", channelParam), session));
+		
+		} catch(Exception e) {
+			if(clientListener != null) clientListener.onError(this, e);
+		}
+	}
+
 	public void teardown() {
 		
 		if(session == null)
@@ -1,12 +1,16 @@
 package de.kp.net.rtsp.client;
 
 import java.net.URI;
+import java.util.Timer;
+import java.util.TimerTask;
+
 import de.kp.net.rtsp.RtspConstants;
 import de.kp.net.rtsp.client.api.RequestListener;
 import de.kp.net.rtsp.client.api.Request;
 import de.kp.net.rtsp.client.api.Response;
 import de.kp.net.rtsp.client.message.RtspDescriptor;
 import de.kp.net.rtsp.client.message.RtspMedia;
+import de.kp.net.rtsp.client.transport.InterleavedConnection;
 import de.kp.net.rtsp.client.transport.TCPTransport;
 
 public class RtspControl implements RequestListener {
@@ -16,21 +20,39 @@ public class RtspControl implements RequestListener {
 
 	// flag to indicate whether there is a connection
 	// established to a remote RTSP server
-	private boolean connected = false;
+	private volatile boolean connected = false;
 
 	// reference to the RTSP server URI
 	private URI uri;
 
 	private int port;
 
+	// RTCP port of the server, the receiver reports
+	// are sent to; -1 if unknown
+	private int serverRtcpPort = -1;
+
 	private String resource;
 	
+	private TCPTransport transport;
+	
+	// RTP over TCP: the RTP and RTCP packets are received
+	// interleaved on the RTSP connection, e.g. if UDP is
+	// blocked by a firewall
+	private boolean interleaved;
+	
+	private InterleavedConnection rtpConnection;
+	private InterleavedConnection rtcpConnection;
+	
 	// reference to the SDP file returned as a response
 	// to a DESCRIBE request
 	private RtspDescriptor rtspDescriptor;
 
 	private int state;
 
+	// the server closes a session without requests, so
+	// OPTIONS requests are sent while a session is set up
+	private Timer keepAlive;
+
 	/**
 	 * This constructor is invoked with an uri that
 	 * describes the server uri and also a certain
@@ -38,6 +60,16 @@ public class RtspControl implements RequestListener {
 	 */
 
 	public RtspControl(String uri) {	
+		this(uri, false);
+	}
+
+	/**
+	 * This constructor is invoked with an uri that
+	 * describes the server uri and also a certain
+	 * resource, and whether the RTP packets are
+	 * to be received interleaved on the RTSP connection
+	 */
+	public RtspControl(String uri, boolean interleaved) {	
 
 		int pos = uri.lastIndexOf("/");
 
@@ -46,9 +78,13 @@ public class RtspControl implements RequestListener {
 			this.uri      = new URI(uri.substring(0, pos));
 			this.resource = uri.substring(pos+1);
 
+			this.interleaved = interleaved;
+
 			// initialize the RTSP communication
+			this.transport = new TCPTransport();
+
 			this.client = new RtspClient();
-			this.client.setTransport(new TCPTransport());
+			this.client.setTransport(this.transport);
 			
 			this.client.setRequestListener(this);			
 			this.state = RtspConstants.UNDEFINED;
@@ -81,8 +117,10 @@ public class RtspControl implements RequestListener {
 			this.resource = resource;
 
 			// initialize the RTSP communication
+			this.transport = new TCPTransport();
+
 			this.client = new RtspClient();
-			this.client.setTransport(new TCPTransport());
+			this.client.setTransport(this.transport);
 			
 			this.client.setRequestListener(this);
 			
@@ -132,6 +170,8 @@ public class RtspControl implements RequestListener {
 		
 		if ((this.client == null) || (this.connected == false)) return;
 		
+		stopKeepAlive();
+		
 		// send TEARDOWN request
 		this.client.teardown();
 		
@@ -149,13 +189,99 @@ public class RtspControl implements RequestListener {
 		return this.port;
 	}
 	
+	public String getServerAddress() {
+		return this.uri.getHost();
+	}
+	
+	/**
+	 * @return RTCP port of the server as announced by
+	 * the SETUP response, or -1
+	 */
+	public int getServerRtcpPort() {
+		return this.serverRtcpPort;
+	}
+	
 	public RtspDescriptor getDescriptor() {
 		return this.rtspDescriptor;
 	}
 	
+	public boolean isInterleaved() {
+		return this.interleaved;
+	}
+	
+	/**
+	 * @return connection of the interleaved RTP channel,
+	 * available after the DESCRIBE response
+	 */
+	public InterleavedConnection getRtpConnection() {
+		return this.rtpConnection;
+	}
+	
+	public InterleavedConnection getRtcpConnection() {
+		return this.rtcpConnection;
+	}
+	
+	private synchronized void startKeepAlive() {
+		
+		stopKeepAlive();
+		
+		long interval = RtspConstants.SESSION_TIMEOUT * 1000L / 2;
+		
+		this.keepAlive = new Timer("RtspKeepAlive", true);
+		this.keepAlive.schedule(new TimerTask() {
+
+			public void run() {
+				
+				RtspClient client = RtspControl.this.client;
+				if ((client != null) && (connected == true)) client.options("*", uri);
+			
+			}
+			
+		}, interval, interval);
+		
+	}
+	
+	private synchronized void stopKeepAlive() {
+		
+		if (this.keepAlive == null) return;
+		
+		this.keepAlive.cancel();
+		this.keepAlive = null;
+		
+	}
+	
+	/**
+	 * The RTCP port is the second one of the server_port
+	 * parameter of the Transport header, or the RTP port + 1
+	 */
+	private int getServerRtcpPort(Response response) {
+		
+		try {
+			
+			String transport = response.getHeader("Transport").getRawValue();
+			
+			int start = transport.indexOf("server_port=");
+			if (start < 0) return -1;
+			
+			start += "server_port=".length();
+			
+			int end = transport.indexOf(';', start);
+			String[] ports = ((end < 0) ? transport.substring(start) : transport.substring(start, end)).split("-");
+			
+			return (ports.length > 1) ? Integer.parseInt(ports[1].trim()) : Integer.parseInt(ports[0].trim()) + 1;
+		
+		} catch (Exception e) {
+			return -1;
+			
+		}
+		
+	}
+	
 	@Override
 	public void onError(RtspClient client, Throwable error) {
 
+		stopKeepAlive();
+		
 		if ((this.client != null) && (this.connected == true)) {
 			this.client.teardown();
 		}
@@ -174,6 +300,8 @@ public class RtspControl implements RequestListener {
 
 	public void onFailure(RtspClient client, Request request, Throwable cause) {
 
+		stopKeepAlive();
+		
 		if ((this.client != null) && (this.connected == true)) {
 			this.client.teardown();
 		}
@@ -193,11 +321,15 @@ public class RtspControl implements RequestListener {
 				
 				Request.Method method = request.getMethod();
 				if (method == Request.Method.OPTIONS) {
-					// the response to an OPTIONS request
-					this.connected = true;
+					// the response to the first OPTIONS request;
+					// later ones answer keep alive requests
+					if (this.connected == false) {
+						this.connected = true;
+					
+						// send DESCRIBE request
+						this.client.describe(this.uri, this.resource);
 					
-					// send DESCRIBE request
-					this.client.describe(this.uri, this.resource);
+					}
 				
 				} else if (method == Request.Method.DESCRIBE) {
 					
@@ -212,7 +344,20 @@ public class RtspControl implements RequestListener {
 					 */
 					
 					RtspMedia video = this.rtspDescriptor.getFirstVideo();
-					if (video != null) {
+					if ((video != null) && this.interleaved) {
+						
+						// the transport separates the packets of these
+						// channels from the RTSP responses
+						this.rtpConnection  = new InterleavedConnection(this.transport, 0);
+						this.rtcpConnection = new InterleavedConnection(this.transport, 1);
+						
+						this.transport.setInterleavedConnection(0, this.rtpConnection);
+						this.transport.setInterleavedConnection(1, this.rtcpConnection);
+						
+						// send SETUP request
+						this.client.setupInterleaved(this.uri, this.resource, 0);
+						
+					} else if (video != null) {
 					
 						this.port = Integer.valueOf(video.getTransportPort());
 						
@@ -223,8 +368,12 @@ public class RtspControl implements RequestListener {
 
 				} else if (method == Request.Method.SETUP) {
 					
+					this.serverRtcpPort = getServerRtcpPort(response);
+					
 					// set state to READY
 					this.state = RtspConstants.READY;
+					
+					startKeepAlive();
 
 				} else if (method == Request.Method.PLAY) {
 					
@@ -238,6 +387,8 @@ public class RtspControl implements RequestListener {
 
 				} else if (method == Request.Method.TEARDOWN) {
 
+					stopKeepAlive();
+					
 					this.connected = false;
 					
 					// set state to UNDEFINED
@@ -0,0 +1,184 @@
+package de.kp.net.rtsp.client.transport;
+
+import java.io.IOException;
+
+import com.orangelabs.rcs.platform.network.DatagramConnection;
+
+/**
+ * This class provides an interleaved channel (RFC 2326,
+ * 10.12) of an RTSP connection as a datagram connection,
+ * so that the RTP and RTCP receivers read its packets
+ * like those of a UDP socket.
+ *
+ * The packets are queued by the transport thread; if the
+ * receiver does not keep up, the oldest packets are
+ * dropped, as a UDP socket would drop new ones, rather
+ * than holding up the RTSP connection.
+ */
+public class InterleavedConnection implements DatagramConnection {
+
+	// maximum number of queued packets
+	private static final int QUEUE_SIZE = 256;
+
+	private final TCPTransport transport;
+
+	private final int channel;
+
+	// queued packets, a circular array; the packet
+	// buffers are reused
+	private final byte[][] packets = new byte[QUEUE_SIZE][];
+	private final int[] lengths = new int[QUEUE_SIZE];
+
+	private int head = 0;
+	private int size = 0;
+
+	private boolean closed = false;
+
+	private long droppedCount = 0;
+
+	public InterleavedConnection(TCPTransport transport, int channel) {
+		this.transport = transport;
+		this.channel = channel;
+	}
+
+	public int getChannel() {
+		return channel;
+	}
+
+	/**
+	 * The channel is open with the RTSP connection
+	 */
+	public void open() throws IOException {
+	}
+
+	public void open(int port) throws IOException {
+	}
+
+	/**
+	 * Close the channel; a blocked receiver is
+	 * released with an IOException
+	 */
+	public synchronized void close() throws IOException {
+
+		closed = true;
+		size = 0;
+
+		notifyAll();
+
+	}
+
+	/**
+	 * Queue a packet received on this channel
+	 */
+	synchronized void put(byte[] data, int offset, int length) {
+
+		if (closed) return;
+
+		if (size == QUEUE_SIZE) {
+
+			head = (head + 1) % QUEUE_SIZE;
+			size--;
+
+			droppedCount++;
+
+		}
+
+		int slot = (head + size) % QUEUE_SIZE;
+		if ((packets[slot] == null) || (packets[slot].length < length)) {
+			packets[slot] = new byte[length];
+		}
+
+		System.arraycopy(data, offset, packets[slot], 0, length);
+		lengths[slot] = length;
+
+		size++;
+		notifyAll();
+
+	}
+
+	/**
+	 * Receive the next packet of this channel into the
+	 * given buffer; a packet larger than the buffer is
+	 * truncated, as by a datagram socket
+	 */
+	public synchronized int receive(byte[] buffer) throws IOException {
+
+		while ((size == 0) && (closed == false)) {
+
+			try {
+				wait();
+
+			} catch (InterruptedException e) {
+				throw new IOException("Receive interrupted");
+			}
+
+		}
+
+		if (closed) throw new IOException("Connection closed");
+
+		int length = Math.min(lengths[head], buffer.length);
+		System.arraycopy(packets[head], 0, buffer, 0, length);
+
+		head = (head + 1) % QUEUE_SIZE;
+		size--;
+
+		return length;
+
+	}
+
+	public byte[] receive(int bufferSize) throws IOException {
+
+		byte[] buffer = new byte[bufferSize];
+		int length = receive(buffer);
+
+		byte[] data = new byte[length];
+		System.arraycopy(buffer, 0, data, 0, length);
+
+		return data;
+
+	}
+
+	public byte[] receive() throws IOException {
+		return receive(DatagramConnection.DEFAULT_DATAGRAM_SIZE);
+	}
+
+	/**
+	 * Send a packet on this channel; address and port
+	 * are given by the RTSP connection
+	 */
+	public void send(String remoteAddr, int remotePort, byte[] data) throws IOException {
+
+		if (data == null) return;
+		transport.sendInterleaved(channel, data, 0, data.length);
+
+	}
+
+	public String getLocalAddress() throws IOException {
+		return transport.getLocalAddress();
+	}
+
+	public int getLocalPort() throws IOException {
+		return transport.getLocalPort();
+	}
+
+	/**
+	 * Interleaved packets are always sent by the
+	 * peer of the RTSP connection
+	 */
+	public String getRemoteAddress() {
+		return null;
+	}
+
+	public int getRemotePort() {
+		return -1;
+	}
+
+	/**
+	 * @return number of packets dropped, as the
+	 * receiver did not keep up
+	 */
+	public synchronized long getDroppedCount() {
+		return droppedCount;
+	}
+
+}
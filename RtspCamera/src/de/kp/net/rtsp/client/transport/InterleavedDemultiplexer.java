@@ -0,0 +1,266 @@
+package de.kp.net.rtsp.client.transport;
+
+/**
+ * This class separates the interleaved packets (RFC 2326,
+ * 10.12) from the RTSP messages of a connection. A packet
+ * starts with '$' where a message would start, followed
+ * by the channel and the 16-bit length of the packet.
+ *
+ * The messages are followed to their end, i.e. the empty
+ * line after the headers and the body announced with the
+ * Content-Length header; their bytes are passed on to the
+ * listener of the transport, the packets are queued on the
+ * connection of their channel.
+ */
+class InterleavedDemultiplexer {
+
+	// states
+	private static final int MESSAGE_START 	= 0;
+	private static final int HEADERS 		= 1;
+	private static final int BODY 			= 2;
+	private static final int FRAME_HEADER 	= 3;
+	private static final int FRAME_DATA 	= 4;
+
+	private static final String CONTENT_LENGTH = "content-length:";
+
+	private final TCPTransport transport;
+
+	private int state = MESSAGE_START;
+
+	// beginning of the current header line, enough
+	// to recognize the Content-Length header
+	private final byte[] line = new byte[64];
+	private int lineLength = 0;
+
+	private int contentLength = 0;
+
+	// remaining bytes of the body
+	private int remaining = 0;
+
+	// channel, length and data of the current packet
+	private int headerLength = 0;
+
+	private int channel = 0;
+
+	private byte[] frame = new byte[2048];
+	private int frameLength = 0;
+	private int frameFill = 0;
+
+	InterleavedDemultiplexer(TCPTransport transport) {
+		this.transport = transport;
+	}
+
+	/**
+	 * Process the bytes received from the connection
+	 */
+	void process(byte[] data, int length, TCPTransportListener listener) {
+
+		// start of the message bytes of this chunk,
+		// or -1 within a packet
+		int messageStart = isMessage() ? 0 : -1;
+
+		int i = 0;
+		while (i < length) {
+
+			if (isMessage()) {
+
+				if ((state == MESSAGE_START) && (data[i] == '$')) {
+
+					forward(data, messageStart, i, listener);
+					messageStart = -1;
+
+					state = FRAME_HEADER;
+					headerLength = 0;
+
+					i++;
+
+				} else {
+					i = message(data, i, length);
+
+				}
+
+			} else {
+
+				i = frame(data, i, length);
+				if (isMessage()) messageStart = i;
+
+			}
+
+		}
+
+		if (messageStart >= 0) forward(data, messageStart, length, listener);
+
+	}
+
+	private boolean isMessage() {
+		return (state == MESSAGE_START) || (state == HEADERS) || (state == BODY);
+	}
+
+	/**
+	 * Follow the bytes of an RTSP message
+	 *
+	 * @return position after the processed bytes
+	 */
+	private int message(byte[] data, int i, int length) {
+
+		if (state == MESSAGE_START) {
+
+			// line breaks between messages are passed on
+			if ((data[i] == '\r') || (data[i] == '\n')) return i + 1;
+
+			state = HEADERS;
+
+			lineLength = 0;
+			contentLength = 0;
+
+		}
+
+		if (state == BODY) {
+
+			int count = Math.min(remaining, length - i);
+			remaining -= count;
+
+			if (remaining == 0) state = MESSAGE_START;
+			return i + count;
+
+		}
+
+		byte b = data[i];
+		if (b != '\n') {
+
+			if ((b != '\r') && (lineLength < line.length)) line[lineLength] = b;
+			if (b != '\r') lineLength++;
+
+			return i + 1;
+
+		}
+
+		if (lineLength == 0) {
+
+			// empty line, the headers are complete
+			remaining = contentLength;
+			state = (remaining > 0) ? BODY : MESSAGE_START;
+
+		} else if (isContentLength()) {
+			contentLength = parseContentLength();
+
+		}
+
+		lineLength = 0;
+		return i + 1;
+
+	}
+
+	private boolean isContentLength() {
+
+		if (lineLength < CONTENT_LENGTH.length()) return false;
+
+		for (int i = 0; i < CONTENT_LENGTH.length(); i++) {
+
+			int c = line[i];
+			if ((c >= 'A') && (c <= 'Z')) c += 'a' - 'A';
+
+			if (c != CONTENT_LENGTH.charAt(i)) return false;
+
+		}
+
+		return true;
+
+	}
+
+	private int parseContentLength() {
+
+		int value = 0;
+
+		int end = Math.min(lineLength, line.length);
+		for (int i = CONTENT_LENGTH.length(); i < end; i++) {
+
+			if ((line[i] >= '0') && (line[i] <= '9')) value = value * 10 + (line[i] - '0');
+
+		}
+
+		return value;
+
+	}
+
+	/**
+	 * Collect the bytes of an interleaved packet
+	 *
+	 * @return position after the processed bytes
+	 */
+	private int frame(byte[] data, int i, int length) {
+
+		if (state == FRAME_HEADER) {
+
+			int b = data[i] & 0xFF;
+
+			if (headerLength == 0) {
+				channel = b;
+
+			} else if (headerLength == 1) {
+				frameLength = b << 8;
+
+			} else {
+
+				frameLength |= b;
+				frameFill = 0;
+
+				if (frame.length < frameLength) frame = new byte[frameLength];
+
+				state = FRAME_DATA;
+				if (frameLength == 0) deliver(frame, 0);
+
+			}
+
+			headerLength++;
+			return i + 1;
+
+		}
+
+		// a packet, that is received at once, is not copied
+		if ((frameFill == 0) && (length - i >= frameLength)) {
+
+			deliver(data, i);
+			return i + frameLength;
+
+		}
+
+		int count = Math.min(frameLength - frameFill, length - i);
+
+		System.arraycopy(data, i, frame, frameFill, count);
+		frameFill += count;
+
+		if (frameFill == frameLength) deliver(frame, 0);
+		return i + count;
+
+	}
+
+	/**
+	 * Queue a complete packet on the connection of its
+	 * channel; packets of other channels are discarded
+	 */
+	private void deliver(byte[] data, int offset) {
+
+		InterleavedConnection connection = transport.getInterleavedConnection(channel);
+		if (connection != null) connection.put(data, offset, frameLength);
+
+		state = MESSAGE_START;
+
+	}
+
+	/**
+	 * Pass message bytes on to the listener; they are copied,
+	 * as the listener may keep them beyond the next read
+	 */
+	private void forward(byte[] data, int start, int end, TCPTransportListener listener) {
+
+		if (end <= start) return;
+
+		byte[] bytes = new byte[end - start];
+		System.arraycopy(data, start, bytes, 0, bytes.length);
+
+		listener.dataReceived(transport, bytes, bytes.length);
+
+	}
+
+}
@@ -22,6 +22,7 @@ package de.kp.net.rtsp.client.transport;
  */
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.URI;
 
@@ -35,9 +36,12 @@ class TCPTransportThread extends Thread {
 
 	private volatile TCPTransportListener listener;
 
+	private final InterleavedDemultiplexer demultiplexer;
+
 	public TCPTransportThread(TCPTransport transport, TransportListener listener) {
 		this.transport = transport;
 		this.listener  = new TCPTransportListener(listener);
+		this.demultiplexer = new InterleavedDemultiplexer(transport);
 	}
 
 	public TCPTransportListener getListener() {
@@ -53,7 +57,7 @@ class TCPTransportThread extends Thread {
 		
 		listener.connected(transport);
 		
-		byte[] buffer = new byte[2048];
+		byte[] buffer = new byte[8192];
 		
 		int read = -1;
 		while(transport.isConnected()) {
@@ -63,9 +67,10 @@ class TCPTransportThread extends Thread {
 				if(read == -1)
 				{
 					transport.setConnected(false);
+					transport.closeInterleavedConnections();
 					listener.remoteDisconnection(transport);
 				} else
-					listener.dataReceived(transport, buffer, read);
+					demultiplexer.process(buffer, read, listener);
 			
 			} catch(IOException e) {
 				listener.error(transport, e);
@@ -83,6 +88,9 @@ public class TCPTransport implements Transport {
 
 	private volatile boolean connected;
 
+	// connections of the interleaved channels
+	private final InterleavedConnection[] interleavedConnections = new InterleavedConnection[256];
+
 	public TCPTransport() {
 	}
 
@@ -107,6 +115,7 @@ public class TCPTransport implements Transport {
 	public void disconnect() {
 		
 		setConnected(false);
+		closeInterleavedConnections();
 		try {
 			socket.close();
 		
@@ -127,6 +136,69 @@ public class TCPTransport implements Transport {
 	
 	}
 
+	/**
+	 * Send an RTP or RTCP packet interleaved with the
+	 * RTSP messages on the given channel
+	 */
+	public synchronized void sendInterleaved(int channel, byte[] data, int offset, int length) throws IOException {
+
+		byte[] frame = new byte[length + 4];
+
+		frame[0] = '$';
+		frame[1] = (byte) channel;
+		frame[2] = (byte) (length >> 8);
+		frame[3] = (byte) length;
+
+		System.arraycopy(data, offset, frame, 4, length);
+
+		OutputStream output = socket.getOutputStream();
+		output.write(frame);
+
+	}
+
+	/**
+	 * Register the connection, that receives the
+	 * interleaved packets of the given channel
+	 */
+	public void setInterleavedConnection(int channel, InterleavedConnection connection) {
+		synchronized (interleavedConnections) {
+			interleavedConnections[channel] = connection;
+		}
+	}
+
+	InterleavedConnection getInterleavedConnection(int channel) {
+		synchronized (interleavedConnections) {
+			return interleavedConnections[channel];
+		}
+	}
+
+	void closeInterleavedConnections() {
+
+		synchronized (interleavedConnections) {
+
+			for (int i = 0; i < interleavedConnections.length; i++) {
+
+				if (interleavedConnections[i] == null) continue;
+
+				try {
+					interleavedConnections[i].close();
+				} catch(IOException e) {
+				}
+
+			}
+
+		}
+
+	}
+
+	String getLocalAddress() {
+		return socket.getLocalAddress().getHostAddress();
+	}
+
+	int getLocalPort() {
+		return socket.getLocalPort();
+	}
+
 	@Override
 	public void setTransportListener(TransportListener listener) {
 		transportListener = listener;
@@ -1,30 +1,20 @@
 package de.kp.net.rtsp.server;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.Vector;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Iterator;
 
 import android.util.Log;
 
-import de.kp.net.rtp.RtpSender;
-import de.kp.net.rtp.RtpSocket;
+import de.kp.net.rtp.RtpRateController;
 import de.kp.net.rtsp.RtspConstants;
 import de.kp.net.rtsp.RtspConstants.VideoEncoder;
-import de.kp.net.rtsp.server.response.Parser;
-import de.kp.net.rtsp.server.response.RtspDescribeResponse;
-import de.kp.net.rtsp.server.response.RtspError;
-import de.kp.net.rtsp.server.response.RtspOptionsResponse;
-import de.kp.net.rtsp.server.response.RtspPauseResponse;
-import de.kp.net.rtsp.server.response.RtspPlayResponse;
-import de.kp.net.rtsp.server.response.RtspResponse;
-import de.kp.net.rtsp.server.response.RtspResponseTeardown;
-import de.kp.net.rtsp.server.response.RtspSetupResponse;
 
 /**
  * This class describes a RTSP streaming
@@ -32,18 +22,35 @@ import de.kp.net.rtsp.server.response.RtspSetupResponse;
  * used to control video streaming from
  * a remote user agent.
  * 
+ * All client connections are served by a
+ * single thread with non-blocking sockets;
+ * the state of each client is held by an
+ * {@link RtspSession}.
+ * 
  * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
  *
  */
 
 public class RtspServer implements Runnable {
 
+	// maximum number of sessions, i.e. the controlling
+	// client and a few observers
+	public static final int MAX_SESSIONS = 5;
+	
+	// interval (ms) in which idle sessions are reaped
+	private static final long REAP_INTERVAL = 1000;
+	
 	// reference to the server socket
-	private ServerSocket serverSocket;
+	private ServerSocketChannel serverChannel;
+	
+	private Selector selector;
 	
 	// indicator to determine whether the server has stopped or not
-	private boolean stopped = false;
+	private volatile boolean stopped = false;
 
+	// indicator to determine whether the server thread has started
+	private volatile boolean running = false;
+	
 	// inidicator to describe whether the server all of its threads
 	// are terminated
 	private boolean terminated = false;
@@ -51,40 +58,90 @@ public class RtspServer implements Runnable {
 	// reference to the video encoder (H263, H264) used over RTP 
 	private VideoEncoder encoder;
 
-	// a temporary cache to manage all threads initiated by the RTSP server
-	private Vector<Thread> serverThreads;
+	// all client connections; accessed by the server thread only
+	private ArrayList<RtspSession> sessions;
+
+	// sessions with interleaved RTP packets to be written by the
+	// server thread; the lists are swapped when they are served
+	private ArrayList<RtspSession> writeRequests = new ArrayList<RtspSession>();
+	private ArrayList<RtspSession> pendingWrites = new ArrayList<RtspSession>();
+	
+	private SecureRandom random = new SecureRandom();
 	
 	public RtspServer(int port, VideoEncoder encoder) throws IOException {		
 	
-		this.serverThreads = new Vector<Thread>();
+		this.sessions = new ArrayList<RtspSession>();
 		
 		this.encoder = encoder;
-	    this.serverSocket = new ServerSocket(port);	  
+		
+		this.selector = Selector.open();
+		
+	    this.serverChannel = ServerSocketChannel.open();
+	    this.serverChannel.socket().setReuseAddress(true);
+	    this.serverChannel.socket().bind(new InetSocketAddress(port));	  
+	    
+	    this.serverChannel.configureBlocking(false);
+	    this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
 	
+	    /*
+	     * The clients send their RTCP receiver reports to the
+	     * server port announced with the SETUP response
+	     */
+	    try {
+	    	RtpRateController.getInstance().open(RtspConstants.PORTS_RTSP_RTP[1]);
+	    
+	    } catch (IOException e) {
+	    	Log.w(RtspConstants.SERVER_TAG, "Rate control disabled: " + e.getMessage());
+	    }
+	    
 	}
 
 	public void run() {
 	    
-	    /*
-	     * In order to communicate with different clients,
-	     * we construct a thread for each client that is
-	     * connected.
-	     */
-	    while (this.stopped == false) {
+		this.running = true;
+		
+	    try {
 	    	
-			try {
-				Socket  clientSocket = this.serverSocket.accept();
-		    	serverThreads.add(new ServerThread(clientSocket, this.encoder));
+	    	while (this.stopped == false) {
 
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+	    		this.selector.select(REAP_INTERVAL);
+	    		if (this.stopped) break;
+
+	    		writeRequested();
+
+	    		Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+	    		while (keys.hasNext()) {
+
+	    			SelectionKey key = keys.next();
+	    			keys.remove();
+
+	    			if (key.isValid() == false) continue;
+
+	    			if (key.isAcceptable()) {
+	    				accept();
+
+	    			} else {
+	    				handle(key);
+
+	    			}
+
+	    		}
+
+	    		reap(System.currentTimeMillis());
+
+	    	}
 	    
+	    } catch (IOException e) {
+	    	Log.e(RtspConstants.SERVER_TAG, "Server failed: " + e.getMessage());
+	    	
+	    } finally {
+	    	terminate();
+	    	
 	    }
 		
 	}
 
-	public boolean isTerminated() {
+	public synchronized boolean isTerminated() {
 		return this.terminated;
 	}
 	
@@ -95,300 +152,221 @@ public class RtspServer implements Runnable {
 	public void stop() {
 		
 		this.stopped = true;
-		terminate();
 
-		try {
-			this.serverSocket.close();
+		RtpRateController.getInstance().close();
+
+		if (this.running) {
+			// the server thread terminates all sessions
+			this.selector.wakeup();
+		
+		} else {
+			terminate();
 		
-		} catch (IOException e) {	
-			// nothing todo
 		}
 	
 	}
 	
 	/**
-	 * This method is used to tear down all threads that have
-	 * been invoked by the RTSP server during life time
+	 * Accept a new client connection; a failure only
+	 * drops this connection, the other sessions remain
 	 */
-	private void terminate() {
+	private void accept() {
 		
-		for (Thread serverThread:serverThreads) {
-			if (serverThread.isAlive()) serverThread.interrupt();
-		}
+		SocketChannel channel = null;
 		
-		this.terminated = true;
+		try {
+			
+			channel = this.serverChannel.accept();
+			if (channel == null) return;
+			
+			channel.configureBlocking(false);
+			
+			channel.socket().setTcpNoDelay(true);
+			channel.socket().setKeepAlive(true);
+			
+			RtspSession session = new RtspSession(this, channel, this.encoder);
+			session.setKey(channel.register(this.selector, SelectionKey.OP_READ, session));
+			
+			this.sessions.add(session);
+		
+		} catch (IOException e) {
+			Log.w(RtspConstants.SERVER_TAG, "Connection not accepted: " + e.getMessage());
+			
+			if (channel != null) {
+				try {
+					channel.close();
+
+				} catch (IOException ce) {
+					// nothing todo
+				}
+			}
+			
+		}
 		
 	}
 	
-	private class ServerThread extends Thread {
-		
-		private String TAG = "RtspServer";
-
-		// response to RTSP client
-		private RtspResponse rtspResponse;
-		
-		private String contentBase = "";
-		
-		/*
-		 * input and output stream buffer for TCP connection; 
-		 * UDP response are sent through DatagramSocket
-		 */
-		private BufferedReader rtspBufferedReader;
-		private BufferedWriter rtspBufferedWriter;
-
-		private int rtspState;
+	/**
+	 * Read requests from, or write pending responses
+	 * to a client connection; the session is closed
+	 * on a socket error
+	 */
+	private void handle(SelectionKey key) {
 		
-		// Sequence number of RTSP messages within the session	
-		private int cseq = 0;	
+		RtspSession session = (RtspSession) key.attachment();
 		
-		private int clientPort;
+		try {
+			
+			if (key.isReadable() && (session.read() == false)) {
+				session.close();
+				return;
+			}
+			
+			if (key.isValid() && key.isWritable()) {
+				session.write();
+			}
+
+		} catch (IOException e) {
+			Log.w(RtspConstants.SERVER_TAG, "Session closed: " + e.getMessage());
+			session.close();
 		
-		// remote (client) address
-		private InetAddress clientAddress;
+		}
 		
-		/*
-		 * This datagram socket is used to send UDP
-		 * packets to the clientIPAddress
-		 */
-		private RtpSocket rtpSocket;
+	}
+	
+	/**
+	 * Ask the server thread to write the output of a session;
+	 * invoked by the send threads of interleaved RTP packets,
+	 * which must not change the selection keys themselves
+	 */
+	void requestWrite(RtspSession session) {
 
-		private final Socket clientSocket;
+		synchronized (this.writeRequests) {
+			this.writeRequests.add(session);
+		}
 
-		private VideoEncoder encoder;
+		this.selector.wakeup();
 
-	    public ServerThread(Socket socket, VideoEncoder encoder) {
-	    	
-	    	this.clientSocket = socket;
-	    	this.encoder = encoder;
-	    	
-	    	// register IP address of requesting client
-	    	this.clientAddress = this.clientSocket.getInetAddress();
-	    	
-	    	start();
-	    
-	    }
-	    
-	    public void run() {
-	    	
-	    	// prepare server response
-	    	String response = "";
-	    	
-	    	try {
-
-	    		// Set input and output stream filters
-	    		rtspBufferedReader = new BufferedReader(new InputStreamReader(this.clientSocket.getInputStream()) );
-	    		rtspBufferedWriter = new BufferedWriter(new OutputStreamWriter(this.clientSocket.getOutputStream()) );
-
-	    		boolean setup = false;
-	    		 
-	    		while (setup == false) {
-	    			
-	    			// determine request type and also provide
-	    			// server response
-	    			int requestType = getRequestType();
-
-	    			// send response
-	    			response = rtspResponse.toString();
-
-	    			rtspBufferedWriter.write(response);
-		    		rtspBufferedWriter.flush();
-
-	    			if (requestType == RtspConstants.SETUP) {
-	    			    
-	    				setup = true;
-
-	    			    // update RTSP state
-	    			    rtspState = RtspConstants.READY;
-	    				
-	    				// in case of a setup request, we create a new RtpSocket 
-	    				// instance used to send RtpPacket
-	    				this.rtpSocket = new RtpSocket(this.clientAddress, this.clientPort);
-	    				
-	    				// this RTP socket is registered as RTP receiver to also
-	    				// receive the streaming video of this device
-	    				RtpSender.getInstance().addReceiver(this.rtpSocket);
+	}
 
-	    			}
-	    			
-	    		}
+	/**
+	 * Write the output of the sessions, that have been
+	 * requested since the last selection
+	 */
+	private void writeRequested() {
 
-	    		// this is an endless loop, that is terminated an
-	    		// with interrupt sent to the respective thread
-
-	    		while (true) {
-
-	    			// pares incoming request to decide how to proceed
-	    			int requestType = getRequestType();
-
-	    			// send response
-	    			response = rtspResponse.toString();
-	    			
-	    			rtspBufferedWriter.write(response);
-		    		rtspBufferedWriter.flush();
-	    			
-	    			if ((requestType == RtspConstants.PLAY) && (rtspState == RtspConstants.READY)) {	    				
-		    			Log.i(TAG, "request: PLAY");
-
-	    				// make sure that the respective client socket is 
-	    				// ready to send RTP packets
-	    				this.rtpSocket.suspend(false);
-	    				
-	    				this.rtspState = RtspConstants.PLAYING;
-	    				
-	    			} else if ((requestType == RtspConstants.PAUSE) && (rtspState == RtspConstants.PLAYING)) {
-		    			Log.i(TAG, "request: PAUSE");
-	    				
-	    				// suspend RTP socket from sending video packets
-	    				this.rtpSocket.suspend(true);
-	    				
-	    			} else if (requestType == RtspConstants.TEARDOWN) {
-		    			Log.i(TAG, "request: TEARDOWN");
-
-	    				// this RTP socket is removed from the RTP Sender
-	    				RtpSender.getInstance().removeReceiver(this.rtpSocket);
-	    				
-	    				// close the clienr socket for receiving incoming RTSP request
-	    				this.clientSocket.close();
-	    				
-	    				// close the associated RTP socket for sending RTP packets
-	    				this.rtpSocket.close();
-	    				
-	    			}
+		synchronized (this.writeRequests) {
 
-	    			// the pattern below enables an interrupt
-	    			// which allows to close this thread
-	    			try {
-	    				sleep(20);
+			ArrayList<RtspSession> requests = this.writeRequests;
 
-	    			} catch (InterruptedException e) {
-	    				break;
-	    			}
-	    			
-	    		}
-	      
-	    	} catch(Throwable t) {
-	    		t.printStackTrace();
-	    		
-	    		System.out.println("Caught " + t + " - closing thread");
-	      
-	    	}
-	    }
-	    
-	    private int getRequestType() throws Exception {
-	  	
-	    	int requestType = -1;
-
-	    	// retrieve the request in a string representation 
-	    	// for later evaluation
-	    	String requestLine = "";
-            try {
-            	requestLine = Parser.readRequest(rtspBufferedReader);
-        
-            } catch (IOException e) {
-                e.printStackTrace();
-        
-            }
-            
-            Log.i(TAG, "requestLine: " + requestLine);
-            
-            // determine request type from incoming RTSP request
-            requestType = Parser.getRequestType(requestLine);
-
-            if (contentBase.isEmpty()) {
-                contentBase = Parser.getContentBase(requestLine);
-            }
-
-            if (!requestLine.isEmpty()) {
-                cseq = Parser.getCseq(requestLine);
-            }
-
-            if (requestType == RtspConstants.OPTIONS) {
-        		rtspResponse = new RtspOptionsResponse(cseq);
-
-
-            } else if (requestType == RtspConstants.DESCRIBE) {
-                buildDescribeResponse(requestLine);
-
-            } else if (requestType == RtspConstants.SETUP) {
-                buildSetupResponse(requestLine);
-		                
-            } else if (requestType == RtspConstants.PAUSE) {
-                rtspResponse = new RtspPauseResponse(cseq);
-		
-            } else if (requestType == RtspConstants.TEARDOWN) {
-                rtspResponse = new RtspResponseTeardown(cseq);
- 
-            } else if (requestType == RtspConstants.PLAY) {
-                rtspResponse = new RtspPlayResponse(cseq);	       
-                
-                String range = Parser.getRangePlay(requestLine);
-                if (range != null) ((RtspPlayResponse) rtspResponse).setRange(range);
-
-            } else {
-	        	if( requestLine.isEmpty()){
-	        		rtspResponse = new RtspError(cseq);
-            
-	        	} else {
-                    rtspResponse = new RtspError(cseq);
-	        	}
-         
-            }
-
-            return requestType;
-	    
-	    }
+			this.writeRequests = this.pendingWrites;
+			this.pendingWrites = requests;
 
-	    /**
-	     * Create an RTSP response for an incoming SETUP request.
-	     * 
-	     * @param requestLine
-	     * @throws Exception
-	     */
-	    private void buildSetupResponse(String requestLine) throws Exception {
-	        
-	    	rtspResponse = new RtspSetupResponse(cseq);
-	        
-	    	// client port
-	    	clientPort = Parser.getClientPort(requestLine);	            
-	    	((RtspSetupResponse) rtspResponse).setClientPort(clientPort);
-	    	
-	    	// transport protocol
-            ((RtspSetupResponse) rtspResponse).setTransportProtocol(Parser.getTransportProtocol(requestLine));
-            
-            // session type
-            ((RtspSetupResponse) rtspResponse).setSessionType(Parser.getSessionType(requestLine));
-
-            ((RtspSetupResponse) rtspResponse).setClientIP(this.clientAddress.getHostAddress());
-	            
-            int[] interleaved = Parser.getInterleavedSetup(requestLine);
-            if(interleaved != null){
-                ((RtspSetupResponse) rtspResponse).setInterleaved(interleaved);
-            }
+		}
 
-	    }
+		for (int i = 0; i < this.pendingWrites.size(); i++) {
 
-	    /**
-	     * Create an RTSP response for an incoming DESCRIBE request.
-	     * 
-	     * @param requestLine
-	     * @throws Exception
-	     */
-	    private void buildDescribeResponse(String requestLine) throws Exception{
-                
-    	   rtspResponse = new RtspDescribeResponse(cseq);
-           
-    	   // set file name
-    	   String fileName = Parser.getFileName(requestLine);
-    	   ((RtspDescribeResponse) rtspResponse).setFileName(fileName);
-        	   
-    	   // set video encoding
-    	   ((RtspDescribeResponse) rtspResponse).setVideoEncoder(encoder);
-
-    	   // finally set content base
-    	   ((RtspDescribeResponse)rtspResponse).setContentBase(contentBase);
-        
-       }
+			RtspSession session = this.pendingWrites.get(i);
+			if (session.isClosed()) continue;
+
+			try {
+				session.write();
+
+			} catch (IOException e) {
+				Log.w(RtspConstants.SERVER_TAG, "Session closed: " + e.getMessage());
+				session.close();
+
+			}
+
+		}
+
+		this.pendingWrites.clear();
+
+	}
+
+	/**
+	 * Remove closed sessions, and close those
+	 * that have timed out
+	 */
+	private void reap(long now) {
+		
+		Iterator<RtspSession> iterator = this.sessions.iterator();
+		while (iterator.hasNext()) {
+			
+			RtspSession session = iterator.next();
+			if ((session.isClosed() == false) && session.isIdle(now)) {
+				Log.i(RtspConstants.SERVER_TAG, "Session timed out: " + session.getSessionId());
+				session.close();
+			}
+			
+			if (session.isClosed()) iterator.remove();
+			
+		}
+		
+	}
+	
+	/**
+	 * Number of sessions that have been set up
+	 * and are not yet torn down
+	 */
+	int getSessionCount() {
+		
+		int count = 0;
+		for (RtspSession session:this.sessions) {
+			if ((session.isClosed() == false) && (session.getSessionId() != null)) count++;
+		}
+		
+		return count;
+	
+	}
+	
+	/**
+	 * Create a new session identifier that is
+	 * hard to guess (RFC 2326, 3.4)
+	 */
+	String createSessionId() {
+		
+		String sessionId;
+		
+		boolean unique;
+		do {
+			
+			sessionId = Long.toHexString(this.random.nextLong() | Long.MIN_VALUE).toUpperCase();
+			
+			unique = true;
+			for (RtspSession session:this.sessions) {
+				if (sessionId.equals(session.getSessionId())) unique = false;
+			}
+			
+		} while (unique == false);
 
+		return sessionId;
+		
 	}
+	
+	/**
+	 * This method is used to tear down all sessions and
+	 * to close the sockets of the RTSP server
+	 */
+	private synchronized void terminate() {
+		
+		if (this.terminated) return;
+		
+		for (RtspSession session:this.sessions) {
+			session.close();
+		}
+		
+		this.sessions.clear();
 
+		try {
+			this.serverChannel.close();
+			this.selector.close();
+		
+		} catch (IOException e) {	
+			// nothing todo
+		}
+		
+		this.terminated = true;
+		
+	}
+	
 }
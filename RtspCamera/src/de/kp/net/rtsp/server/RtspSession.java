@@ -0,0 +1,634 @@
+package de.kp.net.rtsp.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.text.ParseException;
+
+import android.util.Log;
+
+import de.kp.net.rtp.RtpInterleavedOutput;
+import de.kp.net.rtp.RtpInterleavedSocket;
+import de.kp.net.rtp.RtpRateController;
+import de.kp.net.rtp.RtpSender;
+import de.kp.net.rtp.RtpSocket;
+import de.kp.net.rtsp.RtspConstants;
+import de.kp.net.rtsp.RtspConstants.VideoEncoder;
+import de.kp.net.rtsp.server.request.RtspRequest;
+import de.kp.net.rtsp.server.request.RtspRequestParser;
+import de.kp.net.rtsp.server.response.RtspDescribeResponse;
+import de.kp.net.rtsp.server.response.RtspError;
+import de.kp.net.rtsp.server.response.RtspOptionsResponse;
+import de.kp.net.rtsp.server.response.RtspPauseResponse;
+import de.kp.net.rtsp.server.response.RtspPlayResponse;
+import de.kp.net.rtsp.server.response.RtspResponse;
+import de.kp.net.rtsp.server.response.RtspResponseTeardown;
+import de.kp.net.rtsp.server.response.RtspSetupResponse;
+
+/**
+ * This class holds the state of an RTSP client
+ * connection and of the (video) session that is
+ * set up with it. All methods are invoked by the
+ * selector thread of the {@link RtspServer}, so
+ * that no locking is required.
+ *
+ * The session ends with a TEARDOWN request, when
+ * neither a request nor an RTCP report of the client
+ * is received within the session timeout or when the
+ * connection fails.
+ *
+ * A client may request the RTP packets interleaved
+ * with the RTSP messages on this connection; they are
+ * added by the send thread of the RtpSender, so that
+ * the output of the connection is locked.
+ */
+public class RtspSession implements RtpInterleavedOutput {
+
+	private String TAG = "RtspSession";
+
+	// size of the buffer, the socket is read into
+	private static final int BUFFER_SIZE = 2048;
+
+	// size of the output buffer; interleaved packets may
+	// fill it except for a reserve for the responses
+	private static final int OUTPUT_SIZE = 65536;
+	private static final int RESPONSE_RESERVE = 8192;
+
+	private final RtspServer server;
+
+	private final SocketChannel channel;
+
+	private SelectionKey key;
+
+	// remote (client) address
+	private final InetAddress clientAddress;
+
+	// reference to the video encoder (H263, H264) used over RTP
+	private final VideoEncoder encoder;
+
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	// parser of the requests received with this connection
+	private final RtspRequestParser parser = new RtspRequestParser();
+
+	// responses and interleaved packets, that are not yet
+	// written to the socket; guarded by the output lock
+	private ByteBuffer output = ByteBuffer.allocate(OUTPUT_SIZE);
+
+	private final Object outputLock = new Object();
+
+	private boolean outputClosed = false;
+
+	// indicates that the server thread is asked to write
+	private boolean writeRequested = false;
+
+	// interleaved channels (RTP, RTCP) or null, if the
+	// RTP packets are sent via UDP; changed with the
+	// output lock held
+	private int[] interleaved = null;
+
+	private boolean closeAfterResponses = false;
+
+	private boolean closed = false;
+
+	private String contentBase = "";
+
+	// session identifier, assigned with the first SETUP request
+	private String sessionId = null;
+
+	private int rtspState = RtspConstants.INIT;
+
+	/*
+	 * This datagram socket is used to send UDP
+	 * packets to the client address
+	 */
+	private RtpSocket rtpSocket;
+
+	// port the client sends its RTCP reports from, if
+	// the RTP packets are sent via UDP
+	private int rtcpPort = -1;
+
+	private long lastActivity;
+
+	public RtspSession(RtspServer server, SocketChannel channel, VideoEncoder encoder) {
+
+		this.server = server;
+		this.channel = channel;
+		this.encoder = encoder;
+
+		// register IP address of requesting client
+		this.clientAddress = channel.socket().getInetAddress();
+
+		this.lastActivity = System.currentTimeMillis();
+
+	}
+
+	void setKey(SelectionKey key) {
+		this.key = key;
+	}
+
+	public String getSessionId() {
+		return sessionId;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * A session (or connection) is idle, if neither a
+	 * request nor an RTCP report has been received within
+	 * the session timeout (RFC 2326, 12.37). Interleaved
+	 * reports are read with the requests; the reports of
+	 * a UDP client are looked up by the SSRC, that sends
+	 * them from the client's address and RTCP port
+	 *
+	 * @param now
+	 * @return
+	 */
+	public boolean isIdle(long now) {
+
+		long timeout = RtspConstants.SESSION_TIMEOUT * 1000L;
+		if (now - lastActivity <= timeout) return false;
+
+		if (rtcpPort > 0) {
+
+			RtpRateController controller = RtpRateController.getInstance();
+
+			Integer reporter = controller.getReporter(clientAddress.getHostAddress(), rtcpPort);
+			if (reporter != null) lastActivity = Math.max(lastActivity, controller.getLastReport(reporter));
+
+		}
+
+		return now - lastActivity > timeout;
+
+	}
+
+	/**
+	 * Read from the socket and respond to all
+	 * requests that are complete
+	 *
+	 * @return false, if the connection has been closed by the client
+	 * @throws IOException
+	 */
+	boolean read() throws IOException {
+
+		readBuffer.clear();
+		int length = channel.read(readBuffer);
+		if (length < 0) return false;
+
+		lastActivity = System.currentTimeMillis();
+
+		readBuffer.flip();
+
+		try {
+
+			RtspRequest request;
+			while ((closed == false) && (closeAfterResponses == false) && ((request = parser.parse(readBuffer)) != null)) {
+
+				if (request.getChannel() < 0) {
+					respond(request);
+
+				} else {
+					receiveInterleaved(request);
+
+				}
+
+			}
+
+		} catch (ParseException e) {
+			Log.w(TAG, "bad request: " + e.getMessage());
+
+			// the end of the request is unknown, so the
+			// connection is closed after the response
+			parser.reset();
+
+			closeAfterResponses = true;
+			send(new RtspError(0, 400, "Bad Request"));
+
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * An RTCP packet sent by the client on the RTCP
+	 * channel is evaluated like a UDP receiver report;
+	 * packets on other channels are ignored
+	 */
+	private void receiveInterleaved(RtspRequest packet) {
+
+		if ((interleaved == null) || (packet.getChannel() != interleaved[1])) return;
+		RtpRateController.getInstance().receiveRtcpPacket(packet.getData(), packet.getContentStart(), packet.getContentLength());
+
+	}
+
+	/**
+	 * Write pending output, as far as the socket
+	 * accepts it without blocking
+	 *
+	 * @throws IOException
+	 */
+	void write() throws IOException {
+
+		if (closed) return;
+
+		boolean pending;
+		synchronized (outputLock) {
+
+			writeRequested = false;
+			pending = flush();
+
+		}
+
+		if (pending) {
+			// wait until the socket is writable
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			return;
+		}
+
+		if (closeAfterResponses) {
+			close();
+			return;
+		}
+
+		key.interestOps(SelectionKey.OP_READ);
+
+	}
+
+	/**
+	 * Write the output to the socket without blocking;
+	 * invoked with the output lock held
+	 *
+	 * @return true, if output is still pending
+	 * @throws IOException
+	 */
+	private boolean flush() throws IOException {
+
+		if (output.position() == 0) return false;
+
+		output.flip();
+		channel.write(output);
+		output.compact();
+
+		// there may be space for blocked interleaved packets
+		outputLock.notifyAll();
+
+		return (output.position() > 0);
+
+	}
+
+	private void send(RtspResponse rtspResponse) throws IOException {
+
+		String response = rtspResponse.toString();
+
+		synchronized (outputLock) {
+
+			if (output.remaining() < response.length()) {
+
+				ByteBuffer grown = ByteBuffer.allocate(output.position() + response.length() + RESPONSE_RESERVE);
+
+				output.flip();
+				grown.put(output);
+
+				output = grown;
+
+			}
+
+			for (int i = 0; i < response.length(); i++) {
+				output.put((byte) response.charAt(i));
+			}
+
+		}
+
+		write();
+
+	}
+
+	/**
+	 * Add an RTP packet framed with the '$' channel header
+	 * (RFC 2326, 10.12) to the output; this method is invoked
+	 * by the send thread of the RtpSender and blocks, while
+	 * the connection is congested. The packet is dropped, if
+	 * the session is released meanwhile.
+	 */
+	public void writeInterleaved(int channel, byte[] data, int offset, int length) throws IOException {
+
+		synchronized (outputLock) {
+
+			while ((outputClosed == false) && (interleaved != null) && (output.remaining() - RESPONSE_RESERVE < length + 4)) {
+
+				try {
+					outputLock.wait();
+
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+
+			}
+
+			if (outputClosed || (interleaved == null)) return;
+
+			boolean idle = (output.position() == 0);
+
+			output.put((byte) '$');
+			output.put((byte) channel);
+			output.putShort((short) length);
+			output.put(data, offset, length);
+
+			// the packet of an idle connection is written at once,
+			// the remainder by the server thread, once the socket
+			// is writable
+			if (idle && (flush() == false)) return;
+
+			if (writeRequested) return;
+			writeRequested = true;
+
+		}
+
+		server.requestWrite(this);
+
+	}
+
+	/**
+	 * Release the session and close the connection
+	 */
+	public void close() {
+
+		if (closed) return;
+		closed = true;
+
+		synchronized (outputLock) {
+			outputClosed = true;
+			outputLock.notifyAll();
+		}
+
+		release();
+
+		if (key != null) key.cancel();
+
+		try {
+			channel.close();
+
+		} catch (IOException e) {
+			// nothing todo
+		}
+
+	}
+
+	/**
+	 * Stop sending RTP packets to the client
+	 */
+	private void release() {
+
+		rtcpPort = -1;
+
+		if (rtpSocket == null) return;
+
+		// a send thread blocked on the output must not
+		// hold up its removal
+		synchronized (outputLock) {
+			interleaved = null;
+			outputLock.notifyAll();
+		}
+
+		// this RTP socket is removed from the RTP Sender
+		RtpSender.getInstance().removeReceiver(rtpSocket);
+
+		// close the associated RTP socket for sending RTP packets
+		rtpSocket.close();
+		rtpSocket = null;
+
+	}
+
+	private void respond(RtspRequest request) throws IOException {
+
+		Log.i(TAG, "request: " + request);
+
+		int cseq = request.getCseq();
+		RtspResponse rtspResponse;
+
+		try {
+
+			if (cseq < 0) throw new Exception("missing CSeq");
+			rtspResponse = getResponse(request, cseq);
+
+		} catch (Exception e) {
+			Log.w(TAG, "bad request: " + e);
+			rtspResponse = new RtspError(Math.max(cseq, 0), 400, "Bad Request");
+
+		}
+
+		send(rtspResponse);
+
+	}
+
+	/**
+	 * Determine request type, update the session
+	 * state and provide the server response
+	 */
+	private RtspResponse getResponse(RtspRequest request, int cseq) throws Exception {
+
+		// determine request type from incoming RTSP request
+		int requestType = request.getRequestType();
+
+		if (contentBase.length() == 0) {
+			contentBase = request.getUri();
+		}
+
+		if (requestType == RtspConstants.OPTIONS) {
+			return new RtspOptionsResponse(cseq);
+
+		} else if (requestType == RtspConstants.DESCRIBE) {
+			return buildDescribeResponse(request, cseq);
+
+		} else if ((requestType != RtspConstants.SETUP) && (requestType != RtspConstants.PLAY)
+				&& (requestType != RtspConstants.PAUSE) && (requestType != RtspConstants.TEARDOWN)) {
+			return new RtspError(cseq);
+
+		}
+
+		/*
+		 * The session of the request must be the one of this
+		 * connection; a request without session identifier
+		 * refers to it as well
+		 */
+		String requestSession = request.getSession();
+		if ((requestSession != null) && (requestSession.equals(sessionId) == false)) {
+			return new RtspError(cseq, 454, "Session Not Found");
+		}
+
+		RtspResponse rtspResponse;
+
+		if (requestType == RtspConstants.SETUP) {
+
+			if (sessionId == null) {
+
+				if (server.getSessionCount() >= RtspServer.MAX_SESSIONS) {
+					return new RtspError(cseq, 453, "Not Enough Bandwidth");
+				}
+
+				sessionId = server.createSessionId();
+
+			}
+
+			rtspResponse = buildSetupResponse(request, cseq);
+
+		} else if ((sessionId == null) && (requestType == RtspConstants.TEARDOWN)) {
+			return new RtspError(cseq, 454, "Session Not Found");
+
+		/*
+		 * Without a session the state is still INIT, so
+		 * PLAY and PAUSE are answered with 455 below
+		 */
+		} else if (requestType == RtspConstants.PLAY) {
+			Log.i(TAG, "request: PLAY");
+
+			if (rtspState == RtspConstants.INIT) {
+				return new RtspError(cseq, 455, "Method Not Valid in This State");
+			}
+
+			rtspResponse = new RtspPlayResponse(cseq);
+
+			String range = request.getRange();
+			if (range != null) ((RtspPlayResponse) rtspResponse).setRange(range);
+
+			// make sure that the respective client socket is
+			// ready to send RTP packets
+			rtpSocket.suspend(false);
+
+			rtspState = RtspConstants.PLAYING;
+
+		} else if (requestType == RtspConstants.PAUSE) {
+			Log.i(TAG, "request: PAUSE");
+
+			if (rtspState == RtspConstants.INIT) {
+				return new RtspError(cseq, 455, "Method Not Valid in This State");
+			}
+
+			rtspResponse = new RtspPauseResponse(cseq);
+
+			// suspend RTP socket from sending video packets
+			rtpSocket.suspend(true);
+
+			rtspState = RtspConstants.READY;
+
+		} else {
+			Log.i(TAG, "request: TEARDOWN");
+
+			rtspResponse = new RtspResponseTeardown(cseq);
+
+			release();
+			rtspState = RtspConstants.INIT;
+
+			// the connection is closed after the response
+			closeAfterResponses = true;
+
+		}
+
+		rtspResponse.setSessionId(sessionId);
+		return rtspResponse;
+
+	}
+
+	/**
+	 * Create an RTSP response for an incoming SETUP request;
+	 * a new RtpSocket is registered as RTP receiver, that
+	 * sends the video of this device once the client plays.
+	 */
+	private RtspResponse buildSetupResponse(RtspRequest request, int cseq) throws Exception {
+
+		RtspSetupResponse rtspResponse = new RtspSetupResponse(cseq);
+
+		// transport protocol
+		String transportProtocol = request.getTransportProtocol();
+		if (transportProtocol == null) throw new Exception("missing Transport");
+
+		rtspResponse.setTransportProtocol(transportProtocol);
+
+		// session type
+		rtspResponse.setSessionType(request.getSessionType());
+
+		rtspResponse.setClientIP(clientAddress.getHostAddress());
+
+		/*
+		 * RTP over TCP is sent interleaved on this connection;
+		 * the channels are chosen by the server, if the client
+		 * does not request them
+		 */
+		int[] channels = request.getInterleaved();
+		if ((channels == null) && transportProtocol.toUpperCase().endsWith("/TCP")) {
+			channels = new int[] {0, 1};
+		}
+
+		int clientPort = -1;
+		if (channels == null) {
+
+			// client port
+			clientPort = request.getClientPort();
+			if (clientPort < 0) throw new Exception("missing client_port");
+
+			rtspResponse.setClientPort(clientPort);
+
+		} else {
+			rtspResponse.setInterleaved(channels);
+
+		}
+
+		// a repeated SETUP changes the transport of the session
+		boolean playing = (rtspState == RtspConstants.PLAYING);
+		release();
+
+		if (channels == null) {
+			rtpSocket = new RtpSocket(clientAddress, clientPort);
+
+			// RTCP is sent from the next port (RFC 3550, 11)
+			rtcpPort = clientPort + 1;
+
+		} else {
+
+			rtpSocket = new RtpInterleavedSocket(this, channels[0], channels[1]);
+
+			synchronized (outputLock) {
+				interleaved = channels;
+			}
+
+		}
+
+		rtpSocket.suspend(!playing);
+
+		RtpSender.getInstance().addReceiver(rtpSocket);
+
+		// update RTSP state
+		if (rtspState == RtspConstants.INIT) rtspState = RtspConstants.READY;
+
+		return rtspResponse;
+
+	}
+
+	/**
+	 * Create an RTSP response for an incoming DESCRIBE request.
+	 */
+	private RtspResponse buildDescribeResponse(RtspRequest request, int cseq) throws Exception {
+
+		RtspDescribeResponse rtspResponse = new RtspDescribeResponse(cseq);
+
+		// set file name
+		String fileName = request.getFileName();
+		rtspResponse.setFileName(fileName);
+
+		// set video encoding
+		rtspResponse.setVideoEncoder(encoder);
+
+		// finally set content base
+		rtspResponse.setContentBase(contentBase);
+
+		return rtspResponse;
+
+	}
+
+}
@@ -0,0 +1,540 @@
+package de.kp.net.rtsp.server.request;
+
+import java.net.URI;
+
+import de.kp.net.rtsp.RtspConstants;
+
+/**
+ * This class holds an incoming RTSP request, as it is
+ * filled by the {@link RtspRequestParser}. The request
+ * keeps its raw bytes and the positions of the request
+ * line and the headers; strings are only created when
+ * they are asked for.
+ *
+ * Header names are looked up case-insensitive, the
+ * parameters of the Transport header may be given in
+ * any order.
+ *
+ * An instance is reused for the next request, so its
+ * values must be taken before the parser is invoked
+ * again.
+ */
+public class RtspRequest {
+
+	// maximum number of headers of a request
+	public static final int MAX_HEADERS = 32;
+
+	// initial size of the data buffer, it grows with larger requests
+	private static final int INITIAL_SIZE = 512;
+
+	// raw bytes of the request
+	byte[] data = new byte[INITIAL_SIZE];
+
+	int length = 0;
+
+	// request line: method, uri and version
+	int methodStart;
+	int methodEnd;
+
+	int uriStart;
+	int uriEnd;
+
+	int versionStart;
+	int versionEnd;
+
+	// header names and values
+	final int[] nameStart = new int[MAX_HEADERS];
+	final int[] nameEnd = new int[MAX_HEADERS];
+
+	final int[] valueStart = new int[MAX_HEADERS];
+	final int[] valueEnd = new int[MAX_HEADERS];
+
+	int headerCount = 0;
+
+	// message body, if announced by a Content-Length header,
+	// or the packet of an interleaved channel
+	int contentStart;
+	int contentLength;
+
+	int channel = -1;
+
+	/**
+	 * Prepare for the next request
+	 */
+	void reset() {
+
+		length = 0;
+
+		methodStart = methodEnd = 0;
+		uriStart = uriEnd = 0;
+		versionStart = versionEnd = 0;
+
+		headerCount = 0;
+
+		contentStart = 0;
+		contentLength = 0;
+
+		channel = -1;
+
+	}
+
+	/**
+	 * Grow the data buffer to hold at least the given number of bytes
+	 */
+	void ensureCapacity(int size) {
+
+		if (size <= data.length) return;
+
+		byte[] grown = new byte[Math.max(size, data.length * 2)];
+		System.arraycopy(data, 0, grown, 0, length);
+
+		data = grown;
+
+	}
+
+	/**
+	 * This method determines the request type
+	 * of this request.
+	 *
+	 * @return request type or -1, if the method is unknown
+	 */
+	public int getRequestType() {
+
+		if (equals(methodStart, methodEnd, "OPTIONS"))
+			return RtspConstants.OPTIONS;
+
+		else if (equals(methodStart, methodEnd, "DESCRIBE"))
+			return RtspConstants.DESCRIBE;
+
+		else if (equals(methodStart, methodEnd, "SETUP"))
+			return RtspConstants.SETUP;
+
+		else if (equals(methodStart, methodEnd, "PLAY"))
+			return RtspConstants.PLAY;
+
+		else if (equals(methodStart, methodEnd, "PAUSE"))
+			return RtspConstants.PAUSE;
+
+		else if (equals(methodStart, methodEnd, "TEARDOWN"))
+			return RtspConstants.TEARDOWN;
+
+		return -1;
+
+	}
+
+	public String getMethod() {
+		return toString(methodStart, methodEnd);
+	}
+
+	/**
+	 * @return request URI, which is used as content base
+	 */
+	public String getUri() {
+		return toString(uriStart, uriEnd);
+	}
+
+	public String getVersion() {
+		return toString(versionStart, versionEnd);
+	}
+
+	/**
+	 * @return path of the request URI
+	 * @throws Exception
+	 */
+	public String getFileName() throws Exception {
+		return new URI(getUri()).getPath();
+	}
+
+	/**
+	 * @return sequence number or -1, if the request
+	 * carries no (valid) CSeq header
+	 */
+	public int getCseq() {
+
+		int index = indexOfHeader("CSeq");
+		if (index < 0) return -1;
+
+		return parseInt(valueStart[index], valueEnd[index]);
+
+	}
+
+	/**
+	 * Retrieve the value of a header, the name
+	 * is compared case-insensitive.
+	 *
+	 * @param name
+	 * @return value or null, if the request carries
+	 * no such header
+	 */
+	public String getHeader(String name) {
+
+		int index = indexOfHeader(name);
+		if (index < 0) return null;
+
+		return toString(valueStart[index], valueEnd[index]);
+
+	}
+
+	public int getHeaderCount() {
+		return headerCount;
+	}
+
+	public String getHeaderName(int index) {
+		return toString(nameStart[index], nameEnd[index]);
+	}
+
+	public String getHeaderValue(int index) {
+		return toString(valueStart[index], valueEnd[index]);
+	}
+
+	/**
+	 * This method retrieves the session identifier
+	 * (without parameters).
+	 *
+	 * @return session identifier or null, if the request
+	 * carries no Session header
+	 */
+	public String getSession() {
+
+		int index = indexOfHeader("Session");
+		if (index < 0) return null;
+
+		int end = indexOf(valueStart[index], valueEnd[index], ';');
+		return toString(valueStart[index], trimEnd(valueStart[index], end));
+
+	}
+
+	/**
+	 * This method retrieves the range of a PLAY
+	 * request, i.e. the value after '='.
+	 *
+	 * @return range or null, as Android's video view
+	 * does not provide range information
+	 */
+	public String getRange() {
+
+		int index = indexOfHeader("Range");
+		if (index < 0) return null;
+
+		int start = indexOf(valueStart[index], valueEnd[index], '=');
+		if (start == valueEnd[index]) return null;
+
+		return toString(start + 1, valueEnd[index]);
+
+	}
+
+	/**
+	 * This method retrieves the transport protocol
+	 * (e.g. RTP/AVP) of the (first) transport.
+	 *
+	 * @return protocol or null, if the request
+	 * carries no Transport header
+	 */
+	public String getTransportProtocol() {
+
+		int index = indexOfHeader("Transport");
+		if (index < 0) return null;
+
+		int end = getTransportEnd(index);
+		return toString(valueStart[index], trimEnd(valueStart[index], indexOf(valueStart[index], end, ';')));
+
+	}
+
+	/**
+	 * This method determines the session type
+	 * (unicast, multicast) of the (first) transport.
+	 *
+	 * @return session type or null, if the request
+	 * carries no Transport header
+	 */
+	public String getSessionType() {
+
+		int index = indexOfHeader("Transport");
+		if (index < 0) return null;
+
+		if (findTransportParameter(index, "multicast") >= 0) return "multicast";
+		return "unicast";
+
+	}
+
+	/**
+	 * This method retrieves the (first) client
+	 * port of the (first) transport.
+	 *
+	 * @return port or -1, if the transport has
+	 * no valid client_port parameter
+	 */
+	public int getClientPort() {
+
+		int[] ports = getTransportRange("client_port");
+		return (ports == null) ? -1 : ports[0];
+
+	}
+
+	/**
+	 * This method retrieves the interleaved channels
+	 * of the (first) transport.
+	 *
+	 * @return channels or null, if the transport has
+	 * no valid interleaved parameter
+	 */
+	public int[] getInterleaved() {
+		return getTransportRange("interleaved");
+	}
+
+	/**
+	 * Retrieve the value of a parameter of the (first)
+	 * transport, the name is compared case-insensitive.
+	 *
+	 * @param name
+	 * @return value, an empty string for a parameter
+	 * without value or null, if there is no such parameter
+	 */
+	public String getTransportParameter(String name) {
+
+		int index = indexOfHeader("Transport");
+		if (index < 0) return null;
+
+		int start = findTransportParameter(index, name);
+		if (start < 0) return null;
+
+		int end = indexOf(start, getTransportEnd(index), ';');
+
+		int value = indexOf(start, end, '=');
+		if (value == end) return "";
+
+		value = trimStart(value + 1, end);
+		return toString(value, trimEnd(value, end));
+
+	}
+
+	/**
+	 * @return channel of an interleaved RTP or RTCP
+	 * packet, or -1 for an RTSP request
+	 */
+	public int getChannel() {
+		return channel;
+	}
+
+	/**
+	 * @return raw bytes of the request; the message body
+	 * or interleaved packet starts at the content start
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	public int getContentStart() {
+		return contentStart;
+	}
+
+	/**
+	 * @return length of the message body or packet
+	 */
+	public int getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * Parse a parameter of the form name=a or
+	 * name=a-b, as used for ports and channels
+	 */
+	private int[] getTransportRange(String name) {
+
+		int index = indexOfHeader("Transport");
+		if (index < 0) return null;
+
+		int start = findTransportParameter(index, name);
+		if (start < 0) return null;
+
+		int end = indexOf(start, getTransportEnd(index), ';');
+
+		int value = indexOf(start, end, '=');
+		if (value == end) return null;
+
+		value = trimStart(value + 1, end);
+		end = trimEnd(value, end);
+
+		int dash = indexOf(value, end, '-');
+
+		int[] range = new int[2];
+		range[0] = parseInt(value, dash);
+
+		if (range[0] < 0) return null;
+
+		if (dash == end) {
+			range[1] = range[0] + 1;
+
+		} else {
+			range[1] = parseInt(dash + 1, end);
+			if (range[1] < 0) return null;
+
+		}
+
+		return range;
+
+	}
+
+	/**
+	 * A Transport header may list several transports
+	 * separated by ',' of which the first one is used
+	 */
+	private int getTransportEnd(int index) {
+		return indexOf(valueStart[index], valueEnd[index], ',');
+	}
+
+	/**
+	 * Find a parameter of the first transport
+	 *
+	 * @return start of the parameter or -1
+	 */
+	private int findTransportParameter(int index, String name) {
+
+		int end = getTransportEnd(index);
+
+		// the first segment is the transport protocol
+		int start = indexOf(valueStart[index], end, ';');
+
+		while (start < end) {
+
+			int parameterStart = trimStart(start + 1, end);
+			int parameterEnd = indexOf(parameterStart, end, ';');
+
+			int nameEnd = trimEnd(parameterStart, indexOf(parameterStart, parameterEnd, '='));
+			if (equalsIgnoreCase(parameterStart, nameEnd, name)) return parameterStart;
+
+			start = parameterEnd;
+
+		}
+
+		return -1;
+
+	}
+
+	int indexOfHeader(String name) {
+
+		for (int i = 0; i < headerCount; i++) {
+			if (equalsIgnoreCase(nameStart[i], nameEnd[i], name)) return i;
+		}
+
+		return -1;
+
+	}
+
+	/**
+	 * @return position of the character or end
+	 */
+	private int indexOf(int start, int end, char c) {
+
+		for (int i = start; i < end; i++) {
+			if (data[i] == c) return i;
+		}
+
+		return end;
+
+	}
+
+	private int trimStart(int start, int end) {
+
+		while ((start < end) && isWhitespace(data[start])) start++;
+		return start;
+
+	}
+
+	private int trimEnd(int start, int end) {
+
+		while ((end > start) && isWhitespace(data[end - 1])) end--;
+		return end;
+
+	}
+
+	/**
+	 * @return non-negative number or -1, if the
+	 * bytes are no (valid) number
+	 */
+	int parseInt(int start, int end) {
+
+		start = trimStart(start, end);
+		end = trimEnd(start, end);
+
+		if ((start == end) || (end - start > 9)) return -1;
+
+		int value = 0;
+		for (int i = start; i < end; i++) {
+
+			int digit = data[i] - '0';
+			if ((digit < 0) || (digit > 9)) return -1;
+
+			value = value * 10 + digit;
+
+		}
+
+		return value;
+
+	}
+
+	private boolean equals(int start, int end, String s) {
+
+		if (end - start != s.length()) return false;
+
+		for (int i = 0; i < s.length(); i++) {
+			if (data[start + i] != s.charAt(i)) return false;
+		}
+
+		return true;
+
+	}
+
+	private boolean equalsIgnoreCase(int start, int end, String s) {
+
+		if (end - start != s.length()) return false;
+
+		for (int i = 0; i < s.length(); i++) {
+			if (toLowerCase(data[start + i]) != toLowerCase(s.charAt(i))) return false;
+		}
+
+		return true;
+
+	}
+
+	private static int toLowerCase(int c) {
+		return ((c >= 'A') && (c <= 'Z')) ? c + ('a' - 'A') : c;
+	}
+
+	static boolean isWhitespace(byte b) {
+		return (b == ' ') || (b == '\t') || (b == '\r') || (b == '\n');
+	}
+
+	/**
+	 * Create a string of the given bytes; line breaks
+	 * of folded header values are replaced by spaces
+	 */
+	private String toString(int start, int end) {
+
+		char[] chars = new char[end - start];
+		for (int i = 0; i < chars.length; i++) {
+
+			char c = (char) (data[start + i] & 0xFF);
+			chars[i] = ((c == '\r') || (c == '\n')) ? ' ' : c;
+
+		}
+
+		return new String(chars);
+
+	}
+
+	/**
+	 * @return request line and headers, as received
+	 */
+	public String toString() {
+
+		char[] chars = new char[contentStart];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) (data[i] & 0xFF);
+		}
+
+		return new String(chars);
+
+	}
+
+}
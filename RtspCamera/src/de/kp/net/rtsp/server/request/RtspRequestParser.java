@@ -0,0 +1,337 @@
+package de.kp.net.rtsp.server.request;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+/**
+ * This class provides an incremental parser for incoming
+ * RTSP requests. The bytes of a connection are passed in
+ * as they are received, in chunks of any size; the request
+ * line and the headers are parsed in a single pass into a
+ * reusable {@link RtspRequest}.
+ *
+ * A request ends with an empty line or, if it carries a
+ * Content-Length header, with its message body. Empty lines
+ * ahead of a request are skipped.
+ *
+ * Interleaved RTP and RTCP packets (RFC 2326, 10.12), that a
+ * client sends on the RTSP connection, are returned as well;
+ * they are distinguished by their channel.
+ */
+public class RtspRequestParser {
+
+	// requests that do not end within this size are rejected
+	public static final int MAX_REQUEST_SIZE = 8192;
+
+	// parser states
+	private static final int START 			= 0;
+	private static final int REQUEST_LINE 	= 1;
+	private static final int HEADERS 		= 2;
+	private static final int BODY 			= 3;
+	private static final int COMPLETE 		= 4;
+	private static final int FRAME 			= 5;
+
+	private final RtspRequest request = new RtspRequest();
+
+	private int state = START;
+
+	// start of the current line
+	private int lineStart = 0;
+
+	// position, up to which the received bytes have been scanned
+	private int scanPosition = 0;
+
+	/**
+	 * Discard a partially received request
+	 */
+	public void reset() {
+
+		request.reset();
+
+		state = START;
+		lineStart = 0;
+		scanPosition = 0;
+
+	}
+
+	/**
+	 * Consume bytes of the buffer up to the end of the
+	 * next request. The request is valid until this method
+	 * is invoked again; further bytes (of pipelined requests)
+	 * remain in the buffer.
+	 *
+	 * @param buffer
+	 * @return request or null, if all bytes of the buffer have
+	 * been consumed and the request is not yet complete
+	 * @throws ParseException if the request is malformed or too
+	 * large; the parser must be reset before it is used again
+	 */
+	public RtspRequest parse(ByteBuffer buffer) throws ParseException {
+
+		if (state == COMPLETE) reset();
+
+		if (state == START) {
+
+			while (buffer.hasRemaining() && ((buffer.get(buffer.position()) == '\r') || (buffer.get(buffer.position()) == '\n'))) {
+				buffer.get();
+			}
+
+			if (buffer.hasRemaining() == false) return null;
+			state = (buffer.get(buffer.position()) == '$') ? FRAME : REQUEST_LINE;
+
+		}
+
+		if (buffer.hasRemaining() == false) return null;
+
+		int count = Math.min(buffer.remaining(), MAX_REQUEST_SIZE - request.length);
+		if (count == 0) throw new ParseException("request too large", request.length);
+
+		// the received bytes are copied at once and scanned afterwards
+		request.ensureCapacity(request.length + count);
+
+		buffer.get(request.data, request.length, count);
+		request.length += count;
+
+		int end = scan();
+		if (end < 0) {
+
+			if (request.length == MAX_REQUEST_SIZE) throw new ParseException("request too large", request.length);
+			return null;
+
+		}
+
+		// bytes beyond the end belong to the next request
+		buffer.position(buffer.position() - (request.length - end));
+		request.length = end;
+
+		state = COMPLETE;
+		return request;
+
+	}
+
+	/**
+	 * Scan the received bytes for the end of the request
+	 *
+	 * @return end of the request or -1, if the request
+	 * is not yet complete
+	 * @throws ParseException
+	 */
+	private int scan() throws ParseException {
+
+		byte[] data = request.data;
+		int length = request.length;
+
+		if (state == FRAME) {
+
+			// '$', channel and length of an interleaved packet
+			if (length < 4) return -1;
+
+			request.channel = data[1] & 0xFF;
+
+			request.contentStart = 4;
+			request.contentLength = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+
+			if (request.contentLength > MAX_REQUEST_SIZE - 4) {
+				throw new ParseException("interleaved packet too large", 2);
+			}
+
+			state = BODY;
+
+		}
+
+		while (state != BODY) {
+
+			int i = scanPosition;
+			while ((i < length) && (data[i] != '\n')) i++;
+
+			if (i == length) {
+				scanPosition = length;
+				return -1;
+			}
+
+			scanPosition = i + 1;
+			endOfLine(i);
+
+		}
+
+		int end = request.contentStart + request.contentLength;
+		return (length >= end) ? end : -1;
+
+	}
+
+	/**
+	 * Parse the line, that ends with the line feed
+	 * at the given position
+	 *
+	 * @throws ParseException
+	 */
+	private void endOfLine(int lineFeed) throws ParseException {
+
+		byte[] data = request.data;
+
+		int start = lineStart;
+		int end = lineFeed;
+
+		if ((end > start) && (data[end - 1] == '\r')) end--;
+
+		lineStart = lineFeed + 1;
+
+		for (int i = start; i < end; i++) {
+			if (((data[i] >= 0) && (data[i] < 0x20) && (data[i] != '\t')) || (data[i] == 0x7F)) {
+				throw new ParseException("invalid character", i);
+			}
+		}
+
+		if (state == REQUEST_LINE) {
+
+			parseRequestLine(start, end);
+			state = HEADERS;
+
+			return;
+
+		}
+
+		if (start == end) {
+
+			// empty line, the headers are complete
+			request.contentStart = lineStart;
+
+			int index = request.indexOfHeader("Content-Length");
+			if (index >= 0) {
+
+				request.contentLength = request.parseInt(request.valueStart[index], request.valueEnd[index]);
+				if ((request.contentLength < 0) || (request.contentLength > MAX_REQUEST_SIZE - lineStart)) {
+					throw new ParseException("invalid Content-Length", request.valueStart[index]);
+				}
+
+			}
+
+			state = BODY;
+			return;
+
+		}
+
+		if ((data[start] == ' ') || (data[start] == '\t')) {
+
+			// continuation of a folded header value
+			if (request.headerCount == 0) throw new ParseException("invalid header", start);
+
+			int last = request.headerCount - 1;
+
+			while ((end > start) && RtspRequest.isWhitespace(data[end - 1])) end--;
+			if (end > start) request.valueEnd[last] = end;
+
+			return;
+
+		}
+
+		parseHeader(start, end);
+
+	}
+
+	/**
+	 * Parse a request line of the form 'method SP uri SP version'
+	 */
+	private void parseRequestLine(int start, int end) throws ParseException {
+
+		byte[] data = request.data;
+
+		int methodEnd = start;
+		while ((methodEnd < end) && isTokenChar(data[methodEnd])) methodEnd++;
+
+		if ((methodEnd == start) || (methodEnd == end) || (data[methodEnd] != ' ')) {
+			throw new ParseException("invalid method", methodEnd);
+		}
+
+		int uriStart = methodEnd + 1;
+
+		int uriEnd = uriStart;
+		while ((uriEnd < end) && (data[uriEnd] != ' ')) uriEnd++;
+
+		if ((uriEnd == uriStart) || (uriEnd == end)) {
+			throw new ParseException("invalid request uri", uriEnd);
+		}
+
+		int versionStart = uriEnd + 1;
+
+		if ((end - versionStart < 8) || (data[versionStart] != 'R') || (data[versionStart + 1] != 'T')
+				|| (data[versionStart + 2] != 'S') || (data[versionStart + 3] != 'P') || (data[versionStart + 4] != '/')) {
+			throw new ParseException("invalid version", versionStart);
+		}
+
+		for (int i = versionStart + 5; i < end; i++) {
+			if (((data[i] < '0') || (data[i] > '9')) && (data[i] != '.')) {
+				throw new ParseException("invalid version", i);
+			}
+		}
+
+		request.methodStart = start;
+		request.methodEnd = methodEnd;
+
+		request.uriStart = uriStart;
+		request.uriEnd = uriEnd;
+
+		request.versionStart = versionStart;
+		request.versionEnd = end;
+
+	}
+
+	/**
+	 * Parse a header line of the form 'name: value'
+	 */
+	private void parseHeader(int start, int end) throws ParseException {
+
+		byte[] data = request.data;
+
+		int nameEnd = start;
+		while ((nameEnd < end) && isTokenChar(data[nameEnd])) nameEnd++;
+
+		int colon = nameEnd;
+		while ((colon < end) && ((data[colon] == ' ') || (data[colon] == '\t'))) colon++;
+
+		if ((nameEnd == start) || (colon == end) || (data[colon] != ':')) {
+			throw new ParseException("invalid header", nameEnd);
+		}
+
+		if (request.headerCount == RtspRequest.MAX_HEADERS) {
+			throw new ParseException("too many headers", start);
+		}
+
+		int valueStart = colon + 1;
+		while ((valueStart < end) && RtspRequest.isWhitespace(data[valueStart])) valueStart++;
+
+		int valueEnd = end;
+		while ((valueEnd > valueStart) && RtspRequest.isWhitespace(data[valueEnd - 1])) valueEnd--;
+
+		int index = request.headerCount++;
+
+		request.nameStart[index] = start;
+		request.nameEnd[index] = nameEnd;
+
+		request.valueStart[index] = valueStart;
+		request.valueEnd[index] = valueEnd;
+
+	}
+
+	/**
+	 * Characters of methods and header names (RFC 2616)
+	 */
+	private static boolean isTokenChar(byte b) {
+
+		if ((b <= 0x20) || (b >= 0x7F)) return false;
+
+		switch (b) {
+		case '(': case ')': case '<': case '>': case '@':
+		case ',': case ';': case ':': case '\\': case '"':
+		case '/': case '[': case ']': case '?': case '=':
+		case '{': case '}':
+			return false;
+
+		default:
+			return true;
+
+		}
+
+	}
+
+}
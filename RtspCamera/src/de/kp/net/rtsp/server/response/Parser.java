@@ -13,7 +13,10 @@ import de.kp.net.rtsp.RtspConstants;
  * 
  * @author Stefan Krusche (krusche@dr-kruscheundpartner.de)
  *
+ * @deprecated the server parses requests with the
+ * {@link de.kp.net.rtsp.server.request.RtspRequestParser}
  */
+@Deprecated
 public class Parser {
         
     /**
@@ -284,6 +287,26 @@ public class Parser {
     
     }
         
+    /**
+     * This method retrieves the session identifier
+     * (without parameters) from an incoming RTSP
+     * request.
+     * 
+     * @param request
+     * @return session identifier or null, if the request
+     * carries no Session header
+     * @throws Exception
+     */
+    public static String getSession(String request) throws Exception {
+        
+    	String lineInput = getLineInput(request, "\r\n", "Session:");
+    	if (lineInput == null) return null;
+        
+    	String[] parts = lineInput.substring(8).split(";");
+        return parts[0].trim();
+    
+    }
+        
     /**
      * This method retrieves the user agent from an
      * incoming RTSP request.
@@ -6,6 +6,11 @@ public class RtspError extends RtspResponse {
         super(cseq);
     }
 
+    public RtspError(int cseq, int statusCode, String reasonPhrase) {
+        super(cseq);
+        setStatus(statusCode, reasonPhrase);
+    }
+
     protected void generateBody() {
     }
 
@@ -9,7 +9,7 @@ public class RtspPlayResponse extends RtspResponse {
     }
 
     protected void generateBody() {	
-    	this.body += "Session: " + session_id + CRLF + "Range: npt=" + range;
+    	this.body += "Range: npt=" + range;
     }
 
     public String getRange() {
@@ -10,8 +10,11 @@ public abstract class RtspResponse {
        
     protected int cseq = 0;
        
-   	protected static int session_id = -1;       
-   	protected boolean newSessionId = true;
+    protected int statusCode = 200;
+    protected String reasonPhrase = "OK";
+       
+    // session identifier, null for requests outside a session
+    protected String sessionId = null;
        
 	protected String body = "";
        
@@ -32,9 +35,11 @@ public abstract class RtspResponse {
 
     	StringBuffer sb = new StringBuffer();
     	
-    	sb.append("RTSP/1.0" + SEP + "200" + SEP + "OK" + CRLF);
+    	sb.append("RTSP/1.0" + SEP + statusCode + SEP + reasonPhrase + CRLF);
     	sb.append(cseq() +CRLF);
     	
+    	if (sessionId != null) sb.append(session() + CRLF);
+    	
     	sb.append("Date: " + new Date().toGMTString() + CRLF);
     	sb.append("Server: " + getServer() + CRLF);
 
@@ -46,6 +51,10 @@ public abstract class RtspResponse {
         return "CSeq:" + SEP + getCseq();
 	}
    
+	protected String session() {
+        return "Session:" + SEP + sessionId;
+	}
+   
     protected String getResponse() {
         return response;
     }
@@ -77,9 +86,16 @@ public abstract class RtspResponse {
     protected void generate(){
     
     	// note that it is important to close the response
-    	// message with 2 CRLFs
+    	// message with 2 CRLFs; the header lines end with
+    	// one already
     	response += getHeader();
-        response += getBody() + CRLF2;
+    	
+    	if (getBody().length() == 0) {
+    		response += CRLF;
+    	
+    	} else {
+    		response += getBody() + CRLF2;
+    	}
 
     }
        
@@ -94,8 +110,19 @@ public abstract class RtspResponse {
     
     }
        
-    public void createSessionId(boolean bool){
-        newSessionId = bool;
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    /**
+     * Respond with a status other than 200 OK
+     * 
+     * @param statusCode
+     * @param reasonPhrase
+     */
+    public void setStatus(int statusCode, String reasonPhrase) {
+        this.statusCode = statusCode;
+        this.reasonPhrase = reasonPhrase;
     }
 
 }
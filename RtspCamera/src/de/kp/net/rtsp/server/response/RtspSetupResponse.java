@@ -1,7 +1,5 @@
 package de.kp.net.rtsp.server.response;
 
-import java.util.Random;
-
 import de.kp.net.rtsp.RtspConstants;
 
 public class RtspSetupResponse extends RtspResponse {
@@ -21,9 +19,7 @@ public class RtspSetupResponse extends RtspResponse {
 
     protected void generateBody() {
 
-    	createSessionId();
-
-    	body += "Session: " + session_id + CRLF + "Transport: " + transportProtocol + ";" + sessionType + ";";
+    	body += "Transport: " + transportProtocol + ";" + sessionType + ";";
         if (interleaved==null) {
             body += "source=" + RtspConstants.SERVER_IP + ";" + getPortPart();
         
@@ -44,19 +40,8 @@ public class RtspSetupResponse extends RtspResponse {
         return "client_ip=" + clientIP + ";interleaved=" + interleaved[0] + "-" + interleaved[1];
     }
 
-    private final void createSessionId() {
- 
-    	Random r = new Random();
-        int id = r.nextInt();
-        
-        if (id < 0) {
-            id *= -1;
-        }
-        
-        if (newSessionId) {
-            session_id = id;
-        }
-    
+    protected String session() {
+        return super.session() + ";timeout=" + RtspConstants.SESSION_TIMEOUT;
     }
 
     public void setClientPort(int port) {
@@ -160,7 +160,7 @@ public class RtspNativeCodecsCamera extends Activity {
 			if (inPreview) {
 				camera.stopPreview();
 			}
-			camera.setPreviewCallback(null);
+			outgoingPlayer.detachCamera(camera);
 			camera.release();
 			camera = null;
 			
@@ -210,8 +210,7 @@ public class RtspNativeCodecsCamera extends Activity {
 		if (cameraConfigured && camera != null) {
 
 			// activate onPreviewFrame()
-			// camera.setPreviewCallback(cameraPreviewCallback);
-			camera.setPreviewCallback(outgoingPlayer);
+			outgoingPlayer.attachCamera(camera);
 			
 			// start captureThread
 			outgoingPlayer.start();